@@ -0,0 +1,268 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code BoardBenchmarks} class measures the hot paths of the rules core
+ * and the board's rendering over a fixed corpus of middlegame and endgame
+ * positions. Each operation covers every position of one corpus, so scores
+ * are comparable between runs as long as the corpus is unchanged.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core:bin/ui:bin/bench BoardBenchmarks [options] [filter...]
+ *   --warmup N       warmup iterations (default 5)
+ *   --iterations N   measurement iterations (default 10)
+ *   --time MS        length of each iteration (default 500)
+ *   --csv FILE       also write the results as CSV
+ *   --baseline FILE  compare with an earlier CSV and exit with status 1 on a regression
+ *   --tolerance PCT  allowed change against the baseline (default 10)
+ * </pre>
+ *
+ * Only benchmarks whose names contain one of the filters are run.
+ */
+public class BoardBenchmarks {
+    static final String[] MIDDLEGAME = {
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+            "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+            "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4",
+            "rnbqkb1r/ppp2ppp/4pn2/3p2B1/2PP4/2N5/PP2PPPP/R2QKBNR b KQkq - 3 4",
+            "r2q1rk1/pp2ppbp/2np1np1/8/3NP1b1/2N1BP2/PPPQ2PP/R3KB1R w KQ - 1 10",
+            "r1b2rk1/2q1bppp/p2ppn2/1p6/3BPP2/2NB4/PPPQ2PP/2KR3R w - - 0 13" };
+
+    static final String[] ENDGAME = {
+            "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+            "8/8/4k3/8/2K5/8/3P4/8 w - - 0 1",
+            "1K1k4/1P6/8/8/8/8/r7/2R5 w - - 0 1",
+            "4k3/8/8/3PK3/8/8/r7/5R2 b - - 0 1",
+            "8/8/8/4k3/3r4/8/2Q5/K7 w - - 0 1",
+            "8/7k/8/3B4/8/2N5/8/4K3 w - - 0 1",
+            "8/5pk1/6p1/8/1P6/P7/6K1/8 w - - 0 1",
+            "6k1/5ppp/8/8/8/8/5PPP/3R2K1 w - - 0 1" };
+
+    private static final int BOARD_PIXELS = 640; // The board's preferred size.
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int warmup = 5;
+        int iterations = 10;
+        int time = 500;
+        Path csv = null;
+        Path baseline = null;
+        double tolerance = 0.10;
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    time = Integer.parseInt(args[++i]);
+                    break;
+                case "--csv":
+                    csv = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]) / 100;
+                    break;
+                default:
+                    filters.add(args[i]);
+            }
+        }
+
+        Microbench bench = new Microbench(warmup, iterations, time);
+        List<Microbench.Result> results = new ArrayList<>();
+        for (String corpus : new String[] { "middlegame", "endgame" }) {
+            List<BoardState> boards = load(corpus.equals("middlegame") ? MIDDLEGAME : ENDGAME);
+            addBenchmarks(bench, corpus, boards, filters, results);
+        }
+        if (!Microbench.report(results, csv, baseline, tolerance)) {
+            System.exit(1);
+        }
+    }
+
+    private static void addBenchmarks(Microbench bench, String corpus, List<BoardState> boards, List<String> filters,
+            List<Microbench.Result> results) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+
+        benchmarks.add(new Benchmark("getPieceAt", () -> {
+            long found = 0;
+            for (BoardState board : boards) {
+                for (int square = 0; square < 64; square++) {
+                    found += board.getPieceAt(Square.row(square), Square.column(square)) != null ? 1 : 0;
+                }
+            }
+            return found;
+        }));
+
+        for (PieceType type : PieceType.values()) {
+            List<Pieces> pieces = new ArrayList<>();
+            for (BoardState board : boards) {
+                for (Pieces piece : board.getPieces()) {
+                    if (piece.getType() == type) {
+                        pieces.add(piece);
+                    }
+                }
+            }
+            String name = type.getName().substring(0, 1).toUpperCase() + type.getName().substring(1);
+            benchmarks.add(new Benchmark(name + ".getLegalMoves", () -> {
+                long moves = 0;
+                for (Pieces piece : pieces) {
+                    moves += Long.bitCount(piece.getLegalMoves());
+                }
+                return moves;
+            }));
+        }
+
+        benchmarks.add(new Benchmark("isKingInCheck", () -> {
+            long checks = 0;
+            for (BoardState board : boards) {
+                checks += board.isKingInCheck(PieceColor.WHITE) ? 1 : 0;
+                checks += board.isKingInCheck(PieceColor.BLACK) ? 1 : 0;
+            }
+            return checks;
+        }));
+
+        // Every pseudo-legal move of the side to move, as (board, piece, target square)
+        List<BoardState> moveBoards = new ArrayList<>();
+        List<Pieces> movePieces = new ArrayList<>();
+        List<Integer> moveTargets = new ArrayList<>();
+        for (BoardState board : boards) {
+            for (Pieces piece : board.getPieces()) {
+                if (piece.getColor() != board.getSideToMove()) {
+                    continue;
+                }
+                for (long targets = piece.getLegalMoves(); targets != 0; targets &= targets - 1) {
+                    moveBoards.add(board);
+                    movePieces.add(piece);
+                    moveTargets.add(Long.numberOfTrailingZeros(targets));
+                }
+            }
+        }
+        int[] targets = moveTargets.stream().mapToInt(Integer::intValue).toArray();
+        benchmarks.add(new Benchmark("moveLeavesKingInCheck", () -> {
+            long illegal = 0;
+            for (int i = 0; i < targets.length; i++) {
+                illegal += moveBoards.get(i).moveLeavesKingInCheck(movePieces.get(i), Square.row(targets[i]),
+                        Square.column(targets[i])) ? 1 : 0;
+            }
+            return illegal;
+        }));
+
+        benchmarks.add(new Benchmark("getLegalMovesAvoidingCheck", () -> {
+            long moves = 0;
+            for (BoardState board : boards) {
+                PieceColor side = board.getSideToMove();
+                // Iterate by index: the check filter briefly removes and re-adds captured pieces
+                List<Pieces> pieces = board.getPieces();
+                for (int i = 0; i < pieces.size(); i++) {
+                    Pieces piece = pieces.get(i);
+                    if (piece.getColor() == side) {
+                        moves += Long.bitCount(board.getLegalMovesAvoidingCheck(piece));
+                    }
+                }
+            }
+            return moves;
+        }));
+
+        benchmarks.add(new Benchmark("PackedPosition.encode", () -> {
+            long[] words = new long[PackedPosition.WORDS];
+            long sum = 0;
+            for (int i = 0; i < boards.size(); i++) {
+                PackedPosition.encode(boards.get(i), PackedPosition.NO_RESULT, words);
+                sum += words[1];
+            }
+            return sum;
+        }));
+
+        benchmarks.add(new Benchmark("PackedPosition.decode", () -> {
+            long[] words = new long[PackedPosition.WORDS];
+            long sum = 0;
+            for (int i = 0; i < boards.size(); i++) {
+                PackedPosition.encode(boards.get(i), PackedPosition.NO_RESULT, words); // Cheap next to decoding
+                sum += PackedPosition.decode(words).getPieces().size();
+            }
+            return sum;
+        }));
+
+        // Off-screen rendering: one board per position painted into an image
+        List<Chessboard> chessboards = new ArrayList<>();
+        for (BoardState board : boards) {
+            Chessboard chessboard = new Chessboard();
+            chessboard.setSize(BOARD_PIXELS, BOARD_PIXELS);
+            chessboard.setPosition(Position.of(board));
+            chessboards.add(chessboard);
+        }
+        BufferedImage canvas = new BufferedImage(BOARD_PIXELS, BOARD_PIXELS, BufferedImage.TYPE_INT_RGB);
+        benchmarks.add(new Benchmark("paintComponent.cached", () -> paint(chessboards, canvas, false)));
+        benchmarks.add(new Benchmark("paintComponent.rerender", () -> paint(chessboards, canvas, true)));
+
+        for (Benchmark benchmark : benchmarks) {
+            String name = benchmark.name + "[" + corpus + "]";
+            if (matches(name, filters)) {
+                results.add(bench.run(name, benchmark.operation));
+            }
+        }
+    }
+
+    // Paints every board; with rerender set, the cached piece layer is drawn again first
+    private static long paint(List<Chessboard> chessboards, BufferedImage canvas, boolean rerender) {
+        for (Chessboard chessboard : chessboards) {
+            if (rerender) {
+                chessboard.invalidateLayers();
+            }
+            Graphics2D g2d = canvas.createGraphics();
+            chessboard.paintComponent(g2d);
+            g2d.dispose();
+        }
+        return canvas.getRGB(BOARD_PIXELS / 2, BOARD_PIXELS / 2);
+    }
+
+    static List<BoardState> load(String[] fens) {
+        List<BoardState> boards = new ArrayList<>();
+        for (String fen : fens) {
+            BoardState board = Position.fromFen(fen).toBoardState();
+            if (board.isKingInCheck(board.getSideToMove().opposite())) {
+                throw new IllegalStateException("The side not to move is in check: " + fen);
+            }
+            boards.add(board);
+        }
+        return boards;
+    }
+
+    static boolean matches(String name, List<String> filters) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Benchmark {
+        final String name;
+        final Microbench.Operation operation;
+
+        Benchmark(String name, Microbench.Operation operation) {
+            this.name = name;
+            this.operation = operation;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The {@code Microbench} class is a small throughput harness in the spirit of
+ * JMH: each benchmark is warmed up, then timed over several fixed-length
+ * iterations, and the score is reported as operations per second with a 99.9%
+ * confidence interval. Allocation is measured per operation from the thread's
+ * allocated-byte counter, the same source JMH's GC profiler uses for
+ * {@code gc.alloc.rate.norm}, together with the allocation rate and the
+ * number of collections seen while measuring.
+ *
+ * <p>
+ * Every operation returns a {@code long} that is folded into a volatile sink,
+ * so the JIT cannot remove the work being measured.
+ */
+final class Microbench {
+    // Calls between clock reads, so reading the clock does not dominate short operations.
+    private static final int BATCH = 64;
+
+    // Student's t quantiles for a two-sided 99.9% interval, by degrees of freedom 1 to 30.
+    private static final double[] T_999 = { 636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59,
+            4.44, 4.32, 4.22, 4.14, 4.07, 4.01, 3.97, 3.92, 3.88, 3.85, 3.82, 3.79, 3.77, 3.75, 3.73, 3.71, 3.69,
+            3.67, 3.66, 3.65 };
+
+    static volatile long sink; // Consumes the results of measured operations.
+
+    /** A measured operation; its result is consumed so it cannot be optimized away. */
+    interface Operation {
+        long run();
+    }
+
+    /** The measurements of one benchmark. */
+    static final class Result {
+        final String name;
+        final double score; // Operations per second.
+        final double error; // Half-width of the 99.9% confidence interval.
+        final int iterations;
+        final double bytesPerOp;
+        final double allocationRate; // MB per second.
+        final long collections;
+
+        Result(String name, double score, double error, int iterations, double bytesPerOp, double allocationRate,
+                long collections) {
+            this.name = name;
+            this.score = score;
+            this.error = error;
+            this.iterations = iterations;
+            this.bytesPerOp = bytesPerOp;
+            this.allocationRate = allocationRate;
+            this.collections = collections;
+        }
+
+        // One CSV row: name, ops/s, error, B/op, MB/s, collections.
+        String toCsv() {
+            return String.format(Locale.ROOT, "%s,%.3f,%.3f,%.3f,%.3f,%d", name, score, error, bytesPerOp,
+                    allocationRate, collections);
+        }
+
+        static Result fromCsv(String line) {
+            String[] fields = line.split(",");
+            return new Result(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), 0,
+                    Double.parseDouble(fields[3]), Double.parseDouble(fields[4]), Long.parseLong(fields[5]));
+        }
+    }
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final com.sun.management.ThreadMXBean threads;
+
+    Microbench(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Warms up and measures one benchmark on the calling thread.
+     *
+     * @param name      The name shown in the report.
+     * @param operation The operation to time.
+     * @return The measurements.
+     */
+    Result run(String name, Operation operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long collectionsBefore = collectionCount();
+        long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+        double[] scores = new double[measurementIterations];
+        long totalOps = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            long ops = iteration(operation);
+            long elapsed = System.nanoTime() - start;
+            scores[i] = ops * 1e9 / elapsed;
+            totalOps += ops;
+            totalNanos += elapsed;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        long collections = collectionCount() - collectionsBefore;
+
+        double mean = 0;
+        for (double score : scores) {
+            mean += score / scores.length;
+        }
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean) / Math.max(1, scores.length - 1);
+        }
+        int freedom = Math.min(T_999.length, Math.max(1, scores.length - 1));
+        double error = scores.length > 1 ? T_999[freedom - 1] * Math.sqrt(variance / scores.length) : Double.NaN;
+        return new Result(name, mean, error, scores.length, (double) allocated / totalOps,
+                allocated / 1048576.0 / (totalNanos / 1e9), collections);
+    }
+
+    // Runs the operation in batches until the iteration time is used up; returns the count.
+    private long iteration(Operation operation) {
+        long deadline = System.nanoTime() + iterationNanos;
+        long ops = 0;
+        long result = 0;
+        do {
+            for (int i = 0; i < BATCH; i++) {
+                result += operation.run();
+            }
+            ops += BATCH;
+        } while (System.nanoTime() < deadline);
+        sink = result;
+        return ops;
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Formats results as a table in the layout of a JMH report, with the GC
+     * profiler's normalized allocation and allocation rate columns.
+     *
+     * @param results The results to format.
+     * @return The table.
+     */
+    static String format(List<Result> results) {
+        int width = "Benchmark".length();
+        for (Result result : results) {
+            width = Math.max(width, result.name.length());
+        }
+        StringBuilder table = new StringBuilder();
+        String row = "%-" + width + "s  %4s %16s %16s  %-6s %12s %10s %4s%n";
+        table.append(String.format(Locale.ROOT, row, "Benchmark", "Cnt", "Score", "Error", "Units", "B/op",
+                "MB/sec", "GCs"));
+        for (Result result : results) {
+            table.append(String.format(Locale.ROOT, row, result.name, result.iterations,
+                    String.format(Locale.ROOT, "%.3f", result.score),
+                    String.format(Locale.ROOT, "+- %.3f", result.error), "ops/s",
+                    String.format(Locale.ROOT, "%.1f", result.bytesPerOp),
+                    String.format(Locale.ROOT, "%.1f", result.allocationRate), result.collections));
+        }
+        return table.toString();
+    }
+
+    /**
+     * Compares results with a baseline and describes every benchmark whose
+     * throughput fell, or whose allocation per operation grew, by more than the
+     * tolerance.
+     *
+     * @param results   The new results.
+     * @param baseline  The baseline results.
+     * @param tolerance The allowed relative change, e.g. 0.1 for 10%.
+     * @return One line per regression; empty if there are none.
+     */
+    static List<String> regressions(List<Result> results, List<Result> baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (Result result : results) {
+            for (Result base : baseline) {
+                if (!base.name.equals(result.name)) {
+                    continue;
+                }
+                if (result.score < base.score * (1 - tolerance)) {
+                    regressions.add(String.format(Locale.ROOT, "%s: %.0f ops/s, baseline %.0f ops/s", result.name,
+                            result.score, base.score));
+                }
+                // Allow a few bytes of noise for operations that should not allocate at all.
+                if (result.bytesPerOp > base.bytesPerOp * (1 + tolerance) + 8) {
+                    regressions.add(String.format(Locale.ROOT, "%s: %.1f B/op, baseline %.1f B/op", result.name,
+                            result.bytesPerOp, base.bytesPerOp));
+                }
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * Prints results as a table, writes them as CSV and compares them with a
+     * baseline CSV, printing each regression.
+     *
+     * @param results   The results.
+     * @param csv       The CSV file to write, or {@code null}.
+     * @param baseline  The baseline CSV file, or {@code null}.
+     * @param tolerance The allowed relative change against the baseline.
+     * @return {@code false} if a benchmark regressed.
+     * @throws IOException If a file cannot be read or written.
+     */
+    static boolean report(List<Result> results, Path csv, Path baseline, double tolerance) throws IOException {
+        System.out.print(format(results));
+        if (csv != null) {
+            List<String> lines = new ArrayList<>();
+            for (Result result : results) {
+                lines.add(result.toCsv());
+            }
+            Files.write(csv, lines);
+        }
+        if (baseline == null) {
+            return true;
+        }
+        List<Result> base = new ArrayList<>();
+        for (String line : Files.readAllLines(baseline)) {
+            if (!line.isBlank()) {
+                base.add(Result.fromCsv(line));
+            }
+        }
+        List<String> regressions = regressions(results, base, tolerance);
+        for (String regression : regressions) {
+            System.out.println("Regression: " + regression);
+        }
+        return regressions.isEmpty();
+    }
+}
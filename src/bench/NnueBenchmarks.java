@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code NnueBenchmarks} class compares evaluation throughput with an
+ * {@link NnueNetwork} kept up to date incrementally against recomputing the
+ * accumulators from scratch, over the corpora of {@link BoardBenchmarks}. Both
+ * variants play every legal move of every position, evaluate the result and
+ * take the move back, so the difference is the cost of the first layer. The
+ * dense layers are also timed alone with each available kernel, and the
+ * piece-square {@link Evaluator} is timed for reference.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java --add-modules jdk.incubator.vector -cp bin/core:bin/simd:bin/ui:bin/bench NnueBenchmarks [options] [filter...]
+ *   --network FILE   the network to use (default: a random one with 256 hidden units)
+ *   --warmup N       warmup iterations (default 5)
+ *   --iterations N   measurement iterations (default 10)
+ *   --time MS        length of each iteration (default 500)
+ *   --csv FILE       also write the results as CSV
+ *   --baseline FILE  compare with an earlier CSV and exit with status 1 on a regression
+ *   --tolerance PCT  allowed change against the baseline (default 10)
+ * </pre>
+ *
+ * Without the module option and {@code bin/simd}, only the scalar kernel is measured.
+ */
+public class NnueBenchmarks {
+    public static void main(String[] args) throws IOException {
+        int warmup = 5;
+        int iterations = 10;
+        int time = 500;
+        Path networkFile = null;
+        Path csv = null;
+        Path baseline = null;
+        double tolerance = 0.10;
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--network":
+                    networkFile = Paths.get(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    time = Integer.parseInt(args[++i]);
+                    break;
+                case "--csv":
+                    csv = Paths.get(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = Paths.get(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]) / 100;
+                    break;
+                default:
+                    filters.add(args[i]);
+            }
+        }
+
+        NnueNetwork network = networkFile != null ? NnueNetwork.load(networkFile) : NnueNetwork.random(256, 32, 1);
+        System.out.printf("Network: %d hidden units, kernel %s%n", network.getHiddenSize(),
+                network.getKernel().getName());
+        Microbench bench = new Microbench(warmup, iterations, time);
+        List<Microbench.Result> results = new ArrayList<>();
+        for (String corpus : new String[] { "middlegame", "endgame" }) {
+            String[] fens = corpus.equals("middlegame") ? BoardBenchmarks.MIDDLEGAME : BoardBenchmarks.ENDGAME;
+            addBenchmarks(bench, corpus, fens, network, filters, results);
+        }
+        if (!Microbench.report(results, csv, baseline, tolerance)) {
+            System.exit(1);
+        }
+    }
+
+    private static void addBenchmarks(Microbench bench, String corpus, String[] fens, NnueNetwork network,
+            List<String> filters, List<Microbench.Result> results) {
+        List<String> names = new ArrayList<>();
+        List<Microbench.Operation> operations = new ArrayList<>();
+
+        // Separate boards: the incremental ones carry an accumulator as their listener
+        List<BoardState> incrementalBoards = BoardBenchmarks.load(fens);
+        List<BoardState> fullBoards = BoardBenchmarks.load(fens);
+        List<List<Move>> moves = new ArrayList<>();
+        NnueEvaluator evaluator = new NnueEvaluator(network);
+        for (BoardState board : incrementalBoards) {
+            moves.add(board.generateLegalMoves(board.getSideToMove()));
+            evaluator.evaluate(board, board.isWhiteToMove()); // Attaches the accumulator
+        }
+
+        names.add("nnue.moveEvaluateUndo.incremental");
+        operations.add(() -> {
+            long sum = 0;
+            for (int i = 0; i < incrementalBoards.size(); i++) {
+                BoardState board = incrementalBoards.get(i);
+                for (Move move : moves.get(i)) {
+                    board.makeMove(move);
+                    sum += evaluator.evaluate(board, board.isWhiteToMove());
+                    board.undoMove();
+                }
+            }
+            return sum;
+        });
+
+        names.add("nnue.moveEvaluateUndo.fullRecompute");
+        operations.add(() -> {
+            long sum = 0;
+            for (int i = 0; i < fullBoards.size(); i++) {
+                BoardState board = fullBoards.get(i);
+                for (Move move : moves.get(i)) {
+                    board.makeMove(move);
+                    sum += network.evaluate(board, board.isWhiteToMove());
+                    board.undoMove();
+                }
+            }
+            return sum;
+        });
+
+        List<NnueNetwork.Kernel> kernels = new ArrayList<>();
+        kernels.add(NnueNetwork.scalarKernel());
+        if (NnueNetwork.vectorKernel() != null) {
+            kernels.add(NnueNetwork.vectorKernel());
+        }
+        for (NnueNetwork.Kernel kernel : kernels) {
+            NnueNetwork withKernel = network.withKernel(kernel);
+            List<NnueAccumulator> accumulators = new ArrayList<>();
+            for (BoardState board : fullBoards) {
+                accumulators.add(new NnueAccumulator(withKernel, board));
+            }
+            names.add("nnue.denseLayers." + kernel.getName().split(" ")[0]);
+            operations.add(() -> {
+                long sum = 0;
+                for (int i = 0; i < accumulators.size(); i++) {
+                    sum += withKernel.evaluate(accumulators.get(i), fullBoards.get(i).isWhiteToMove());
+                }
+                return sum;
+            });
+        }
+
+        Evaluator pieceSquare = new Evaluator();
+        names.add("Evaluator.evaluate");
+        operations.add(() -> {
+            long sum = 0;
+            for (BoardState board : fullBoards) {
+                sum += pieceSquare.evaluate(board, board.isWhiteToMove());
+            }
+            return sum;
+        });
+
+        for (int i = 0; i < names.size(); i++) {
+            String name = names.get(i) + "[" + corpus + "]";
+            if (BoardBenchmarks.matches(name, filters)) {
+                results.add(bench.run(name, operations.get(i)));
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The {@code ServerLoad} class plays many simultaneous games against a
+ * {@link GameServer} over loopback and reports the move throughput and the
+ * round-trip latency of {@code MOVE} commands. Every client asks for the
+ * legal moves, plays a random one and starts a new game when the game ends or
+ * reaches the ply limit. Without {@code --port} the server is started in this
+ * process; with it, an already running server is used, which keeps the
+ * client's sockets out of the server's file descriptor limit. With
+ * {@code --journal DIR} the in-process server records every game in a
+ * {@link GameJournal}, so its replies wait for the group commit.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core:bin/server:bin/bench ServerLoad [--games N] [--seconds N] [--plies N] [--port N]
+ *     [--journal DIR]
+ * </pre>
+ */
+public class ServerLoad {
+    private static final int CONNECTS_IN_FLIGHT = 256; // Keeps the listen backlog from overflowing
+
+    private final Metrics.Histogram latency = new Metrics.Histogram();
+    private final int maxPlies;
+    private long moves;
+    private long games;
+    private long errors;
+    private int connected;
+
+    private ServerLoad(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int gameCount = 1000;
+        int seconds = 20;
+        int plies = 80;
+        int port = -1;
+        Path journalDirectory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games":
+                    gameCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--journal":
+                    journalDirectory = Paths.get(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println(
+                            "Usage: ServerLoad [--games N] [--seconds N] [--plies N] [--port N] [--journal DIR]");
+                    System.exit(2);
+            }
+        }
+
+        System.out.printf("Server memory per game: about %d bytes%n", measureSessionBytes(plies));
+
+        GameServer server = null;
+        GameJournal journal = null;
+        if (port < 0) {
+            if (journalDirectory != null) {
+                journal = GameJournal.open(journalDirectory, 4, 2000, Runtime.getRuntime().availableProcessors());
+            }
+            server = new GameServer(new InetSocketAddress("127.0.0.1", 0), gameCount, journal);
+            server.start();
+            port = server.getPort();
+        }
+        try {
+            new ServerLoad(plies).run(new InetSocketAddress("127.0.0.1", port), gameCount, seconds);
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    // Estimates the heap used by one game: the session after a game of the given
+    // length, plus the connection's fixed buffers.
+    private static long measureSessionBytes(int plies) {
+        int count = 2000;
+        Random random = new Random(1);
+        List<GameSession> sessions = new ArrayList<>(count);
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            GameSession session = new GameSession();
+            for (int ply = 0; ply < plies; ply++) {
+                String[] legal = session.handle("MOVES").split(" ");
+                if (legal.length == 1 || !session.handle("MOVE " + legal[1 + random.nextInt(legal.length - 1)])
+                        .equals("OK ongoing")) {
+                    break;
+                }
+            }
+            sessions.add(session);
+        }
+        long used = usedHeap() - before;
+        return used / sessions.size() + GameServer.MAX_LINE + GameServer.OUTPUT_CAPACITY;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void run(InetSocketAddress address, int gameCount, int seconds) throws IOException {
+        Selector selector = Selector.open();
+        int opened = 0;
+        long start = System.nanoTime();
+        long connectedAt = 0;
+        long deadline = start + (seconds + 60) * 1_000_000_000L; // In case some games never connect
+        while (System.nanoTime() < deadline) {
+            while (opened < gameCount && opened - connected < CONNECTS_IN_FLIGHT) {
+                SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.connect(address);
+                channel.register(selector, SelectionKey.OP_CONNECT, new Client(channel, opened));
+                opened++;
+            }
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    if (key.isConnectable() && client.channel.finishConnect()) {
+                        connected++;
+                        key.interestOps(SelectionKey.OP_READ);
+                        client.send("MOVES");
+                    } else if (key.isReadable()) {
+                        read(client, key);
+                    }
+                } catch (IOException e) {
+                    errors++;
+                    key.cancel();
+                    client.channel.close();
+                }
+            }
+            if (connectedAt == 0 && connected == gameCount) {
+                connectedAt = System.nanoTime();
+                System.out.printf("%d games connected in %d ms%n", connected, (connectedAt - start) / 1_000_000);
+                moves = 0;
+                latency.reset();
+                deadline = connectedAt + seconds * 1_000_000_000L;
+            }
+        }
+        if (connectedAt == 0) {
+            System.out.printf("Only %d of %d games connected%n", connected, gameCount);
+            connectedAt = start;
+        }
+        double elapsed = (System.nanoTime() - connectedAt) / 1e9;
+        System.out.printf("%d moves in %.1f s: %.0f moves/s, %d games finished, %d errors%n", moves, elapsed,
+                moves / elapsed, games, errors);
+        System.out.println("MOVE round trip: " + latency);
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private void read(Client client, SelectionKey key) throws IOException {
+        ByteBuffer input = client.input;
+        if (client.channel.read(input) < 0) {
+            throw new IOException("Closed by the server");
+        }
+        input.flip();
+        int start = 0;
+        for (int i = 0; i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                byte[] bytes = new byte[i - start];
+                input.get(start, bytes);
+                reply(client, new String(bytes, StandardCharsets.US_ASCII));
+                start = i + 1;
+            }
+        }
+        input.position(start);
+        input.compact();
+    }
+
+    // Answers a reply of the server with the client's next command.
+    private void reply(Client client, String reply) throws IOException {
+        if (reply.startsWith("MOVES")) {
+            String[] legal = reply.split(" ");
+            if (legal.length == 1) {
+                newGame(client);
+            } else {
+                client.sentAt = System.nanoTime();
+                client.send("MOVE " + legal[1 + client.random.nextInt(legal.length - 1)]);
+            }
+        } else if (reply.startsWith("OK ")) {
+            latency.record(System.nanoTime() - client.sentAt);
+            moves++;
+            if (!reply.equals("OK ongoing") || ++client.plies >= maxPlies) {
+                newGame(client);
+            } else {
+                client.send("MOVES");
+            }
+        } else if (reply.equals("OK")) {
+            client.send("MOVES");
+        } else {
+            errors++;
+            newGame(client);
+        }
+    }
+
+    private void newGame(Client client) throws IOException {
+        games++;
+        client.plies = 0;
+        client.send("NEW");
+    }
+
+    private static final class Client {
+        final SocketChannel channel;
+        final Random random;
+        final ByteBuffer input = ByteBuffer.allocate(GameServer.OUTPUT_CAPACITY);
+        long sentAt;
+        int plies;
+
+        Client(SocketChannel channel, int seed) {
+            this.channel = channel;
+            this.random = new Random(seed);
+        }
+
+        // Commands are far smaller than the socket buffer, so a write completes at once.
+        void send(String command) throws IOException {
+            ByteBuffer output = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.US_ASCII));
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        }
+    }
+}
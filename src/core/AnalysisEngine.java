@@ -0,0 +1,508 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The {@code AnalysisEngine} class analyses a position in the background with
+ * iterative deepening, on a board rebuilt from an immutable {@link Position}
+ * snapshot. At every depth the best move of the previous depth is
+ * searched first to set the window, and the remaining root moves are split
+ * across a fixed pool of worker threads. The latest completed result is
+ * published through {@link #getLatest()} so a UI can poll it at its own pace,
+ * and handed to a listener if one is set.
+ *
+ * <p>
+ * In multi-PV mode the engine reports the best few root moves, each with its
+ * score and line: the remaining root moves are then searched against the
+ * score of the last of those lines rather than the best one. All searchers
+ * share one {@link SearchTable}, which is kept from one analysis to the next.
+ *
+ * <p>
+ * An analysis runs until stopped, or for a fixed time. To ponder, the engine
+ * analyses the position after the reply it expects, with no time limit; if
+ * that reply is played, {@link #ponderHit(long)} gives the running analysis a
+ * time limit and it carries on at the depth it has reached. On any other reply
+ * a new analysis starts, and still finds the positions both share in the table.
+ *
+ * <p>
+ * Starting an analysis or calling {@link #stop()} raises the stop flag of the
+ * running analysis; its workers notice it at the next node and return
+ * immediately. Workers run at minimum priority and their number is capped, so
+ * analysis never competes with the event thread for every core.
+ */
+public class AnalysisEngine {
+    public static final int MAX_LINES = 8;
+    private static final int MAX_DEPTH = 32;
+    private static final int DEFAULT_TABLE_MEGABYTES = 32;
+
+    private final Evaluator evaluator = new Evaluator();
+    private final int threads;
+    private final SearchTable table;
+    private final ExecutorService workers;
+    private final ExecutorService coordinator;
+    private final ScheduledExecutorService timer;
+
+    private AtomicBoolean stopped = new AtomicBoolean(true); // Stop flag of the running analysis
+    private Future<?> running; // The running analysis, or the last one
+    private Position ponderPosition; // The position after the expected reply while pondering
+    private volatile int lines = 1; // Root moves reported, applied when an analysis starts
+    private volatile Info latest; // Latest completed iteration
+    private volatile Consumer<Info> listener;
+
+    /**
+     * Creates an engine with the given number of search threads.
+     *
+     * @param threads The maximum number of threads searching at once.
+     */
+    public AnalysisEngine(int threads) {
+        this(threads, DEFAULT_TABLE_MEGABYTES);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param threads        The maximum number of threads searching at once.
+     * @param tableMegabytes The size of the shared search table.
+     */
+    public AnalysisEngine(int threads, int tableMegabytes) {
+        this.threads = Math.max(1, threads);
+        this.table = new SearchTable(tableMegabytes);
+        this.workers = Executors.newFixedThreadPool(this.threads, daemonThreads("analysis-worker"));
+        this.coordinator = Executors.newSingleThreadExecutor(daemonThreads("analysis-coordinator"));
+        this.timer = Executors.newSingleThreadScheduledExecutor(daemonThreads("analysis-timer"));
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    /**
+     * Sets how many of the best root moves are reported. It applies from the
+     * next analysis started.
+     *
+     * @param lines From 1 to {@link #MAX_LINES}.
+     */
+    public void setLines(int lines) {
+        if (lines < 1 || lines > MAX_LINES) {
+            throw new IllegalArgumentException("Lines must be between 1 and " + MAX_LINES);
+        }
+        this.lines = lines;
+    }
+
+    /**
+     * Sets a listener that receives every completed iteration on the
+     * analysis thread, or {@code null} to remove it.
+     */
+    public void setListener(Consumer<Info> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops any running analysis and starts analysing the given position
+     * until stopped.
+     *
+     * @param position An immutable snapshot of the position to analyse.
+     */
+    public void analyse(Position position) {
+        analyse(position, 0);
+    }
+
+    /**
+     * Stops any running analysis and starts analysing the given position.
+     *
+     * @param position An immutable snapshot of the position to analyse.
+     * @param millis   How long to analyse, or 0 until stopped.
+     */
+    public void analyse(Position position, long millis) {
+        analyse(position, millis, MAX_DEPTH, Long.MAX_VALUE);
+    }
+
+    /**
+     * Stops any running analysis and starts analysing the given position,
+     * ending at whichever limit comes first.
+     *
+     * @param position An immutable snapshot of the position to analyse.
+     * @param millis   How long to analyse, or 0 until stopped.
+     * @param depth    The deepest iteration, at most {@value #MAX_DEPTH}.
+     * @param nodes    The nodes to search, or {@link Long#MAX_VALUE} for no limit; an
+     *                 iteration cut short by it is not reported.
+     */
+    public synchronized void analyse(Position position, long millis, int depth, long nodes) {
+        AtomicBoolean stop = start(position.toBoardState(), Math.min(depth, MAX_DEPTH), nodes);
+        ponderPosition = null;
+        if (millis > 0) {
+            stopAfter(stop, millis);
+        }
+    }
+
+    /**
+     * Stops any running analysis and starts analysing the position after the
+     * expected reply, until stopped or until {@link #ponderHit(long)}.
+     *
+     * @param position The position before the reply.
+     * @param expected The reply expected.
+     * @return {@code false}, without starting, if the reply is not legal.
+     */
+    public synchronized boolean ponder(Position position, Move expected) {
+        BoardState board = position.toBoardState();
+        if (!board.isLegal(expected)) {
+            return false;
+        }
+        board.makeMove(expected);
+        // A fresh board, so the analysis does not see the reply as history
+        Position after = Position.of(board);
+        start(after.toBoardState(), MAX_DEPTH, Long.MAX_VALUE);
+        ponderPosition = after;
+        return true;
+    }
+
+    /**
+     * Turns pondering into an analysis of the position that has now come up,
+     * keeping the depth reached and the latest result.
+     *
+     * @param millis How long to go on, or 0 until stopped.
+     * @return {@code false} if the engine was not pondering.
+     */
+    public synchronized boolean ponderHit(long millis) {
+        if (ponderPosition == null) {
+            return false;
+        }
+        ponderPosition = null;
+        if (millis > 0) {
+            stopAfter(stopped, millis);
+        }
+        return true;
+    }
+
+    /** Whether the engine is pondering, i.e. waiting for a hit or a miss. */
+    public synchronized boolean isPondering() {
+        return ponderPosition != null;
+    }
+
+    /** The position being pondered, after the expected reply, or {@code null}. */
+    public synchronized Position getPonderPosition() {
+        return ponderPosition;
+    }
+
+    /**
+     * Stops the running analysis. The last published result stays available.
+     */
+    public synchronized void stop() {
+        stopped.set(true);
+        ponderPosition = null;
+    }
+
+    /** Whether an analysis is still searching. */
+    public synchronized boolean isRunning() {
+        return running != null && !running.isDone();
+    }
+
+    /**
+     * Waits until the current analysis finishes, by its time limit, by
+     * {@link #stop()}, or by having searched as deep as it can.
+     *
+     * @return The latest result, or {@code null} if no iteration completed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public Info awaitResult() throws InterruptedException {
+        Future<?> analysis;
+        synchronized (this) {
+            analysis = running;
+        }
+        if (analysis != null) {
+            try {
+                analysis.get();
+            } catch (CancellationException | ExecutionException e) {
+                // The analysis ended; its last result is what there is
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Forgets everything the search table holds, e.g. before a new game. Stops
+     * the running analysis first.
+     *
+     * @throws InterruptedException If interrupted while waiting for it to stop.
+     */
+    public void clearTable() throws InterruptedException {
+        stop();
+        awaitResult();
+        table.clear();
+    }
+
+    /**
+     * Stops the running analysis and ends the engine's threads. The engine
+     * cannot analyse afterwards.
+     */
+    public synchronized void shutdown() {
+        stop();
+        coordinator.shutdown();
+        workers.shutdown();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Returns the result of the deepest completed iteration of the current
+     * analysis, or {@code null} if none has completed yet.
+     */
+    public Info getLatest() {
+        return latest;
+    }
+
+    // Stops the running analysis and starts one of the given board. Must hold the lock.
+    private AtomicBoolean start(BoardState root, int maxDepth, long nodeLimit) {
+        stopped.set(true);
+        AtomicBoolean stop = new AtomicBoolean(false);
+        stopped = stop;
+        latest = null;
+        int count = lines;
+        running = coordinator.submit(() -> iterate(root, count, maxDepth, nodeLimit, stop));
+        return stop;
+    }
+
+    // Raises a stop flag once the time has passed.
+    private void stopAfter(AtomicBoolean stop, long millis) {
+        timer.schedule(() -> stop.set(true), millis, TimeUnit.MILLISECONDS);
+    }
+
+    // Runs iterative deepening until stopped, until the node limit or until the
+    // maximum depth.
+    private void iterate(BoardState root, int count, int maxDepth, long nodeLimit, AtomicBoolean stop) {
+        boolean whiteToMove = root.isWhiteToMove();
+        long start = System.nanoTime();
+        AtomicLong nodes = new AtomicLong();
+        List<Move> rootMoves = root.generateLegalMoves(root.getSideToMove());
+        if (rootMoves.isEmpty()) {
+            return; // Nothing to analyse in a finished game
+        }
+        int wanted = Math.min(count, rootMoves.size());
+        List<Line> previous = new ArrayList<>();
+        for (int depth = 1; depth <= maxDepth && !stop.get(); depth++) {
+            orderRootMoves(root, rootMoves, previous);
+
+            // Search the expected best move alone to get a bound for the others
+            List<Move> bestPv = new ArrayList<>();
+            int bestScore = searchRootMove(root, rootMoves.get(0), depth, -Search.INFINITY,
+                    expectedLine(previous, rootMoves.get(0)), bestPv, stop, nodes, nodeLimit);
+            List<Line> found = new ArrayList<>(List.of(new Line(bestScore, bestPv)));
+            AtomicInteger alpha = new AtomicInteger(wanted == 1 ? bestScore : -Search.INFINITY);
+
+            // Search the remaining moves in parallel, each against the score of
+            // the last wanted line so far; a move that beats it has an exact score
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int i = 1; i < rootMoves.size(); i++) {
+                Move move = rootMoves.get(i);
+                int iterationDepth = depth;
+                List<Move> expected = expectedLine(previous, move);
+                tasks.add(workers.submit(() -> {
+                    List<Move> line = new ArrayList<>();
+                    int bound = alpha.get();
+                    int score = searchRootMove(root, move, iterationDepth, bound, expected, line, stop, nodes,
+                            nodeLimit);
+                    synchronized (found) {
+                        if (score > alpha.get() && !stop.get()) {
+                            addLine(found, new Line(score, line), wanted);
+                            if (found.size() == wanted) {
+                                alpha.set(found.get(wanted - 1).score);
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (Exception e) {
+                    stop.set(true);
+                }
+            }
+            if (stop.get()) {
+                break;
+            }
+            previous = found;
+            List<Line> reported = new ArrayList<>();
+            for (Line line : found) {
+                reported.add(new Line(whiteToMove ? line.score : -line.score, List.copyOf(line.principalVariation)));
+            }
+            long elapsed = System.nanoTime() - start;
+            Info info = new Info(depth, List.copyOf(reported), nodes.get(), elapsed);
+            latest = info;
+            if (Metrics.isEnabled()) {
+                Metrics.searchIteration(depth, info.getScore(), nodes.get(), elapsed);
+            }
+            Consumer<Info> current = listener;
+            if (current != null) {
+                current.accept(info);
+            }
+            if (wanted == 1 && Search.isMateScore(found.get(0).score)) {
+                break; // A forced mate will not change with more depth
+            }
+        }
+    }
+
+    // Orders the root moves by the move ordering, then puts the first moves of
+    // the previous iteration's lines in front, best first.
+    private static void orderRootMoves(BoardState root, List<Move> rootMoves, List<Line> previous) {
+        Search.orderMoves(root, rootMoves, previous.isEmpty() ? null : previous.get(0).principalVariation.get(0));
+        for (int i = previous.size() - 1; i >= 0; i--) {
+            Move first = previous.get(i).principalVariation.get(0);
+            if (rootMoves.remove(first)) {
+                rootMoves.add(0, first);
+            }
+        }
+    }
+
+    // Returns the rest of the previous line that starts with a root move, to be
+    // searched first, or an empty list.
+    private static List<Move> expectedLine(List<Line> previous, Move move) {
+        for (Line line : previous) {
+            List<Move> pv = line.principalVariation;
+            if (pv.get(0).equals(move)) {
+                return pv.subList(1, pv.size());
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    // Inserts a line by score and drops those beyond the wanted number.
+    private static void addLine(List<Line> found, Line line, int wanted) {
+        int index = 0;
+        while (index < found.size() && found.get(index).score >= line.score) {
+            index++;
+        }
+        found.add(index, line);
+        if (found.size() > wanted) {
+            found.remove(found.size() - 1);
+        }
+    }
+
+    // Searches one root move on its own copy of the board and returns its score
+    // for the side to move at the root. The search makes and takes back moves on
+    // that copy, so only one copy is made per root move. It may use the nodes
+    // left under the limit when it starts, so parallel root moves overshoot the
+    // limit by at most one share per thread.
+    private int searchRootMove(BoardState root, Move move, int depth, int alpha, List<Move> expected,
+            List<Move> line, AtomicBoolean stop, AtomicLong nodes, long nodeLimit) {
+        BoardState child = root.copy();
+        child.makeMove(move);
+        Search search = new Search(evaluator, stop, table);
+        if (nodeLimit != Long.MAX_VALUE) {
+            search.setLimits(Math.max(1, nodeLimit - nodes.get()), 0);
+        }
+        List<Move> childPv = new ArrayList<>(expected);
+        int score = -search.search(child, depth - 1, -Search.INFINITY, -alpha, 1, childPv);
+        nodes.addAndGet(search.getNodes());
+        if (Metrics.isEnabled()) {
+            Metrics.add(Metrics.Counter.SEARCH_NODES, search.getNodes());
+        }
+        line.clear();
+        line.add(move);
+        line.addAll(childPv);
+        return score;
+    }
+
+    /**
+     * One root move with its score and principal variation. The score is in
+     * centipawns from white's point of view.
+     */
+    public static final class Line {
+        private final int score;
+        private final List<Move> principalVariation;
+
+        Line(int score, List<Move> principalVariation) {
+            this.score = score;
+            this.principalVariation = principalVariation;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public List<Move> getPrincipalVariation() {
+            return principalVariation;
+        }
+
+        // Formats the score as "+0.35" or as a mate announcement like "#3".
+        public String getScoreText() {
+            if (Search.isMateScore(score)) {
+                int plies = Search.MATE - Math.abs(score);
+                return (score > 0 ? "#" : "#-") + (plies + 1) / 2;
+            }
+            return String.format("%+.2f", score / 100.0);
+        }
+    }
+
+    /**
+     * The result of one completed iteration: the best root moves, best first.
+     * The score is in centipawns from white's point of view.
+     */
+    public static final class Info {
+        private final int depth;
+        private final List<Line> lines;
+        private final long nodes;
+        private final long elapsedNanos;
+
+        Info(int depth, List<Line> lines, long nodes, long elapsedNanos) {
+            this.depth = depth;
+            this.lines = lines;
+            this.nodes = nodes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getScore() {
+            return lines.get(0).getScore();
+        }
+
+        public List<Move> getPrincipalVariation() {
+            return lines.get(0).getPrincipalVariation();
+        }
+
+        /** The lines found, best first; at most the number of lines asked for. */
+        public List<Line> getLines() {
+            return lines;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public String getScoreText() {
+            return lines.get(0).getScoreText();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code Bitbase} class gives read access to the endgame bitbases written by
+ * {@link BitbaseGenerator}. Every table covers one material signature (e.g.
+ * "KRK" or "KQKR", white pieces first) and is stored in a memory-mapped file so
+ * that a probe is only an index computation and a single buffer read.
+ *
+ * <p>
+ * Two files can exist per signature: {@code <sig>.wdl} holds two bits per
+ * position ({@link #DRAW}, {@link #WIN}, {@link #LOSS} or {@link #INVALID}, seen
+ * from the side to move) and {@code <sig>.dtm} holds one signed byte per
+ * position with the distance to mate in plies (positive: the side to move mates
+ * in that many plies, negative: the side to move is mated in {@code -value - 1}
+ * plies, zero: draw).
+ *
+ * <p>
+ * The tables know no en passant square, so a board with one is not probed
+ * when both sides have pawns.
+ */
+public class Bitbase {
+    public static final int DRAW = 0;
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+    public static final int INVALID = 3;
+    public static final int NOT_FOUND = -1; // Returned when no table covers the material.
+
+    static final int MAGIC = 0x43424231; // "CBB1"
+    static final int HEADER_SIZE = 16;
+    static final String PIECE_ORDER = "KQRBNP";
+
+    private final Map<String, Table> tables = new HashMap<>(); // Tables by signature.
+    private final List<Table> tableList = new ArrayList<>(); // Tables by id.
+    private long[] materialKeys = new long[0]; // Open-addressing index of the tables by material key.
+    private Table[] materialTables = new Table[0];
+
+    /**
+     * Opens every bitbase file found in the given directory.
+     *
+     * @param directory The directory holding {@code .wdl} and {@code .dtm} files.
+     * @return A {@code Bitbase} with all tables mapped.
+     * @throws IOException If a file cannot be mapped or has a bad header.
+     */
+    public static Bitbase open(Path directory) throws IOException {
+        Bitbase bitbase = new Bitbase();
+        if (!Files.isDirectory(directory)) {
+            return bitbase;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{wdl,dtm}")) {
+            for (Path file : files) {
+                bitbase.map(file);
+            }
+        }
+        return bitbase;
+    }
+
+    // Maps a single file and registers it under its signature.
+    void map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a bitbase file: " + file);
+            }
+            byte[] name = new byte[8];
+            buffer.get(8, name);
+            String signature = new String(name, StandardCharsets.US_ASCII).trim();
+            Table table = tables.get(signature);
+            if (table == null) {
+                table = new Table(signature, tableList.size());
+                tables.put(signature, table);
+                tableList.add(table);
+                indexMaterial();
+            }
+            table.maxPly = Math.max(table.maxPly, buffer.get(5));
+            if (buffer.get(6) == 0) {
+                table.wdl = buffer;
+            } else {
+                table.dtm = buffer;
+            }
+        }
+    }
+
+    // Rebuilds the material index, at most half full, after a table was added.
+    private void indexMaterial() {
+        int capacity = Integer.highestOneBit(tableList.size() * 4 - 1);
+        materialKeys = new long[capacity];
+        materialTables = new Table[capacity];
+        for (Table table : tableList) {
+            int slot = slotOf(table.material, capacity);
+            while (materialTables[slot] != null) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            materialKeys[slot] = table.material;
+            materialTables[slot] = table;
+        }
+    }
+
+    // Returns the table for a material key, or null.
+    private Table tableFor(long material) {
+        int capacity = materialTables.length;
+        if (capacity == 0) {
+            return null;
+        }
+        for (int slot = slotOf(material, capacity); materialTables[slot] != null; slot = (slot + 1) & (capacity - 1)) {
+            if (materialKeys[slot] == material) {
+                return materialTables[slot];
+            }
+        }
+        return null;
+    }
+
+    private static int slotOf(long material, int capacity) {
+        return (int) ((material * 0x9E3779B97F4A7C15L) >>> 40) & (capacity - 1);
+    }
+
+    // The material key counts every piece type of each side in four bits, in
+    // PIECE_ORDER, white in the low half and black in the high half, so it is
+    // built from a position without allocating and mirrors by swapping halves.
+    private static long materialBit(char type, boolean white) {
+        return 1L << ((PIECE_ORDER.indexOf(type) + (white ? 0 : PIECE_ORDER.length())) << 2);
+    }
+
+    private static long mirror(long material) {
+        int half = PIECE_ORDER.length() << 2;
+        return (material >>> half) | ((material & ((1L << half) - 1)) << half);
+    }
+
+    /**
+     * Checks whether this bitbase covers the given signature in either
+     * orientation.
+     *
+     * @param signature A material signature such as "KPK".
+     * @return {@code true} if a table is available.
+     */
+    public boolean covers(String signature) {
+        String[] sides = splitSignature(signature);
+        return tables.containsKey(sides[0] + sides[1]) || tables.containsKey(sides[1] + sides[0])
+                || sides[0].length() + sides[1].length() == 2;
+    }
+
+    /**
+     * Returns the table stored for exactly this signature, or {@code null}.
+     *
+     * @param signature A canonical material signature.
+     * @return The table, or {@code null} if none is mapped.
+     */
+    public Table getTable(String signature) {
+        return tables.get(signature);
+    }
+
+    /**
+     * Probes the win/draw/loss value of a position held in a {@link BoardState}.
+     *
+     * @param boardState  The board to probe.
+     * @param whiteToMove {@code true} if white is to move.
+     * @return One of the WDL constants, or {@link #NOT_FOUND}.
+     */
+    public int probeWdl(BoardState boardState, boolean whiteToMove) {
+        return probe(boardState, whiteToMove, false);
+    }
+
+    /**
+     * Probes the distance to mate of a position held in a {@link BoardState}.
+     *
+     * @param boardState  The board to probe.
+     * @param whiteToMove {@code true} if white is to move.
+     * @return The signed DTM byte, or {@link Integer#MIN_VALUE} if not covered.
+     */
+    public int probeDtm(BoardState boardState, boolean whiteToMove) {
+        return probe(boardState, whiteToMove, true);
+    }
+
+    private int probe(BoardState boardState, boolean whiteToMove, boolean distance) {
+        List<Pieces> pieces = boardState.getPieces();
+        int count = pieces.size();
+        if (count > 4) {
+            return distance ? Integer.MIN_VALUE : NOT_FOUND;
+        }
+        char[] types = new char[count];
+        boolean[] white = new boolean[count];
+        int[] squares = new int[count];
+        int pawnColours = 0; // Bit 0 for a white pawn, bit 1 for a black one
+        for (int i = 0; i < count; i++) {
+            Pieces piece = pieces.get(i);
+            types[i] = Character.toUpperCase(piece.getPieceInitial());
+            white[i] = piece.isWhite();
+            squares[i] = piece.getSquare();
+            if (types[i] == 'P') {
+                pawnColours |= white[i] ? 1 : 2;
+            }
+        }
+        if (pawnColours == 3 && boardState.getEnPassantSquare() != Square.NONE) {
+            return distance ? Integer.MIN_VALUE : NOT_FOUND; // The tables never capture en passant
+        }
+        return distance ? probeDtm(types, white, squares, count, whiteToMove)
+                : probeWdl(types, white, squares, count, whiteToMove);
+    }
+
+    /**
+     * Probes the WDL value of a position given as loose arrays of pieces. The
+     * pieces may be in any order and either colour may hold the stronger side.
+     *
+     * @return One of the WDL constants, or {@link #NOT_FOUND}.
+     */
+    public int probeWdl(char[] types, boolean[] white, int[] squares, int count, boolean whiteToMove) {
+        if (count == 2) {
+            return DRAW; // Bare kings.
+        }
+        long key = locate(types, white, squares, count, whiteToMove);
+        if (key < 0) {
+            return NOT_FOUND;
+        }
+        Table table = tableOf(key);
+        return table.wdl != null ? table.probeWdl(indexOf(key)) : wdlOf(table.probeDtm(indexOf(key)));
+    }
+
+    /**
+     * Probes the DTM value of a position given as loose arrays of pieces.
+     *
+     * @return The signed DTM byte, or {@link Integer#MIN_VALUE} if not covered.
+     */
+    public int probeDtm(char[] types, boolean[] white, int[] squares, int count, boolean whiteToMove) {
+        if (count == 2) {
+            return 0; // Bare kings.
+        }
+        long key = locate(types, white, squares, count, whiteToMove);
+        if (key < 0 || tableOf(key).dtm == null) {
+            return Integer.MIN_VALUE;
+        }
+        return tableOf(key).probeDtm(indexOf(key));
+    }
+
+    // The key returned by locate packs the table id in the high half and the
+    // position index in the low half, so a probe allocates no result object.
+    private Table tableOf(long key) {
+        return tableList.get((int) (key >>> 32));
+    }
+
+    private static int indexOf(long key) {
+        return (int) key;
+    }
+
+    // Finds the table and index for a position, mirroring colours and ranks if
+    // the table is stored with the other side as white. Returns -1 if missing.
+    private long locate(char[] types, boolean[] white, int[] squares, int count, boolean whiteToMove) {
+        long material = 0;
+        for (int i = 0; i < count; i++) {
+            if (PIECE_ORDER.indexOf(types[i]) < 0) {
+                return -1;
+            }
+            material += materialBit(types[i], white[i]);
+        }
+        boolean mirrored = false;
+        Table table = tableFor(material);
+        if (table == null) {
+            table = tableFor(mirror(material));
+            mirrored = true;
+        }
+        if (table == null) {
+            return -1;
+        }
+
+        // Assign every slot of the table to a matching piece.
+        int index = (whiteToMove != mirrored) ? 0 : 1;
+        int used = 0;
+        for (int slot = 0; slot < table.types.length; slot++) {
+            boolean slotWhite = table.white[slot] != mirrored;
+            for (int i = 0; i < count; i++) {
+                if ((used & (1 << i)) == 0 && types[i] == table.types[slot] && white[i] == slotWhite) {
+                    used |= 1 << i;
+                    int square = mirrored ? squares[i] ^ 56 : squares[i]; // Flip the rank when mirrored.
+                    index = (index << 6) | square;
+                    break;
+                }
+            }
+        }
+        return ((long) table.id << 32) | index;
+    }
+
+    /**
+     * Converts a signed DTM byte to its WDL constant.
+     *
+     * @param dtm The DTM value.
+     * @return {@link #WIN}, {@link #LOSS} or {@link #DRAW}.
+     */
+    public static int wdlOf(int dtm) {
+        return dtm > 0 ? WIN : dtm < 0 ? LOSS : DRAW;
+    }
+
+    /**
+     * Splits a signature such as "KRKP" into its white ("KR") and black ("KP")
+     * halves, each sorted into canonical piece order.
+     *
+     * @param signature The material signature.
+     * @return A two-element array with the white and black halves.
+     */
+    public static String[] splitSignature(String signature) {
+        String upper = signature.toUpperCase();
+        int second = upper.indexOf('K', 1);
+        if (upper.charAt(0) != 'K' || second < 0) {
+            throw new IllegalArgumentException("Bad material signature: " + signature);
+        }
+        return new String[] { canonicalSide(upper.substring(0, second)), canonicalSide(upper.substring(second)) };
+    }
+
+    // Sorts the piece letters of one side into KQRBNP order.
+    static String canonicalSide(String side) {
+        StringBuilder sorted = new StringBuilder(side.length());
+        for (int order = 0; order < PIECE_ORDER.length(); order++) {
+            char type = PIECE_ORDER.charAt(order);
+            for (int i = 0; i < side.length(); i++) {
+                if (side.charAt(i) == type) {
+                    sorted.append(type);
+                }
+            }
+        }
+        if (sorted.length() != side.length() || side.indexOf('K', 1) >= 0) {
+            throw new IllegalArgumentException("Bad side in material signature: " + side);
+        }
+        return sorted.toString();
+    }
+
+    /**
+     * A single mapped table. Slots are ordered white pieces first, each side in
+     * the order of its signature half, and the index of a position is
+     * {@code sideToMove << 6n | square0 << 6(n-1) | ... | squareN-1} with
+     * {@code square = row * 8 + column}.
+     */
+    public static class Table {
+        final String signature;
+        final int id;
+        final char[] types;
+        final boolean[] white;
+        final long material;
+        ByteBuffer wdl;
+        ByteBuffer dtm;
+        int maxPly;
+
+        Table(String signature, int id) {
+            this.signature = signature;
+            this.id = id;
+            String[] sides = splitSignature(signature);
+            String slots = sides[0] + sides[1];
+            this.types = slots.toCharArray();
+            this.white = new boolean[types.length];
+            long key = 0;
+            for (int i = 0; i < types.length; i++) {
+                white[i] = i < sides[0].length();
+                key += materialBit(types[i], white[i]);
+            }
+            this.material = key;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public int getPieceCount() {
+            return types.length;
+        }
+
+        public int getMaxPly() {
+            return maxPly;
+        }
+
+        /**
+         * Computes the index of a position whose squares are already in slot
+         * order.
+         *
+         * @param squares     The square of each slot.
+         * @param whiteToMove {@code true} if white is to move.
+         * @return The position index.
+         */
+        public int index(int[] squares, boolean whiteToMove) {
+            int index = whiteToMove ? 0 : 1;
+            for (int slot = 0; slot < types.length; slot++) {
+                index = (index << 6) | squares[slot];
+            }
+            return index;
+        }
+
+        /**
+         * Reads the two-bit WDL entry at the given index.
+         *
+         * @param index The position index.
+         * @return One of the WDL constants.
+         */
+        public int probeWdl(int index) {
+            int packed = wdl.get(HEADER_SIZE + (index >>> 2));
+            return (packed >>> ((index & 3) << 1)) & 3;
+        }
+
+        /**
+         * Reads the signed DTM entry at the given index.
+         *
+         * @param index The position index.
+         * @return The DTM value.
+         */
+        public int probeDtm(int index) {
+            return dtm.get(HEADER_SIZE + index);
+        }
+    }
+}
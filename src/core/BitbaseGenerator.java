@@ -0,0 +1,573 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code BitbaseGenerator} class builds endgame bitbases by retrograde
+ * analysis over the move rules of {@link ChessPieces}. Positions are resolved
+ * ply by ply: a position is won in {@code n} plies if some move reaches a
+ * position lost in {@code n - 1}, and lost in {@code n} plies if every move
+ * reaches a position won in at most {@code n - 1}. Whatever is left when no
+ * more positions resolve is a draw. Captures and promotions are looked up in
+ * the smaller tables, which are generated first.
+ *
+ * <p>
+ * Each pass is split into index ranges that run on a fixed thread pool. A pass
+ * only accepts results whose distance is at most the current ply, so values
+ * written concurrently during the same pass never change the outcome and the
+ * files are identical from run to run. Positions are set up without an en
+ * passant square, so tables with pawns on both sides (e.g. KPKP) never play an
+ * en passant capture; {@link Bitbase} does not probe them right after a double
+ * step.
+ */
+public class BitbaseGenerator {
+    private static final byte UNKNOWN = Byte.MIN_VALUE; // Not resolved yet.
+    private static final byte ILLEGAL = Byte.MAX_VALUE; // Overlapping pieces, pawn on a back rank, etc.
+    private static final int MAX_PLY = 125;
+    private static final int CHUNK_SIZE = 1 << 12;
+    private static final char[] PROMOTIONS = { 'Q', 'R', 'B', 'N' };
+
+    private final Path directory;
+    private final int threads;
+    private final Bitbase bitbase; // Tables generated so far, used for captures and promotions.
+
+    /**
+     * Creates a generator that writes into the given directory. Tables already
+     * present there are reused.
+     *
+     * @param directory The output directory.
+     * @param threads   The number of worker threads.
+     * @throws IOException If the directory cannot be created or read.
+     */
+    public BitbaseGenerator(Path directory, int threads) throws IOException {
+        this.directory = directory;
+        this.threads = threads;
+        Files.createDirectories(directory);
+        this.bitbase = Bitbase.open(directory);
+    }
+
+    public Bitbase getBitbase() {
+        return bitbase;
+    }
+
+    /**
+     * Generates the table for a signature and, first, every table it depends on.
+     *
+     * @param signature A material signature such as "KRK" or "KQKR".
+     * @throws IOException          If a file cannot be written.
+     * @throws InterruptedException If generation is interrupted.
+     */
+    public void generate(String signature) throws IOException, InterruptedException {
+        String[] sides = Bitbase.splitSignature(signature);
+        if (bitbase.covers(signature)) {
+            return;
+        }
+        for (String dependency : dependencies(sides)) {
+            generate(dependency);
+        }
+        build(sides[0] + sides[1]);
+    }
+
+    // Lists the signatures reachable by one capture or promotion, each oriented
+    // with the stronger side as white.
+    private static Set<String> dependencies(String[] sides) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int side = 0; side < 2; side++) {
+            String own = sides[side];
+            String other = sides[1 - side];
+            for (int i = 1; i < own.length(); i++) {
+                String removed = own.substring(0, i) + own.substring(i + 1);
+                addOriented(result, side == 0 ? removed : other, side == 0 ? other : removed);
+                if (own.charAt(i) == 'P') {
+                    for (char promotion : PROMOTIONS) {
+                        String promoted = removed + promotion;
+                        addOriented(result, side == 0 ? promoted : other, side == 0 ? other : promoted);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void addOriented(Set<String> result, String white, String black) {
+        white = Bitbase.canonicalSide(white);
+        black = Bitbase.canonicalSide(black);
+        if (white.length() + black.length() == 2) {
+            return; // Bare kings need no table.
+        }
+        result.add(material(black) > material(white) ? black + white : white + black);
+    }
+
+    private static int material(String side) {
+        int total = 0;
+        for (char type : side.toCharArray()) {
+            total += "PNBRQ".indexOf(type) + 1;
+        }
+        return total;
+    }
+
+    // Runs the retrograde passes for one signature and writes its files.
+    private void build(String signature) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Bitbase.Table layout = new Bitbase.Table(signature, -1);
+        int size = 2 << (6 * layout.getPieceCount());
+        byte[] values = new byte[size];
+        int dependencyPly = 0;
+        for (String dependency : dependencies(Bitbase.splitSignature(signature))) {
+            Bitbase.Table table = bitbase.getTable(dependency);
+            dependencyPly = Math.max(dependencyPly, table != null ? table.getMaxPly() : 0);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Worker> workers = ThreadLocal.withInitial(() -> new Worker(layout, values));
+        int maxPly = 0;
+        try {
+            runPass(pool, workers, size, 0);
+            for (int ply = 1; ply <= MAX_PLY; ply++) {
+                boolean changed = runPass(pool, workers, size, ply);
+                if (changed) {
+                    maxPly = ply;
+                } else if (ply > dependencyPly + 1) {
+                    break;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        if (maxPly == MAX_PLY) {
+            throw new IllegalStateException("Distance to mate does not fit in a byte for " + signature);
+        }
+
+        write(signature, layout.getPieceCount(), maxPly, values);
+        System.out.printf("%s: %d positions, longest mate %d plies, %d ms%n", signature, size, maxPly,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Visits every index once on the pool and reports whether anything resolved.
+    private boolean runPass(ExecutorService pool, ThreadLocal<Worker> workers, int size, int ply)
+            throws InterruptedException {
+        List<Callable<Boolean>> chunks = new ArrayList<>();
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            int first = from;
+            int last = Math.min(size, from + CHUNK_SIZE);
+            chunks.add(() -> {
+                Worker worker = workers.get();
+                boolean changed = false;
+                for (int index = first; index < last; index++) {
+                    changed |= ply == 0 ? worker.initialise(index) : worker.resolve(index, ply);
+                }
+                return changed;
+            });
+        }
+        boolean changed = false;
+        for (Future<Boolean> result : pool.invokeAll(chunks)) {
+            try {
+                changed |= result.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Bitbase pass failed", e.getCause());
+            }
+        }
+        return changed;
+    }
+
+    // Writes the WDL and DTM files and maps them so later tables can probe them.
+    private void write(String signature, int pieceCount, int maxPly, byte[] values) throws IOException {
+        Path wdlFile = directory.resolve(signature + ".wdl");
+        Path dtmFile = directory.resolve(signature + ".dtm");
+        try (FileChannel wdl = open(wdlFile); FileChannel dtm = open(dtmFile)) {
+            MappedByteBuffer wdlBuffer = wdl.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Bitbase.HEADER_SIZE + (values.length + 3) / 4);
+            MappedByteBuffer dtmBuffer = dtm.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Bitbase.HEADER_SIZE + values.length);
+            writeHeader(wdlBuffer, signature, pieceCount, maxPly, 0);
+            writeHeader(dtmBuffer, signature, pieceCount, maxPly, 1);
+            for (int index = 0; index < values.length; index++) {
+                byte value = values[index];
+                int wdlValue = value == ILLEGAL ? Bitbase.INVALID : value == UNKNOWN ? Bitbase.DRAW : Bitbase.wdlOf(value);
+                int offset = Bitbase.HEADER_SIZE + (index >>> 2);
+                wdlBuffer.put(offset, (byte) (wdlBuffer.get(offset) | (wdlValue << ((index & 3) << 1))));
+                dtmBuffer.put(Bitbase.HEADER_SIZE + index, value == ILLEGAL || value == UNKNOWN ? 0 : value);
+            }
+            wdlBuffer.force();
+            dtmBuffer.force();
+        }
+        bitbase.map(wdlFile);
+        bitbase.map(dtmFile);
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void writeHeader(MappedByteBuffer buffer, String signature, int pieceCount, int maxPly, int kind) {
+        buffer.putInt(0, Bitbase.MAGIC);
+        buffer.put(4, (byte) pieceCount);
+        buffer.put(5, (byte) maxPly);
+        buffer.put(6, (byte) kind);
+        byte[] name = String.format("%-8s", signature).getBytes(StandardCharsets.US_ASCII);
+        buffer.put(8, name);
+    }
+
+    // Converts a child's DTM value into the value of the move leading to it.
+    private static int negate(int child) {
+        return child < 0 ? -child : child > 0 ? -(child + 2) : 0;
+    }
+
+    // Orders DTM values from the mover's point of view: short wins first, then
+    // draws, then long losses.
+    private static int rank(int value) {
+        return value > 0 ? 1000 - value : value < 0 ? -1000 - value : 0;
+    }
+
+    // Creates a piece from its signature letter, e.g. 'Q'.
+    private static Pieces createPiece(char type, int square, boolean white, BoardState boardState) {
+        Pieces piece = ChessPieceFactory.createPiece(PieceType.fromInitial(Character.toLowerCase(type)),
+                Square.row(square), Square.column(square), PieceColor.of(white), boardState);
+        if (piece instanceof ChessPieces.King) {
+            ((ChessPieces.King) piece).movedPiece(); // Endgame tables never castle.
+        }
+        return piece;
+    }
+
+    /**
+     * Per-thread state: a private {@link BoardState} holding one piece object
+     * per slot, moved around with {@code setRow}/{@code setColumn} as indices
+     * are decoded.
+     */
+    private final class Worker {
+        private final Bitbase.Table layout;
+        private final byte[] values;
+        private final int count;
+        private final BoardState boardState = new BoardState();
+        private final Pieces[] slots;
+        private final int[] squares;
+        private final char[] childTypes;
+        private final boolean[] childWhite;
+        private final int[] childSquares;
+        private boolean whiteToMove;
+
+        Worker(Bitbase.Table layout, byte[] values) {
+            this.layout = layout;
+            this.values = values;
+            this.count = layout.getPieceCount();
+            this.slots = new Pieces[count];
+            this.squares = new int[count];
+            this.childTypes = new char[count];
+            this.childWhite = new boolean[count];
+            this.childSquares = new int[count];
+            for (int slot = 0; slot < count; slot++) {
+                slots[slot] = createPiece(layout.types[slot], 0, layout.white[slot], boardState);
+            }
+            boardState.initializeBoard(Arrays.asList(slots));
+        }
+
+        // Places the pieces for an index; returns false if the placement is
+        // impossible regardless of whose turn it is.
+        private boolean setUp(int index) {
+            long occupied = 0;
+            for (int slot = count - 1; slot >= 0; slot--) {
+                int square = index & 63;
+                index >>>= 6;
+                int row = square / 8;
+                if ((occupied & (1L << square)) != 0 || layout.types[slot] == 'P' && (row == 0 || row == 7)) {
+                    return false;
+                }
+                occupied |= 1L << square;
+                squares[slot] = square;
+                slots[slot].setRow(row);
+                slots[slot].setColumn(square % 8);
+            }
+            whiteToMove = index == 0;
+            return true;
+        }
+
+        // Pass 0: marks illegal positions, mates and stalemates.
+        boolean initialise(int index) {
+            if (!setUp(index) || boardState.isKingInCheck(PieceColor.of(!whiteToMove))) {
+                values[index] = ILLEGAL;
+                return false;
+            }
+            values[index] = UNKNOWN;
+            if (!hasLegalMove()) {
+                values[index] = (byte) (boardState.isKingInCheck(PieceColor.of(whiteToMove)) ? -1 : 0);
+            }
+            return false;
+        }
+
+        private boolean hasLegalMove() {
+            for (int slot = 0; slot < count; slot++) {
+                if (layout.white[slot] == whiteToMove) {
+                    Pieces piece = slots[slot];
+                    for (long targets = piece.getLegalMoves(); targets != 0; targets &= targets - 1) {
+                        int target = Long.numberOfTrailingZeros(targets);
+                        if (!boardState.moveLeavesKingInCheck(piece, Square.row(target), Square.column(target))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Pass n: tries to resolve an unknown position at exactly this ply.
+        boolean resolve(int index, int ply) {
+            if (values[index] != UNKNOWN) {
+                return false;
+            }
+            setUp(index);
+            int bestWin = Integer.MAX_VALUE;
+            int longestLoss = 0;
+            boolean allLost = true;
+            for (int slot = 0; slot < count; slot++) {
+                if (layout.white[slot] != whiteToMove) {
+                    continue;
+                }
+                Pieces piece = slots[slot];
+                for (long targets = piece.getLegalMoves(); targets != 0; targets &= targets - 1) {
+                    int target = Long.numberOfTrailingZeros(targets);
+                    int row = Square.row(target);
+                    int column = Square.column(target);
+                    if (boardState.moveLeavesKingInCheck(piece, row, column)) {
+                        continue;
+                    }
+                    char type = layout.types[slot];
+                    boolean promotes = type == 'P' && (row == 0 || row == 7);
+                    for (int option = 0; option < (promotes ? PROMOTIONS.length : 1); option++) {
+                        int child = childValue(slot, row * 8 + column, promotes ? PROMOTIONS[option] : type);
+                        if (child == UNKNOWN || child == 0) {
+                            allLost = false;
+                        } else if (child < 0) {
+                            bestWin = Math.min(bestWin, -child);
+                        } else {
+                            longestLoss = Math.max(longestLoss, child + 2);
+                        }
+                    }
+                }
+            }
+            if (bestWin <= ply) {
+                values[index] = (byte) bestWin;
+                return true;
+            }
+            if (allLost && longestLoss - 1 <= ply) {
+                values[index] = (byte) -longestLoss;
+                return true;
+            }
+            return false;
+        }
+
+        // Looks up the position after moving a slot, either in the table being
+        // built or, after a capture or promotion, in a smaller table.
+        private int childValue(int slot, int target, char newType) {
+            int captured = -1;
+            for (int other = 0; other < count; other++) {
+                if (other != slot && squares[other] == target) {
+                    captured = other;
+                }
+            }
+            if (captured < 0 && newType == layout.types[slot]) {
+                int from = squares[slot];
+                squares[slot] = target;
+                int child = layout.index(squares, !whiteToMove);
+                squares[slot] = from;
+                return values[child];
+            }
+
+            int childCount = 0;
+            for (int other = 0; other < count; other++) {
+                if (other != captured) {
+                    childTypes[childCount] = other == slot ? newType : layout.types[other];
+                    childWhite[childCount] = layout.white[other];
+                    childSquares[childCount] = other == slot ? target : squares[other];
+                    childCount++;
+                }
+            }
+            int child = bitbase.probeDtm(childTypes, childWhite, childSquares, childCount, !whiteToMove);
+            if (child == Integer.MIN_VALUE) {
+                throw new IllegalStateException("Missing dependency table for " + layout.getSignature());
+            }
+            return child;
+        }
+    }
+
+    /**
+     * Cross-checks a table against a plain depth-limited mate search that plays
+     * the moves on a {@link BoardState} and never consults any table. For a
+     * sample of legal positions the search result must equal the stored
+     * distance when the mate is within the search depth, and must find nothing
+     * otherwise.
+     *
+     * @param signature The signature to check.
+     * @param samples   The number of random indices to test.
+     * @param depth     The search depth in plies.
+     * @param seed      The random seed, so a failing sample can be reproduced.
+     * @return The number of mismatching positions.
+     */
+    public int verify(String signature, int samples, int depth, long seed) {
+        String[] sides = Bitbase.splitSignature(signature);
+        Bitbase.Table table = bitbase.getTable(sides[0] + sides[1]);
+        if (table == null || table.dtm == null) {
+            throw new IllegalArgumentException("No DTM table for " + signature);
+        }
+        Random random = new Random(seed);
+        int size = 2 << (6 * table.getPieceCount());
+        int checked = 0;
+        int mismatches = 0;
+        while (checked < samples) {
+            int index = random.nextInt(size);
+            if (table.probeWdl(index) == Bitbase.INVALID) {
+                continue;
+            }
+            checked++;
+            BoardState boardState = new BoardState();
+            int rest = index;
+            for (int slot = table.getPieceCount() - 1; slot >= 0; slot--) {
+                boardState.addPiece(createPiece(table.types[slot], rest & 63, table.white[slot], boardState));
+                rest >>>= 6;
+            }
+            int stored = table.probeDtm(index);
+            int plies = stored > 0 ? stored : -stored - 1;
+            int expected = stored != 0 && plies <= depth ? stored : 0;
+            int searched = mateSearch(boardState, rest == 0, depth);
+            if (searched != expected) {
+                mismatches++;
+                System.err.printf("%s index %d: table %d, search %d%n", signature, index, stored, searched);
+            }
+        }
+        System.out.printf("%s: %d positions verified to depth %d, %d mismatches%n", signature, checked, depth,
+                mismatches);
+        return mismatches;
+    }
+
+    // Returns the exact DTM value if a mate is forced within the depth, else 0.
+    private static int mateSearch(BoardState boardState, boolean whiteToMove, int depth) {
+        PieceColor color = PieceColor.of(whiteToMove);
+        List<Pieces> own = new ArrayList<>();
+        for (Pieces piece : boardState.getPieces()) {
+            if (piece.getColor() == color) {
+                own.add(piece);
+            }
+        }
+        int best = Integer.MIN_VALUE;
+        for (Pieces piece : own) {
+            for (long targets = piece.getLegalMoves(); targets != 0; targets &= targets - 1) {
+                int target = Long.numberOfTrailingZeros(targets);
+                int row = Square.row(target);
+                int column = Square.column(target);
+                if (boardState.moveLeavesKingInCheck(piece, row, column)) {
+                    continue;
+                }
+                if (depth == 0) {
+                    return 0; // Not mated; nothing more can be proven at this depth.
+                }
+                int oldRow = piece.getRow();
+                int oldColumn = piece.getColumn();
+                Pieces captured = boardState.getPieceAt(row, column);
+                if (captured != null) {
+                    boardState.removePiece(captured);
+                }
+                boolean promotes = piece instanceof ChessPieces.Pawn && (row == 0 || row == 7);
+                for (int option = 0; option < (promotes ? PROMOTIONS.length : 1); option++) {
+                    Pieces moved = piece;
+                    if (promotes) {
+                        boardState.removePiece(piece);
+                        moved = createPiece(PROMOTIONS[option], row * 8 + column, whiteToMove, boardState);
+                        boardState.addPiece(moved);
+                    } else {
+                        piece.setRow(row);
+                        piece.setColumn(column);
+                    }
+                    int value = negate(mateSearch(boardState, !whiteToMove, depth - 1));
+                    if (best == Integer.MIN_VALUE || rank(value) > rank(best)) {
+                        best = value;
+                    }
+                    if (promotes) {
+                        boardState.removePiece(moved);
+                        boardState.addPiece(piece);
+                    } else {
+                        piece.setRow(oldRow);
+                        piece.setColumn(oldColumn);
+                    }
+                }
+                if (captured != null) {
+                    boardState.addPiece(captured);
+                }
+            }
+        }
+        if (best == Integer.MIN_VALUE) {
+            return boardState.isKingInCheck(color) ? -1 : 0;
+        }
+        int plies = best > 0 ? best : -best - 1;
+        return plies <= depth ? best : 0;
+    }
+
+    /**
+     * Command line entry point:
+     * {@code java -cp bin BitbaseGenerator <dir> [--threads N] [--verify SAMPLES] [--depth PLIES] [--wdl-only] SIG...}
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BitbaseGenerator <dir> [--threads N] [--verify SAMPLES] [--depth PLIES]"
+                    + " [--wdl-only] SIG...");
+            System.exit(1);
+        }
+        Path directory = Paths.get(args[0]);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int samples = 0;
+        int depth = 3;
+        boolean wdlOnly = false;
+        List<String> signatures = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--verify":
+                    samples = Integer.parseInt(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--wdl-only":
+                    wdlOnly = true;
+                    break;
+                default:
+                    signatures.add(args[i].toUpperCase());
+            }
+        }
+
+        BitbaseGenerator generator = new BitbaseGenerator(directory, threads);
+        int mismatches = 0;
+        for (String signature : signatures) {
+            generator.generate(signature);
+            if (samples > 0) {
+                mismatches += generator.verify(signature, samples, depth, signature.hashCode());
+            }
+        }
+        if (wdlOnly) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.dtm")) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+        }
+        System.exit(mismatches == 0 ? 0 : 2);
+    }
+}
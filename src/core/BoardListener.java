@@ -0,0 +1,33 @@
+/**
+ * The {@code BoardListener} interface is told about every change to the pieces
+ * of a {@link BoardState}, so that state derived from the pieces can be kept up
+ * to date from the changes alone. {@link BoardState#undoMove()} reports the
+ * changes that reverse the move. Each call is made on the thread that changes
+ * the board, after the change.
+ */
+public interface BoardListener {
+    /**
+     * A piece was put on the board, on the square it now stands on.
+     *
+     * @param piece The piece.
+     */
+    void pieceAdded(Pieces piece);
+
+    /**
+     * A piece was taken off the board; its square is where it last stood.
+     *
+     * @param piece The piece.
+     */
+    void pieceRemoved(Pieces piece);
+
+    /**
+     * A piece moved to the square it now stands on.
+     *
+     * @param piece      The piece.
+     * @param fromSquare The square it left.
+     */
+    void pieceMoved(Pieces piece, int fromSquare);
+
+    /** All pieces were replaced at once, e.g. by a new game. */
+    void boardReset();
+}
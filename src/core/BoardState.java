@@ -0,0 +1,714 @@
+import java.util.ArrayList; // Import ArrayList class to handle dynamic arrays.
+import java.util.List; // Import List interface to define lists of pieces.
+
+public class BoardState {
+    private static final PieceType[] PROMOTION_CHOICES = { PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP,
+            PieceType.KNIGHT };
+
+    private List<Pieces> pieces; // A list to hold all the pieces currently on the board.
+    private volatile Position snapshot; // Last committed position, readable from any thread.
+    private final GameRecord record = new GameRecord(); // Undo entries and position hashes.
+    private boolean whiteToMove = true; // The side to move.
+    private int halfmoveClock; // Plies since the last capture or pawn move.
+    private int startPly; // Plies of the game before the first recorded move, from the FEN move number.
+    private int enPassantSquare = -1; // Square skipped by a pawn's double step on the last move, or -1.
+    private long hash; // Zobrist hash of the position, kept up to date by makeMove and undoMove.
+    private boolean hashValid; // False after pieces were added or removed directly.
+    private BoardListener listener; // Told about every change to the pieces, or null.
+
+    // Constructor initializes the list of pieces.
+    public BoardState() {
+        pieces = new ArrayList<>();
+    }
+
+    // Method to initialize the board with a list of initial pieces.
+    public void initializeBoard(List<Pieces> initialPieces) {
+        pieces.clear(); // Clear any existing pieces from the board.
+        pieces.addAll(initialPieces); // Add all the initial pieces to the board.
+        whiteToMove = true;
+        halfmoveClock = 0;
+        startPly = 0;
+        enPassantSquare = -1;
+        hashValid = false;
+        record.reset(getHash()); // Start a new game record.
+        if (listener != null) {
+            listener.boardReset();
+        }
+    }
+
+    // Method to create an independent copy of the position, e.g. for background
+    // threads. The move history is not copied.
+    public BoardState copy() {
+        BoardState copy = new BoardState();
+        for (Pieces piece : pieces) {
+            copy.pieces.add(ChessPieceFactory.copyPiece(piece, copy)); // Copies are bound to the new board.
+        }
+        copy.whiteToMove = whiteToMove;
+        copy.halfmoveClock = halfmoveClock;
+        copy.startPly = startPly + record.getPly();
+        copy.enPassantSquare = enPassantSquare;
+        copy.record.reset(copy.getHash());
+        return copy;
+    }
+
+    // Method to publish an immutable snapshot of the committed position. Must be
+    // called by the thread that owns the board, after every committed move.
+    public Position publishSnapshot() {
+        Position position = Position.of(this);
+        snapshot = position;
+        return position;
+    }
+
+    // Method to set the one listener that follows changes to the pieces, or
+    // null to remove it. Copies of the board do not inherit it.
+    public void setListener(BoardListener listener) {
+        this.listener = listener;
+    }
+
+    public BoardListener getListener() {
+        return listener;
+    }
+
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
+
+    public PieceColor getSideToMove() {
+        return PieceColor.of(whiteToMove);
+    }
+
+    // Method to set the side to move, e.g. when setting up a position. Starts a
+    // new game record.
+    public void setWhiteToMove(boolean whiteToMove) {
+        this.whiteToMove = whiteToMove;
+        hashValid = false;
+        record.reset(getHash());
+    }
+
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    // Method to set the half-move clock, e.g. when setting up a position.
+    public void setHalfmoveClock(int halfmoveClock) {
+        this.halfmoveClock = halfmoveClock;
+    }
+
+    // Method to get the number of the full move being played, starting at 1 and
+    // counting up after every black move, as in FEN.
+    public int getFullmoveNumber() {
+        return (startPly + record.getPly()) / 2 + 1;
+    }
+
+    // Method to set the full move number of the current position, e.g. when
+    // setting it up from FEN. Must be called after the side to move is set.
+    public void setFullmoveNumber(int fullmoveNumber) {
+        startPly = 2 * (Math.max(1, fullmoveNumber) - 1) + (whiteToMove ? 0 : 1) - record.getPly();
+    }
+
+    // Method to get the square (row * 8 + column) a pawn skipped with a double
+    // step on the last move, where it can be captured en passant, or -1.
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    // Method to set the en passant square, e.g. when setting up a position.
+    // Starts a new game record.
+    public void setEnPassantSquare(int enPassantSquare) {
+        this.enPassantSquare = enPassantSquare;
+        hashValid = false;
+        record.reset(getHash());
+    }
+
+    public GameRecord getRecord() {
+        return record;
+    }
+
+    // Method to get the Zobrist hash of the current position.
+    public long getHash() {
+        if (!hashValid) {
+            hash = Zobrist.hash(this);
+            hashValid = true;
+        }
+        return hash;
+    }
+
+    // Method to get the castling rights as Position bit flags. A right exists
+    // while the king and that rook are both unmoved.
+    public int getCastlingRights() {
+        return castlingRight(7, 7, Position.WHITE_KINGSIDE) | castlingRight(7, 0, Position.WHITE_QUEENSIDE)
+                | castlingRight(0, 7, Position.BLACK_KINGSIDE) | castlingRight(0, 0, Position.BLACK_QUEENSIDE);
+    }
+
+    private int castlingRight(int row, int rookColumn, int right) {
+        Pieces king = getPieceAt(row, 4);
+        if (!(king instanceof ChessPieces.King) || ((ChessPieces.King) king).hasMoved()) {
+            return 0;
+        }
+        Pieces rook = getPieceAt(row, rookColumn);
+        boolean rookReady = rook instanceof ChessPieces.Rook && !((ChessPieces.Rook) rook).hasMoved()
+                && rook.getColor() == king.getColor();
+        return rookReady ? right : 0;
+    }
+
+    // Method to check whether the current position occurred before with the same
+    // side to move, since the last irreversible move.
+    public boolean isRepetition() {
+        return record.countRepetitions(getHash(), halfmoveClock) > 0;
+    }
+
+    // Method to check for a draw by threefold repetition.
+    public boolean isThreefoldRepetition() {
+        return record.countRepetitions(getHash(), halfmoveClock) >= 2;
+    }
+
+    // Method to check for a draw by the fifty-move rule.
+    public boolean isFiftyMoveDraw() {
+        return halfmoveClock >= 100;
+    }
+
+    // Method to get the last published snapshot; safe to call from any thread.
+    public Position getSnapshot() {
+        return snapshot;
+    }
+
+    // Method to get the current list of pieces on the board.
+    public List<Pieces> getPieces() {
+        return pieces;
+    }
+
+    // Method to get the piece located at a specific row and column.
+    public Pieces getPieceAt(int row, int column) {
+        // Loop through all pieces to find the one at the specified position.
+        for (Pieces piece : pieces) {
+            if (piece.getRow() == row && piece.getColumn() == column) {
+                return piece; // Return the piece if found.
+            }
+        }
+        return null; // Return null if no piece is found at the position.
+    }
+
+    // Method to check if a position is occupied by a piece of the same color.
+    public boolean isPositionOccupiedBySameColor(int row, int column, PieceColor color) {
+        Pieces piece = getPieceAt(row, column); // Get the piece at the specified position.
+        return piece != null && piece.getColor() == color; // Check if the piece exists and matches the specified color.
+    }
+
+    // Method to get the squares occupied by the pieces of one color as a bit set.
+    public long getOccupancy(PieceColor color) {
+        long occupancy = 0;
+        for (Pieces piece : pieces) {
+            if (piece.getColor() == color) {
+                occupancy |= Square.bit(piece.getSquare());
+            }
+        }
+        return occupancy;
+    }
+
+    // Method to add a piece to the board.
+    public void addPiece(Pieces piece) {
+        pieces.add(piece); // Add the piece to the list.
+        hashValid = false;
+        if (listener != null) {
+            listener.pieceAdded(piece);
+        }
+    }
+
+    // Method to remove a piece from the board.
+    public void removePiece(Pieces piece) {
+        if (pieces.remove(piece) && listener != null) { // Remove the piece from the list.
+            listener.pieceRemoved(piece);
+        }
+        hashValid = false;
+    }
+
+    // Method to check if the king of a specific color is in check.
+    public boolean isKingInCheck(PieceColor color) {
+        if (Metrics.isEnabled()) {
+            Metrics.increment(Metrics.Counter.CHECK_TESTS);
+        }
+        Pieces king = findKing(color); // Find the king of the specified color.
+        if (king == null) { // If no king is found, return false.
+            return false;
+        }
+        return isSquareAttacked(king.getRow(), king.getColumn(), color.opposite());
+    }
+
+    // Method to check if any piece of a color attacks a square. Each piece is
+    // tested by its movement pattern and, for sliding pieces, a clear path, so no
+    // move lists are built.
+    public boolean isSquareAttacked(int row, int column, PieceColor color) {
+        for (Pieces piece : pieces) {
+            if (piece.getColor() == color && attacks(piece, row, column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Private method to check if a piece attacks a square.
+    private boolean attacks(Pieces piece, int row, int column) {
+        int rowDiff = row - piece.getRow();
+        int colDiff = column - piece.getColumn();
+        if (rowDiff == 0 && colDiff == 0) {
+            return false;
+        }
+        if (piece instanceof ChessPieces.Pawn) {
+            return Math.abs(colDiff) == 1 && rowDiff == piece.getColor().pawnDirection();
+        }
+        if (piece instanceof ChessPieces.Knight) {
+            return (Square.knightTargets(piece.getSquare()) & Square.bit(Square.of(row, column))) != 0;
+        }
+        if (piece instanceof ChessPieces.King) {
+            return (Square.kingTargets(piece.getSquare()) & Square.bit(Square.of(row, column))) != 0;
+        }
+        boolean straight = rowDiff == 0 || colDiff == 0;
+        boolean diagonal = Math.abs(rowDiff) == Math.abs(colDiff);
+        boolean aligned = piece instanceof ChessPieces.Rook ? straight
+                : piece instanceof ChessPieces.Bishop ? diagonal : straight || diagonal;
+        return aligned && isPathClear(piece.getRow(), piece.getColumn(), row, column);
+    }
+
+    // Private method to check that every square strictly between two squares on
+    // a line is empty.
+    private boolean isPathClear(int fromRow, int fromColumn, int toRow, int toColumn) {
+        int rowStep = Integer.signum(toRow - fromRow);
+        int colStep = Integer.signum(toColumn - fromColumn);
+        for (int row = fromRow + rowStep, col = fromColumn + colStep; row != toRow || col != toColumn;
+                row += rowStep, col += colStep) {
+            if (getPieceAt(row, col) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Private method to find the king of a specific color on the board.
+    private Pieces findKing(PieceColor color) {
+        // Loop through all pieces to find the king of the specified color.
+        for (Pieces piece : pieces) {
+            if (piece instanceof ChessPieces.King && piece.getColor() == color) {
+                return piece; // Return the king if found.
+            }
+        }
+        return null; // Return null if no king is found.
+    }
+
+    // Method to check if a move leaves the king in check.
+    public boolean moveLeavesKingInCheck(Pieces piece, int newRow, int newColumn) {
+        int oldRow = piece.getRow(); // Store the piece's current row.
+        int oldColumn = piece.getColumn(); // Store the piece's current column.
+        Pieces targetPiece = getPieceAt(newRow, newColumn); // Get any piece at the new position.
+        if (targetPiece == null && piece instanceof ChessPieces.Pawn && newColumn != oldColumn) {
+            targetPiece = getPieceAt(oldRow, newColumn); // An en passant capture.
+        }
+
+        // Temporarily move the piece to the new position.
+        piece.setRow(newRow);
+        piece.setColumn(newColumn);
+        if (targetPiece != null) {
+            pieces.remove(targetPiece); // Remove the target piece if it exists.
+        }
+
+        // Check if the move leaves the king in check.
+        boolean kingInCheck = isKingInCheck(piece.getColor());
+
+        // Revert the piece to its original position.
+        piece.setRow(oldRow);
+        piece.setColumn(oldColumn);
+        if (targetPiece != null) {
+            pieces.add(targetPiece); // Re-add the target piece if it was removed.
+        }
+
+        return kingInCheck; // Return whether the move leaves the king in check.
+    }
+
+    // Method to get the target squares, as a bit set, of the moves of a piece that
+    // do not leave its own king in check, including castling when all of its
+    // conditions are met.
+    public long getLegalMovesAvoidingCheck(Pieces piece) {
+        if (Metrics.isEnabled()) {
+            Metrics.increment(Metrics.Counter.MOVE_GENERATION);
+        }
+        long legalMoves = 0;
+        boolean isKing = piece instanceof ChessPieces.King;
+        for (long targets = piece.getLegalMoves(); targets != 0; targets &= targets - 1) {
+            int target = Long.numberOfTrailingZeros(targets);
+            if (isKing && Math.abs(Square.column(target) - piece.getColumn()) == 2) {
+                continue; // Castling moves are checked below.
+            }
+            if (!moveLeavesKingInCheck(piece, Square.row(target), Square.column(target))) {
+                legalMoves |= Square.bit(target);
+            }
+        }
+        if (isKing && !((ChessPieces.King) piece).hasMoved() && !isKingInCheck(piece.getColor())) {
+            legalMoves |= castlingTarget(piece, 7, 1); // Kingside
+            legalMoves |= castlingTarget(piece, 0, -1); // Queenside
+        }
+        return legalMoves;
+    }
+
+    // Method to check whether a single move is legal for the side to move:
+    // turn, piece movement, path clearance, castling rights and en passant, and
+    // that the own king is not left in check. No move lists are generated, so
+    // this is the cheap way to validate a move submitted by a player. A pawn
+    // reaching the last rank may leave the promotion empty for a queen.
+    public boolean isLegal(Move move) {
+        if (!Metrics.isEnabled()) {
+            return checkLegal(move);
+        }
+        long start = System.nanoTime();
+        boolean legal = checkLegal(move);
+        Metrics.moveValidated(System.nanoTime() - start, legal);
+        return legal;
+    }
+
+    private boolean checkLegal(Move move) {
+        int fromRow = move.getFromRow();
+        int fromColumn = move.getFromColumn();
+        int toRow = move.getToRow();
+        int toColumn = move.getToColumn();
+        if (!Square.isOnBoard(fromRow, fromColumn) || !Square.isOnBoard(toRow, toColumn)
+                || (fromRow == toRow && fromColumn == toColumn)) {
+            return false;
+        }
+        PieceColor color = getSideToMove();
+        Pieces piece = getPieceAt(fromRow, fromColumn);
+        if (piece == null || piece.getColor() != color || isPositionOccupiedBySameColor(toRow, toColumn, color)) {
+            return false;
+        }
+        PieceType promotion = move.getPromotion();
+        boolean promoting = piece instanceof ChessPieces.Pawn && (toRow == 0 || toRow == 7);
+        if (promotion != null && (!promoting || !isPromotionChoice(promotion))) {
+            return false;
+        }
+
+        if (piece instanceof ChessPieces.King && fromRow == toRow && Math.abs(toColumn - fromColumn) == 2) {
+            int direction = toColumn > fromColumn ? 1 : -1;
+            return !((ChessPieces.King) piece).hasMoved() && !isKingInCheck(color)
+                    && canCastle(piece, direction > 0 ? 7 : 0, direction);
+        }
+        if (!piece.isValidMove(toRow, toColumn)) {
+            return false; // Wrong movement pattern; pawns also check the target squares here.
+        }
+        boolean sliding = piece instanceof ChessPieces.Rook || piece instanceof ChessPieces.Bishop
+                || piece instanceof ChessPieces.Queen;
+        if (sliding && !isPathClear(fromRow, fromColumn, toRow, toColumn)) {
+            return false;
+        }
+        return !moveLeavesKingInCheck(piece, toRow, toColumn);
+    }
+
+    private boolean isPromotionChoice(PieceType promotion) {
+        for (PieceType choice : PROMOTION_CHOICES) {
+            if (choice == promotion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Method to check whether a side has at least one legal move. It stops at the
+    // first one found and tries the likeliest candidates first: king moves, then
+    // captures, then the remaining moves. Castling is never needed, since the king
+    // can castle only if it can also step to the square next to it.
+    public boolean hasAnyLegalMove(PieceColor color) {
+        Pieces king = findKing(color);
+        if (king != null) {
+            for (long targets = king.getLegalMoves(); targets != 0; targets &= targets - 1) {
+                int target = Long.numberOfTrailingZeros(targets);
+                if (Math.abs(Square.column(target) - king.getColumn()) < 2
+                        && !moveLeavesKingInCheck(king, Square.row(target), Square.column(target))) {
+                    return true;
+                }
+            }
+        }
+
+        // Work on a copy of the list, since checking moves removes and re-adds captured pieces.
+        Pieces[] candidates = pieces.toArray(new Pieces[0]);
+        long[] quietMoves = new long[candidates.length];
+        long enemies = getOccupancy(color.opposite());
+        for (int i = 0; i < candidates.length; i++) {
+            Pieces piece = candidates[i];
+            if (piece == king || piece.getColor() != color) {
+                continue;
+            }
+            long moves = piece.getLegalMoves();
+            for (long captures = moves & enemies; captures != 0; captures &= captures - 1) {
+                int target = Long.numberOfTrailingZeros(captures);
+                if (!moveLeavesKingInCheck(piece, Square.row(target), Square.column(target))) {
+                    return true; // A legal capture.
+                }
+            }
+            quietMoves[i] = moves & ~enemies;
+        }
+        for (int i = 0; i < candidates.length; i++) {
+            for (long moves = quietMoves[i]; moves != 0; moves &= moves - 1) {
+                int target = Long.numberOfTrailingZeros(moves);
+                if (!moveLeavesKingInCheck(candidates[i], Square.row(target), Square.column(target))) {
+                    return true; // A legal quiet move.
+                }
+            }
+        }
+        return false;
+    }
+
+    // Method to check whether neither side can ever checkmate: only kings remain,
+    // or a single knight or bishop, or only bishops that all stand on squares of
+    // the same color.
+    public boolean isInsufficientMaterial() {
+        int minorPieces = 0;
+        boolean knights = false;
+        int bishopSquareColors = 0; // Bit 0 for light squares, bit 1 for dark squares.
+        for (Pieces piece : pieces) {
+            if (piece instanceof ChessPieces.King) {
+                continue;
+            }
+            if (piece instanceof ChessPieces.Knight) {
+                knights = true;
+            } else if (piece instanceof ChessPieces.Bishop) {
+                bishopSquareColors |= 1 << ((piece.getRow() + piece.getColumn()) & 1);
+            } else {
+                return false; // A pawn, rook or queen can always mate.
+            }
+            minorPieces++;
+        }
+        return minorPieces <= 1 || (!knights && bishopSquareColors != 3);
+    }
+
+    // Method to get the state of the game for the side to move. Checkmate and
+    // stalemate take precedence over the draw rules.
+    public GameStatus gameStatus() {
+        PieceColor color = getSideToMove();
+        if (!hasAnyLegalMove(color)) {
+            return isKingInCheck(color) ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
+        }
+        if (isInsufficientMaterial()) {
+            return GameStatus.INSUFFICIENT_MATERIAL;
+        }
+        if (isFiftyMoveDraw()) {
+            return GameStatus.FIFTY_MOVE_RULE;
+        }
+        if (isThreefoldRepetition()) {
+            return GameStatus.THREEFOLD_REPETITION;
+        }
+        return GameStatus.ONGOING;
+    }
+
+    // Method to list every legal move of one side, with one move per promotion
+    // piece for pawns reaching the last rank.
+    public List<Move> generateLegalMoves(PieceColor color) {
+        List<Move> moves = new ArrayList<>();
+        // Iterate over a copy of the list, since checking moves removes and re-adds captured pieces.
+        for (Pieces piece : pieces.toArray(new Pieces[0])) {
+            if (piece.getColor() != color) {
+                continue;
+            }
+            for (long targets = getLegalMovesAvoidingCheck(piece); targets != 0; targets &= targets - 1) {
+                int target = Long.numberOfTrailingZeros(targets);
+                int row = Square.row(target);
+                int column = Square.column(target);
+                if (piece instanceof ChessPieces.Pawn && (row == 0 || row == 7)) {
+                    for (PieceType promotion : PROMOTION_CHOICES) {
+                        moves.add(new Move(piece.getRow(), piece.getColumn(), row, column, promotion));
+                    }
+                } else {
+                    moves.add(new Move(piece.getRow(), piece.getColumn(), row, column));
+                }
+            }
+        }
+        return moves;
+    }
+
+    // Method to play a move, including captures, castling and promotion, and
+    // record it so that it can be undone. The move is assumed to be legal.
+    public void makeMove(Move move) {
+        int fromRow = move.getFromRow();
+        int toRow = move.getToRow();
+        int toColumn = move.getToColumn();
+        Pieces piece = getPieceAt(fromRow, move.getFromColumn());
+        Pieces targetPiece = getPieceAt(toRow, toColumn);
+        boolean pawnMove = piece instanceof ChessPieces.Pawn;
+        if (targetPiece == null && pawnMove && toColumn != move.getFromColumn()) {
+            targetPiece = getPieceAt(fromRow, toColumn); // An en passant capture.
+        }
+        int castlingRights = getCastlingRights();
+        long newHash = getHash() ^ Zobrist.piece(piece, fromRow, move.getFromColumn())
+                ^ Zobrist.enPassant(enPassantSquare);
+
+        int flags = 0;
+        if (piece instanceof ChessPieces.King) {
+            flags |= ((ChessPieces.King) piece).hasMoved() ? 0 : GameRecord.KING_UNMOVED;
+            flags |= Math.abs(toColumn - move.getFromColumn()) == 2 ? GameRecord.CASTLED : 0;
+        } else if (piece instanceof ChessPieces.Rook) {
+            flags |= ((ChessPieces.Rook) piece).hasMoved() ? 0 : GameRecord.ROOK_UNMOVED;
+        }
+        record.push(move, piece, targetPiece, flags, halfmoveClock, enPassantSquare, hash);
+
+        if (targetPiece != null) {
+            pieces.remove(targetPiece); // Capture the target piece.
+            newHash ^= Zobrist.piece(targetPiece, targetPiece.getRow(), targetPiece.getColumn());
+            if (listener != null) {
+                listener.pieceRemoved(targetPiece);
+            }
+        }
+        if ((flags & GameRecord.CASTLED) != 0) {
+            boolean kingSide = toColumn == 6;
+            Pieces rook = getPieceAt(fromRow, kingSide ? 7 : 0);
+            newHash ^= Zobrist.piece(rook, fromRow, kingSide ? 7 : 0) ^ Zobrist.piece(rook, fromRow, kingSide ? 5 : 3);
+            castleRooks(kingSide, piece.isWhite()); // Move the rook as well.
+            if (listener != null) {
+                listener.pieceMoved(rook, fromRow * 8 + (kingSide ? 7 : 0));
+            }
+        }
+        if (piece instanceof ChessPieces.King) {
+            ((ChessPieces.King) piece).movedPiece();
+        } else if (piece instanceof ChessPieces.Rook) {
+            ((ChessPieces.Rook) piece).movedPiece();
+        }
+        movePiece(piece, toRow, toColumn);
+
+        Pieces placed = piece;
+        if (pawnMove && (toRow == 0 || toRow == 7)) {
+            PieceType promotion = move.getPromotion() != null ? move.getPromotion() : PieceType.QUEEN;
+            placed = ChessPieceFactory.createPiece(promotion, toRow, toColumn, piece.getColor(), this);
+            pieces.remove(piece); // Replace the pawn with the promoted piece.
+            pieces.add(placed);
+            record.setPromoted(placed);
+        }
+        if (listener != null) {
+            listener.pieceMoved(piece, fromRow * 8 + move.getFromColumn());
+            if (placed != piece) {
+                listener.pieceRemoved(piece);
+                listener.pieceAdded(placed);
+            }
+        }
+        newHash ^= Zobrist.piece(placed, toRow, toColumn);
+
+        halfmoveClock = pawnMove || targetPiece != null ? 0 : halfmoveClock + 1;
+        enPassantSquare = pawnMove && Math.abs(toRow - fromRow) == 2 ? (fromRow + toRow) / 2 * 8 + toColumn : -1;
+        whiteToMove = !whiteToMove;
+        hash = newHash ^ Zobrist.castling(castlingRights) ^ Zobrist.castling(getCastlingRights())
+                ^ Zobrist.enPassant(enPassantSquare) ^ Zobrist.blackToMove();
+        record.setHash(hash);
+    }
+
+    // Method to take back the last move. Returns false if there is none.
+    public boolean undoMove() {
+        if (!record.canUndo()) {
+            return false;
+        }
+        int index = record.pop();
+        Move move = record.getMove(index);
+        Pieces piece = record.getMovedPiece(index);
+        Pieces promoted = record.getPromotedPiece(index);
+        int flags = record.getFlags(index);
+        int row = move.getFromRow();
+
+        if (promoted != null) {
+            pieces.remove(promoted); // Put the pawn back in place of the promoted piece.
+            pieces.add(piece);
+            if (listener != null) {
+                listener.pieceRemoved(promoted);
+                listener.pieceAdded(piece);
+            }
+        }
+        int toSquare = piece.getSquare();
+        movePiece(piece, row, move.getFromColumn());
+        if (listener != null) {
+            listener.pieceMoved(piece, toSquare);
+        }
+        if ((flags & GameRecord.KING_UNMOVED) != 0) {
+            ((ChessPieces.King) piece).setMoved(false);
+        } else if ((flags & GameRecord.ROOK_UNMOVED) != 0) {
+            ((ChessPieces.Rook) piece).setMoved(false);
+        }
+        if ((flags & GameRecord.CASTLED) != 0) {
+            boolean kingSide = move.getToColumn() == 6;
+            ChessPieces.Rook rook = (ChessPieces.Rook) getPieceAt(row, kingSide ? 5 : 3);
+            movePiece(rook, row, kingSide ? 7 : 0); // Castling requires an unmoved rook.
+            rook.setMoved(false);
+            if (listener != null) {
+                listener.pieceMoved(rook, row * 8 + (kingSide ? 5 : 3));
+            }
+        }
+        Pieces captured = record.getCapturedPiece(index);
+        if (captured != null) {
+            pieces.add(captured);
+            if (listener != null) {
+                listener.pieceAdded(captured);
+            }
+        }
+
+        whiteToMove = !whiteToMove;
+        halfmoveClock = record.getHalfmoveClock(index);
+        enPassantSquare = record.getEnPassantSquare(index);
+        hash = record.getHash(index);
+        hashValid = true;
+        return true;
+    }
+
+    // Method to play the last undone move again. Returns false if there is none.
+    public boolean redoMove() {
+        Move move = record.getRedoMove();
+        if (move == null) {
+            return false;
+        }
+        makeMove(move); // Playing the recorded move keeps the rest of the redo list.
+        return true;
+    }
+
+    // Private method to get the castling target square as a bit, or 0 unless the
+    // rook has not moved, the squares between king and rook are empty and the king
+    // does not pass through check.
+    private long castlingTarget(Pieces king, int rookColumn, int direction) {
+        return canCastle(king, rookColumn, direction) ? Square.mask(king.getRow(), king.getColumn() + 2 * direction) : 0;
+    }
+
+    // Private method to check the castling conditions that concern the squares:
+    // the king is on its home square, the rook is unmoved, nothing stands
+    // between them, and the king does not pass through or land on an attacked
+    // square.
+    private boolean canCastle(Pieces king, int rookColumn, int direction) {
+        int row = king.getRow();
+        if (row != (king.isWhite() ? 7 : 0) || king.getColumn() != 4) {
+            return false; // An unmoved flag alone does not put the king on e1 or e8
+        }
+        Pieces rook = getPieceAt(row, rookColumn);
+        if (!(rook instanceof ChessPieces.Rook) || ((ChessPieces.Rook) rook).hasMoved()
+                || rook.getColor() != king.getColor()) {
+            return false;
+        }
+        for (int col = king.getColumn() + direction; col != rookColumn; col += direction) {
+            if (getPieceAt(row, col) != null) {
+                return false; // A piece stands between the king and the rook.
+            }
+        }
+        int passColumn = king.getColumn() + direction;
+        int targetColumn = king.getColumn() + 2 * direction;
+        return !moveLeavesKingInCheck(king, row, passColumn) && !moveLeavesKingInCheck(king, row, targetColumn);
+    }
+
+    // Private method to move a piece to a new position.
+    private void movePiece(Pieces piece, int row, int col) {
+        piece.setRow(row); // Set the piece's new row.
+        piece.setColumn(col); // Set the piece's new column.
+    }
+
+    // Method to handle castling for the rooks.
+    public void castleRooks(boolean kingSide, boolean white) {
+        int row = white ? 7 : 0; // Determine the row based on the color of the player.
+        int col = kingSide ? 7 : 0; // Determine the rook's initial column based on kingSide.
+        int newCol = kingSide ? 5 : 3; // Determine the rook's new column after castling.
+
+        Pieces rook = getPieceAt(row, col); // Get the rook at the specified position.
+        if (rook instanceof ChessPieces.Rook) { // Check if the piece is a rook.
+            ChessPieces.Rook castlingRook = (ChessPieces.Rook) rook;
+            if (!castlingRook.hasMoved()) { // Ensure the rook has not moved before.
+                movePiece(castlingRook, row, newCol); // Move the rook to its new position.
+                castlingRook.movedPiece(); // Mark the rook as having moved.
+            }
+        }
+    }
+
+}
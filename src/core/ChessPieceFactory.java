@@ -0,0 +1,48 @@
+public class ChessPieceFactory {
+
+    public static Pieces createPiece(PieceType type, int row, int column, PieceColor color, BoardState boardState) {
+        switch (type) {
+
+            case QUEEN:
+                return new ChessPieces.Queen(row, column, color, boardState);
+            case ROOK:
+                return new ChessPieces.Rook(row, column, color, boardState);
+            case BISHOP:
+                return new ChessPieces.Bishop(row, column, color, boardState);
+            case KNIGHT:
+                return new ChessPieces.Knight(row, column, color, boardState);
+            case PAWN:
+                return new ChessPieces.Pawn(row, column, color, boardState);
+            case KING:
+                return new ChessPieces.King(row, column, color, boardState);
+
+            default:
+                throw new IllegalArgumentException("Unknown piece type: " + type);
+        }
+    }
+
+    public static Pieces copyPiece(Pieces piece, BoardState boardState) {
+        if (piece instanceof ChessPieces.King) {
+            ChessPieces.King king = new ChessPieces.King(piece.getRow(), piece.getColumn(), piece.getColor(), boardState);
+            if (((ChessPieces.King) piece).hasMoved()) {
+                king.movedPiece();
+            }
+            return king;
+        } else if (piece instanceof ChessPieces.Rook) {
+            ChessPieces.Rook rook = new ChessPieces.Rook(piece.getRow(), piece.getColumn(), piece.getColor(), boardState);
+            if (((ChessPieces.Rook) piece).hasMoved()) {
+                rook.movedPiece();
+            }
+            return rook;
+        } else if (piece instanceof ChessPieces.Queen) {
+            return new ChessPieces.Queen(piece.getRow(), piece.getColumn(), piece.getColor(), boardState);
+        } else if (piece instanceof ChessPieces.Bishop) {
+            return new ChessPieces.Bishop(piece.getRow(), piece.getColumn(), piece.getColor(), boardState);
+        } else if (piece instanceof ChessPieces.Knight) {
+            return new ChessPieces.Knight(piece.getRow(), piece.getColumn(), piece.getColor(), boardState);
+        } else if (piece instanceof ChessPieces.Pawn) {
+            return new ChessPieces.Pawn(piece.getRow(), piece.getColumn(), piece.getColor(), boardState);
+        }
+        throw new IllegalArgumentException("Unknown piece: " + piece);
+    }
+}
@@ -1,14 +1,9 @@
-import javax.swing.ImageIcon;
-import java.awt.Graphics;
-import java.util.ArrayList;
-import java.util.List;
-
 public class ChessPieces {
 
     /**
      * The {@code Queen} class represents a Queen piece in a chess game.
      * It extends the {@link Pieces} class and includes specific behavior
-     * for the Queen piece, such as valid moves and drawing the piece.
+     * for the Queen piece, such as valid moves.
      */
     public static class Queen extends Pieces {
         private BoardState boardState;
@@ -19,33 +14,14 @@ public class ChessPieces {
          *
          * @param row        The row position of the Queen on the chessboard.
          * @param column     The column position of the Queen on the chessboard.
-         * @param color      The color of the Queen piece ("w" for white, "b" for
-         *                   black).
+         * @param color      The color of the Queen piece.
          * @param boardState The current state of the chessboard.
          */
-        public Queen(int row, int column, String color, BoardState boardState) {
+        public Queen(int row, int column, PieceColor color, BoardState boardState) {
             super(row, column, color);
             this.boardState = boardState;
         }
 
-        /**
-         * Draws the Queen piece on the chessboard.
-         *
-         * @param g        The {@code Graphics} context to use for drawing the piece.
-         * @param x        The x-coordinate where the piece should be drawn.
-         * @param y        The y-coordinate where the piece should be drawn.
-         * @param tileSize The size of the tile on which the piece is drawn.
-         */
-        @Override
-        public void draw(Graphics g, int x, int y, int tileSize) {
-            ImageIcon icon = getIcon();
-            if (icon != null) {
-                g.drawImage(icon.getImage(), x, y, tileSize, tileSize, null);
-            } else {
-                System.err.println("Error: Icon not found for path: " + getIconPath());
-            }
-        }
-
         /**
          * Determines if the Queen can move to the specified position.
          * The Queen can move horizontally, vertically, or diagonally.
@@ -60,47 +36,53 @@ public class ChessPieces {
         }
 
         /**
-         * Returns a list of all legal moves for the Queen from its current position.
+         * Returns the target squares of all legal moves for the Queen from its current position.
          * The legal moves include all possible vertical, horizontal, and diagonal
          * moves.
          *
-         * @return A list of legal moves in the format "e2", "d4", etc.
+         * @return The target squares as a bit set, bit {@code row * 8 + column}.
          */
         @Override
-        public List<String> getLegalMoves() {
-            List<String> legalMoves = new ArrayList<>();
+        public long getLegalMoves() {
+            long own = boardState.getOccupancy(color);
+            long occupied = own | boardState.getOccupancy(color.opposite());
+            long legalMoves = 0;
 
             // Add all possible vertical, horizontal, and diagonal moves
-            addMovesInDirection(legalMoves, 1, 0); // Down
-            addMovesInDirection(legalMoves, -1, 0); // Up
-            addMovesInDirection(legalMoves, 0, 1); // Right
-            addMovesInDirection(legalMoves, 0, -1); // Left
-            addMovesInDirection(legalMoves, 1, 1); // Down-right
-            addMovesInDirection(legalMoves, 1, -1); // Down-left
-            addMovesInDirection(legalMoves, -1, 1); // Up-right
-            addMovesInDirection(legalMoves, -1, -1); // Up-left
+            legalMoves |= movesInDirection(own, occupied, 1, 0); // Down
+            legalMoves |= movesInDirection(own, occupied, -1, 0); // Up
+            legalMoves |= movesInDirection(own, occupied, 0, 1); // Right
+            legalMoves |= movesInDirection(own, occupied, 0, -1); // Left
+            legalMoves |= movesInDirection(own, occupied, 1, 1); // Down-right
+            legalMoves |= movesInDirection(own, occupied, 1, -1); // Down-left
+            legalMoves |= movesInDirection(own, occupied, -1, 1); // Up-right
+            legalMoves |= movesInDirection(own, occupied, -1, -1); // Up-left
 
             return legalMoves;
         }
 
         /**
-         * Adds legal moves in a specific direction to the provided list.
+         * Returns the target squares in a specific direction.
          * This method iterates through the board in the specified direction
          * until it hits the edge of the board, a piece of the same color, or an
          * opponent's piece.
          *
-         * @param legalMoves The list to which the legal moves are added.
-         * @param rowDelta   The row increment (positive, negative, or zero).
-         * @param colDelta   The column increment (positive, negative, or zero).
+         * @param own      The squares occupied by pieces of this color.
+         * @param occupied The squares occupied by any piece.
+         * @param rowDelta The row increment (positive, negative, or zero).
+         * @param colDelta The column increment (positive, negative, or zero).
+         * @return The target squares as a bit set.
          */
-        private void addMovesInDirection(List<String> legalMoves, int rowDelta, int colDelta) {
+        private long movesInDirection(long own, long occupied, int rowDelta, int colDelta) {
+            long targets = 0;
             int currentRow = row + rowDelta;
             int currentColumn = column + colDelta;
 
-            while (currentRow >= 0 && currentRow < 8 && currentColumn >= 0 && currentColumn < 8) {
-                if (!boardState.isPositionOccupiedBySameColor(currentRow, currentColumn, this.color)) {
-                    legalMoves.add(convertToPosition(currentRow, currentColumn));
-                    if (boardState.getPieceAt(currentRow, currentColumn) != null) {
+            while (Square.isOnBoard(currentRow, currentColumn)) {
+                long bit = Square.bit(Square.of(currentRow, currentColumn));
+                if ((own & bit) == 0) {
+                    targets |= bit;
+                    if ((occupied & bit) != 0) {
                         break; // Stop if another piece is in the way
                     }
                 } else {
@@ -109,23 +91,24 @@ public class ChessPieces {
                 currentRow += rowDelta;
                 currentColumn += colDelta;
             }
+            return targets;
         }
 
         /**
-         * Returns the initial letter representing the Queen piece.
+         * Returns the type of the Queen piece.
          *
-         * @return 'q' for Queen.
+         * @return {@link PieceType#QUEEN}.
          */
         @Override
-        protected char getPieceInitial() {
-            return 'q'; // 'q' for queen
+        public PieceType getType() {
+            return PieceType.QUEEN;
         }
     }
 
     /**
      * The {@code Pawn} class represents a Pawn piece in a chess game.
      * It extends the {@link Pieces} class and includes specific behavior
-     * for the Pawn piece, such as valid moves and drawing the piece.
+     * for the Pawn piece, such as valid moves.
      */
     public static class Pawn extends Pieces {
         private BoardState boardState;
@@ -136,32 +119,14 @@ public class ChessPieces {
          *
          * @param row        The row position of the Pawn on the chessboard.
          * @param column     The column position of the Pawn on the chessboard.
-         * @param color      The color of the Pawn piece ("w" for white, "b" for black).
+         * @param color      The color of the Pawn piece.
          * @param boardState The current state of the chessboard.
          */
-        public Pawn(int row, int column, String color, BoardState boardState) {
+        public Pawn(int row, int column, PieceColor color, BoardState boardState) {
             super(row, column, color);
             this.boardState = boardState;
         }
 
-        /**
-         * Draws the Pawn piece on the chessboard.
-         *
-         * @param g        The {@code Graphics} context to use for drawing the piece.
-         * @param x        The x-coordinate where the piece should be drawn.
-         * @param y        The y-coordinate where the piece should be drawn.
-         * @param tileSize The size of the tile on which the piece is drawn.
-         */
-        @Override
-        public void draw(Graphics g, int x, int y, int tileSize) {
-            ImageIcon icon = getIcon();
-            if (icon != null) {
-                g.drawImage(icon.getImage(), x, y, tileSize, tileSize, null);
-            } else {
-                System.err.println("Error: Icon not found for path: " + getIconPath());
-            }
-        }
-
         /**
          * Determines if the Pawn can move to the specified position.
          * The Pawn has unique movement rules: it moves forward one square,
@@ -177,7 +142,7 @@ public class ChessPieces {
             int rowDiff = newRow - row;
             int colDiff = Math.abs(newColumn - column);
 
-            if (color.equals("white")) {
+            if (color == PieceColor.WHITE) {
                 // Standard single forward move
                 if (rowDiff == -1 && colDiff == 0 && boardState.getPieceAt(newRow, newColumn) == null) {
                     return true;
@@ -192,6 +157,10 @@ public class ChessPieces {
                         && !boardState.isPositionOccupiedBySameColor(newRow, newColumn, color)) {
                     return true;
                 }
+                // En passant capture of a pawn that just made a double step
+                if (rowDiff == -1 && colDiff == 1 && isEnPassantSquare(newRow, newColumn)) {
+                    return true;
+                }
             } else {
                 // Standard single forward move
                 if (rowDiff == 1 && colDiff == 0 && boardState.getPieceAt(newRow, newColumn) == null) {
@@ -207,62 +176,79 @@ public class ChessPieces {
                         && !boardState.isPositionOccupiedBySameColor(newRow, newColumn, color)) {
                     return true;
                 }
+                // En passant capture of a pawn that just made a double step
+                if (rowDiff == 1 && colDiff == 1 && isEnPassantSquare(newRow, newColumn)) {
+                    return true;
+                }
             }
 
             return false;
         }
 
         /**
-         * Returns a list of all legal moves for the Pawn from its current position.
+         * Checks if a square is the en passant square this Pawn may capture on: the
+         * square an opposing pawn skipped with a double step on the last move.
+         *
+         * @param newRow    The target row position.
+         * @param newColumn The target column position.
+         * @return {@code true} if the Pawn can capture en passant there.
+         */
+        private boolean isEnPassantSquare(int newRow, int newColumn) {
+            int captureRow = color == PieceColor.WHITE ? 2 : 5;
+            return newRow == captureRow && newColumn >= 0 && newColumn < 8
+                    && boardState.getEnPassantSquare() == newRow * 8 + newColumn;
+        }
+
+        /**
+         * Returns the target squares of all legal moves for the Pawn from its current position.
          * The legal moves include forward moves, initial double moves, and diagonal
-         * captures.
+         * captures, including en passant.
          *
-         * @return A list of legal moves in the format "e2", "d4", etc.
+         * @return The target squares as a bit set, bit {@code row * 8 + column}.
          */
         @Override
-        public List<String> getLegalMoves() {
-            List<String> legalMoves = new ArrayList<>();
+        public long getLegalMoves() {
+            long legalMoves = 0;
 
-            int direction = color.equals("white") ? -1 : 1;
-            int startRow = color.equals("white") ? 6 : 1;
+            int direction = color.pawnDirection();
+            int startRow = color == PieceColor.WHITE ? 6 : 1;
 
             // Single move forward
             if (isValidMove(row + direction, column)) {
-                legalMoves.add(convertToPosition(row + direction, column));
+                legalMoves |= Square.mask(row + direction, column);
             }
 
             // Double move forward from start position
             if (row == startRow && isValidMove(row + 2 * direction, column)) {
-                legalMoves.add(convertToPosition(row + 2 * direction, column));
+                legalMoves |= Square.mask(row + 2 * direction, column);
             }
 
             // Capture moves
             if (isValidMove(row + direction, column - 1)) {
-                legalMoves.add(convertToPosition(row + direction, column - 1));
+                legalMoves |= Square.mask(row + direction, column - 1);
             }
             if (isValidMove(row + direction, column + 1)) {
-                legalMoves.add(convertToPosition(row + direction, column + 1));
+                legalMoves |= Square.mask(row + direction, column + 1);
             }
 
             return legalMoves;
         }
 
         /**
-         * Returns the initial letter representing the Pawn piece.
+         * Returns the type of the Pawn piece.
          *
-         * @return 'p' for Pawn.
+         * @return {@link PieceType#PAWN}.
          */
         @Override
-        protected char getPieceInitial() {
-            return 'p'; // 'p' for pawn
+        public PieceType getType() {
+            return PieceType.PAWN;
         }
     }
 
     /**
      * The {@code Rook} class represents a Rook piece in a chess game.
      * It extends the {@link Pieces} class and includes specific behavior
-     * for the Rook piece, such as valid moves, castling logic, and drawing the
-     * piece.
+     * for the Rook piece, such as valid moves and castling logic.
      */
     public static class Rook extends Pieces {
         private BoardState boardState;
@@ -274,10 +260,10 @@ public class ChessPieces {
          *
          * @param row        The row position of the Rook on the chessboard.
          * @param column     The column position of the Rook on the chessboard.
-         * @param color      The color of the Rook piece ("w" for white, "b" for black).
+         * @param color      The color of the Rook piece.
          * @param boardState The current state of the chessboard.
          */
-        public Rook(int row, int column, String color, BoardState boardState) {
+        public Rook(int row, int column, PieceColor color, BoardState boardState) {
             super(row, column, color);
             this.boardState = boardState;
             this.hasMoved = false; // Initialize hasMoved to false since the Rook hasn't moved yet.
@@ -302,21 +288,12 @@ public class ChessPieces {
         }
 
         /**
-         * Draws the Rook piece on the chessboard.
+         * Sets whether the piece has moved. This is used when a move is taken back.
          *
-         * @param g        The {@code Graphics} context to use for drawing the piece.
-         * @param x        The x-coordinate where the piece should be drawn.
-         * @param y        The y-coordinate where the piece should be drawn.
-         * @param tileSize The size of the tile on which the piece is drawn.
+         * @param hasMoved {@code true} if the piece has moved.
          */
-        @Override
-        public void draw(Graphics g, int x, int y, int tileSize) {
-            ImageIcon icon = getIcon();
-            if (icon != null) {
-                g.drawImage(icon.getImage(), x, y, tileSize, tileSize, null);
-            } else {
-                System.err.println("Error: Icon not found for path: " + getIconPath());
-            }
+        public void setMoved(boolean hasMoved) {
+            this.hasMoved = hasMoved;
         }
 
         /**
@@ -333,42 +310,48 @@ public class ChessPieces {
         }
 
         /**
-         * Returns a list of all legal moves for the Rook from its current position.
+         * Returns the target squares of all legal moves for the Rook from its current position.
          * The legal moves include all possible vertical and horizontal moves.
          *
-         * @return A list of legal moves in the format "e2", "d4", etc.
+         * @return The target squares as a bit set, bit {@code row * 8 + column}.
          */
         @Override
-        public List<String> getLegalMoves() {
-            List<String> legalMoves = new ArrayList<>();
+        public long getLegalMoves() {
+            long own = boardState.getOccupancy(color);
+            long occupied = own | boardState.getOccupancy(color.opposite());
+            long legalMoves = 0;
 
             // Add all possible vertical and horizontal moves
-            addMovesInDirection(legalMoves, 1, 0); // Down
-            addMovesInDirection(legalMoves, -1, 0); // Up
-            addMovesInDirection(legalMoves, 0, 1); // Right
-            addMovesInDirection(legalMoves, 0, -1); // Left
+            legalMoves |= movesInDirection(own, occupied, 1, 0); // Down
+            legalMoves |= movesInDirection(own, occupied, -1, 0); // Up
+            legalMoves |= movesInDirection(own, occupied, 0, 1); // Right
+            legalMoves |= movesInDirection(own, occupied, 0, -1); // Left
 
             return legalMoves;
         }
 
         /**
-         * Adds legal moves in a specific direction to the provided list.
+         * Returns the target squares in a specific direction.
          * This method iterates through the board in the specified direction
          * until it hits the edge of the board, a piece of the same color, or an
          * opponent's piece.
          *
-         * @param legalMoves The list to which the legal moves are added.
-         * @param rowDelta   The row increment (positive, negative, or zero).
-         * @param colDelta   The column increment (positive, negative, or zero).
+         * @param own      The squares occupied by pieces of this color.
+         * @param occupied The squares occupied by any piece.
+         * @param rowDelta The row increment (positive, negative, or zero).
+         * @param colDelta The column increment (positive, negative, or zero).
+         * @return The target squares as a bit set.
          */
-        private void addMovesInDirection(List<String> legalMoves, int rowDelta, int colDelta) {
+        private long movesInDirection(long own, long occupied, int rowDelta, int colDelta) {
+            long targets = 0;
             int currentRow = row + rowDelta;
             int currentColumn = column + colDelta;
 
-            while (currentRow >= 0 && currentRow < 8 && currentColumn >= 0 && currentColumn < 8) {
-                if (!boardState.isPositionOccupiedBySameColor(currentRow, currentColumn, this.color)) {
-                    legalMoves.add(convertToPosition(currentRow, currentColumn));
-                    if (boardState.getPieceAt(currentRow, currentColumn) != null) {
+            while (Square.isOnBoard(currentRow, currentColumn)) {
+                long bit = Square.bit(Square.of(currentRow, currentColumn));
+                if ((own & bit) == 0) {
+                    targets |= bit;
+                    if ((occupied & bit) != 0) {
                         break; // Stop if another piece is in the way
                     }
                 } else {
@@ -377,23 +360,24 @@ public class ChessPieces {
                 currentRow += rowDelta;
                 currentColumn += colDelta;
             }
+            return targets;
         }
 
         /**
-         * Returns the initial letter representing the Rook piece.
+         * Returns the type of the Rook piece.
          *
-         * @return 'r' for Rook.
+         * @return {@link PieceType#ROOK}.
          */
         @Override
-        protected char getPieceInitial() {
-            return 'r'; // 'r' for rook
+        public PieceType getType() {
+            return PieceType.ROOK;
         }
     }
 
     /**
      * The {@code Knight} class represents a Knight piece in a chess game.
      * It extends the {@link Pieces} class and includes specific behavior
-     * for the Knight piece, such as valid moves and drawing the piece.
+     * for the Knight piece, such as valid moves.
      */
     public static class Knight extends Pieces {
         private BoardState boardState;
@@ -404,33 +388,14 @@ public class ChessPieces {
          *
          * @param row        The row position of the Knight on the chessboard.
          * @param column     The column position of the Knight on the chessboard.
-         * @param color      The color of the Knight piece ("w" for white, "b" for
-         *                   black).
+         * @param color      The color of the Knight piece.
          * @param boardState The current state of the chessboard.
          */
-        public Knight(int row, int column, String color, BoardState boardState) {
+        public Knight(int row, int column, PieceColor color, BoardState boardState) {
             super(row, column, color);
             this.boardState = boardState;
         }
 
-        /**
-         * Draws the Knight piece on the chessboard.
-         *
-         * @param g        The {@code Graphics} context to use for drawing the piece.
-         * @param x        The x-coordinate where the piece should be drawn.
-         * @param y        The y-coordinate where the piece should be drawn.
-         * @param tileSize The size of the tile on which the piece is drawn.
-         */
-        @Override
-        public void draw(Graphics g, int x, int y, int tileSize) {
-            ImageIcon icon = getIcon();
-            if (icon != null) {
-                g.drawImage(icon.getImage(), x, y, tileSize, tileSize, null);
-            } else {
-                System.err.println("Error: Icon not found for path: " + getIconPath());
-            }
-        }
-
         /**
          * Determines if the Knight can move to the specified position.
          * The Knight moves in an L-shape: two squares in one direction and one square
@@ -448,47 +413,32 @@ public class ChessPieces {
         }
 
         /**
-         * Returns a list of all legal moves for the Knight from its current position.
+         * Returns the target squares of all legal moves for the Knight from its current position.
          * The legal moves include all possible L-shaped moves.
          *
-         * @return A list of legal moves in the format "e2", "d4", etc.
+         * @return The target squares as a bit set, bit {@code row * 8 + column}.
          */
         @Override
-        public List<String> getLegalMoves() {
-            List<String> legalMoves = new ArrayList<>();
-            int[][] moves = {
-                    { 2, 1 }, { 2, -1 }, { -2, 1 }, { -2, -1 },
-                    { 1, 2 }, { 1, -2 }, { -1, 2 }, { -1, -2 }
-            };
-
-            for (int[] move : moves) {
-                int newRow = row + move[0];
-                int newColumn = column + move[1];
-                if (newRow >= 0 && newRow < 8 && newColumn >= 0 && newColumn < 8) {
-                    if (!boardState.isPositionOccupiedBySameColor(newRow, newColumn, this.color)) {
-                        legalMoves.add(convertToPosition(newRow, newColumn));
-                    }
-                }
-            }
-
-            return legalMoves;
+        public long getLegalMoves() {
+            // All L-shaped moves that do not land on a piece of the same color
+            return Square.knightTargets(getSquare()) & ~boardState.getOccupancy(color);
         }
 
         /**
-         * Returns the initial letter representing the Knight piece.
+         * Returns the type of the Knight piece.
          *
-         * @return 'n' for Knight.
+         * @return {@link PieceType#KNIGHT}.
          */
         @Override
-        protected char getPieceInitial() {
-            return 'n'; // 'n' for knight
+        public PieceType getType() {
+            return PieceType.KNIGHT;
         }
     }
 
     /**
      * The {@code Bishop} class represents a Bishop piece in a chess game.
      * It extends the {@link Pieces} class and includes specific behavior
-     * for the Bishop piece, such as valid moves and drawing the piece.
+     * for the Bishop piece, such as valid moves.
      */
     public static class Bishop extends Pieces {
         private BoardState boardState;
@@ -499,33 +449,14 @@ public class ChessPieces {
          *
          * @param row        The row position of the Bishop on the chessboard.
          * @param column     The column position of the Bishop on the chessboard.
-         * @param color      The color of the Bishop piece ("w" for white, "b" for
-         *                   black).
+         * @param color      The color of the Bishop piece.
          * @param boardState The current state of the chessboard.
          */
-        public Bishop(int row, int column, String color, BoardState boardState) {
+        public Bishop(int row, int column, PieceColor color, BoardState boardState) {
             super(row, column, color);
             this.boardState = boardState;
         }
 
-        /**
-         * Draws the Bishop piece on the chessboard.
-         *
-         * @param g        The {@code Graphics} context to use for drawing the piece.
-         * @param x        The x-coordinate where the piece should be drawn.
-         * @param y        The y-coordinate where the piece should be drawn.
-         * @param tileSize The size of the tile on which the piece is drawn.
-         */
-        @Override
-        public void draw(Graphics g, int x, int y, int tileSize) {
-            ImageIcon icon = getIcon();
-            if (icon != null) {
-                g.drawImage(icon.getImage(), x, y, tileSize, tileSize, null);
-            } else {
-                System.err.println("Error: Icon not found for path: " + getIconPath());
-            }
-        }
-
         /**
          * Determines if the Bishop can move to the specified position.
          * The Bishop moves diagonally any number of squares.
@@ -540,42 +471,48 @@ public class ChessPieces {
         }
 
         /**
-         * Returns a list of all legal moves for the Bishop from its current position.
+         * Returns the target squares of all legal moves for the Bishop from its current position.
          * The legal moves include all possible diagonal moves.
          *
-         * @return A list of legal moves in the format "e2", "d4", etc.
+         * @return The target squares as a bit set, bit {@code row * 8 + column}.
          */
         @Override
-        public List<String> getLegalMoves() {
-            List<String> legalMoves = new ArrayList<>();
+        public long getLegalMoves() {
+            long own = boardState.getOccupancy(color);
+            long occupied = own | boardState.getOccupancy(color.opposite());
+            long legalMoves = 0;
 
             // Add all possible diagonal moves
-            addMovesInDirection(legalMoves, 1, 1); // Down-right
-            addMovesInDirection(legalMoves, 1, -1); // Down-left
-            addMovesInDirection(legalMoves, -1, 1); // Up-right
-            addMovesInDirection(legalMoves, -1, -1); // Up-left
+            legalMoves |= movesInDirection(own, occupied, 1, 1); // Down-right
+            legalMoves |= movesInDirection(own, occupied, 1, -1); // Down-left
+            legalMoves |= movesInDirection(own, occupied, -1, 1); // Up-right
+            legalMoves |= movesInDirection(own, occupied, -1, -1); // Up-left
 
             return legalMoves;
         }
 
         /**
-         * Adds legal moves in a specific direction to the provided list.
+         * Returns the target squares in a specific direction.
          * This method iterates through the board in the specified direction
          * until it hits the edge of the board, a piece of the same color, or an
          * opponent's piece.
          *
-         * @param legalMoves The list to which the legal moves are added.
-         * @param rowDelta   The row increment (positive, negative, or zero).
-         * @param colDelta   The column increment (positive, negative, or zero).
+         * @param own      The squares occupied by pieces of this color.
+         * @param occupied The squares occupied by any piece.
+         * @param rowDelta The row increment (positive, negative, or zero).
+         * @param colDelta The column increment (positive, negative, or zero).
+         * @return The target squares as a bit set.
          */
-        private void addMovesInDirection(List<String> legalMoves, int rowDelta, int colDelta) {
+        private long movesInDirection(long own, long occupied, int rowDelta, int colDelta) {
+            long targets = 0;
             int currentRow = row + rowDelta;
             int currentColumn = column + colDelta;
 
-            while (currentRow >= 0 && currentRow < 8 && currentColumn >= 0 && currentColumn < 8) {
-                if (!boardState.isPositionOccupiedBySameColor(currentRow, currentColumn, this.color)) {
-                    legalMoves.add(convertToPosition(currentRow, currentColumn));
-                    if (boardState.getPieceAt(currentRow, currentColumn) != null) {
+            while (Square.isOnBoard(currentRow, currentColumn)) {
+                long bit = Square.bit(Square.of(currentRow, currentColumn));
+                if ((own & bit) == 0) {
+                    targets |= bit;
+                    if ((occupied & bit) != 0) {
                         break; // Stop if another piece is in the way
                     }
                 } else {
@@ -584,24 +521,24 @@ public class ChessPieces {
                 currentRow += rowDelta;
                 currentColumn += colDelta;
             }
+            return targets;
         }
 
         /**
-         * Returns the initial letter representing the Bishop piece.
+         * Returns the type of the Bishop piece.
          *
-         * @return 'b' for Bishop.
+         * @return {@link PieceType#BISHOP}.
          */
         @Override
-        protected char getPieceInitial() {
-            return 'b'; // 'b' for bishop
+        public PieceType getType() {
+            return PieceType.BISHOP;
         }
     }
 
     /**
      * The {@code King} class represents a King piece in a chess game.
      * It extends the {@link Pieces} class and includes specific behavior
-     * for the King piece, such as valid moves, castling logic, and drawing the
-     * piece.
+     * for the King piece, such as valid moves and castling logic.
      */
     public static class King extends Pieces {
         private BoardState boardState;
@@ -613,10 +550,10 @@ public class ChessPieces {
          *
          * @param row        The row position of the King on the chessboard.
          * @param column     The column position of the King on the chessboard.
-         * @param color      The color of the King piece ("w" for white, "b" for black).
+         * @param color      The color of the King piece.
          * @param boardState The current state of the chessboard.
          */
-        public King(int row, int column, String color, BoardState boardState) {
+        public King(int row, int column, PieceColor color, BoardState boardState) {
             super(row, column, color);
             this.boardState = boardState;
             this.hasMoved = false;
@@ -641,21 +578,12 @@ public class ChessPieces {
         }
 
         /**
-         * Draws the King piece on the chessboard.
+         * Sets whether the piece has moved. This is used when a move is taken back.
          *
-         * @param g        The {@code Graphics} context to use for drawing the piece.
-         * @param x        The x-coordinate where the piece should be drawn.
-         * @param y        The y-coordinate where the piece should be drawn.
-         * @param tileSize The size of the tile on which the piece is drawn.
+         * @param hasMoved {@code true} if the piece has moved.
          */
-        @Override
-        public void draw(Graphics g, int x, int y, int tileSize) {
-            ImageIcon icon = getIcon();
-            if (icon != null) {
-                g.drawImage(icon.getImage(), x, y, tileSize, tileSize, null);
-            } else {
-                System.err.println("Error: Icon not found for path: " + getIconPath());
-            }
+        public void setMoved(boolean hasMoved) {
+            this.hasMoved = hasMoved;
         }
 
         /**
@@ -674,47 +602,34 @@ public class ChessPieces {
         }
 
         /**
-         * Returns a list of all legal moves for the King from its current position.
+         * Returns the target squares of all legal moves for the King from its current position.
          * The legal moves include one square in any direction and castling moves if the
          * King has not moved yet.
          *
-         * @return A list of legal moves in the format "e2", "d4", etc.
+         * @return The target squares as a bit set, bit {@code row * 8 + column}.
          */
         @Override
-        public List<String> getLegalMoves() {
-            List<String> legalMoves = new ArrayList<>();
-            int[][] moves = {
-                    { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 },
-                    { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 }
-            };
-
-            for (int[] move : moves) {
-                int newRow = row + move[0];
-                int newColumn = column + move[1];
-                if (newRow >= 0 && newRow < 8 && newColumn >= 0 && newColumn < 8) {
-                    if (!boardState.isPositionOccupiedBySameColor(newRow, newColumn, this.color)) {
-                        legalMoves.add(convertToPosition(newRow, newColumn));
-                    }
-                }
-            }
+        public long getLegalMoves() {
+            // One square in any direction that is not occupied by a piece of the same color
+            long legalMoves = Square.kingTargets(getSquare()) & ~boardState.getOccupancy(color);
 
             // Add castling moves if the King has not moved yet
             if (!this.hasMoved) {
-                legalMoves.add(convertToPosition(row, column + 2)); // Kingside castling
-                legalMoves.add(convertToPosition(row, column - 2)); // Queenside castling
+                legalMoves |= Square.mask(row, column + 2); // Kingside castling
+                legalMoves |= Square.mask(row, column - 2); // Queenside castling
             }
 
             return legalMoves;
         }
 
         /**
-         * Returns the initial letter representing the King piece.
+         * Returns the type of the King piece.
          *
-         * @return 'k' for King.
+         * @return {@link PieceType#KING}.
          */
         @Override
-        protected char getPieceInitial() {
-            return 'k'; // 'k' for king
+        public PieceType getType() {
+            return PieceType.KING;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The {@code EngineEvents} class defines the Java Flight Recorder events
+ * emitted by {@link Metrics}. It is the only class that uses {@code jdk.jfr},
+ * and {@code Metrics} touches it only when that module is present, so the core
+ * still runs on a runtime image without it.
+ *
+ * <p>
+ * The events are disabled unless a recording enables them, e.g. with
+ * {@code -XX:StartFlightRecording}; the counters event is then sampled once a
+ * second by default.
+ */
+final class EngineEvents {
+    private EngineEvents() {
+    }
+
+    @Name("chess.MoveValidation")
+    @Label("Move Validation")
+    @Description("A move checked with BoardState.isLegal")
+    @Category({ "Chess", "Rules" })
+    @StackTrace(false)
+    static final class MoveValidation extends Event {
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+
+        @Label("Legal")
+        boolean legal;
+    }
+
+    @Name("chess.SearchIteration")
+    @Label("Search Iteration")
+    @Description("One completed depth of a background analysis")
+    @Category({ "Chess", "Engine" })
+    @StackTrace(false)
+    static final class SearchIteration extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Score")
+        int score;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("chess.Counters")
+    @Label("Engine Counters")
+    @Description("Running totals of the Metrics counters")
+    @Category({ "Chess" })
+    @Period("1 s")
+    @StackTrace(false)
+    static final class Counters extends Event {
+        @Label("Legal Move Generations")
+        long moveGenerations;
+
+        @Label("Check Tests")
+        long checkTests;
+
+        @Label("Search Nodes")
+        long searchNodes;
+
+        @Label("Cache Hits")
+        long cacheHits;
+
+        @Label("Cache Misses")
+        long cacheMisses;
+
+        @Label("Move Validations")
+        long moveValidations;
+    }
+
+    // Registers the periodic counters event; called once, when metrics are first enabled.
+    static void register() {
+        FlightRecorder.addPeriodicEvent(Counters.class, () -> {
+            Counters event = new Counters();
+            event.moveGenerations = Metrics.get(Metrics.Counter.MOVE_GENERATION);
+            event.checkTests = Metrics.get(Metrics.Counter.CHECK_TESTS);
+            event.searchNodes = Metrics.get(Metrics.Counter.SEARCH_NODES);
+            event.cacheHits = Metrics.get(Metrics.Counter.CACHE_HITS);
+            event.cacheMisses = Metrics.get(Metrics.Counter.CACHE_MISSES);
+            event.moveValidations = Metrics.get(Metrics.Counter.MOVE_VALIDATIONS);
+            event.commit();
+        });
+    }
+
+    static void moveValidation(long nanos, boolean legal) {
+        MoveValidation event = new MoveValidation();
+        if (event.isEnabled()) {
+            event.latency = nanos;
+            event.legal = legal;
+            event.commit();
+        }
+    }
+
+    static void searchIteration(int depth, int score, long nodes, long nanos) {
+        SearchIteration event = new SearchIteration();
+        if (event.isEnabled()) {
+            event.depth = depth;
+            event.score = score;
+            event.nodes = nodes;
+            event.elapsed = nanos;
+            event.commit();
+        }
+    }
+}
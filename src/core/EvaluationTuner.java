@@ -0,0 +1,566 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code EvaluationTuner} class fits the {@link Evaluator} weights to game
+ * results in the manner of Texel's tuning method: the evaluation of a position
+ * from White's side, passed through a logistic function, predicts White's
+ * score, and gradient descent lowers the log loss of those predictions over
+ * every labelled position.
+ *
+ * <p>
+ * Positions come from EPD or FEN lines that carry a result ("1-0", "0-1",
+ * "1/2-1/2" or "[1.0]", "[0.5]", "[0.0]"), from PGN games, where every
+ * position is labelled with the game's result, or from the labelled records
+ * of {@link PackedPositionWriter} shards. Positions that are in check or
+ * whose quiescence search score differs from their static evaluation are
+ * dropped, so only quiet positions are fitted. Because the evaluation is a sum
+ * of weights, each remaining position is kept as one signed feature index per
+ * piece in a flat {@code short} array, about 50 bytes a position; loading and
+ * every gradient computation are split into ranges on a {@link ForkJoinPool}.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core EvaluationTuner FILE... [options]
+ *   --epochs N      gradient steps over all positions (default 200)
+ *   --rate R        the Adam step size in centipawns (default 1)
+ *   --threads N     the size of the fork/join pool (default: all cores)
+ *   --weights FILE  the starting weights (default: the built-in ones)
+ *   --out FILE      where the tuned table is written (default tuned-weights.txt)
+ *   --limit N       the most positions to load
+ * </pre>
+ */
+public class EvaluationTuner {
+    private static final int LOAD_BLOCK = 1 << 16; // Lines or games read before they are processed in parallel
+    private static final int LOAD_SPLIT = 256; // Lines or games one task processes without splitting
+    private static final int GRADIENT_SPLIT = 1 << 14; // Positions one task processes without splitting
+    static final Pattern RESULT = Pattern.compile("1/2-1/2|1-0|0-1|\\[(1(\\.0*)?|0?\\.5|0(\\.0*)?)\\]");
+
+    private final ForkJoinPool pool;
+    private final Evaluator evaluator; // Decides which positions are quiet
+
+    private short[] features = new short[1 << 20]; // Per piece: +-(1 + type * 64 + square seen from White)
+    private int[] offsets = new int[1 << 16]; // Position i uses features[offsets[i] .. offsets[i + 1])
+    private byte[] results = new byte[1 << 16]; // White's score in half points
+    private int size;
+    private long skipped;
+
+    /**
+     * Creates a tuner without positions.
+     *
+     * @param threads   The parallelism of the fork/join pool.
+     * @param evaluator The evaluation used to find quiet positions.
+     */
+    public EvaluationTuner(int threads, Evaluator evaluator) {
+        this.pool = new ForkJoinPool(threads);
+        this.evaluator = evaluator;
+    }
+
+    public int getPositionCount() {
+        return size;
+    }
+
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Adds the quiet, labelled positions of a file. Files ending in ".pgn" are
+     * read as games, files ending in ".pos" as packed positions, others as one
+     * EPD or FEN record per line.
+     *
+     * @param file  The file.
+     * @param limit Stop once this many positions are held in total.
+     * @throws IOException If the file cannot be read.
+     */
+    public void load(Path file, int limit) throws IOException {
+        boolean pgn = file.getFileName().toString().toLowerCase().endsWith(".pgn");
+        List<String> block = new ArrayList<>(LOAD_BLOCK);
+        if (file.getFileName().toString().toLowerCase().endsWith(".pos")) {
+            loadPacked(file, limit, block);
+            return;
+        }
+        StringBuilder game = new StringBuilder();
+        boolean inMoves = false;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = reader.readLine()) != null && size < limit) {
+                if (!pgn) {
+                    block.add(line);
+                } else {
+                    // A tag after movetext starts the next game.
+                    if (line.startsWith("[") && inMoves) {
+                        block.add(game.toString());
+                        game.setLength(0);
+                        inMoves = false;
+                    }
+                    inMoves |= !line.isBlank() && !line.startsWith("[");
+                    game.append(line).append('\n');
+                }
+                if (block.size() == LOAD_BLOCK) {
+                    append(pool.invoke(new LoadTask(block, 0, block.size(), pgn)), limit);
+                    block.clear();
+                }
+            }
+        }
+        if (game.length() > 0) {
+            block.add(game.toString());
+        }
+        if (!block.isEmpty() && size < limit) {
+            append(pool.invoke(new LoadTask(block, 0, block.size(), pgn)), limit);
+        }
+    }
+
+    // Reads packed positions as EPD lines, so the quiet filter runs on them in
+    // parallel like on any other line; records without a result are skipped.
+    private void loadPacked(Path file, int limit, List<String> block) throws IOException {
+        String[] labels = { " [0.0]", " [0.5]", " [1.0]" };
+        PackedPositionWriter.forEach(file, words -> {
+            int result = PackedPosition.getResult(words);
+            if (size >= limit) {
+                return;
+            }
+            if (result == PackedPosition.NO_RESULT) {
+                skipped++;
+                return;
+            }
+            block.add(PackedPosition.toPosition(words).toFen()
+                    + labels[result]);
+            if (block.size() == LOAD_BLOCK) {
+                append(pool.invoke(new LoadTask(block, 0, block.size(), false)), limit);
+                block.clear();
+            }
+        });
+        if (!block.isEmpty() && size < limit) {
+            append(pool.invoke(new LoadTask(block, 0, block.size(), false)), limit);
+        }
+    }
+
+    // Copies the positions of a batch into the flat arrays, growing them as needed.
+    private void append(Samples batch, int limit) {
+        skipped += batch.skipped;
+        int count = Math.min(batch.size, limit - size);
+        int featureCount = batch.offsets[count];
+        int start = size == 0 ? 0 : offsets[size];
+        if (start + featureCount > features.length) {
+            features = Arrays.copyOf(features, Math.max(features.length * 2, start + featureCount));
+        }
+        if (size + count + 1 > offsets.length) {
+            int capacity = Math.max(offsets.length * 2, size + count + 1);
+            offsets = Arrays.copyOf(offsets, capacity);
+            results = Arrays.copyOf(results, capacity);
+        }
+        System.arraycopy(batch.features, 0, features, start, featureCount);
+        for (int i = 0; i < count; i++) {
+            offsets[size + i] = start + batch.offsets[i];
+            results[size + i] = batch.results[i];
+        }
+        size += count;
+        offsets[size] = start + featureCount;
+    }
+
+    /**
+     * Finds the scale of the logistic function that best fits the results with
+     * the given weights, by golden-section search on the log loss.
+     *
+     * @param weights The weights.
+     * @return The scale: a lead of {@code x} centipawns predicts a score of
+     *         {@code 1 / (1 + exp(-scale * x))}.
+     */
+    public double fitScale(double[] weights) {
+        double low = 1e-4;
+        double high = 0.05;
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        for (int i = 0; i < 40; i++) {
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            if (loss(weights, a) < loss(weights, b)) {
+                high = b;
+            } else {
+                low = a;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    /**
+     * Computes the mean log loss over all positions.
+     *
+     * @param weights The weights, indexed like {@link Evaluator#getWeights()}.
+     * @param scale   The scale of the logistic function.
+     * @return The loss.
+     */
+    public double loss(double[] weights, double scale) {
+        return pool.invoke(new GradientTask(weights, scale, 0, size, false))[Evaluator.WEIGHT_COUNT] / size;
+    }
+
+    /**
+     * Runs gradient descent with the Adam update rule, one step per epoch over
+     * all positions.
+     *
+     * @param weights The starting weights; they are updated in place.
+     * @param scale   The scale of the logistic function.
+     * @param epochs  The number of steps.
+     * @param rate    The step size in centipawns.
+     */
+    public void tune(double[] weights, double scale, int epochs, double rate) {
+        double beta1 = 0.9;
+        double beta2 = 0.999;
+        double[] mean = new double[weights.length];
+        double[] variance = new double[weights.length];
+        for (int epoch = 1; epoch <= epochs; epoch++) {
+            long start = System.nanoTime();
+            double[] gradient = pool.invoke(new GradientTask(weights, scale, 0, size, true));
+            double correction1 = 1 - Math.pow(beta1, epoch);
+            double correction2 = 1 - Math.pow(beta2, epoch);
+            for (int i = 0; i < weights.length; i++) {
+                double g = gradient[i] / size;
+                mean[i] = beta1 * mean[i] + (1 - beta1) * g;
+                variance[i] = beta2 * variance[i] + (1 - beta2) * g * g;
+                weights[i] -= rate * (mean[i] / correction1) / (Math.sqrt(variance[i] / correction2) + 1e-12);
+            }
+            if (epoch == 1 || epoch % 10 == 0 || epoch == epochs) {
+                System.out.printf("Epoch %d: loss %.6f, %.0f ms%n", epoch, gradient[weights.length] / size,
+                        (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+
+    // Turns one EPD/FEN line or PGN game into samples, or counts it as skipped.
+    private void extract(String text, boolean pgn, Search search, Samples samples) {
+        if (!pgn) {
+            String line = text.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                return;
+            }
+            String[] fields = line.split("\\s+", 5);
+            Matcher result = fields.length >= 5 ? RESULT.matcher(fields[4]) : null;
+            if (result == null || !result.find()) {
+                samples.skipped++;
+                return;
+            }
+            try {
+                sample(Position.fromFen(line).toBoardState(), halfPoints(result.group()), search, samples);
+            } catch (IllegalArgumentException e) {
+                samples.skipped++;
+            }
+            return;
+        }
+
+        String fen = Position.START_FEN;
+        int result = -1;
+        StringBuilder movetext = new StringBuilder();
+        for (String line : text.split("\n")) {
+            if (line.startsWith("[FEN \"")) {
+                fen = line.substring(6, line.lastIndexOf('"'));
+            } else if (line.startsWith("[Result \"")) {
+                Matcher matcher = RESULT.matcher(line);
+                result = matcher.find() ? halfPoints(matcher.group()) : -1;
+            } else if (!line.startsWith("[")) {
+                movetext.append(line).append('\n');
+            }
+        }
+        if (result < 0) {
+            samples.skipped++;
+            return;
+        }
+        String moves = mainLine(movetext);
+        try {
+            BoardState board = Position.fromFen(fen).toBoardState();
+            for (String token : moves.trim().split("\\s+")) {
+                if (token.isEmpty() || token.matches("\\d+\\.+|1-0|0-1|1/2-1/2|\\*")) {
+                    continue;
+                }
+                board.makeMove(Notation.parseSan(board, token.replaceFirst("^\\d+\\.+", "")));
+                sample(board, result, search, samples);
+            }
+        } catch (IllegalArgumentException e) {
+            samples.skipped++; // The rest of a game with an unreadable move is lost
+        }
+    }
+
+    // Adds a position if it is quiet: not in check, and no capture sequence
+    // changes its evaluation.
+    private void sample(BoardState board, int result, Search search, Samples samples) {
+        boolean white = board.isWhiteToMove();
+        if (board.isKingInCheck(board.getSideToMove()) || board.gameStatus().isOver()
+                || search.search(board, 0, -Search.INFINITY, Search.INFINITY, 0, new ArrayList<>()) != evaluator
+                        .evaluate(board, white)) {
+            samples.skipped++;
+            return;
+        }
+        List<Pieces> pieces = board.getPieces();
+        samples.ensureCapacity(pieces.size());
+        for (Pieces piece : pieces) {
+            int square = piece.isWhite() ? piece.getSquare() : piece.getSquare() ^ 56;
+            int feature = 1 + piece.getType().ordinal() * 64 + square;
+            samples.features[samples.featureCount++] = (short) (piece.isWhite() ? feature : -feature);
+        }
+        samples.results[samples.size++] = (byte) result;
+        samples.offsets[samples.size] = samples.featureCount;
+    }
+
+    // Returns PGN movetext without comments, variations and annotation glyphs,
+    // which are not moves of the game. Variations nest, so they are skipped by
+    // depth, and comments are skipped whole since they may hold parentheses.
+    static String mainLine(CharSequence movetext) {
+        StringBuilder moves = new StringBuilder(movetext.length());
+        int depth = 0;
+        for (int i = 0; i < movetext.length(); i++) {
+            char c = movetext.charAt(i);
+            if (c == '{' || c == ';') {
+                char end = c == '{' ? '}' : '\n';
+                while (i + 1 < movetext.length() && movetext.charAt(i + 1) != end) {
+                    i++;
+                }
+                i++;
+                moves.append(' ');
+            } else if (c == '(') {
+                depth++;
+                moves.append(' ');
+            } else if (c == ')') {
+                depth = Math.max(0, depth - 1);
+                moves.append(' ');
+            } else if (depth == 0) {
+                moves.append(c);
+            }
+        }
+        return moves.toString().replaceAll("\\$\\d+", " ");
+    }
+
+    // Returns White's score in half points for a result such as "1-0" or "[0.5]".
+    static int halfPoints(String result) {
+        switch (result) {
+            case "1-0":
+                return 2;
+            case "0-1":
+                return 0;
+            case "1/2-1/2":
+                return 1;
+            default:
+                return (int) Math.round(Double.parseDouble(result.substring(1, result.length() - 1)) * 2);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        int epochs = 200;
+        double rate = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path weightsFile = null;
+        Path out = Paths.get("tuned-weights.txt");
+        int limit = Integer.MAX_VALUE;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                files.add(Paths.get(args[i]));
+                continue;
+            }
+            if (i + 1 == args.length) {
+                System.err.println("Missing value for " + args[i]);
+                System.exit(2);
+            }
+            String value = args[++i];
+            switch (args[i - 1]) {
+                case "--epochs":
+                    epochs = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--weights":
+                    weightsFile = Paths.get(value);
+                    break;
+                case "--out":
+                    out = Paths.get(value);
+                    break;
+                case "--limit":
+                    limit = Integer.parseInt(value);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i - 1]);
+                    System.exit(2);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: EvaluationTuner FILE... [--epochs N] [--rate R] [--threads N] "
+                    + "[--weights FILE] [--out FILE] [--limit N]");
+            System.exit(2);
+        }
+
+        Evaluator start = weightsFile != null ? Evaluator.load(weightsFile) : new Evaluator();
+        EvaluationTuner tuner = new EvaluationTuner(threads, start);
+        long loadStart = System.nanoTime();
+        for (Path file : files) {
+            tuner.load(file, limit);
+        }
+        System.out.printf("Loaded %d quiet positions (%d skipped) in %.1f s%n", tuner.getPositionCount(),
+                tuner.getSkippedCount(), (System.nanoTime() - loadStart) / 1e9);
+        if (tuner.getPositionCount() == 0) {
+            return;
+        }
+
+        double[] weights = Arrays.stream(start.getWeights()).asDoubleStream().toArray();
+        double scale = tuner.fitScale(weights);
+        System.out.printf("Scale %.6f, starting loss %.6f%n", scale, tuner.loss(weights, scale));
+        tuner.tune(weights, scale, epochs, rate);
+
+        int[] tuned = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            tuned[i] = (int) Math.round(weights[i]);
+        }
+        tuned[Evaluator.MATERIAL_OFFSET + PieceType.KING.ordinal()] = 0; // Cancels out; keep it readable
+        Evaluator.save(tuned, out);
+        System.out.println("Wrote " + out);
+    }
+
+    // The positions extracted by one load task.
+    private static final class Samples {
+        short[] features = new short[1024];
+        int[] offsets = new int[65];
+        byte[] results = new byte[64];
+        int featureCount;
+        int size;
+        long skipped;
+
+        void ensureCapacity(int pieces) {
+            if (featureCount + pieces > features.length) {
+                features = Arrays.copyOf(features, Math.max(features.length * 2, featureCount + pieces));
+            }
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                results = Arrays.copyOf(results, offsets.length);
+            }
+        }
+
+        // Appends another task's samples.
+        Samples merge(Samples other) {
+            skipped += other.skipped;
+            ensureCapacity(other.featureCount);
+            while (size + other.size + 1 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                results = Arrays.copyOf(results, offsets.length);
+            }
+            System.arraycopy(other.features, 0, features, featureCount, other.featureCount);
+            System.arraycopy(other.results, 0, results, size, other.size);
+            for (int i = 1; i <= other.size; i++) {
+                offsets[size + i] = featureCount + other.offsets[i];
+            }
+            size += other.size;
+            featureCount += other.featureCount;
+            return this;
+        }
+    }
+
+    // Extracts the positions of a range of lines or games, splitting it in halves.
+    @SuppressWarnings("serial") // Never serialized
+    private final class LoadTask extends RecursiveTask<Samples> {
+        private final List<String> texts;
+        private final int from;
+        private final int to;
+        private final boolean pgn;
+
+        LoadTask(List<String> texts, int from, int to, boolean pgn) {
+            this.texts = texts;
+            this.from = from;
+            this.to = to;
+            this.pgn = pgn;
+        }
+
+        @Override
+        protected Samples compute() {
+            if (to - from > LOAD_SPLIT) {
+                int middle = (from + to) >>> 1;
+                LoadTask right = new LoadTask(texts, middle, to, pgn);
+                right.fork();
+                Samples left = new LoadTask(texts, from, middle, pgn).compute();
+                return left.merge(right.join());
+            }
+            Search search = new Search(evaluator, new AtomicBoolean());
+            Samples samples = new Samples();
+            for (int i = from; i < to; i++) {
+                extract(texts.get(i), pgn, search, samples);
+            }
+            return samples;
+        }
+    }
+
+    // Sums the log loss, and optionally its gradient, over a range of positions.
+    // The result holds the gradient followed by the loss.
+    @SuppressWarnings("serial") // Never serialized
+    private final class GradientTask extends RecursiveTask<double[]> {
+        private final double[] weights;
+        private final double scale;
+        private final int from;
+        private final int to;
+        private final boolean withGradient;
+
+        GradientTask(double[] weights, double scale, int from, int to, boolean withGradient) {
+            this.weights = weights;
+            this.scale = scale;
+            this.from = from;
+            this.to = to;
+            this.withGradient = withGradient;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from > GRADIENT_SPLIT) {
+                int middle = (from + to) >>> 1;
+                GradientTask right = new GradientTask(weights, scale, middle, to, withGradient);
+                right.fork();
+                double[] sum = new GradientTask(weights, scale, from, middle, withGradient).compute();
+                double[] other = right.join();
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += other[i];
+                }
+                return sum;
+            }
+            double[] sum = new double[Evaluator.WEIGHT_COUNT + 1];
+            short[] features = EvaluationTuner.this.features;
+            int[] offsets = EvaluationTuner.this.offsets;
+            for (int i = from; i < to; i++) {
+                double eval = 0;
+                for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                    int feature = features[j];
+                    int index = Math.abs(feature) - 1;
+                    double value = weights[Evaluator.MATERIAL_OFFSET + (index >> 6)]
+                            + weights[Evaluator.PSQT_OFFSET + index];
+                    eval += feature > 0 ? value : -value;
+                }
+                double target = results[i] / 2.0;
+                double predicted = 1 / (1 + Math.exp(-scale * eval));
+                // Log loss, with the prediction kept away from 0 and 1
+                double p = Math.min(Math.max(predicted, 1e-12), 1 - 1e-12);
+                sum[Evaluator.WEIGHT_COUNT] -= target * Math.log(p) + (1 - target) * Math.log(1 - p);
+                if (withGradient) {
+                    double slope = scale * (predicted - target);
+                    for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+                        int feature = features[j];
+                        int index = Math.abs(feature) - 1;
+                        double signed = feature > 0 ? slope : -slope;
+                        sum[Evaluator.MATERIAL_OFFSET + (index >> 6)] += signed;
+                        sum[Evaluator.PSQT_OFFSET + index] += signed;
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+}
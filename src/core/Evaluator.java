@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The {@code Evaluator} class scores a position in centipawns from the point of
+ * view of the side to move. The score is the sum of material values and
+ * piece-square bonuses; all weights live in one flat table so they can be
+ * replaced as a whole.
+ *
+ * <p>
+ * Piece-square entries are given for white, indexed by {@code row * 8 + column}
+ * of this board (white starts on rows 6 and 7 and moves towards row 0). Black
+ * pieces use the entry of the square mirrored across the middle of the board.
+ */
+public class Evaluator {
+    // Piece types are indexed by PieceType ordinal in the weight table.
+    public static final int PIECE_TYPES = PieceType.values().length;
+    public static final int MATERIAL_OFFSET = 0;
+    public static final int PSQT_OFFSET = PIECE_TYPES;
+    public static final int WEIGHT_COUNT = PIECE_TYPES + PIECE_TYPES * 64;
+
+    private static final int[] DEFAULT_MATERIAL = { 100, 320, 330, 500, 900, 0 };
+
+    private final int[] weights;
+
+    public Evaluator() {
+        this(defaultWeights());
+    }
+
+    public Evaluator(int[] weights) {
+        if (weights.length != WEIGHT_COUNT) {
+            throw new IllegalArgumentException("Expected " + WEIGHT_COUNT + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    public int[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Reads a weight table written by {@link #save(int[], Path)}: the material
+     * values and then the 64 piece-square entries of each piece type, as
+     * whitespace-separated integers. Lines starting with '#' are comments.
+     *
+     * @param file The table.
+     * @return An evaluator with those weights.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If it does not hold {@value #WEIGHT_COUNT} integers.
+     */
+    public static Evaluator load(Path file) throws IOException {
+        int[] weights = new int[WEIGHT_COUNT];
+        int count = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            for (String token : line.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                if (count == WEIGHT_COUNT) {
+                    throw new IllegalArgumentException("More than " + WEIGHT_COUNT + " weights in " + file);
+                }
+                try {
+                    weights[count++] = Integer.parseInt(token);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad weight '" + token + "' in " + file);
+                }
+            }
+        }
+        return new Evaluator(weights);
+    }
+
+    /**
+     * Writes a weight table that {@link #load(Path)} reads: one line of material
+     * values, then each piece type's piece-square entries as eight rows of eight.
+     *
+     * @param weights The weights.
+     * @param file    The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(int[] weights, Path file) throws IOException {
+        if (weights.length != WEIGHT_COUNT) {
+            throw new IllegalArgumentException("Expected " + WEIGHT_COUNT + " weights, got " + weights.length);
+        }
+        StringBuilder text = new StringBuilder("# Material: pawn knight bishop rook queen king\n");
+        for (int type = 0; type < PIECE_TYPES; type++) {
+            text.append(type > 0 ? " " : "").append(weights[MATERIAL_OFFSET + type]);
+        }
+        text.append('\n');
+        for (PieceType type : PieceType.values()) {
+            text.append("# ").append(type.getName()).append(", row 0 (rank 8) first, for white\n");
+            for (int row = 0; row < 8; row++) {
+                for (int column = 0; column < 8; column++) {
+                    text.append(String.format(Locale.ROOT, "%5d", weights[PSQT_OFFSET + type.ordinal() * 64 + row * 8 + column]));
+                }
+                text.append('\n');
+            }
+        }
+        Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Evaluates a position.
+     *
+     * @param boardState  The position to evaluate.
+     * @param whiteToMove {@code true} if white is to move.
+     * @return The score in centipawns for the side to move.
+     */
+    public int evaluate(BoardState boardState, boolean whiteToMove) {
+        int score = 0;
+        for (Pieces piece : boardState.getPieces()) {
+            int type = piece.getType().ordinal();
+            boolean white = piece.isWhite();
+            int square = piece.getSquare();
+            int value = weights[MATERIAL_OFFSET + type] + weights[PSQT_OFFSET + type * 64 + (white ? square : square ^ 56)];
+            score += white ? value : -value;
+        }
+        return whiteToMove ? score : -score;
+    }
+
+    // Returns the built-in weights: material plus simple advancement and
+    // centralisation bonuses.
+    public static int[] defaultWeights() {
+        int[] weights = new int[WEIGHT_COUNT];
+        System.arraycopy(DEFAULT_MATERIAL, 0, weights, MATERIAL_OFFSET, PIECE_TYPES);
+        for (int square = 0; square < 64; square++) {
+            int row = square / 8;
+            int column = square % 8;
+            int centre = 6 - (Math.abs(2 * row - 7) + Math.abs(2 * column - 7)) / 2; // 0 at corners, 6 in the middle
+            int advance = 6 - row; // Rows a white pawn has advanced from its start
+            weights[PSQT_OFFSET + square] = row == 0 || row == 7 ? 0 : advance * 5 + (column >= 2 && column <= 5 ? advance * 3 : 0);
+            weights[PSQT_OFFSET + 64 + square] = centre * 5 - 10; // Knight
+            weights[PSQT_OFFSET + 2 * 64 + square] = centre * 3; // Bishop
+            weights[PSQT_OFFSET + 3 * 64 + square] = row == 1 ? 15 : 0; // Rook on the seventh rank
+            weights[PSQT_OFFSET + 4 * 64 + square] = centre * 2; // Queen
+            weights[PSQT_OFFSET + 5 * 64 + square] = row == 7 && (column <= 2 || column >= 6) ? 20 : -centre * 3; // King
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code GameRecord} class stores the move history of a {@link BoardState}
+ * as one compact undo entry per ply, in parallel arrays: the move, the piece
+ * that moved, the piece it captured, the piece a pawn was promoted to, a few
+ * flags and the half-move clock, en passant square and hash from before the
+ * move. Undo and redo
+ * only move the current ply back and forth, so both are constant time; entries
+ * after the current ply are kept for redo until a different move is played.
+ *
+ * <p>
+ * The hashes of the last {@value #RING_SIZE} positions are also kept in a ring
+ * indexed by ply. Repetition checks walk that ring back in steps of two plies
+ * (same side to move) and stop at the last capture or pawn move, since no
+ * earlier position can repeat. The record is cheap enough to be used by the
+ * search for draw detection.
+ */
+public class GameRecord {
+    static final int KING_UNMOVED = 1; // The moving king had not moved before
+    static final int ROOK_UNMOVED = 2; // The moving rook had not moved before
+    static final int CASTLED = 4; // The move castled and also moved a rook
+
+    private static final int RING_SIZE = 256; // Larger than the 100 plies of the fifty-move rule
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Move[] moves = new Move[INITIAL_CAPACITY];
+    private Pieces[] movedPieces = new Pieces[INITIAL_CAPACITY];
+    private Pieces[] capturedPieces = new Pieces[INITIAL_CAPACITY];
+    private Pieces[] promotedPieces = new Pieces[INITIAL_CAPACITY];
+    private byte[] flags = new byte[INITIAL_CAPACITY];
+    private int[] halfmoveClocks = new int[INITIAL_CAPACITY];
+    private byte[] enPassantSquares = new byte[INITIAL_CAPACITY];
+    private long[] hashes = new long[INITIAL_CAPACITY];
+    private final long[] ring = new long[RING_SIZE];
+
+    private int ply; // Number of moves played to reach the current position
+    private int length; // Number of recorded moves, including those that can be redone
+
+    // Starts a new history at the given position.
+    void reset(long hash) {
+        Arrays.fill(movedPieces, 0, length, null);
+        Arrays.fill(capturedPieces, 0, length, null);
+        Arrays.fill(promotedPieces, 0, length, null);
+        ply = 0;
+        length = 0;
+        ring[0] = hash;
+    }
+
+    // Records a move about to be played. Playing the move that would be redone
+    // keeps the rest of the redo list; any other move discards it.
+    void push(Move move, Pieces moved, Pieces captured, int moveFlags, int halfmoveClock, int enPassantSquare,
+            long hash) {
+        if (ply == moves.length) {
+            grow();
+        }
+        if (ply >= length || !move.equals(moves[ply])) {
+            length = ply + 1;
+        }
+        moves[ply] = move;
+        movedPieces[ply] = moved;
+        capturedPieces[ply] = captured;
+        promotedPieces[ply] = null;
+        flags[ply] = (byte) moveFlags;
+        halfmoveClocks[ply] = halfmoveClock;
+        enPassantSquares[ply] = (byte) enPassantSquare;
+        hashes[ply] = hash;
+        ply++;
+    }
+
+    // Records the piece a pawn was promoted to by the move just pushed.
+    void setPromoted(Pieces promoted) {
+        promotedPieces[ply - 1] = promoted;
+    }
+
+    // Records the hash of the position reached by the move just pushed.
+    void setHash(long hash) {
+        ring[ply & (RING_SIZE - 1)] = hash;
+    }
+
+    // Steps back one ply and returns the index of the entry to undo.
+    int pop() {
+        ply--;
+        ring[ply & (RING_SIZE - 1)] = hashes[ply]; // Restore in case a longer line overwrote it
+        return ply;
+    }
+
+    private void grow() {
+        int capacity = moves.length * 2;
+        moves = Arrays.copyOf(moves, capacity);
+        movedPieces = Arrays.copyOf(movedPieces, capacity);
+        capturedPieces = Arrays.copyOf(capturedPieces, capacity);
+        promotedPieces = Arrays.copyOf(promotedPieces, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        halfmoveClocks = Arrays.copyOf(halfmoveClocks, capacity);
+        enPassantSquares = Arrays.copyOf(enPassantSquares, capacity);
+        hashes = Arrays.copyOf(hashes, capacity);
+    }
+
+    Move getMove(int index) {
+        return moves[index];
+    }
+
+    Pieces getMovedPiece(int index) {
+        return movedPieces[index];
+    }
+
+    Pieces getCapturedPiece(int index) {
+        return capturedPieces[index];
+    }
+
+    Pieces getPromotedPiece(int index) {
+        return promotedPieces[index];
+    }
+
+    int getFlags(int index) {
+        return flags[index];
+    }
+
+    int getHalfmoveClock(int index) {
+        return halfmoveClocks[index];
+    }
+
+    int getEnPassantSquare(int index) {
+        return enPassantSquares[index];
+    }
+
+    long getHash(int index) {
+        return hashes[index];
+    }
+
+    public int getPly() {
+        return ply;
+    }
+
+    public boolean canUndo() {
+        return ply > 0;
+    }
+
+    public boolean canRedo() {
+        return ply < length;
+    }
+
+    // Returns the move that redo would play, or null.
+    public Move getRedoMove() {
+        return ply < length ? moves[ply] : null;
+    }
+
+    // Returns the moves played to reach the current position, oldest first.
+    public List<Move> getMoves() {
+        return new ArrayList<>(Arrays.asList(moves).subList(0, ply));
+    }
+
+    /**
+     * Counts how often the current position occurred before, looking back no
+     * further than the last irreversible move.
+     *
+     * @param hash          The hash of the current position.
+     * @param halfmoveClock Plies since the last capture or pawn move.
+     * @return The number of earlier occurrences.
+     */
+    public int countRepetitions(long hash, int halfmoveClock) {
+        int limit = Math.min(Math.min(halfmoveClock, ply), RING_SIZE - 1);
+        int count = 0;
+        for (int back = 4; back <= limit; back += 2) { // A repetition needs at least four plies
+            if (ring[(ply - back) & (RING_SIZE - 1)] == hash) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * The {@code GameStatus} enum describes whether a game is still going on and,
+ * if not, how it ended. It is returned by {@link BoardState#gameStatus()} for
+ * the side to move.
+ */
+public enum GameStatus {
+    ONGOING("Game in progress"),
+    CHECKMATE("Checkmate"),
+    STALEMATE("Stalemate"),
+    INSUFFICIENT_MATERIAL("Draw by insufficient material"),
+    FIFTY_MOVE_RULE("Draw by the fifty-move rule"),
+    THREEFOLD_REPETITION("Draw by threefold repetition");
+
+    private final String description;
+
+    GameStatus(String description) {
+        this.description = description;
+    }
+
+    /**
+     * Checks whether the game has ended.
+     *
+     * @return {@code true} for every status except {@link #ONGOING}.
+     */
+    public boolean isOver() {
+        return this != ONGOING;
+    }
+
+    /**
+     * Checks whether the game ended in a draw.
+     *
+     * @return {@code true} if the game is over and nobody was checkmated.
+     */
+    public boolean isDraw() {
+        return this != ONGOING && this != CHECKMATE;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code LegalMoveCache} class computes the legal moves of every piece on a
+ * background thread as soon as a position is committed, so that selecting a
+ * piece on the event thread is a single array lookup.
+ *
+ * <p>
+ * The worker rebuilds a private {@link BoardState} from an immutable
+ * {@link Position} snapshot, because computing legal moves temporarily moves
+ * pieces around. Each committed
+ * position gets a new version number; results for an older version are never
+ * returned, and {@link #getLegalMoves(int, int)} returns {@link #NOT_READY}
+ * until the worker has finished the current one so the caller can fall back to
+ * computing the moves itself.
+ */
+public class LegalMoveCache {
+    public static final long NOT_READY = -1L; // No piece can move to every square, including its own
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "legal-move-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Entry current; // Moves published by the worker
+    private int version; // Version of the committed position, only used on the event thread
+    private Future<?> pending; // Computation for the committed position
+
+    /**
+     * Discards the moves of the previous position and starts computing the moves
+     * of the given one. Must be called on the thread that owns the board.
+     *
+     * @param position The committed position.
+     */
+    public void positionChanged(Position position) {
+        int positionVersion = ++version;
+        if (pending != null) {
+            pending.cancel(false); // Not started yet, so it is no longer needed.
+        }
+        pending = worker.submit(() -> current = compute(position.toBoardState(), positionVersion));
+    }
+
+    /**
+     * Returns the legal moves of the piece on the given square of the committed
+     * position.
+     *
+     * @param row    The row of the piece.
+     * @param column The column of the piece.
+     * @return The target squares as a bit set, or {@link #NOT_READY} if the worker
+     *         has not finished yet.
+     */
+    public long getLegalMoves(int row, int column) {
+        Entry entry = current;
+        if (entry == null || entry.version != version) {
+            if (Metrics.isEnabled()) {
+                Metrics.increment(Metrics.Counter.CACHE_MISSES);
+            }
+            return NOT_READY;
+        }
+        if (Metrics.isEnabled()) {
+            Metrics.increment(Metrics.Counter.CACHE_HITS);
+        }
+        return entry.moves[Square.of(row, column)];
+    }
+
+    private static Entry compute(BoardState boardState, int version) {
+        long[] moves = new long[64];
+        // Iterate over a copy of the list, since checking moves removes and re-adds captured pieces
+        for (Pieces piece : boardState.getPieces().toArray(new Pieces[0])) {
+            moves[piece.getSquare()] = boardState.getLegalMovesAvoidingCheck(piece);
+        }
+        return new Entry(version, moves);
+    }
+
+    // The target squares of the pieces of one position, indexed by square.
+    private static final class Entry {
+        final int version;
+        final long[] moves;
+
+        Entry(int version, long[] moves) {
+            this.version = version;
+            this.moves = moves;
+        }
+    }
+}
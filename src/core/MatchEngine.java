@@ -0,0 +1,20 @@
+/**
+ * The {@code MatchEngine} interface is a player in a {@link Tournament}. An
+ * engine is created once per game and asked for one move at a time; it may
+ * keep state between moves but is only ever used by one thread.
+ */
+public interface MatchEngine {
+    /**
+     * Chooses a move.
+     *
+     * @param boardState The current position, with the game's history for
+     *                   repetition checks. It must be left unchanged.
+     * @param nodeLimit  The most nodes to search, or {@link Long#MAX_VALUE}.
+     * @param deadline   The {@link System#nanoTime()} by which to answer, or 0.
+     * @return A legal move; the side to move always has one.
+     */
+    Move chooseMove(BoardState boardState, long nodeLimit, long deadline);
+
+    /** The name written to the PGN tags and the report. */
+    String getName();
+}
@@ -0,0 +1,144 @@
+import java.util.Locale;
+
+/**
+ * The {@code MatchStatistics} class turns the wins, draws and losses of one
+ * engine against another into an Elo difference with a 95% confidence
+ * interval, and runs a sequential probability ratio test (SPRT) that decides,
+ * as early as the games allow, between the hypotheses that the engine is
+ * {@code elo0} or {@code elo1} Elo stronger.
+ *
+ * <p>
+ * The SPRT uses the usual normal approximation of the log-likelihood ratio
+ * for trinomial game results, with the score variance measured from the
+ * games played so far.
+ */
+public class MatchStatistics {
+    /** The outcome of the test so far. */
+    public enum Decision {
+        CONTINUE, ACCEPT_H0, ACCEPT_H1
+    }
+
+    private final double elo0;
+    private final double elo1;
+    private final double lowerBound; // ln(beta / (1 - alpha))
+    private final double upperBound; // ln((1 - beta) / alpha)
+
+    private int wins;
+    private int draws;
+    private int losses;
+
+    /**
+     * Sets up a test of H0: Elo = elo0 against H1: Elo = elo1.
+     *
+     * @param elo0  The Elo difference of the null hypothesis, e.g. 0.
+     * @param elo1  The Elo difference of the alternative hypothesis, e.g. 10.
+     * @param alpha The chance of accepting H1 when H0 is true.
+     * @param beta  The chance of accepting H0 when H1 is true.
+     */
+    public MatchStatistics(double elo0, double elo1, double alpha, double beta) {
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Adds one game from the tested engine's point of view.
+     *
+     * @param score 1 for a win, 0.5 for a draw and 0 for a loss.
+     */
+    public synchronized void add(double score) {
+        if (score > 0.5) {
+            wins++;
+        } else if (score < 0.5) {
+            losses++;
+        } else {
+            draws++;
+        }
+    }
+
+    public synchronized int getGames() {
+        return wins + draws + losses;
+    }
+
+    public synchronized double getScore() {
+        int games = getGames();
+        return games == 0 ? 0.5 : (wins + draws / 2.0) / games;
+    }
+
+    // The variance of a single game's score.
+    private double variance() {
+        int games = getGames();
+        double score = getScore();
+        return (wins * sq(1 - score) + draws * sq(0.5 - score) + losses * sq(score)) / games;
+    }
+
+    /**
+     * Returns the Elo difference and the ends of its 95% confidence interval.
+     *
+     * @return {lower, elo, upper}; all infinite when one side scored everything.
+     */
+    public synchronized double[] getElo() {
+        int games = getGames();
+        if (games == 0) {
+            return new double[] { 0, 0, 0 };
+        }
+        double score = getScore();
+        double margin = 1.959964 * Math.sqrt(variance() / games);
+        return new double[] { elo(score - margin), elo(score), elo(score + margin) };
+    }
+
+    /**
+     * Returns the log-likelihood ratio of H1 against H0.
+     *
+     * @return The ratio; 0 until both a win or loss and some variance are seen.
+     */
+    public synchronized double getLogLikelihoodRatio() {
+        int games = getGames();
+        double variance = games == 0 ? 0 : variance();
+        if (variance == 0) {
+            return 0;
+        }
+        double s0 = expectedScore(elo0);
+        double s1 = expectedScore(elo1);
+        return games * (s1 - s0) * (2 * getScore() - s0 - s1) / (2 * variance);
+    }
+
+    public synchronized Decision getDecision() {
+        double ratio = getLogLikelihoodRatio();
+        if (ratio >= upperBound) {
+            return Decision.ACCEPT_H1;
+        }
+        if (ratio <= lowerBound) {
+            return Decision.ACCEPT_H0;
+        }
+        return Decision.CONTINUE;
+    }
+
+    // Describes the results, e.g. "W 120 D 300 L 100, Elo +13.9 [-2.1, +29.9], LLR 1.20 [-2.94, 2.94]".
+    @Override
+    public synchronized String toString() {
+        double[] elo = getElo();
+        return String.format(Locale.ROOT, "W %d D %d L %d, Elo %+.1f [%+.1f, %+.1f], LLR %.2f [%.2f, %.2f]", wins,
+                draws, losses, elo[1], elo[0], elo[2], getLogLikelihoodRatio(), lowerBound, upperBound);
+    }
+
+    // The Elo difference at which a player is expected to score a fraction.
+    private static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    private static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double sq(double x) {
+        return x * x;
+    }
+}
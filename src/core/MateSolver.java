@@ -0,0 +1,491 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code MateSolver} class proves forced mates with depth-first
+ * proof-number search (df-pn) over the legal moves of {@link BoardState}. The
+ * side to move is the attacker: a position is proven when some attacker move
+ * leads to a position where every defence is proven, and the search always
+ * expands the most-proving node within thresholds, so narrow forcing lines are
+ * read deeply while wide ones are left alone. Checkmate after the last allowed
+ * attacker move proves a node; stalemate, draws by rule, repetitions and
+ * running out of moves disprove it.
+ *
+ * <p>
+ * Mates are searched for in 1, 2, ... up to N moves, so the first proof is
+ * the shortest. Proof and disproof numbers are kept in a table of bounded size
+ * keyed by the Zobrist hash and the remaining depth. Each key maps to a bucket
+ * of {@value #WAYS} entries; when a bucket is full, a solved entry is evicted
+ * first and otherwise the entry whose subtree took the least work. A solver
+ * holds one table and is used by one thread at a time; {@link #solveAll}
+ * spreads independent puzzles over a thread pool with a solver per thread.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core MateSolver FILE [--mate N] [--nodes N] [--table N] [--threads N]
+ * </pre>
+ *
+ * FILE holds one FEN per line; text after a ';' is ignored. One line is
+ * printed per puzzle, in input order.
+ */
+public class MateSolver {
+    public static final int MAX_MOVES = 32;
+    static final int INFINITY = Integer.MAX_VALUE / 4;
+    private static final int WAYS = 4;
+    private static final long[] DEPTH_KEYS = new long[2 * MAX_MOVES];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x4D415445L);
+        for (int i = 0; i < DEPTH_KEYS.length; i++) {
+            DEPTH_KEYS[i] = random.nextLong();
+        }
+    }
+
+    /** How a puzzle ended. */
+    public enum Status {
+        MATE, NO_MATE, UNKNOWN
+    }
+
+    private final long[] keys; // 0 for an empty entry
+    private final int[] proofs;
+    private final int[] disproofs;
+    private final int[] work; // Nodes spent below the entry, saturated
+    private final int mask;
+    private final long maxNodes;
+    private long nodes;
+    private long nodeLimit; // Nodes may be visited until this count
+    private boolean aborted;
+    private int proof; // The numbers of the node that mid() last returned from
+    private int disproof;
+
+    /**
+     * Creates a solver.
+     *
+     * @param tableEntries The size of the node store, rounded up to a power of two.
+     * @param maxNodes     The most nodes one puzzle may visit before it is given up.
+     */
+    public MateSolver(int tableEntries, long maxNodes) {
+        int size = Integer.highestOneBit(Math.max(WAYS, tableEntries - 1) << 1);
+        this.keys = new long[size];
+        this.proofs = new int[size];
+        this.disproofs = new int[size];
+        this.work = new int[size];
+        this.mask = size - 1;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Looks for the shortest forced mate for the side to move.
+     *
+     * @param position The puzzle.
+     * @param maxMoves The longest mate looked for, in moves of the attacker, at
+     *                 most {@value #MAX_MOVES}.
+     * @return The mate and its line, "no mate" within the limit, or "unknown" if
+     *         the node limit was reached first.
+     */
+    public Result solve(Position position, int maxMoves) {
+        if (maxMoves < 1 || maxMoves > MAX_MOVES) {
+            throw new IllegalArgumentException("Mate length must be between 1 and " + MAX_MOVES);
+        }
+        Arrays.fill(keys, 0);
+        nodes = 0;
+        nodeLimit = maxNodes;
+        aborted = false;
+        for (int moves = 1; moves <= maxMoves; moves++) {
+            BoardState board = position.toBoardState();
+            int remaining = 2 * moves - 1;
+            long key = key(board, remaining);
+            mid(board, key, remaining, INFINITY, INFINITY);
+            if (aborted) {
+                return new Result(Status.UNKNOWN, moves - 1, List.of(), List.of(), nodes);
+            }
+            if (proof == 0) {
+                return extractLine(position, moves);
+            }
+        }
+        return new Result(Status.NO_MATE, maxMoves, List.of(), List.of(), nodes);
+    }
+
+    private static long key(BoardState board, int remaining) {
+        return board.getHash() ^ DEPTH_KEYS[remaining];
+    }
+
+    // Expands a node until its proof number reaches thresholdProof or its
+    // disproof number reaches thresholdDisproof; leaves the numbers in proof
+    // and disproof. The attacker is to move when the remaining depth is odd.
+    private void mid(BoardState board, long key, int remaining, int thresholdProof, int thresholdDisproof) {
+        long start = nodes++;
+        if (nodes >= nodeLimit) {
+            aborted = true;
+        }
+        boolean attacker = (remaining & 1) == 1;
+        PieceColor side = board.getSideToMove();
+        List<Move> moves = board.generateLegalMoves(side);
+        if (moves.isEmpty()) {
+            boolean mated = !attacker && board.isKingInCheck(side);
+            setResult(key, mated ? 0 : INFINITY, mated ? INFINITY : 0, 1);
+            return;
+        }
+        if (remaining == 0) {
+            setResult(key, INFINITY, 0, 1); // The defender is still on his feet
+            return;
+        }
+        if (board.isFiftyMoveDraw() || board.isInsufficientMaterial()) {
+            proof = INFINITY; // Only reached at the root; children are checked below
+            disproof = 0;
+            return;
+        }
+
+        int count = moves.size();
+        long[] childKeys = new long[count];
+        // The children's numbers are read from the table once and then kept
+        // from what each search returns, so evictions cannot undo progress.
+        // Draws by repetition or the fifty-move rule depend on the path, not
+        // the key, so they are decided here and never stored.
+        int[] childProofs = new int[count];
+        int[] childDisproofs = new int[count];
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves.get(i));
+            childKeys[i] = key(board, remaining - 1);
+            if (board.isRepetition() || board.isFiftyMoveDraw() || board.isInsufficientMaterial()) {
+                childProofs[i] = INFINITY;
+                childDisproofs[i] = 0;
+            } else {
+                int index = find(childKeys[i]);
+                childProofs[i] = index >= 0 ? proofs[index] : 1;
+                childDisproofs[i] = index >= 0 ? disproofs[index] : 1;
+            }
+            board.undoMove();
+        }
+
+        while (true) {
+            int proofNumber = attacker ? INFINITY : 0;
+            int disproofNumber = attacker ? 0 : INFINITY;
+            int best = -1;
+            int bestValue = INFINITY + 1;
+            int secondValue = INFINITY;
+            int bestProof = 0;
+            int bestDisproof = 0;
+            for (int i = 0; i < count; i++) {
+                int childProof = childProofs[i];
+                int childDisproof = childDisproofs[i];
+                int value = attacker ? childProof : childDisproof;
+                if (attacker) {
+                    proofNumber = Math.min(proofNumber, childProof);
+                    disproofNumber = add(disproofNumber, childDisproof);
+                } else {
+                    proofNumber = add(proofNumber, childProof);
+                    disproofNumber = Math.min(disproofNumber, childDisproof);
+                }
+                if (value < bestValue) {
+                    secondValue = bestValue;
+                    bestValue = value;
+                    best = i;
+                    bestProof = childProof;
+                    bestDisproof = childDisproof;
+                } else if (value < secondValue) {
+                    secondValue = value;
+                }
+            }
+            if (proofNumber >= thresholdProof || disproofNumber >= thresholdDisproof || aborted) {
+                setResult(key, proofNumber, disproofNumber, nodes - start);
+                return;
+            }
+
+            int childThresholdProof;
+            int childThresholdDisproof;
+            if (attacker) {
+                childThresholdProof = Math.min(thresholdProof, add(secondValue, 1));
+                childThresholdDisproof = thresholdDisproof >= INFINITY ? INFINITY
+                        : thresholdDisproof - disproofNumber + bestDisproof;
+            } else {
+                childThresholdDisproof = Math.min(thresholdDisproof, add(secondValue, 1));
+                childThresholdProof = thresholdProof >= INFINITY ? INFINITY
+                        : thresholdProof - proofNumber + bestProof;
+            }
+            board.makeMove(moves.get(best));
+            mid(board, childKeys[best], remaining - 1, childThresholdProof, childThresholdDisproof);
+            board.undoMove();
+            childProofs[best] = proof;
+            childDisproofs[best] = disproof;
+        }
+    }
+
+    private static int add(int a, int b) {
+        return (int) Math.min(INFINITY, (long) a + b);
+    }
+
+    private void setResult(long key, int proofNumber, int disproofNumber, long spent) {
+        proof = proofNumber;
+        disproof = disproofNumber;
+        store(key, proofNumber, disproofNumber, spent);
+    }
+
+    private int find(long key) {
+        int bucket = (int) key & mask & -WAYS;
+        for (int i = bucket; i < bucket + WAYS; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Writes an entry, replacing an empty one, else a solved one, else the one
+    // with the least work below it.
+    private void store(long key, int proofNumber, int disproofNumber, long spent) {
+        int bucket = (int) key & mask & -WAYS;
+        int victim = -1;
+        for (int i = bucket; i < bucket + WAYS; i++) {
+            if (keys[i] == key) {
+                victim = i;
+                spent += work[i];
+                break;
+            }
+            if (victim < 0 || usefulness(i) < usefulness(victim)) {
+                victim = i;
+            }
+        }
+        keys[victim] = key;
+        proofs[victim] = proofNumber;
+        disproofs[victim] = disproofNumber;
+        work[victim] = (int) Math.min(Integer.MAX_VALUE, spent);
+    }
+
+    // Lower is evicted first: empty entries, then solved ones, then by work.
+    private long usefulness(int index) {
+        if (keys[index] == 0) {
+            return -1;
+        }
+        boolean solved = proofs[index] == 0 || disproofs[index] == 0;
+        return (solved ? 0 : 1L << 32) + work[index];
+    }
+
+    // Follows a proof from the root: the attacker plays a proven move and the
+    // defender the reply that delays the mate longest. Entries that were
+    // evicted are proven again, on a node budget of their own. The mate is
+    // proven either way, so if that budget runs out the line stops short.
+    private Result extractLine(Position position, int moves) {
+        nodeLimit = nodes + maxNodes;
+        BoardState board = position.toBoardState();
+        List<Move> line = new ArrayList<>();
+        List<String> san = new ArrayList<>();
+        for (int remaining = 2 * moves - 1; remaining > 0; remaining--) {
+            boolean attacker = (remaining & 1) == 1;
+            List<Move> legal = board.generateLegalMoves(board.getSideToMove());
+            if (legal.isEmpty()) {
+                break;
+            }
+            Move chosen = null;
+            int chosenDepth = -1;
+            // The attacker needs any move proven within the remaining depth, and
+            // one the table still holds saves proving the others again
+            for (int pass = attacker ? 0 : 1; pass < 2 && chosen == null; pass++) {
+                for (Move move : legal) {
+                    board.makeMove(move);
+                    int depth = mateDepth(board, attacker ? remaining - 1 : 1, remaining - 1, pass == 1);
+                    board.undoMove();
+                    if (depth <= remaining - 1 && depth > chosenDepth) {
+                        chosen = move;
+                        chosenDepth = depth;
+                        if (attacker) {
+                            break;
+                        }
+                    }
+                }
+            }
+            if (chosen == null || aborted) {
+                break; // The proof of this part was evicted and could not be redone
+            }
+            san.add(Notation.san(board, chosen));
+            board.makeMove(chosen);
+            line.add(chosen);
+            remaining = Math.min(remaining, chosenDepth + 1); // The defender may shorten the line
+        }
+        return new Result(Status.MATE, moves, line, san, nodes);
+    }
+
+    // Returns the smallest remaining depth, from minimum to maximum in steps of
+    // two, at which the attacker is proven to mate from this position, or
+    // INFINITY if there is none. The table is used where it has the answer,
+    // and the rest is searched only if prove is set.
+    private int mateDepth(BoardState board, int minimum, int maximum, boolean prove) {
+        for (int remaining = minimum; remaining <= maximum && !aborted; remaining += 2) {
+            long key = key(board, remaining);
+            int index = find(key);
+            if (index < 0 || (proofs[index] != 0 && disproofs[index] != 0)) {
+                if (!prove) {
+                    continue;
+                }
+                mid(board, key, remaining, INFINITY, INFINITY);
+                if (proof == 0) {
+                    return remaining;
+                }
+            } else if (proofs[index] == 0) {
+                return remaining;
+            }
+        }
+        return INFINITY;
+    }
+
+    /**
+     * Solves puzzles on a thread pool, one solver with its own table per thread.
+     *
+     * @param puzzles      The puzzles.
+     * @param maxMoves     The longest mate looked for.
+     * @param maxNodes     The node limit per puzzle.
+     * @param tableEntries The table size per thread.
+     * @param threads      The number of threads.
+     * @return The results in the order of the puzzles.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public static List<Result> solveAll(List<Position> puzzles, int maxMoves, long maxNodes, int tableEntries,
+            int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<MateSolver> solvers = ThreadLocal.withInitial(() -> new MateSolver(tableEntries, maxNodes));
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (Position puzzle : puzzles) {
+                futures.add(pool.submit(() -> solvers.get().solve(puzzle, maxMoves)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Solving failed", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: MateSolver FILE [--mate N] [--nodes N] [--table N] [--threads N]");
+            System.exit(2);
+        }
+        int maxMoves = 5;
+        long maxNodes = 5_000_000;
+        int table = 1 << 20;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--mate":
+                    maxMoves = Integer.parseInt(args[++i]);
+                    break;
+                case "--nodes":
+                    maxNodes = Long.parseLong(args[++i]);
+                    break;
+                case "--table":
+                    table = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        List<String> fens = new ArrayList<>();
+        List<Position> puzzles = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(args[0]))) {
+            String fen = line.split(";", 2)[0].trim();
+            if (!fen.isEmpty() && !fen.startsWith("#")) {
+                puzzles.add(Position.fromFen(fen));
+                fens.add(fen);
+            }
+        }
+        long start = System.nanoTime();
+        List<Result> results = solveAll(puzzles, maxMoves, maxNodes, table, threads);
+        int mates = 0;
+        for (int i = 0; i < results.size(); i++) {
+            System.out.println(fens.get(i) + " ; " + results.get(i));
+            mates += results.get(i).getStatus() == Status.MATE ? 1 : 0;
+        }
+        System.out.printf("%d of %d puzzles solved in %.1f s%n", mates, results.size(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    /** The outcome of one puzzle. */
+    public static final class Result {
+        private final Status status;
+        private final int moves;
+        private final List<Move> line;
+        private final List<String> sanLine;
+        private final long nodes;
+
+        Result(Status status, int moves, List<Move> line, List<String> sanLine, long nodes) {
+            this.status = status;
+            this.moves = moves;
+            this.line = List.copyOf(line);
+            this.sanLine = List.copyOf(sanLine);
+            this.nodes = nodes;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the mate length in moves for a mate, the limit for no mate, or
+         * the longest length ruled out before giving up.
+         *
+         * @return The number of attacker moves.
+         */
+        public int getMoves() {
+            return moves;
+        }
+
+        /**
+         * Returns the mating line for a mate, which stops short of the mate if
+         * part of the proof was evicted from the node store and could not be
+         * proven again within the node limit; otherwise an empty list.
+         *
+         * @return The moves of both sides from the puzzle position.
+         */
+        public List<Move> getLine() {
+            return line;
+        }
+
+        public List<String> getSanLine() {
+            return sanLine;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        // Describes the result, e.g. "mate in 2: Qh5+ Kg8 Qh7# (1234 nodes)".
+        @Override
+        public String toString() {
+            switch (status) {
+                case MATE:
+                    List<String> shown = new ArrayList<>(sanLine);
+                    if (shown.isEmpty() || !shown.get(shown.size() - 1).endsWith("#")) {
+                        shown.add("..."); // The line stops short of the mate
+                    }
+                    return "mate in " + moves + ": " + String.join(" ", shown) + " (" + nodes + " nodes)";
+                case NO_MATE:
+                    return "no mate within " + moves + " (" + nodes + " nodes)";
+                default:
+                    return "unknown, no mate within " + moves + " before the node limit (" + nodes + " nodes)";
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code MctsArena} class stores the nodes of a Monte Carlo search tree
+ * as parallel primitive arrays indexed by node number, so a tree of millions
+ * of nodes is a handful of objects and costs the garbage collector nothing.
+ * The children of a node are allocated together, at consecutive indices, by
+ * bumping a shared counter; {@link #reset()} recycles every node at once for
+ * the next search.
+ *
+ * <p>
+ * Several threads may search one arena. Visit counts, virtual losses and value
+ * sums are updated atomically through {@link VarHandle}s; expansion is claimed
+ * by a compare-and-set on the node's state and published with a release write,
+ * so a thread that sees a node as expanded also sees its children. Other reads
+ * are plain and may be slightly stale, which only blurs the selection.
+ */
+final class MctsArena {
+    static final int UNEXPANDED = 0;
+    static final int EXPANDING = 1;
+    static final int EXPANDED = 2;
+    static final long VALUE_ONE = 1 << 16; // Fixed-point scale of value sums
+    static final int BYTES_PER_NODE = 7 * Integer.BYTES + Long.BYTES;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    final int capacity;
+    final int[] moves; // from * 64 + to of the move leading to the node
+    final int[] firstChild;
+    final int[] childCount;
+    final int[] states;
+    final int[] visits;
+    final int[] virtualLosses;
+    final float[] priors;
+    final long[] values; // Sum of results for the side that made the move, in VALUE_ONE units
+    private final AtomicInteger used = new AtomicInteger();
+
+    MctsArena(int capacity) {
+        this.capacity = capacity;
+        moves = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        states = new int[capacity];
+        visits = new int[capacity];
+        virtualLosses = new int[capacity];
+        priors = new float[capacity];
+        values = new long[capacity];
+    }
+
+    /** Recycles every node; the next allocation starts at index 0. */
+    void reset() {
+        used.set(0);
+    }
+
+    int getUsed() {
+        return Math.min(used.get(), capacity);
+    }
+
+    long getMemoryBytes() {
+        return (long) getUsed() * BYTES_PER_NODE;
+    }
+
+    /**
+     * Allocates consecutive nodes and clears them.
+     *
+     * @param count The number of nodes.
+     * @return The index of the first, or -1 if the arena is full.
+     */
+    int allocate(int count) {
+        if (used.get() >= capacity) {
+            return -1; // Checked first so repeated failures cannot overflow the counter
+        }
+        int start = used.getAndAdd(count);
+        if (start + count > capacity) {
+            return -1;
+        }
+        for (int node = start; node < start + count; node++) {
+            moves[node] = 0;
+            firstChild[node] = -1;
+            childCount[node] = 0;
+            states[node] = UNEXPANDED;
+            visits[node] = 0;
+            virtualLosses[node] = 0;
+            priors[node] = 0;
+            values[node] = 0;
+        }
+        return start;
+    }
+
+    boolean claimExpansion(int node) {
+        return INTS.compareAndSet(states, node, UNEXPANDED, EXPANDING);
+    }
+
+    // Publishes the children of a node claimed for expansion; count may be 0 for
+    // a node without moves, or -1 if no space was left, which leaves it a leaf.
+    void finishExpansion(int node, int first, int count) {
+        if (count < 0) {
+            INTS.setRelease(states, node, UNEXPANDED);
+            return;
+        }
+        firstChild[node] = first;
+        childCount[node] = count;
+        INTS.setRelease(states, node, EXPANDED);
+    }
+
+    boolean isExpanded(int node) {
+        return (int) INTS.getAcquire(states, node) == EXPANDED;
+    }
+
+    void addVirtualLoss(int node) {
+        INTS.getAndAdd(virtualLosses, node, 1);
+    }
+
+    // Records one playout: a visit, its result for the side that made the move
+    // into the node, and the removal of the virtual loss added on the way down.
+    void update(int node, long value, boolean virtualLoss) {
+        INTS.getAndAdd(visits, node, 1);
+        LONGS.getAndAdd(values, node, value);
+        if (virtualLoss) {
+            INTS.getAndAdd(virtualLosses, node, -1);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code Metrics} class counts the work done on the hot paths of the rules
+ * and the engine: legal move generation, check tests, search nodes, legal move
+ * cache lookups and move validations, with a latency histogram for the
+ * validations. When the {@code jdk.jfr} module is present the same data is
+ * also emitted as Java Flight Recorder events (see {@link EngineEvents}), so a
+ * recording taken on a slow server shows where the time went.
+ *
+ * <p>
+ * Collection is off by default and can be switched at runtime with
+ * {@link #setEnabled(boolean)}, or at startup with {@code -Dchess.metrics=true}.
+ * Every call site checks {@link #isEnabled()} first, so a disabled layer costs
+ * one field read per call and records nothing.
+ */
+public final class Metrics {
+    /** The counted events. */
+    public enum Counter {
+        MOVE_GENERATION("legal move generations"),
+        CHECK_TESTS("check tests"),
+        SEARCH_NODES("search nodes"),
+        CACHE_HITS("legal move cache hits"),
+        CACHE_MISSES("legal move cache misses"),
+        MOVE_VALIDATIONS("move validations");
+
+        private final String description;
+
+        Counter(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private static final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private static final Histogram validationLatency = new Histogram();
+    private static final boolean jfrAvailable = ModuleLayer.boot().findModule("jdk.jfr").isPresent();
+
+    private static volatile boolean enabled;
+    private static boolean jfrRegistered; // Guarded by the class lock
+
+    static {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        setEnabled(Boolean.getBoolean("chess.metrics"));
+    }
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns collection on or off. Counts gathered so far are kept.
+     *
+     * @param on Whether to collect metrics.
+     */
+    public static synchronized void setEnabled(boolean on) {
+        if (on && jfrAvailable && !jfrRegistered) {
+            EngineEvents.register();
+            jfrRegistered = true;
+        }
+        enabled = on;
+    }
+
+    public static void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public static void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public static long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public static Histogram getValidationLatency() {
+        return validationLatency;
+    }
+
+    // Records one move validation and how long it took.
+    static void moveValidated(long nanos, boolean legal) {
+        increment(Counter.MOVE_VALIDATIONS);
+        validationLatency.record(nanos);
+        if (jfrAvailable) {
+            EngineEvents.moveValidation(nanos, legal);
+        }
+    }
+
+    // Records one completed iteration of an analysis.
+    static void searchIteration(int depth, int score, long nodes, long nanos) {
+        if (jfrAvailable) {
+            EngineEvents.searchIteration(depth, score, nodes, nanos);
+        }
+    }
+
+    // Sets every counter and the histogram back to zero.
+    public static void reset() {
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        validationLatency.reset();
+    }
+
+    /**
+     * Describes the current counts, one per line, followed by the validation
+     * latency percentiles.
+     *
+     * @return The report.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            report.append(counter.getDescription()).append(": ").append(get(counter)).append('\n');
+        }
+        return report.append("move validation latency: ").append(validationLatency).append('\n').toString();
+    }
+
+    /**
+     * A lock-free histogram of durations in power-of-two nanosecond buckets.
+     * Percentiles are reported as the upper bound of their bucket, which is
+     * within a factor of two and costs one atomic increment per sample.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        public void record(long nanos) {
+            // Bucket i holds durations from 2^i to 2^(i + 1) - 1 ns; 0 and 1 ns share bucket 0
+            buckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+        }
+
+        public long getCount() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        /**
+         * Returns the duration below which the given fraction of the samples fall.
+         *
+         * @param fraction The fraction, e.g. 0.99.
+         * @return The upper bound in nanoseconds, or 0 if there are no samples.
+         */
+        public long percentile(double fraction) {
+            long count = getCount();
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (count > 0 && seen >= Math.ceil(count * fraction)) {
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (2L << i) - 1;
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getCount() + " samples, p50 <= " + percentile(0.5) + " ns, p90 <= " + percentile(0.9)
+                    + " ns, p99 <= " + percentile(0.99) + " ns";
+        }
+    }
+}
@@ -0,0 +1,574 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The {@code MonteCarloSearch} class chooses moves by Monte Carlo tree search
+ * instead of alpha-beta: each iteration walks down the tree by UCT or PUCT
+ * selection, expands the leaf with the legal move generator of
+ * {@link BoardState}, finishes the game with a random playout and backs the
+ * result up the path. The move played is the most visited root move.
+ *
+ * <p>
+ * Playouts pick moves from the target bit sets of the side's pieces and play
+ * them through {@link Move#of}, so they allocate nothing of their own; with
+ * guidance on, half the moves are captures when any exist. A playout that runs
+ * past its ply limit is scored by the {@link Evaluator} with the usual
+ * logistic curve. Nodes live in a pooled {@link MctsArena} that is recycled,
+ * not reallocated, for every search.
+ *
+ * <p>
+ * Several threads search either one shared tree ({@link Mode#TREE}), with
+ * virtual loss steering them to different lines, or a tree each
+ * ({@link Mode#ROOT}), whose root statistics are summed at the end.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core MonteCarloSearch [options]
+ *   --fen FEN            the position (default: the starting position)
+ *   --playouts N         the most playouts (default 100000)
+ *   --time MS            the most milliseconds (default: no limit)
+ *   --threads N          worker threads (default: all cores)
+ *   --mode root|tree     root or tree parallelism (default tree)
+ *   --selection uct|puct the selection rule (default puct)
+ *   --nodes N            arena capacity in nodes (default 1048576)
+ * </pre>
+ */
+public class MonteCarloSearch implements MatchEngine {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    public static final int DEFAULT_PLAYOUT_PLIES = 60;
+    private static final int MAX_TREE_DEPTH = 128;
+    private static final double FPU_REDUCTION = 0.1; // Unvisited moves start this much below their parent
+
+    /** How several threads share the work. */
+    public enum Mode {
+        ROOT, TREE
+    }
+
+    /** The rule that picks the child to descend into. */
+    public enum Selection {
+        UCT, PUCT
+    }
+
+    /** The outcome of a search. */
+    public static final class Result {
+        private final Move bestMove;
+        private final double winRate;
+        private final List<Move> pv;
+        private final long playouts;
+        private final long nanos;
+        private final int nodes;
+        private final long memoryBytes;
+
+        Result(Move bestMove, double winRate, List<Move> pv, long playouts, long nanos, int nodes, long memoryBytes) {
+            this.bestMove = bestMove;
+            this.winRate = winRate;
+            this.pv = pv;
+            this.playouts = playouts;
+            this.nanos = nanos;
+            this.nodes = nodes;
+            this.memoryBytes = memoryBytes;
+        }
+
+        /** The most visited root move, or {@code null} if there is none. */
+        public Move getBestMove() {
+            return bestMove;
+        }
+
+        /** The expected score of the best move for the side to move, from 0 to 1. */
+        public double getWinRate() {
+            return winRate;
+        }
+
+        public List<Move> getPv() {
+            return pv;
+        }
+
+        public long getPlayouts() {
+            return playouts;
+        }
+
+        public double getPlayoutsPerSecond() {
+            return nanos > 0 ? playouts * 1e9 / nanos : 0;
+        }
+
+        /** The tree nodes in use, over all arenas. */
+        public int getNodes() {
+            return nodes;
+        }
+
+        public long getMemoryBytes() {
+            return memoryBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "best %s win %.3f playouts %d (%.0f/s) nodes %d memory %.1f MB",
+                    bestMove, winRate, playouts, getPlayoutsPerSecond(), nodes, memoryBytes / 1048576.0);
+        }
+    }
+
+    private final String name;
+    private final Evaluator evaluator;
+    private final int threads;
+    private final Mode mode;
+    private final Selection selection;
+    private final double exploration;
+    private final int capacity;
+    private final int playoutPlies;
+    private final boolean guided;
+    private MctsArena[] arenas; // Kept between searches and recycled
+
+    /**
+     * Creates an engine with the default exploration constant, arena size and
+     * guided playouts.
+     *
+     * @param name      The engine's name.
+     * @param evaluator Scores playouts that reach the ply limit.
+     * @param threads   The number of worker threads.
+     * @param mode      How the threads share the work.
+     * @param selection The selection rule.
+     */
+    public MonteCarloSearch(String name, Evaluator evaluator, int threads, Mode mode, Selection selection) {
+        this(name, evaluator, threads, mode, selection, selection == Selection.PUCT ? 1.5 : 1.4, DEFAULT_CAPACITY,
+                DEFAULT_PLAYOUT_PLIES, true);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param name         The engine's name.
+     * @param evaluator    Scores playouts that reach the ply limit.
+     * @param threads      The number of worker threads.
+     * @param mode         How the threads share the work.
+     * @param selection    The selection rule.
+     * @param exploration  The exploration constant of the selection rule.
+     * @param capacity     The most tree nodes, over all threads.
+     * @param playoutPlies The longest playout before the evaluator decides it.
+     * @param guided       Whether playouts prefer captures.
+     */
+    public MonteCarloSearch(String name, Evaluator evaluator, int threads, Mode mode, Selection selection,
+            double exploration, int capacity, int playoutPlies, boolean guided) {
+        if (threads < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Threads and capacity must be positive");
+        }
+        this.name = name;
+        this.evaluator = evaluator;
+        this.threads = threads;
+        this.mode = mode;
+        this.selection = selection;
+        this.exploration = exploration;
+        this.capacity = capacity;
+        this.playoutPlies = playoutPlies;
+        this.guided = guided;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /** The node limit is taken as a playout limit. */
+    @Override
+    public Move chooseMove(BoardState boardState, long nodeLimit, long deadline) {
+        return search(boardState, nodeLimit, deadline).getBestMove();
+    }
+
+    /**
+     * Searches a position until a limit is reached. The board is copied for
+     * every thread and left unchanged.
+     *
+     * @param boardState  The position.
+     * @param maxPlayouts The most playouts, or {@link Long#MAX_VALUE}.
+     * @param deadline    The {@link System#nanoTime()} at which to stop, or 0.
+     * @return The result.
+     */
+    public Result search(BoardState boardState, long maxPlayouts, long deadline) {
+        long start = System.nanoTime();
+        int arenaCount = mode == Mode.ROOT ? threads : 1;
+        if (arenas == null || arenas.length != arenaCount) {
+            arenas = new MctsArena[arenaCount];
+            for (int i = 0; i < arenaCount; i++) {
+                arenas[i] = new MctsArena(Math.max(1, capacity / arenaCount));
+            }
+        }
+        for (MctsArena arena : arenas) {
+            arena.reset();
+            arena.allocate(1); // The root
+        }
+
+        AtomicLong playouts = new AtomicLong();
+        Worker[] workers = new Worker[threads];
+        Thread[] workerThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(arenas[mode == Mode.ROOT ? i : 0], boardState.copy(), i, playouts, maxPlayouts,
+                    deadline);
+            workerThreads[i] = new Thread(workers[i], "mcts-" + i);
+            workerThreads[i].start();
+        }
+        for (Thread thread : workerThreads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        return result(Math.min(playouts.get(), maxPlayouts), nanos);
+    }
+
+    // Sums the root children of every arena by move, picks the most visited
+    // and follows it in the arena that visited it most for the rest of the PV.
+    private Result result(long playouts, long nanos) {
+        Map<Integer, long[]> totals = new HashMap<>(); // Move code -> visits, value sum
+        int nodes = 0;
+        long memory = 0;
+        for (MctsArena arena : arenas) {
+            nodes += arena.getUsed();
+            memory += arena.getMemoryBytes();
+            if (!arena.isExpanded(0)) {
+                continue;
+            }
+            int first = arena.firstChild[0];
+            for (int child = first; child < first + arena.childCount[0]; child++) {
+                long[] total = totals.computeIfAbsent(arena.moves[child], code -> new long[2]);
+                total[0] += arena.visits[child];
+                total[1] += arena.values[child];
+            }
+        }
+        int bestCode = -1;
+        long bestVisits = -1;
+        for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+            if (entry.getValue()[0] > bestVisits) {
+                bestCode = entry.getKey();
+                bestVisits = entry.getValue()[0];
+            }
+        }
+        List<Move> pv = new ArrayList<>();
+        if (bestCode < 0) {
+            return new Result(null, 0, pv, playouts, nanos, nodes, memory);
+        }
+        long[] best = totals.get(bestCode);
+        double winRate = best[0] > 0 ? (double) best[1] / MctsArena.VALUE_ONE / best[0] : 0.5;
+
+        MctsArena pvArena = arenas[0];
+        int pvNode = -1;
+        for (MctsArena arena : arenas) {
+            int child = findChild(arena, 0, bestCode);
+            if (child >= 0 && (pvNode < 0 || arena.visits[child] > pvArena.visits[pvNode])) {
+                pvArena = arena;
+                pvNode = child;
+            }
+        }
+        pv.add(Move.of(bestCode >> 6, bestCode & 63));
+        for (int node = pvNode; node >= 0 && pvArena.isExpanded(node) && pv.size() < MAX_TREE_DEPTH;) {
+            int next = -1;
+            int first = pvArena.firstChild[node];
+            for (int child = first; child < first + pvArena.childCount[node]; child++) {
+                if (pvArena.visits[child] > 0 && (next < 0 || pvArena.visits[child] > pvArena.visits[next])) {
+                    next = child;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            pv.add(Move.of(pvArena.moves[next] >> 6, pvArena.moves[next] & 63));
+            node = next;
+        }
+        return new Result(pv.get(0), winRate, pv, playouts, nanos, nodes, memory);
+    }
+
+    // Returns the child of a node reached by a move code, or -1.
+    private static int findChild(MctsArena arena, int node, int code) {
+        if (!arena.isExpanded(node)) {
+            return -1;
+        }
+        int first = arena.firstChild[node];
+        for (int child = first; child < first + arena.childCount[node]; child++) {
+            if (arena.moves[child] == code) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    // One search thread with its own board and scratch space; the arena may be shared.
+    private final class Worker implements Runnable {
+        private final MctsArena arena;
+        private final BoardState board;
+        private final SplittableRandom random;
+        private final AtomicLong playouts;
+        private final long maxPlayouts;
+        private final long deadline;
+        private final boolean rootWhite;
+        private final int[] path = new int[MAX_TREE_DEPTH + 1];
+        private final Pieces[] pieces = new Pieces[32];
+        private final long[] targets = new long[32];
+
+        Worker(MctsArena arena, BoardState board, int index, AtomicLong playouts, long maxPlayouts, long deadline) {
+            this.arena = arena;
+            this.board = board;
+            this.random = new SplittableRandom(0x4D435453L + index);
+            this.playouts = playouts;
+            this.maxPlayouts = maxPlayouts;
+            this.deadline = deadline;
+            this.rootWhite = board.isWhiteToMove();
+        }
+
+        @Override
+        public void run() {
+            for (long count = 0; playouts.getAndIncrement() < maxPlayouts; count++) {
+                if (deadline != 0 && (count & 15) == 0 && System.nanoTime() - deadline >= 0) {
+                    break;
+                }
+                iterate();
+            }
+        }
+
+        // Runs one selection, expansion, playout and backup.
+        private void iterate() {
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            arena.addVirtualLoss(0);
+            double whiteResult = -1; // Set when the tree itself reaches the end of the game
+            while (true) {
+                if (!arena.isExpanded(node)) {
+                    if ((node == 0 || arena.visits[node] > 0) && arena.claimExpansion(node)) {
+                        expand(node);
+                    }
+                    if (!arena.isExpanded(node)) {
+                        break; // A fresh leaf, a full arena or another thread expanding it
+                    }
+                }
+                if (arena.childCount[node] == 0) {
+                    boolean white = board.isWhiteToMove();
+                    whiteResult = board.isKingInCheck(board.getSideToMove()) ? (white ? 0 : 1) : 0.5;
+                    break;
+                }
+                if (depth == MAX_TREE_DEPTH) {
+                    break;
+                }
+                int child = select(node);
+                int code = arena.moves[child];
+                board.makeMove(Move.of(code >> 6, code & 63));
+                path[++depth] = child;
+                arena.addVirtualLoss(child);
+                if (board.isInsufficientMaterial() || board.isFiftyMoveDraw() || board.isRepetition()) {
+                    whiteResult = 0.5;
+                    break;
+                }
+                node = child;
+            }
+            if (whiteResult < 0) {
+                whiteResult = playout();
+            }
+
+            long whiteValue = Math.round(whiteResult * MctsArena.VALUE_ONE);
+            for (int i = depth; i >= 0; i--) {
+                // The move into the node at depth i was made by the root side when i is odd
+                boolean moverWhite = (i & 1) == 1 ? rootWhite : !rootWhite;
+                arena.update(path[i], moverWhite ? whiteValue : MctsArena.VALUE_ONE - whiteValue, true);
+            }
+            for (int i = 0; i < depth; i++) {
+                board.undoMove();
+            }
+        }
+
+        // Creates the children of a node claimed for expansion, with priors that
+        // favour captures and promotions. Underpromotions are left out of the
+        // tree: a move without a promotion piece promotes to a queen.
+        private void expand(int node) {
+            List<Move> moves = board.generateLegalMoves(board.getSideToMove());
+            long enemy = board.getOccupancy(board.getSideToMove().opposite());
+            int count = 0;
+            for (Move move : moves) {
+                if (move.getPromotion() == null || move.getPromotion() == PieceType.QUEEN) {
+                    count++;
+                }
+            }
+            int first = count > 0 ? arena.allocate(count) : 0;
+            if (first < 0) {
+                arena.finishExpansion(node, 0, -1);
+                return;
+            }
+            float total = 0;
+            int child = first;
+            for (Move move : moves) {
+                if (move.getPromotion() != null && move.getPromotion() != PieceType.QUEEN) {
+                    continue;
+                }
+                float prior = 1;
+                if ((enemy & Square.bit(move.getTo())) != 0) {
+                    prior += 2;
+                }
+                if (move.getPromotion() != null) {
+                    prior += 3;
+                }
+                arena.moves[child] = move.getFrom() * 64 + move.getTo();
+                arena.priors[child] = prior;
+                total += prior;
+                child++;
+            }
+            for (child = first; child < first + count; child++) {
+                arena.priors[child] /= total;
+            }
+            arena.finishExpansion(node, first, count);
+        }
+
+        // Picks the child with the highest UCT or PUCT score. Virtual losses
+        // count as visits that scored nothing.
+        private int select(int node) {
+            int first = arena.firstChild[node];
+            int last = first + arena.childCount[node];
+            double parentVisits = arena.visits[node] + arena.virtualLosses[node];
+            double parentQ = arena.visits[node] > 0
+                    ? 1 - (double) arena.values[node] / MctsArena.VALUE_ONE / arena.visits[node]
+                    : 0.5; // For the side choosing here, who did not make the move into the node
+            double firstPlayUrgency = parentQ - FPU_REDUCTION;
+            double logParent = Math.log(Math.max(1, parentVisits));
+            double sqrtParent = Math.sqrt(Math.max(1, parentVisits));
+            int best = first;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < last; child++) {
+                int visits = arena.visits[child] + arena.virtualLosses[child];
+                double q = visits > 0 ? (double) arena.values[child] / MctsArena.VALUE_ONE / visits : firstPlayUrgency;
+                double score;
+                if (selection == Selection.UCT) {
+                    if (visits == 0) {
+                        return child; // Every move is tried once before any is tried twice
+                    }
+                    score = q + exploration * Math.sqrt(logParent / visits);
+                } else {
+                    score = q + exploration * arena.priors[child] * sqrtParent / (1 + visits);
+                }
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        // Plays random moves from the current position until the game ends or
+        // the ply limit is reached, takes them back and returns the result for
+        // White: 1 for a win, 0.5 for a draw and 0 for a loss.
+        private double playout() {
+            int played = 0;
+            double whiteResult = -1;
+            while (played < playoutPlies) {
+                PieceColor color = board.getSideToMove();
+                List<Pieces> all = board.getPieces();
+                int count = 0;
+                for (int i = 0; i < all.size(); i++) {
+                    if (all.get(i).getColor() == color) {
+                        pieces[count++] = all.get(i); // Copied first: move generation reorders the list
+                    }
+                }
+                long enemy = board.getOccupancy(color.opposite());
+                int moves = 0;
+                int captures = 0;
+                for (int i = 0; i < count; i++) {
+                    targets[i] = board.getLegalMovesAvoidingCheck(pieces[i]);
+                    moves += Long.bitCount(targets[i]);
+                    captures += Long.bitCount(targets[i] & enemy);
+                }
+                if (moves == 0) {
+                    whiteResult = board.isKingInCheck(color) ? (color == PieceColor.WHITE ? 0 : 1) : 0.5;
+                    break;
+                }
+                long mask = -1L;
+                int pick;
+                if (guided && captures > 0 && random.nextBoolean()) {
+                    mask = enemy;
+                    pick = random.nextInt(captures);
+                } else {
+                    pick = random.nextInt(moves);
+                }
+                for (int i = 0; i < count; i++) {
+                    long choices = targets[i] & mask;
+                    int bits = Long.bitCount(choices);
+                    if (pick >= bits) {
+                        pick -= bits;
+                        continue;
+                    }
+                    for (; pick > 0; pick--) {
+                        choices &= choices - 1;
+                    }
+                    board.makeMove(Move.of(pieces[i].getSquare(), Long.numberOfTrailingZeros(choices)));
+                    played++;
+                    break;
+                }
+                if (board.isInsufficientMaterial() || board.isFiftyMoveDraw()) {
+                    whiteResult = 0.5;
+                    break;
+                }
+            }
+            if (whiteResult < 0) {
+                boolean white = board.isWhiteToMove();
+                int score = evaluator.evaluate(board, white);
+                whiteResult = 1 / (1 + Math.pow(10, (white ? -score : score) / 400.0));
+            }
+            for (int i = 0; i < played; i++) {
+                board.undoMove();
+            }
+            return whiteResult;
+        }
+    }
+
+    public static void main(String[] args) {
+        String fen = Position.START_FEN;
+        long maxPlayouts = 100_000;
+        long time = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Mode mode = Mode.TREE;
+        Selection selection = Selection.PUCT;
+        int capacity = DEFAULT_CAPACITY;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen":
+                    fen = args[++i];
+                    break;
+                case "--playouts":
+                    maxPlayouts = Long.parseLong(args[++i]);
+                    break;
+                case "--time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--mode":
+                    mode = Mode.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--selection":
+                    selection = Selection.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--nodes":
+                    capacity = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        BoardState board = Position.fromFen(fen).toBoardState();
+        MonteCarloSearch search = new MonteCarloSearch("MCTS", new Evaluator(), threads, mode, selection,
+                selection == Selection.PUCT ? 1.5 : 1.4, capacity, DEFAULT_PLAYOUT_PLIES, true);
+        long deadline = time > 0 ? System.nanoTime() + time * 1_000_000 : 0;
+        Result result = search.search(board, maxPlayouts, deadline);
+        System.out.println(result);
+        StringBuilder line = new StringBuilder("pv");
+        for (Move move : result.getPv()) {
+            line.append(' ').append(move);
+        }
+        System.out.println(line);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * The {@code Move} class describes a single move from one square to another,
+ * with an optional promotion piece type for pawns reaching the last rank.
+ */
+public class Move {
+    private static final Move[] CACHE = new Move[64 * 64]; // Every move without a promotion piece, by from * 64 + to
+
+    static {
+        for (int from = 0; from < 64; from++) {
+            for (int to = 0; to < 64; to++) {
+                CACHE[from * 64 + to] = new Move(Square.row(from), Square.column(from), Square.row(to),
+                        Square.column(to));
+            }
+        }
+    }
+
+    private final int fromRow;
+    private final int fromColumn;
+    private final int toRow;
+    private final int toColumn;
+    private final PieceType promotion; // null unless a pawn is promoted
+
+    public Move(int fromRow, int fromColumn, int toRow, int toColumn) {
+        this(fromRow, fromColumn, toRow, toColumn, null);
+    }
+
+    public Move(int fromRow, int fromColumn, int toRow, int toColumn, PieceType promotion) {
+        this.fromRow = fromRow;
+        this.fromColumn = fromColumn;
+        this.toRow = toRow;
+        this.toColumn = toColumn;
+        this.promotion = promotion;
+    }
+
+    /**
+     * Returns the shared instance of a move without a promotion piece, so hot
+     * loops can pick moves without allocating. A pawn reaching the last rank
+     * is then promoted to a queen by {@link BoardState#makeMove(Move)}.
+     *
+     * @param from The square the piece leaves.
+     * @param to   The square it moves to.
+     * @return The move.
+     */
+    public static Move of(int from, int to) {
+        return CACHE[from * 64 + to];
+    }
+
+    /**
+     * Parses a move in coordinate notation, e.g. "e2e4" or "a7a8q".
+     *
+     * @param text The text to parse.
+     * @return The move, or {@code null} if the text is not a move.
+     */
+    public static Move parse(String text) {
+        if (text == null || text.length() < 4 || text.length() > 5) {
+            return null;
+        }
+        int from = Square.parse(text.substring(0, 2));
+        int to = Square.parse(text.substring(2, 4));
+        PieceType promotion = text.length() == 5 ? PieceType.fromInitial(text.charAt(4)) : null;
+        if (from == Square.NONE || to == Square.NONE || (text.length() == 5 && promotion == null)) {
+            return null;
+        }
+        return new Move(Square.row(from), Square.column(from), Square.row(to), Square.column(to), promotion);
+    }
+
+    public int getFromRow() {
+        return fromRow;
+    }
+
+    public int getFromColumn() {
+        return fromColumn;
+    }
+
+    public int getToRow() {
+        return toRow;
+    }
+
+    public int getToColumn() {
+        return toColumn;
+    }
+
+    public int getFrom() {
+        return Square.of(fromRow, fromColumn);
+    }
+
+    public int getTo() {
+        return Square.of(toRow, toColumn);
+    }
+
+    public PieceType getPromotion() {
+        return promotion;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Move)) {
+            return false;
+        }
+        Move move = (Move) other;
+        return fromRow == move.fromRow && fromColumn == move.fromColumn && toRow == move.toRow
+                && toColumn == move.toColumn && promotion == move.promotion;
+    }
+
+    @Override
+    public int hashCode() {
+        return (getFrom() * 64 + getTo()) * 8 + (promotion == null ? 0 : promotion.ordinal() + 1);
+    }
+
+    // Returns the move in coordinate notation, e.g. "e2e4" or "a7a8q".
+    @Override
+    public String toString() {
+        String text = Square.name(getFrom()) + Square.name(getTo());
+        return promotion == null ? text : text + promotion.getInitial();
+    }
+}
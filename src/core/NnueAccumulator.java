@@ -0,0 +1,76 @@
+/**
+ * The {@code NnueAccumulator} class holds the first-layer sums of an
+ * {@link NnueNetwork} for one board, from White's and from Black's point of
+ * view. Registered as the board's {@link BoardListener}, it adds and subtracts
+ * the weights of the features that each move changes, and the reverse on undo,
+ * instead of summing every piece again: a quiet move costs one pass over each
+ * side's accumulator.
+ */
+public final class NnueAccumulator implements BoardListener {
+    private final NnueNetwork network;
+    private final BoardState boardState;
+    final short[] white;
+    final short[] black;
+    final float[] input; // Scratch space for the dense layers
+    final float[] layer;
+
+    /**
+     * Computes the accumulators of a board from scratch. The accumulator only
+     * follows later changes once it is the board's listener.
+     *
+     * @param network    The network.
+     * @param boardState The board.
+     */
+    public NnueAccumulator(NnueNetwork network, BoardState boardState) {
+        this.network = network;
+        this.boardState = boardState;
+        int hidden = network.getHiddenSize();
+        this.white = new short[hidden];
+        this.black = new short[hidden];
+        this.input = new float[2 * hidden];
+        this.layer = new float[network.getLayer2Size()];
+        refresh();
+    }
+
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    /** Recomputes both accumulators from the pieces on the board. */
+    public void refresh() {
+        network.clear(white);
+        network.clear(black);
+        for (Pieces piece : boardState.getPieces()) {
+            int square = piece.getSquare();
+            network.addFeature(white, NnueNetwork.feature(true, piece, square));
+            network.addFeature(black, NnueNetwork.feature(false, piece, square));
+        }
+    }
+
+    @Override
+    public void pieceAdded(Pieces piece) {
+        int square = piece.getSquare();
+        network.addFeature(white, NnueNetwork.feature(true, piece, square));
+        network.addFeature(black, NnueNetwork.feature(false, piece, square));
+    }
+
+    @Override
+    public void pieceRemoved(Pieces piece) {
+        int square = piece.getSquare();
+        network.removeFeature(white, NnueNetwork.feature(true, piece, square));
+        network.removeFeature(black, NnueNetwork.feature(false, piece, square));
+    }
+
+    @Override
+    public void pieceMoved(Pieces piece, int fromSquare) {
+        int square = piece.getSquare();
+        network.moveFeature(white, NnueNetwork.feature(true, piece, fromSquare), NnueNetwork.feature(true, piece, square));
+        network.moveFeature(black, NnueNetwork.feature(false, piece, fromSquare),
+                NnueNetwork.feature(false, piece, square));
+    }
+
+    @Override
+    public void boardReset() {
+        refresh();
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * The {@code NnueEvaluator} class evaluates positions with an
+ * {@link NnueNetwork} in place of the material and piece-square table, so it
+ * can be handed to {@link Search} and the engines that use it. The first time
+ * it evaluates a board that has no {@link BoardListener}, it registers an
+ * {@link NnueAccumulator} on it; from then on each evaluation of that board
+ * only runs the dense layers, because the accumulator follows every move and
+ * undo. Boards that already have another listener are evaluated from scratch.
+ */
+public class NnueEvaluator extends Evaluator {
+    private final NnueNetwork network;
+
+    public NnueEvaluator(NnueNetwork network) {
+        this.network = network;
+    }
+
+    public NnueNetwork getNetwork() {
+        return network;
+    }
+
+    @Override
+    public int evaluate(BoardState boardState, boolean whiteToMove) {
+        BoardListener listener = boardState.getListener();
+        if (listener == null) {
+            listener = new NnueAccumulator(network, boardState);
+            boardState.setListener(listener);
+        }
+        if (listener instanceof NnueAccumulator && ((NnueAccumulator) listener).getNetwork() == network) {
+            return network.evaluate((NnueAccumulator) listener, whiteToMove);
+        }
+        return network.evaluate(boardState, whiteToMove);
+    }
+}
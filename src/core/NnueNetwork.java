@@ -0,0 +1,344 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * The {@code NnueNetwork} class holds an efficiently updatable neural network
+ * (NNUE) for evaluating positions. The first layer maps the 768 piece-square
+ * features (own or enemy piece, piece type, square) of each side's view of the
+ * board to {@code hidden} 16-bit sums, the accumulator, which
+ * {@link NnueAccumulator} keeps up to date as pieces move. The two
+ * accumulators, the side to move's first, are clipped to [0, {@value #QA}] and
+ * scaled to [0, 1], then pass through a dense layer of {@code l2} neurons with
+ * a clipped ReLU and a dense output neuron. Those dense layers run on a
+ * {@link Kernel}: the Vector API kernel when {@code VectorKernel} is on the
+ * class path and the {@code jdk.incubator.vector} module is present, a scalar
+ * loop otherwise, or always with {@code -Dchess.nnue.vector=false}.
+ *
+ * <p>
+ * Networks are stored little-endian: the int magic {@code 0x45554E4E}
+ * ("NNUE"), the int version 1, the int sizes {@code hidden} and {@code l2},
+ * the float output scale in centipawns, then the short feature biases
+ * ({@code hidden}), the short feature weights ({@code 768 * hidden}, one row
+ * per feature), the float hidden biases ({@code l2}), the float hidden weights
+ * ({@code l2 * 2 * hidden}, one row per neuron), the float output bias and the
+ * float output weights ({@code l2}). {@link #load(Path)} maps the file and
+ * copies each block with one bulk read.
+ */
+public final class NnueNetwork {
+    public static final int FEATURES = 2 * 6 * 64;
+    static final int QA = 255; // The accumulator value that maps to an activation of 1
+    private static final int MAGIC = 0x45554E4E;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    /** The dense-layer arithmetic, so that it can be vectorized where supported. */
+    public interface Kernel {
+        /**
+         * Computes the dot product of a row of a weight matrix and an input vector.
+         *
+         * @param weights The matrix.
+         * @param offset  The index of the row's first element.
+         * @param input   The input vector.
+         * @param length  The length of the row and the input.
+         * @return The sum of the products.
+         */
+        float dot(float[] weights, int offset, float[] input, int length);
+
+        String getName();
+    }
+
+    private static final class ScalarKernel implements Kernel {
+        @Override
+        public float dot(float[] weights, int offset, float[] input, int length) {
+            float sum = 0;
+            for (int i = 0; i < length; i++) {
+                sum += weights[offset + i] * input[i];
+            }
+            return sum;
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    }
+
+    private static final Kernel SCALAR = new ScalarKernel();
+    private static final Kernel VECTOR = loadVectorKernel();
+
+    private final int hidden;
+    private final int l2;
+    private final float outputScale;
+    private final short[] featureBiases;
+    private final short[] featureWeights;
+    private final float[] hiddenBiases;
+    private final float[] hiddenWeights;
+    private final float outputBias;
+    private final float[] outputWeights;
+    private final Kernel kernel;
+
+    private NnueNetwork(int hidden, int l2, float outputScale, short[] featureBiases, short[] featureWeights,
+            float[] hiddenBiases, float[] hiddenWeights, float outputBias, float[] outputWeights, Kernel kernel) {
+        this.hidden = hidden;
+        this.l2 = l2;
+        this.outputScale = outputScale;
+        this.featureBiases = featureBiases;
+        this.featureWeights = featureWeights;
+        this.hiddenBiases = hiddenBiases;
+        this.hiddenWeights = hiddenWeights;
+        this.outputBias = outputBias;
+        this.outputWeights = outputWeights;
+        this.kernel = kernel;
+    }
+
+    // Uses the Vector API kernel when its class and module can be loaded.
+    private static Kernel loadVectorKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("chess.nnue.vector", "true"))) {
+            return null;
+        }
+        try {
+            return (Kernel) Class.forName("VectorKernel").getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the kernel used by default: the vector kernel if it is available,
+     * otherwise the scalar one.
+     *
+     * @return The kernel.
+     */
+    public static Kernel defaultKernel() {
+        return VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    public static Kernel scalarKernel() {
+        return SCALAR;
+    }
+
+    /**
+     * Returns the Vector API kernel.
+     *
+     * @return The kernel, or {@code null} if it is not available.
+     */
+    public static Kernel vectorKernel() {
+        return VECTOR;
+    }
+
+    /**
+     * Reads a network from a file by mapping it into memory.
+     *
+     * @param file The network file.
+     * @return The network, using the default kernel.
+     * @throws IOException              If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a network of this format.
+     */
+    public static NnueNetwork load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException("Not a network file: " + file);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) {
+                throw new IllegalArgumentException("Not a network file of version " + VERSION + ": " + file);
+            }
+            int hidden = map.getInt();
+            int l2 = map.getInt();
+            float outputScale = map.getFloat();
+            if (hidden <= 0 || l2 <= 0 || channel.size() != fileSize(hidden, l2)) {
+                throw new IllegalArgumentException("Network sizes do not match the file length: " + file);
+            }
+            short[] featureBiases = new short[hidden];
+            short[] featureWeights = new short[FEATURES * hidden];
+            float[] hiddenBiases = new float[l2];
+            float[] hiddenWeights = new float[l2 * 2 * hidden];
+            float[] outputWeights = new float[l2];
+            map.asShortBuffer().get(featureBiases).get(featureWeights);
+            map.position(map.position() + 2 * (featureBiases.length + featureWeights.length));
+            map.asFloatBuffer().get(hiddenBiases).get(hiddenWeights);
+            map.position(map.position() + 4 * (hiddenBiases.length + hiddenWeights.length));
+            float outputBias = map.getFloat();
+            map.asFloatBuffer().get(outputWeights);
+            return new NnueNetwork(hidden, l2, outputScale, featureBiases, featureWeights, hiddenBiases,
+                    hiddenWeights, outputBias, outputWeights, defaultKernel());
+        }
+    }
+
+    private static long fileSize(int hidden, int l2) {
+        return HEADER_BYTES + 2L * hidden * (1 + FEATURES) + 4L * l2 * (1 + 2 * hidden) + 4L * (1 + l2);
+    }
+
+    /**
+     * Writes the network in the format that {@link #load(Path)} reads.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileSize(hidden, l2)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hidden).putInt(l2).putFloat(outputScale);
+        for (short bias : featureBiases) {
+            buffer.putShort(bias);
+        }
+        for (short weight : featureWeights) {
+            buffer.putShort(weight);
+        }
+        for (float bias : hiddenBiases) {
+            buffer.putFloat(bias);
+        }
+        for (float weight : hiddenWeights) {
+            buffer.putFloat(weight);
+        }
+        buffer.putFloat(outputBias);
+        for (float weight : outputWeights) {
+            buffer.putFloat(weight);
+        }
+        Files.write(file, buffer.array());
+    }
+
+    /**
+     * Creates a network with random weights, for benchmarks and as a starting
+     * point for training.
+     *
+     * @param hidden The accumulator size per side.
+     * @param l2     The size of the hidden dense layer.
+     * @param seed   The random seed.
+     * @return The network.
+     */
+    public static NnueNetwork random(int hidden, int l2, long seed) {
+        Random random = new Random(seed);
+        short[] featureBiases = new short[hidden];
+        short[] featureWeights = new short[FEATURES * hidden];
+        for (int i = 0; i < hidden; i++) {
+            featureBiases[i] = (short) random.nextInt(QA / 2);
+        }
+        for (int i = 0; i < featureWeights.length; i++) {
+            featureWeights[i] = (short) (random.nextInt(33) - 16);
+        }
+        float[] hiddenBiases = new float[l2];
+        float[] hiddenWeights = new float[l2 * 2 * hidden];
+        float[] outputWeights = new float[l2];
+        for (int i = 0; i < hiddenWeights.length; i++) {
+            hiddenWeights[i] = (float) (random.nextGaussian() / Math.sqrt(2 * hidden));
+        }
+        for (int i = 0; i < l2; i++) {
+            hiddenBiases[i] = 0.5f;
+            outputWeights[i] = (float) (random.nextGaussian() / Math.sqrt(l2));
+        }
+        return new NnueNetwork(hidden, l2, 400, featureBiases, featureWeights, hiddenBiases, hiddenWeights, 0,
+                outputWeights, defaultKernel());
+    }
+
+    /**
+     * Returns the same network computing its dense layers with another kernel.
+     *
+     * @param kernel The kernel.
+     * @return A network sharing this one's weights.
+     */
+    public NnueNetwork withKernel(Kernel kernel) {
+        return new NnueNetwork(hidden, l2, outputScale, featureBiases, featureWeights, hiddenBiases, hiddenWeights,
+                outputBias, outputWeights, kernel);
+    }
+
+    public Kernel getKernel() {
+        return kernel;
+    }
+
+    public int getHiddenSize() {
+        return hidden;
+    }
+
+    int getLayer2Size() {
+        return l2;
+    }
+
+    /**
+     * Returns the index of a piece's feature as seen by one side: the piece's
+     * relation to that side, its type, and its square mirrored for Black.
+     *
+     * @param white  {@code true} for White's view.
+     * @param piece  The piece.
+     * @param square The piece's square.
+     * @return The feature index, below {@value #FEATURES}.
+     */
+    static int feature(boolean white, Pieces piece, int square) {
+        int relation = piece.isWhite() == white ? 0 : 6;
+        return ((relation + piece.getType().ordinal()) << 6) + (white ? square : square ^ 56);
+    }
+
+    // Sets an accumulator to the biases.
+    void clear(short[] accumulator) {
+        System.arraycopy(featureBiases, 0, accumulator, 0, hidden);
+    }
+
+    void addFeature(short[] accumulator, int feature) {
+        int offset = feature * hidden;
+        for (int i = 0; i < hidden; i++) {
+            accumulator[i] += featureWeights[offset + i];
+        }
+    }
+
+    void removeFeature(short[] accumulator, int feature) {
+        int offset = feature * hidden;
+        for (int i = 0; i < hidden; i++) {
+            accumulator[i] -= featureWeights[offset + i];
+        }
+    }
+
+    // Moves a piece within one pass over the accumulator.
+    void moveFeature(short[] accumulator, int from, int to) {
+        int fromOffset = from * hidden;
+        int toOffset = to * hidden;
+        for (int i = 0; i < hidden; i++) {
+            accumulator[i] += featureWeights[toOffset + i] - featureWeights[fromOffset + i];
+        }
+    }
+
+    /**
+     * Evaluates a position from an accumulator that is up to date.
+     *
+     * @param accumulator The accumulator of the position.
+     * @param whiteToMove {@code true} if White is to move.
+     * @return The score in centipawns for the side to move.
+     */
+    public int evaluate(NnueAccumulator accumulator, boolean whiteToMove) {
+        float[] input = accumulator.input;
+        float[] layer = accumulator.layer;
+        activate(whiteToMove ? accumulator.white : accumulator.black, input, 0);
+        activate(whiteToMove ? accumulator.black : accumulator.white, input, hidden);
+        int inputs = 2 * hidden;
+        for (int j = 0; j < l2; j++) {
+            float sum = hiddenBiases[j] + kernel.dot(hiddenWeights, j * inputs, input, inputs);
+            layer[j] = Math.min(Math.max(sum, 0), 1);
+        }
+        float output = outputBias + kernel.dot(outputWeights, 0, layer, l2);
+        return Math.round(output * outputScale);
+    }
+
+    /**
+     * Evaluates a position by computing its accumulators from scratch.
+     *
+     * @param boardState  The position.
+     * @param whiteToMove {@code true} if White is to move.
+     * @return The score in centipawns for the side to move.
+     */
+    public int evaluate(BoardState boardState, boolean whiteToMove) {
+        return evaluate(new NnueAccumulator(this, boardState), whiteToMove);
+    }
+
+    // Clips an accumulator to [0, QA] and scales it to [0, 1].
+    private void activate(short[] accumulator, float[] input, int offset) {
+        for (int i = 0; i < hidden; i++) {
+            input[offset + i] = Math.min(Math.max(accumulator[i], 0), QA) * (1f / QA);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.List;
+
+/**
+ * The {@code Notation} class writes moves in Standard Algebraic Notation
+ * (SAN), e.g. "Nbd7", "exd6", "O-O" or "e8=Q+", and whole games in Portable
+ * Game Notation (PGN).
+ */
+public final class Notation {
+    private static final int PGN_LINE_LENGTH = 79;
+
+    private Notation() {
+    }
+
+    /**
+     * Returns a move in Standard Algebraic Notation, with "+" for check and "#"
+     * for mate. The board is used to play the move and take it back again.
+     *
+     * @param boardState The position before the move.
+     * @param move       A legal move in that position.
+     * @return The move in SAN.
+     */
+    public static String san(BoardState boardState, Move move) {
+        Pieces piece = boardState.getPieceAt(move.getFromRow(), move.getFromColumn());
+        PieceType type = piece.getType();
+        StringBuilder san = new StringBuilder(8);
+        if (type == PieceType.KING && Math.abs(move.getToColumn() - move.getFromColumn()) == 2) {
+            san.append(move.getToColumn() > move.getFromColumn() ? "O-O" : "O-O-O");
+        } else {
+            boolean capture = boardState.getPieceAt(move.getToRow(), move.getToColumn()) != null
+                    || (type == PieceType.PAWN && move.getFromColumn() != move.getToColumn());
+            if (type == PieceType.PAWN) {
+                if (capture) {
+                    san.append((char) ('a' + move.getFromColumn()));
+                }
+            } else {
+                san.append(Character.toUpperCase(type.getInitial()));
+                appendDisambiguation(san, boardState, move, type);
+            }
+            if (capture) {
+                san.append('x');
+            }
+            san.append(Square.name(move.getTo()));
+            if (type == PieceType.PAWN && (move.getToRow() == 0 || move.getToRow() == 7)) {
+                PieceType promotion = move.getPromotion() != null ? move.getPromotion() : PieceType.QUEEN;
+                san.append('=').append(Character.toUpperCase(promotion.getInitial()));
+            }
+        }
+
+        boardState.makeMove(move);
+        PieceColor opponent = boardState.getSideToMove();
+        if (boardState.isKingInCheck(opponent)) {
+            san.append(boardState.hasAnyLegalMove(opponent) ? '+' : '#');
+        }
+        boardState.undoMove();
+        return san.toString();
+    }
+
+    /**
+     * Finds the legal move that a SAN token describes. Check marks and
+     * annotations such as "!?" are ignored, and castling may be written with
+     * zeros.
+     *
+     * @param boardState The position before the move.
+     * @param token      The move in SAN, e.g. "Nf3", "exd5+" or "O-O".
+     * @return The move.
+     * @throws IllegalArgumentException If no legal move matches the token.
+     */
+    public static Move parseSan(BoardState boardState, String token) {
+        String wanted = stripSuffix(token.replace('0', 'O'));
+        boolean castling = wanted.startsWith("O-O");
+        for (Move move : boardState.generateLegalMoves(boardState.getSideToMove())) {
+            // Only moves to the named square are written out, since that plays them
+            if (!castling && !wanted.contains(Square.name(move.getTo()))) {
+                continue;
+            }
+            if (stripSuffix(san(boardState, move)).equals(wanted)) {
+                return move;
+            }
+        }
+        throw new IllegalArgumentException("Not a legal move: " + token);
+    }
+
+    private static String stripSuffix(String san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return san.substring(0, end);
+    }
+
+    // Adds the file, the rank or both when another piece of the same type can
+    // also move to the target square.
+    private static void appendDisambiguation(StringBuilder san, BoardState boardState, Move move, PieceType type) {
+        boolean ambiguous = false;
+        boolean sameFile = false;
+        boolean sameRank = false;
+        List<Move> moves = boardState.generateLegalMoves(boardState.getSideToMove());
+        for (Move other : moves) {
+            if (other.getTo() != move.getTo() || other.getFrom() == move.getFrom()
+                    || boardState.getPieceAt(other.getFromRow(), other.getFromColumn()).getType() != type) {
+                continue;
+            }
+            ambiguous = true;
+            sameFile |= other.getFromColumn() == move.getFromColumn();
+            sameRank |= other.getFromRow() == move.getFromRow();
+        }
+        if (!ambiguous) {
+            return;
+        }
+        String from = Square.name(move.getFrom());
+        if (!sameFile) {
+            san.append(from.charAt(0));
+        } else if (!sameRank) {
+            san.append(from.charAt(1));
+        } else {
+            san.append(from);
+        }
+    }
+
+    /**
+     * Writes a game in PGN: the tag pairs in the given order, then the moves with
+     * move numbers, wrapped to lines of at most 79 characters, and the result.
+     *
+     * @param tags     Alternating tag names and values, e.g. "White", "Engine A".
+     * @param startFen The starting position, or {@code null} for the standard one.
+     * @param moves    The moves of the game.
+     * @param result   "1-0", "0-1", "1/2-1/2" or "*".
+     * @return The PGN text, ending with a blank line.
+     */
+    public static String pgn(String[] tags, String startFen, List<Move> moves, String result) {
+        StringBuilder pgn = new StringBuilder(1024);
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            pgn.append('[').append(tags[i]).append(" \"").append(tags[i + 1].replace("\"", "'")).append("\"]\n");
+        }
+        Position start = Position.fromFen(startFen != null ? startFen : Position.START_FEN);
+        if (startFen != null) {
+            pgn.append("[SetUp \"1\"]\n[FEN \"").append(startFen).append("\"]\n");
+        }
+        pgn.append('\n');
+
+        BoardState board = start.toBoardState();
+        int moveNumber = fullmoveNumber(startFen);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < moves.size(); i++) {
+            Move move = moves.get(i);
+            String token = board.isWhiteToMove() ? moveNumber + ". " : i == 0 ? moveNumber + "... " : "";
+            token += san(board, move);
+            if (!board.isWhiteToMove()) {
+                moveNumber++;
+            }
+            board.makeMove(move);
+            appendToken(pgn, line, token);
+        }
+        appendToken(pgn, line, result);
+        return pgn.append(line).append("\n\n").toString();
+    }
+
+    // Adds a token to the current movetext line, starting a new line when full.
+    private static void appendToken(StringBuilder pgn, StringBuilder line, String token) {
+        if (line.length() > 0 && line.length() + 1 + token.length() > PGN_LINE_LENGTH) {
+            pgn.append(line).append('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(token);
+    }
+
+    private static int fullmoveNumber(String fen) {
+        if (fen != null) {
+            String[] fields = fen.trim().split("\\s+");
+            if (fields.length >= 6) {
+                try {
+                    return Math.max(1, Integer.parseInt(fields[5]));
+                } catch (NumberFormatException e) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+}
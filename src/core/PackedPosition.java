@@ -0,0 +1,126 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The {@code PackedPosition} class stores a position in 32 bytes, as four
+ * {@code long} words, for training sets of hundreds of millions of positions:
+ *
+ * <pre>
+ * word 0  occupancy: bit {@code row * 8 + column} is set for every occupied square
+ * word 1  the {@link Position} piece codes of the first 16 occupied squares, 4 bits each, lowest square first
+ * word 2  the codes of the next 16 occupied squares
+ * word 3  bit 0: White to move; bits 1-4: castling rights; bits 8-14: en passant square, 64 for none;
+ *         bits 16-23: halfmove clock; bits 24-31: White's result in half points, 255 if unknown
+ * </pre>
+ *
+ * Bits 0 to 15 of word 3 together with the first three words identify the
+ * position; the halfmove clock and the result are labels, so two records that
+ * differ only there are the same position for {@link PositionSet}. In files
+ * the words are written in order, little-endian. Encoding and decoding into a
+ * caller's array allocate nothing but the decoded board.
+ */
+public final class PackedPosition {
+    public static final int BYTES = 32;
+    public static final int WORDS = 4;
+    public static final long KEY_MASK = 0xFFFFL; // The identifying bits of word 3
+    public static final int NO_RESULT = 0xFF;
+    private static final int NO_EN_PASSANT = 64;
+
+    private PackedPosition() {
+    }
+
+    /**
+     * Packs a board.
+     *
+     * @param boardState The board.
+     * @param result     White's result in half points (0 to 2), or {@link #NO_RESULT}.
+     * @param words      Receives the four words.
+     * @throws IllegalArgumentException If the board has more than 32 pieces.
+     */
+    public static void encode(BoardState boardState, int result, long[] words) {
+        List<Pieces> pieces = boardState.getPieces();
+        if (pieces.size() > 32) {
+            throw new IllegalArgumentException("More than 32 pieces");
+        }
+        long occupancy = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            occupancy |= Square.bit(pieces.get(i).getSquare());
+        }
+        long low = 0;
+        long high = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            Pieces piece = pieces.get(i);
+            int square = piece.getSquare();
+            long code = Position.code(piece.getType(), piece.getColor());
+            int index = Long.bitCount(occupancy & (Square.bit(square) - 1)); // Rank among the occupied squares
+            if (index < 16) {
+                low |= code << (index * 4);
+            } else {
+                high |= code << ((index - 16) * 4);
+            }
+        }
+        int enPassant = boardState.getEnPassantSquare();
+        words[0] = occupancy;
+        words[1] = low;
+        words[2] = high;
+        words[3] = (boardState.isWhiteToMove() ? 1L : 0L) | (long) boardState.getCastlingRights() << 1
+                | (long) (enPassant == Square.NONE ? NO_EN_PASSANT : enPassant) << 8
+                | (long) Math.min(boardState.getHalfmoveClock(), 255) << 16 | (long) (result & 0xFF) << 24;
+    }
+
+    /** Unpacks the position with its halfmove clock, without the result. */
+    public static Position toPosition(long[] words) {
+        byte[] squares = new byte[64];
+        long occupancy = words[0];
+        for (int index = 0; occupancy != 0; index++, occupancy &= occupancy - 1) {
+            long word = index < 16 ? words[1] : words[2];
+            squares[Long.numberOfTrailingZeros(occupancy)] = (byte) ((word >>> ((index & 15) * 4)) & 15);
+        }
+        int enPassant = (int) (words[3] >>> 8) & 127;
+        return Position.of(squares, (words[3] & 1) != 0, (int) (words[3] >>> 1) & 15,
+                enPassant == NO_EN_PASSANT ? Square.NONE : enPassant, getHalfmoveClock(words));
+    }
+
+    /** Unpacks a new board, with its halfmove clock. */
+    public static BoardState decode(long[] words) {
+        return toPosition(words).toBoardState();
+    }
+
+    public static int getHalfmoveClock(long[] words) {
+        return (int) (words[3] >>> 16) & 0xFF;
+    }
+
+    /** White's result in half points, or {@link #NO_RESULT}. */
+    public static int getResult(long[] words) {
+        return (int) (words[3] >>> 24) & 0xFF;
+    }
+
+    /** A well-mixed hash of the identifying bits. */
+    public static long hash(long[] words) {
+        long hash = mix(words[0] ^ 0x9E3779B97F4A7C15L);
+        hash = mix(hash ^ words[1]);
+        hash = mix(hash ^ words[2]);
+        return mix(hash ^ (words[3] & KEY_MASK));
+    }
+
+    // The finalizer of SplitMix64.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Writes the words at an offset of a little-endian buffer. */
+    public static void write(ByteBuffer buffer, int offset, long[] words) {
+        for (int i = 0; i < WORDS; i++) {
+            buffer.putLong(offset + i * Long.BYTES, words[i]);
+        }
+    }
+
+    /** Reads the words at an offset of a little-endian buffer. */
+    public static void read(ByteBuffer buffer, int offset, long[] words) {
+        for (int i = 0; i < WORDS; i++) {
+            words[i] = buffer.getLong(offset + i * Long.BYTES);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+
+/**
+ * The {@code PackedPositionWriter} class writes training positions as
+ * {@link PackedPosition} records to several shard files, dropping every
+ * position it has written before. A position's hash picks its shard, and each
+ * shard has its own {@link PositionSet}, output buffer and lock, so threads
+ * adding positions only wait for each other when they hit the same shard, and
+ * every file holds distinct positions that no other file holds.
+ *
+ * <p>
+ * Usage, to pack EPD or FEN files with optional results ("1-0", "[0.5]", ...):
+ *
+ * <pre>
+ * java -cp bin/core PackedPositionWriter FILE... [options]
+ *   --out DIR       where the shards are written (default packed)
+ *   --shards N      the number of shard files (default 16)
+ *   --expected N    the positions expected over all shards (default 4194304)
+ *   --threads N     threads that parse and pack (default: all cores)
+ * </pre>
+ *
+ * The expected count is shared evenly by the shards' sets, which are
+ * allocated up front outside the heap: about 64 bytes per expected position,
+ * 256 MB by default. The total is printed before they are allocated; more than
+ * the heap size needs a larger {@code -XX:MaxDirectMemorySize}. If a shard's
+ * set fills up, packing stops with what was written so far kept, and exits
+ * with status 1 and a message to rerun with a larger {@code --expected}.
+ *
+ * <p>
+ * The shards are named {@code positions-000.pos} and so on. Each is a plain
+ * sequence of 32-byte records that {@link #forEach} and
+ * {@link EvaluationTuner} read.
+ */
+public class PackedPositionWriter implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final Shard[] shards;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final ThreadLocal<long[]> scratch = ThreadLocal.withInitial(() -> new long[PackedPosition.WORDS]);
+
+    // One output file with its set of written positions; guarded by its own lock.
+    private static final class Shard {
+        final PositionSet set;
+        final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        Shard(PositionSet set, FileChannel channel) {
+            this.set = set;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Creates the shard files, replacing any that exist.
+     *
+     * @param directory The directory of the shards; created if missing.
+     * @param count     The number of shards.
+     * @param expected  The positions expected over all shards, which sizes
+     *                  their sets; see {@link #memoryBytes}.
+     * @throws IOException If a file cannot be created.
+     */
+    public PackedPositionWriter(Path directory, int count, long expected) throws IOException {
+        Files.createDirectories(directory);
+        shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            FileChannel channel = FileChannel.open(directory.resolve(String.format("positions-%03d.pos", i)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            shards[i] = new Shard(new PositionSet(perShard(count, expected)), channel);
+        }
+    }
+
+    /**
+     * Returns the off-heap memory the sets of a writer would allocate.
+     *
+     * @param count    The number of shards.
+     * @param expected The positions expected over all shards.
+     * @return The total size of the sets in bytes.
+     */
+    public static long memoryBytes(int count, long expected) {
+        return count * PositionSet.memoryBytes(perShard(count, expected));
+    }
+
+    private static long perShard(int count, long expected) {
+        return (expected + count - 1) / count;
+    }
+
+    /** The number of distinct positions written. */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    /** The off-heap memory of the sets, over all shards. */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.set.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes a position unless it was written before. Safe to call from
+     * several threads.
+     *
+     * @param boardState The position.
+     * @param result     White's result in half points, or {@link PackedPosition#NO_RESULT}.
+     * @return {@code true} if it was new.
+     * @throws IOException If the shard cannot be written.
+     */
+    public boolean add(BoardState boardState, int result) throws IOException {
+        long[] words = scratch.get();
+        PackedPosition.encode(boardState, result, words);
+        return add(words);
+    }
+
+    /**
+     * Writes a packed position unless it was written before.
+     *
+     * @param words The packed position.
+     * @return {@code true} if it was new.
+     * @throws IOException If the shard cannot be written.
+     */
+    public boolean add(long[] words) throws IOException {
+        // The high bits pick the shard; the set probes with the low ones
+        Shard shard = shards[(int) ((PackedPosition.hash(words) >>> 32) % shards.length)];
+        synchronized (shard) {
+            if (!shard.set.add(words)) {
+                duplicates.incrementAndGet();
+                return false;
+            }
+            if (shard.buffer.remaining() < PackedPosition.BYTES) {
+                drain(shard);
+            }
+            PackedPosition.write(shard.buffer, shard.buffer.position(), words);
+            shard.buffer.position(shard.buffer.position() + PackedPosition.BYTES);
+        }
+        written.incrementAndGet();
+        return true;
+    }
+
+    // Writes the shard's buffer to its file. Must hold the shard's lock.
+    private static void drain(Shard shard) throws IOException {
+        shard.buffer.flip();
+        while (shard.buffer.hasRemaining()) {
+            shard.channel.write(shard.buffer);
+        }
+        shard.buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                try {
+                    drain(shard);
+                    shard.channel.close();
+                } catch (IOException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads every record of a shard file in order. The array passed to the
+     * consumer is reused for the next record.
+     *
+     * @param file     The file.
+     * @param consumer Receives the words of each record.
+     * @return The number of records.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long forEach(Path file, Consumer<long[]> consumer) throws IOException {
+        long[] words = new long[PackedPosition.WORDS];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                if (buffer.remaining() < PackedPosition.BYTES && channel.position() == channel.size()) {
+                    break; // A partial record at the end
+                }
+                while (buffer.remaining() >= PackedPosition.BYTES) {
+                    PackedPosition.read(buffer, buffer.position(), words);
+                    buffer.position(buffer.position() + PackedPosition.BYTES);
+                    consumer.accept(words);
+                    count++;
+                }
+                buffer.compact();
+            }
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path out = Paths.get("packed");
+        int shardCount = 16;
+        long expected = 1 << 22;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "--shards":
+                    shardCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--expected":
+                    expected = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    files.add(Paths.get(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: PackedPositionWriter FILE... [--out DIR] [--shards N] [--expected N]"
+                    + " [--threads N]");
+            System.exit(2);
+        }
+
+        System.out.printf("Dedup sets: %.1f MB off-heap for %d positions in %d shards%n",
+                memoryBytes(shardCount, expected) / 1048576.0, expected, shardCount);
+        long start = System.nanoTime();
+        AtomicLong skipped = new AtomicLong();
+        boolean full = false;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (PackedPositionWriter writer = new PackedPositionWriter(out, shardCount, expected)) {
+            try {
+                for (Path file : files) {
+                    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+                        List<String> block = new ArrayList<>();
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            block.add(line);
+                            if (block.size() == 1 << 16) {
+                                pack(writer, block, pool, threads, skipped);
+                                block.clear();
+                            }
+                        }
+                        pack(writer, block, pool, threads, skipped);
+                    }
+                }
+            } catch (IllegalStateException e) {
+                full = true; // A shard's set is full; keep what was written
+                System.err.printf("Stopped: %s in one of %d shards; rerun with a larger --expected than %d%n",
+                        e.getMessage(), shardCount, expected);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d positions written, %d duplicates, %d lines skipped in %.1f s (%.0f/s)%n",
+                    writer.getWrittenCount(), writer.getDuplicateCount(), skipped.get(), seconds,
+                    (writer.getWrittenCount() + writer.getDuplicateCount()) / seconds);
+        } finally {
+            pool.shutdown();
+        }
+        if (full) {
+            System.exit(1);
+        }
+    }
+
+    // Parses and writes a block of lines, split evenly over the pool. A full
+    // set is thrown as its IllegalStateException.
+    private static void pack(PackedPositionWriter writer, List<String> block, ExecutorService pool, int threads,
+            AtomicLong skipped) throws IOException, InterruptedException {
+        List<Future<?>> tasks = new ArrayList<>();
+        int chunk = (block.size() + threads - 1) / Math.max(1, threads);
+        for (int from = 0; from < block.size(); from += chunk) {
+            List<String> lines = block.subList(from, Math.min(block.size(), from + chunk));
+            tasks.add(pool.submit(() -> {
+                for (String line : lines) {
+                    String text = line.trim();
+                    if (text.isEmpty() || text.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = text.split("\\s+", 5);
+                    Matcher matcher = fields.length >= 5 ? EvaluationTuner.RESULT.matcher(fields[4]) : null;
+                    int result = matcher != null && matcher.find() ? EvaluationTuner.halfPoints(matcher.group())
+                            : PackedPosition.NO_RESULT;
+                    try {
+                        writer.add(Position.fromFen(text).toBoardState(), result);
+                    } catch (IllegalArgumentException e) {
+                        skipped.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof IllegalStateException) {
+                    throw (IllegalStateException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code Perft} class counts the leaf nodes of the legal move tree of
+ * {@link BoardState} to a fixed depth, the standard check of a move generator:
+ * the counts of well-known positions are published, and any difference points
+ * at a broken move rule in {@link ChessPieces} or the board. Promotions count
+ * once per promotion piece.
+ *
+ * <p>
+ * Deep trees reach the same positions through different move orders, so the
+ * cached mode stores the count of every subtree in a {@link PerftTable} keyed
+ * by Zobrist hash and depth, shared by all threads, and reuses it when the
+ * position comes up again. The root moves are split over a thread pool, each
+ * with its own copy of the board.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core Perft [options]
+ *   --fen FEN      the position (default: the starting position)
+ *   --depth N      the depth (default 5)
+ *   --threads N    threads that split the root moves (default: all cores)
+ *   --table MB     the size of the count cache (default 64)
+ *   --no-cache     count every node
+ *   --divide       also print the count under each root move
+ *   --compare      also count without the cache and report the speedup
+ *   --verify       like --compare, and exit with status 1 if any root move's counts differ
+ *   --suite        check the published counts of five reference positions instead
+ * </pre>
+ */
+public final class Perft {
+    // FEN, then the published counts at depth 1, 2, ...
+    private static final Object[][] SUITE = {
+        { Position.START_FEN, new long[] { 20, 400, 8902, 197281, 4865609, 119060324 } },
+        { "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                new long[] { 48, 2039, 97862, 4085603, 193690690 } },
+        { "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1", new long[] { 14, 191, 2812, 43238, 674624, 11030083 } },
+        { "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                new long[] { 6, 264, 9467, 422333, 15833292 } },
+        { "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                new long[] { 44, 1486, 62379, 2103487, 89941194 } },
+    };
+
+    /** The counts of one run. */
+    public static final class Result {
+        private final Map<Move, Long> divide;
+        private final long nodes;
+        private final long nanos;
+
+        Result(Map<Move, Long> divide, long nodes, long nanos) {
+            this.divide = divide;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        /** The count under each root move, in move generation order. */
+        public Map<Move, Long> getDivide() {
+            return divide;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getNodesPerSecond() {
+            return nanos > 0 ? nodes * 1e9 / nanos : 0;
+        }
+    }
+
+    private final PerftTable table; // null counts every node
+    private final int threads;
+
+    /**
+     * Creates a counter.
+     *
+     * @param tableMegabytes The size of the count cache, or 0 to count every node.
+     * @param threads        The threads that split the root moves.
+     */
+    public Perft(int tableMegabytes, int threads) {
+        this.table = tableMegabytes > 0 ? new PerftTable(tableMegabytes) : null;
+        this.threads = Math.max(1, threads);
+    }
+
+    /** The share of cache lookups that found a count, from 0 to 1. */
+    public double getHitRate() {
+        return table == null || table.getProbes() == 0 ? 0 : (double) table.getHits() / table.getProbes();
+    }
+
+    /**
+     * Counts the leaves below a position. The board is copied for every root
+     * move and left unchanged.
+     *
+     * @param boardState The position.
+     * @param depth      The depth, at least 1.
+     * @return The counts.
+     * @throws InterruptedException If interrupted while waiting for the threads.
+     */
+    public Result run(BoardState boardState, int depth) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Move> moves = boardState.generateLegalMoves(boardState.getSideToMove());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (Move move : moves) {
+                BoardState board = boardState.copy();
+                counts.add(pool.submit(() -> {
+                    board.makeMove(move);
+                    return count(board, depth - 1);
+                }));
+            }
+            Map<Move, Long> divide = new LinkedHashMap<>();
+            long nodes = 0;
+            for (int i = 0; i < moves.size(); i++) {
+                long count = counts.get(i).get();
+                divide.put(moves.get(i), count);
+                nodes += count;
+            }
+            return new Result(divide, nodes, System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Perft failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts the leaves below a position on the calling thread.
+     *
+     * @param boardState The position; restored before returning.
+     * @param depth      The depth.
+     * @return The number of leaves.
+     */
+    public long count(BoardState boardState, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (depth == 1) {
+            return countMoves(boardState);
+        }
+        long hash = boardState.getHash();
+        if (table != null) {
+            long cached = table.probe(hash, depth);
+            if (cached >= 0) {
+                return cached;
+            }
+        }
+        long nodes = 0;
+        for (Move move : boardState.generateLegalMoves(boardState.getSideToMove())) {
+            boardState.makeMove(move);
+            nodes += count(boardState, depth - 1);
+            boardState.undoMove();
+        }
+        if (table != null) {
+            table.store(hash, depth, nodes);
+        }
+        return nodes;
+    }
+
+    // Counts the legal moves of the side to move from the target bit sets,
+    // without building move lists; a promotion counts four times.
+    private static long countMoves(BoardState boardState) {
+        PieceColor color = boardState.getSideToMove();
+        // Copied first: checking moves reorders the list
+        Pieces[] pieces = boardState.getPieces().toArray(new Pieces[0]);
+        long count = 0;
+        for (Pieces piece : pieces) {
+            if (piece.getColor() != color) {
+                continue;
+            }
+            long targets = boardState.getLegalMovesAvoidingCheck(piece);
+            if (piece instanceof ChessPieces.Pawn) {
+                long lastRanks = 0xFFL | 0xFFL << 56;
+                count += 3L * Long.bitCount(targets & lastRanks);
+            }
+            count += Long.bitCount(targets);
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String fen = Position.START_FEN;
+        int depth = 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int tableMegabytes = 64;
+        boolean divide = false;
+        boolean compare = false;
+        boolean verify = false;
+        boolean suite = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen":
+                    fen = args[++i];
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--table":
+                    tableMegabytes = Integer.parseInt(args[++i]);
+                    break;
+                case "--no-cache":
+                    tableMegabytes = 0;
+                    break;
+                case "--divide":
+                    divide = true;
+                    break;
+                case "--compare":
+                    compare = true;
+                    break;
+                case "--verify":
+                    compare = true;
+                    verify = true;
+                    break;
+                case "--suite":
+                    suite = true;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (suite) {
+            System.exit(runSuite(depth, threads, tableMegabytes) ? 0 : 1);
+        }
+
+        BoardState board = Position.fromFen(fen).toBoardState();
+        if (compare && depth > 1) {
+            // Warm up both modes first, so neither is timed while still being compiled
+            for (int round = 0; round < 4; round++) {
+                new Perft(tableMegabytes, threads).run(board, Math.min(depth - 1, 4));
+                new Perft(0, threads).run(board, Math.min(depth - 1, 4));
+            }
+        }
+        Perft cached = new Perft(tableMegabytes, threads);
+        Result result = cached.run(board, depth);
+        if (divide) {
+            for (Map.Entry<Move, Long> entry : result.getDivide().entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+            }
+        }
+        System.out.printf(Locale.ROOT, "depth %d: %d nodes in %.3f s (%.0f nodes/s), cache hit rate %.1f%%%n", depth,
+                result.getNodes(), result.getNanos() / 1e9, result.getNodesPerSecond(), 100 * cached.getHitRate());
+        if (!compare) {
+            return;
+        }
+        Result uncached = new Perft(0, threads).run(board, depth);
+        System.out.printf(Locale.ROOT, "uncached: %d nodes in %.3f s, speedup %.2fx%n", uncached.getNodes(),
+                uncached.getNanos() / 1e9, (double) uncached.getNanos() / result.getNanos());
+        boolean match = true;
+        for (Map.Entry<Move, Long> entry : uncached.getDivide().entrySet()) {
+            Long count = result.getDivide().get(entry.getKey());
+            if (!entry.getValue().equals(count)) {
+                System.out.printf("MISMATCH %s: cached %s, uncached %d%n", entry.getKey(), count, entry.getValue());
+                match = false;
+            }
+        }
+        System.out.println(match ? "counts match" : "counts differ");
+        if (verify && !match) {
+            System.exit(1);
+        }
+    }
+
+    // Checks the reference positions to the given depth, or to their deepest
+    // published count if that is shallower, and reports whether all match.
+    private static boolean runSuite(int depth, int threads, int tableMegabytes) throws InterruptedException {
+        boolean passed = true;
+        long nodes = 0;
+        long nanos = 0;
+        for (Object[] entry : SUITE) {
+            String fen = (String) entry[0];
+            long[] expected = (long[]) entry[1];
+            int suiteDepth = Math.min(depth, expected.length);
+            Perft perft = new Perft(tableMegabytes, threads);
+            Result result = perft.run(Position.fromFen(fen).toBoardState(), suiteDepth);
+            boolean ok = result.getNodes() == expected[suiteDepth - 1];
+            passed &= ok;
+            nodes += result.getNodes();
+            nanos += result.getNanos();
+            System.out.printf(Locale.ROOT, "%s depth %d: %d %s (%.3f s, hit rate %.1f%%) %s%n", ok ? "ok  " : "FAIL",
+                    suiteDepth, result.getNodes(), ok ? "" : "expected " + expected[suiteDepth - 1],
+                    result.getNanos() / 1e9, 100 * perft.getHitRate(), fen);
+        }
+        System.out.printf(Locale.ROOT, "%s: %d nodes in %.3f s%n", passed ? "passed" : "FAILED", nodes, nanos / 1e9);
+        return passed;
+    }
+}
@@ -0,0 +1,91 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code PerftTable} class caches perft node counts by position and depth
+ * for any number of threads without locks. Each entry is two {@code long}s,
+ * the key XOR the data and the data itself, written and read with opaque
+ * (single-copy atomic) accesses; a reader recomputes the key from both words,
+ * so an entry torn by two threads writing at once simply fails to match and
+ * is treated as a miss instead of returning a wrong count.
+ *
+ * <p>
+ * The table is bounded: a key maps to a bucket of two entries, one kept for
+ * the deepest count stored there and one that always takes the newest. The
+ * data word holds the count in its low 56 bits and the depth in the top 8.
+ */
+final class PerftTable {
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long COUNT_MASK = (1L << 56) - 1;
+    private static final long[] DEPTH_KEYS = new long[64];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x50455246L);
+        for (int i = 0; i < DEPTH_KEYS.length; i++) {
+            DEPTH_KEYS[i] = random.nextLong();
+        }
+    }
+
+    private final long[] data; // Per bucket: key ^ data, data of the deep entry, then of the newest entry
+    private final int mask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Allocates a table.
+     *
+     * @param megabytes The size; rounded down to a power of two of buckets.
+     */
+    PerftTable(int megabytes) {
+        long buckets = Long.highestOneBit(Math.max(1, (long) megabytes << 20) / (4 * Long.BYTES));
+        int count = (int) Math.min(Math.max(1, buckets), 1 << 26);
+        data = new long[4 * count];
+        mask = count - 1;
+    }
+
+    long getProbes() {
+        return probes.sum();
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMemoryBytes() {
+        return (long) data.length * Long.BYTES;
+    }
+
+    /**
+     * Looks up a count.
+     *
+     * @param hash  The position's Zobrist hash.
+     * @param depth The remaining depth.
+     * @return The count, or -1 if it is not stored.
+     */
+    long probe(long hash, int depth) {
+        probes.increment();
+        long key = hash ^ DEPTH_KEYS[depth];
+        int index = 4 * (int) (key & mask);
+        for (int slot = index; slot < index + 4; slot += 2) {
+            long value = (long) LONGS.getOpaque(data, slot + 1);
+            if (((long) LONGS.getOpaque(data, slot) ^ value) == key && value != 0) {
+                hits.increment();
+                return value & COUNT_MASK;
+            }
+        }
+        return -1;
+    }
+
+    /** Stores a count, in the deep entry if it is at least as deep as the one there. */
+    void store(long hash, int depth, long count) {
+        long key = hash ^ DEPTH_KEYS[depth];
+        long value = (count & COUNT_MASK) | (long) depth << 56;
+        int index = 4 * (int) (key & mask);
+        long deep = (long) LONGS.getOpaque(data, index + 1);
+        int slot = deep == 0 || (int) (deep >>> 56) <= depth ? index : index + 2;
+        LONGS.setOpaque(data, slot, key ^ value);
+        LONGS.setOpaque(data, slot + 1, value);
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * The {@code PieceColor} enum is the color of a piece or of the side to move.
+ * Model code compares colors by identity; the lower case names ("white",
+ * "black") are only used for display and parsing.
+ */
+public enum PieceColor {
+    WHITE("white"),
+    BLACK("black");
+
+    private final String name;
+
+    PieceColor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the color for a side.
+     *
+     * @param white {@code true} for white.
+     * @return {@link #WHITE} or {@link #BLACK}.
+     */
+    public static PieceColor of(boolean white) {
+        return white ? WHITE : BLACK;
+    }
+
+    /**
+     * Parses a color name such as "white" or "Black".
+     *
+     * @param name The name to parse.
+     * @return The color.
+     * @throws IllegalArgumentException If the name is not a color.
+     */
+    public static PieceColor fromName(String name) {
+        for (PieceColor color : values()) {
+            if (color.name.equalsIgnoreCase(name)) {
+                return color;
+            }
+        }
+        throw new IllegalArgumentException("Unknown color: " + name);
+    }
+
+    public boolean isWhite() {
+        return this == WHITE;
+    }
+
+    public PieceColor opposite() {
+        return this == WHITE ? BLACK : WHITE;
+    }
+
+    // The direction in which pawns of this color move along the rows.
+    public int pawnDirection() {
+        return this == WHITE ? -1 : 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
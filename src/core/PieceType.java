@@ -0,0 +1,70 @@
+/**
+ * The {@code PieceType} enum lists the six kinds of pieces in the order used by
+ * {@link Position} codes, {@link Evaluator} weights and {@link Zobrist} keys,
+ * so {@link #ordinal()} can index those tables directly. The initials and
+ * names are only used for icons, notation and display; {@link #fromInitial}
+ * is a table lookup.
+ */
+public enum PieceType {
+    PAWN('p', "pawn"),
+    KNIGHT('n', "knight"),
+    BISHOP('b', "bishop"),
+    ROOK('r', "rook"),
+    QUEEN('q', "queen"),
+    KING('k', "king");
+
+    private static final PieceType[] BY_INITIAL = new PieceType[128]; // By lower case initial
+
+    static {
+        for (PieceType type : values()) {
+            BY_INITIAL[type.initial] = type;
+        }
+    }
+
+    private final char initial;
+    private final String name;
+
+    PieceType(char initial, String name) {
+        this.initial = initial;
+        this.name = name;
+    }
+
+    /**
+     * Returns the type for a lower case initial, e.g. 'n' for a knight.
+     *
+     * @param initial The initial.
+     * @return The type, or {@code null} if the character is not an initial.
+     */
+    public static PieceType fromInitial(char initial) {
+        return initial < BY_INITIAL.length ? BY_INITIAL[initial] : null;
+    }
+
+    /**
+     * Parses a type name such as "queen" or "Knight".
+     *
+     * @param name The name to parse.
+     * @return The type.
+     * @throws IllegalArgumentException If the name is not a piece type.
+     */
+    public static PieceType fromName(String name) {
+        for (PieceType type : values()) {
+            if (type.name.equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown piece type: " + name);
+    }
+
+    // The lower case initial used in icon names and notation, 'n' for a knight.
+    public char getInitial() {
+        return initial;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isSliding() {
+        return this == BISHOP || this == ROOK || this == QUEEN;
+    }
+}
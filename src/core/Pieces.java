@@ -0,0 +1,73 @@
+public abstract class Pieces {
+    // Attributes
+    protected int row;
+    protected int column;
+    protected PieceColor color;
+
+    // Constructor
+    public Pieces(int row, int column, PieceColor color) {
+        this.row = row;
+        this.column = column;
+        this.color = color;
+    }
+
+    // Getters and Setters
+    public int getRow() {
+        return row;
+    }
+
+    public void setRow(int row) {
+        this.row = row;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public void setColumn(int column) {
+        this.column = column;
+    }
+
+    // The square index, row * 8 + column
+    public int getSquare() {
+        return Square.of(row, column);
+    }
+
+    // The square name for display, e.g. "e4"
+    public String getPosition() {
+        return Square.name(getSquare());
+    }
+
+    public void setPosition(String position) {
+        int square = Square.parse(position);
+        if (square == Square.NONE) {
+            throw new IllegalArgumentException("Unknown square: " + position);
+        }
+        this.row = Square.row(square);
+        this.column = Square.column(square);
+    }
+
+    public PieceColor getColor() {
+        return color;
+    }
+
+    public boolean isWhite() {
+        return color == PieceColor.WHITE;
+    }
+
+    public void setColor(PieceColor color) {
+        this.color = color;
+    }
+
+    // Abstract methods
+    public abstract boolean isValidMove(int newRow, int newColumn);
+
+    // Returns the target squares as a bit set, bit row * 8 + column
+    public abstract long getLegalMoves();
+
+    public abstract PieceType getType();
+
+    protected char getPieceInitial() {
+        return getType().getInitial();
+    }
+}
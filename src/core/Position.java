@@ -0,0 +1,357 @@
+import java.util.Arrays;
+
+/**
+ * The {@code Position} class is an immutable snapshot of a board: one byte per
+ * square, the side to move, the castling rights, the en passant square and the
+ * two FEN move counters. It is cheap to create and
+ * safe to share between threads without locks, so a {@link BoardState} can
+ * publish one through a volatile field after every committed move and any
+ * number of background readers (analysis, logging, network) can use it while
+ * the event thread keeps changing the live board.
+ *
+ * <p>
+ * Squares are indexed by {@code row * 8 + column}. A piece code is the ordinal
+ * of its {@link PieceType} plus one, with {@link #BLACK} added for black pieces; {@link #EMPTY} marks an empty square. Positions are never
+ * modified: {@link #play(Move)} returns a new snapshot. The move counters are
+ * carried along but are not part of {@link #equals}, so the same position
+ * reached at another move compares equal.
+ */
+public final class Position {
+    public static final String PIECE_INITIALS = "pnbrqk";
+    public static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+    public static final int EMPTY = 0;
+    public static final int BLACK = 8;
+
+    public static final int WHITE_KINGSIDE = 1;
+    public static final int WHITE_QUEENSIDE = 2;
+    public static final int BLACK_KINGSIDE = 4;
+    public static final int BLACK_QUEENSIDE = 8;
+
+    private static final PieceType[] TYPES = PieceType.values();
+
+    private final byte[] squares;
+    private final boolean whiteToMove;
+    private final int castlingRights;
+    private final int enPassantSquare;
+    private final int halfmoveClock;
+    private final int fullmoveNumber;
+
+    private Position(byte[] squares, boolean whiteToMove, int castlingRights, int enPassantSquare,
+            int halfmoveClock, int fullmoveNumber) {
+        this.squares = squares;
+        this.whiteToMove = whiteToMove;
+        this.castlingRights = castlingRights;
+        this.enPassantSquare = enPassantSquare;
+        this.halfmoveClock = halfmoveClock;
+        this.fullmoveNumber = fullmoveNumber;
+    }
+
+    /**
+     * Takes a snapshot of a board. Must be called by the thread that owns the
+     * board.
+     *
+     * @param boardState The board to copy.
+     * @return The snapshot.
+     */
+    public static Position of(BoardState boardState) {
+        byte[] squares = new byte[64];
+        for (Pieces piece : boardState.getPieces()) {
+            squares[piece.getSquare()] = (byte) code(piece.getType(), piece.getColor());
+        }
+        return new Position(squares, boardState.isWhiteToMove(), boardState.getCastlingRights(),
+                boardState.getEnPassantSquare(), boardState.getHalfmoveClock(), boardState.getFullmoveNumber());
+    }
+
+    // Wraps placement codes that the caller no longer changes, e.g. ones decoded
+    // by PackedPosition.
+    static Position of(byte[] squares, boolean whiteToMove, int castlingRights, int enPassantSquare,
+            int halfmoveClock) {
+        return new Position(squares, whiteToMove, castlingRights, enPassantSquare, halfmoveClock, 1);
+    }
+
+    /**
+     * Reads a position in Forsyth-Edwards Notation. The first rank of the
+     * placement field is row 0. The move counters are optional and default to
+     * 0 and 1, so EPD lines with operations after the fourth field read too.
+     *
+     * @param fen The FEN text, e.g. "8/8/4k3/8/8/4K3/4P3/8 w - - 0 1".
+     * @return The position.
+     * @throws IllegalArgumentException If the text is not a valid FEN string.
+     */
+    public static Position fromFen(String fen) {
+        String[] fields = fen.trim().split("\\s+");
+        if (fields.length < 4 || !fields[1].matches("[wb]")) {
+            throw new IllegalArgumentException("Bad FEN: " + fen);
+        }
+        byte[] squares = new byte[64];
+        int row = 0;
+        int column = 0;
+        for (char c : fields[0].toCharArray()) {
+            if (c == '/') {
+                if (column != 8) {
+                    throw new IllegalArgumentException("Bad rank in FEN: " + fen);
+                }
+                row++;
+                column = 0;
+            } else if (c >= '1' && c <= '8') {
+                column += c - '0';
+            } else {
+                PieceType type = PieceType.fromInitial(Character.toLowerCase(c));
+                if (type == null || row > 7 || column > 7) {
+                    throw new IllegalArgumentException("Bad placement in FEN: " + fen);
+                }
+                squares[row * 8 + column++] = (byte) code(type, PieceColor.of(Character.isUpperCase(c)));
+            }
+        }
+        if (row != 7 || column != 8) {
+            throw new IllegalArgumentException("Bad placement in FEN: " + fen);
+        }
+
+        int rights = 0;
+        for (char c : fields[2].toCharArray()) {
+            int index = "KQkq".indexOf(c);
+            if (index < 0 && c != '-') {
+                throw new IllegalArgumentException("Bad castling rights in FEN: " + fen);
+            }
+            rights |= index < 0 ? 0 : 1 << index;
+        }
+
+        int enPassant = Square.NONE;
+        if (!fields[3].equals("-")) {
+            enPassant = Square.parse(fields[3]);
+            if (enPassant == Square.NONE) {
+                throw new IllegalArgumentException("Bad en passant square in FEN: " + fen);
+            }
+        }
+        int halfmoveClock = fields.length > 4 && fields[4].matches("\\d{1,4}") ? Integer.parseInt(fields[4]) : 0;
+        int fullmoveNumber = fields.length > 5 && fields[5].matches("\\d{1,5}") ? Math.max(1, Integer.parseInt(fields[5])) : 1;
+        return new Position(squares, fields[1].equals("w"), rights, enPassant, halfmoveClock, fullmoveNumber);
+    }
+
+    public static int code(PieceType type, PieceColor color) {
+        return type.ordinal() + 1 + (color == PieceColor.WHITE ? 0 : BLACK);
+    }
+
+    // Returns the code for a piece initial, e.g. 'q', as used in notation.
+    public static int code(char initial, boolean white) {
+        return code(PieceType.fromInitial(initial), PieceColor.of(white));
+    }
+
+    // Returns the type of a piece code, or null for an empty square.
+    public static PieceType typeOf(int code) {
+        return code == EMPTY ? null : TYPES[(code & 7) - 1];
+    }
+
+    public int getPiece(int row, int column) {
+        return squares[row * 8 + column];
+    }
+
+    public int getPiece(int square) {
+        return squares[square];
+    }
+
+    public boolean isWhiteToMove() {
+        return whiteToMove;
+    }
+
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    // Returns the square a pawn skipped with a double step on the last move, or -1.
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    // Returns the plies since the last capture or pawn move.
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    // Returns the number of the full move being played, starting at 1.
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    public static boolean isWhite(int code) {
+        return code != EMPTY && code < BLACK;
+    }
+
+    // Returns the piece initial for a code, e.g. 'q', or ' ' for an empty square.
+    public static char initialOf(int code) {
+        return code == EMPTY ? ' ' : PIECE_INITIALS.charAt((code & 7) - 1);
+    }
+
+    /**
+     * Builds a new, independent {@link BoardState} holding this position. The
+     * king and rook "moved" flags are set so that exactly the recorded castling
+     * rights remain, except rights whose king or rook is not on its home
+     * square, which are dropped.
+     *
+     * @return The new board.
+     */
+    public BoardState toBoardState() {
+        BoardState boardState = new BoardState();
+        for (int square = 0; square < 64; square++) {
+            int code = squares[square];
+            if (code == EMPTY) {
+                continue;
+            }
+            int row = square / 8;
+            int column = square % 8;
+            boolean white = isWhite(code);
+            Pieces piece = ChessPieceFactory.createPiece(typeOf(code), row, column, PieceColor.of(white), boardState);
+            int kingside = white ? WHITE_KINGSIDE : BLACK_KINGSIDE;
+            int queenside = white ? WHITE_QUEENSIDE : BLACK_QUEENSIDE;
+            // A right only counts for pieces still on their home squares
+            boolean homeRow = row == (white ? 7 : 0);
+            if (piece instanceof ChessPieces.King
+                    && !(homeRow && column == 4 && (castlingRights & (kingside | queenside)) != 0)) {
+                ((ChessPieces.King) piece).movedPiece();
+            } else if (piece instanceof ChessPieces.Rook && !(homeRow && column == 7 && (castlingRights & kingside) != 0)
+                    && !(homeRow && column == 0 && (castlingRights & queenside) != 0)) {
+                ((ChessPieces.Rook) piece).movedPiece();
+            }
+            boardState.addPiece(piece);
+        }
+        boardState.setWhiteToMove(whiteToMove);
+        boardState.setEnPassantSquare(enPassantSquare);
+        boardState.setHalfmoveClock(halfmoveClock);
+        boardState.setFullmoveNumber(fullmoveNumber);
+        return boardState;
+    }
+
+    /**
+     * Returns the position after a move, leaving this one untouched. The move is
+     * assumed to be legal.
+     *
+     * @param move The move to play.
+     * @return The new snapshot.
+     */
+    public Position play(Move move) {
+        byte[] next = squares.clone();
+        int from = move.getFromRow() * 8 + move.getFromColumn();
+        int to = move.getToRow() * 8 + move.getToColumn();
+        int piece = next[from];
+        PieceType type = typeOf(piece);
+        if (type == PieceType.PAWN && next[to] == EMPTY && move.getFromColumn() != move.getToColumn()) {
+            next[move.getFromRow() * 8 + move.getToColumn()] = EMPTY; // Capture en passant
+        }
+        next[from] = EMPTY;
+        next[to] = (byte) piece;
+        if (type == PieceType.KING && Math.abs(move.getToColumn() - move.getFromColumn()) == 2) {
+            int row = move.getFromRow();
+            boolean kingSide = move.getToColumn() == 6;
+            next[row * 8 + (kingSide ? 5 : 3)] = next[row * 8 + (kingSide ? 7 : 0)]; // Move the rook as well
+            next[row * 8 + (kingSide ? 7 : 0)] = EMPTY;
+        } else if (type == PieceType.PAWN && (move.getToRow() == 0 || move.getToRow() == 7)) {
+            PieceType promotion = move.getPromotion() != null ? move.getPromotion() : PieceType.QUEEN;
+            next[to] = (byte) code(promotion, PieceColor.of(isWhite(piece)));
+        }
+        int rights = castlingRights & ~rightsTouching(from) & ~rightsTouching(to);
+        int passed = type == PieceType.PAWN && Math.abs(to - from) == 16 ? (from + to) / 2 : -1;
+        boolean reset = type == PieceType.PAWN || squares[to] != EMPTY;
+        return new Position(next, !whiteToMove, rights, passed, reset ? 0 : halfmoveClock + 1,
+                whiteToMove ? fullmoveNumber : fullmoveNumber + 1);
+    }
+
+    // The castling rights lost when a piece moves from or to a square.
+    private static int rightsTouching(int square) {
+        switch (square) {
+            case 7 * 8 + 4:
+                return WHITE_KINGSIDE | WHITE_QUEENSIDE;
+            case 7 * 8 + 7:
+                return WHITE_KINGSIDE;
+            case 7 * 8:
+                return WHITE_QUEENSIDE;
+            case 4:
+                return BLACK_KINGSIDE | BLACK_QUEENSIDE;
+            case 7:
+                return BLACK_KINGSIDE;
+            case 0:
+                return BLACK_QUEENSIDE;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Position)) {
+            return false;
+        }
+        Position position = (Position) other;
+        return whiteToMove == position.whiteToMove && castlingRights == position.castlingRights
+                && enPassantSquare == position.enPassantSquare && Arrays.equals(squares, position.squares);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((Arrays.hashCode(squares) * 31 + castlingRights) * 67 + enPassantSquare) * 2 + (whiteToMove ? 1 : 0);
+    }
+
+    /** Writes this position in Forsyth-Edwards Notation with its own move counters. */
+    public String toFen() {
+        return toFen(halfmoveClock, fullmoveNumber);
+    }
+
+    /**
+     * Writes this position in Forsyth-Edwards Notation.
+     *
+     * @param halfmoveClock  The plies since the last capture or pawn move.
+     * @param fullmoveNumber The number of the next full move, starting at 1.
+     * @return The FEN text.
+     */
+    public String toFen(int halfmoveClock, int fullmoveNumber) {
+        StringBuilder fen = new StringBuilder(90);
+        for (int row = 0; row < 8; row++) {
+            int empty = 0;
+            for (int column = 0; column < 8; column++) {
+                int code = squares[row * 8 + column];
+                if (code == EMPTY) {
+                    empty++;
+                    continue;
+                }
+                if (empty > 0) {
+                    fen.append(empty);
+                    empty = 0;
+                }
+                fen.append(isWhite(code) ? Character.toUpperCase(initialOf(code)) : initialOf(code));
+            }
+            if (empty > 0) {
+                fen.append(empty);
+            }
+            if (row < 7) {
+                fen.append('/');
+            }
+        }
+        fen.append(whiteToMove ? " w " : " b ");
+        int length = fen.length();
+        for (int i = 0; i < 4; i++) {
+            if ((castlingRights & 1 << i) != 0) {
+                fen.append("KQkq".charAt(i));
+            }
+        }
+        if (fen.length() == length) {
+            fen.append('-');
+        }
+        fen.append(' ').append(enPassantSquare == Square.NONE ? "-" : Square.name(enPassantSquare));
+        return fen.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber).toString();
+    }
+
+    // Returns the board as eight rows of piece initials (upper case for white, '.'
+    // for empty), row 0 first, followed by the side to move.
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(80);
+        for (int square = 0; square < 64; square++) {
+            int code = squares[square];
+            char initial = code == EMPTY ? '.' : initialOf(code);
+            text.append(isWhite(code) ? Character.toUpperCase(initial) : initial);
+            if (square % 8 == 7) {
+                text.append('/');
+            }
+        }
+        return text.append(whiteToMove ? " white" : " black").toString();
+    }
+}
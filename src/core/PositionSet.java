@@ -0,0 +1,119 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The {@code PositionSet} class is a set of {@link PackedPosition}s for
+ * removing duplicates from training data. The slots live outside the Java heap
+ * in direct buffers of at most 1 GiB each, so a set of hundreds of millions of
+ * positions costs the garbage collector nothing, and each slot is just the 32
+ * packed bytes with the labels cleared. Lookups use open addressing with
+ * linear probing; a slot whose occupancy word is 0 is empty, which no real
+ * position is because the kings are always on the board.
+ *
+ * <p>
+ * The set does not grow: it is sized for an expected number of positions when
+ * created and refuses additions beyond 90% of its slots. It is not thread-safe;
+ * {@link PackedPositionWriter} keeps one per shard.
+ */
+public class PositionSet {
+    private static final int SEGMENT_SHIFT = 25; // 2^25 slots of 32 bytes: 1 GiB per buffer
+    private static final double MAX_LOAD = 0.9;
+
+    private final ByteBuffer[] segments;
+    private final long mask;
+    private final long maxSize;
+    private long size;
+
+    /**
+     * Allocates a set.
+     *
+     * @param expected The number of positions it should hold at a load of 75%.
+     */
+    public PositionSet(long expected) {
+        long slots = slotsFor(expected);
+        mask = slots - 1;
+        maxSize = (long) (slots * MAX_LOAD);
+        int segmentSlots = (int) Math.min(slots, 1L << SEGMENT_SHIFT);
+        segments = new ByteBuffer[(int) (slots / segmentSlots)];
+        for (int i = 0; i < segments.length; i++) {
+            // Direct buffers start zeroed, i.e. with every slot empty
+            segments[i] = ByteBuffer.allocateDirect(segmentSlots * PackedPosition.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Returns the off-heap memory a set for the given number of positions
+     * allocates, so callers can check it before creating one.
+     *
+     * @param expected The number of positions it should hold at a load of 75%.
+     * @return The size of its buffers in bytes.
+     */
+    public static long memoryBytes(long expected) {
+        return slotsFor(expected) * PackedPosition.BYTES;
+    }
+
+    // The number of slots for a number of positions: a power of two at least 4/3 of it.
+    private static long slotsFor(long expected) {
+        return Long.highestOneBit(Math.max(16, expected * 4 / 3 + 1) * 2 - 1);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long getCapacity() {
+        return maxSize;
+    }
+
+    public long getMemoryBytes() {
+        return (mask + 1) * PackedPosition.BYTES;
+    }
+
+    /**
+     * Adds a position unless it is already present. Labels are ignored.
+     *
+     * @param words The packed position.
+     * @return {@code true} if it was new.
+     * @throws IllegalStateException If the set is full.
+     */
+    public boolean add(long[] words) {
+        long key3 = words[3] & PackedPosition.KEY_MASK;
+        for (long slot = PackedPosition.hash(words) & mask;; slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * PackedPosition.BYTES;
+            long occupancy = segment.getLong(offset);
+            if (occupancy == 0) {
+                if (size >= maxSize) {
+                    throw new IllegalStateException("Position set is full: " + size + " positions");
+                }
+                segment.putLong(offset, words[0]);
+                segment.putLong(offset + 8, words[1]);
+                segment.putLong(offset + 16, words[2]);
+                segment.putLong(offset + 24, key3);
+                size++;
+                return true;
+            }
+            if (occupancy == words[0] && segment.getLong(offset + 8) == words[1]
+                    && segment.getLong(offset + 16) == words[2] && segment.getLong(offset + 24) == key3) {
+                return false;
+            }
+        }
+    }
+
+    /** Whether a position is present. Labels are ignored. */
+    public boolean contains(long[] words) {
+        long key3 = words[3] & PackedPosition.KEY_MASK;
+        for (long slot = PackedPosition.hash(words) & mask;; slot = (slot + 1) & mask) {
+            ByteBuffer segment = segments[(int) (slot >>> SEGMENT_SHIFT)];
+            int offset = (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * PackedPosition.BYTES;
+            long occupancy = segment.getLong(offset);
+            if (occupancy == 0) {
+                return false;
+            }
+            if (occupancy == words[0] && segment.getLong(offset + 8) == words[1]
+                    && segment.getLong(offset + 16) == words[2] && segment.getLong(offset + 24) == key3) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,569 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code PuzzleMiner} class finds tactical puzzles in PGN game collections.
+ * It is a pipeline of four stages joined by bounded queues, so a slow stage
+ * holds the ones before it back instead of filling memory:
+ *
+ * <ol>
+ * <li>a reader splits the files into games;</li>
+ * <li>filter threads replay each game through {@link BoardState} and flag the
+ * positions worth a search: the side to move can win material by a capture
+ * that {@link StaticExchange} rates as winning, the material balance swings
+ * its way within the next few moves of the game, or the move played is a
+ * check that leaves at most two replies;</li>
+ * <li>verify threads search each flagged position with {@link Search} under a
+ * time limit and keep it if one move wins, by mate or by at least
+ * {@value #MIN_GAIN} centipawns over the static evaluation before the
+ * opponent's last move, and every other move scores at least
+ * {@value #UNIQUE_MARGIN} less;</li>
+ * <li>a writer prints each puzzle as its FEN, the solution in SAN, the score
+ * and the reasons it was flagged, separated by semicolons.</li>
+ * </ol>
+ *
+ * A position is searched at most once: flagged positions pass through a
+ * {@link PositionSet}. The throughput of every stage and the queue lengths are
+ * reported on standard error once a second.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core PuzzleMiner FILE.pgn... [options]
+ *   --out FILE             where the puzzles are written (default: standard output)
+ *   --filter-threads N     threads that replay and flag (default: a quarter of the cores)
+ *   --verify-threads N     threads that search (default: the other cores)
+ *   --queue N              the capacity of each queue (default 1024)
+ *   --depth N              the deepest verification search (default 4)
+ *   --time MS              the search time per position (default 500)
+ *   --expected N           flagged positions expected, which sizes the duplicate filter (default 4194304)
+ * </pre>
+ */
+public class PuzzleMiner {
+    static final int MIN_GAIN = 200;
+    static final int UNIQUE_MARGIN = 150;
+    private static final int OPENING_PLIES = 12; // Not mined: mostly book moves
+    private static final int HANGING_GAIN = 200; // Static exchange gain that flags a capture
+    private static final int SWING = 200; // Material gain within SWING_PLIES that flags a position
+    private static final int SWING_PLIES = 4;
+    private static final int MIN_DEPTH = 2; // A verdict needs at least this depth
+    private static final int MAX_SOLUTION_PLIES = 7;
+    private static final int TABLE_MEGABYTES = 8; // Per verify thread
+    private static final int HANGING = 1;
+    private static final int SWUNG = 2;
+    private static final int FORCING_CHECK = 4;
+    private static final String END = new String("end"); // Ends the games and puzzles queues, by identity
+
+    private final int filterThreads;
+    private final int verifyThreads;
+    private final int maxDepth;
+    private final long millis;
+    private final BlockingQueue<String> games;
+    private final BlockingQueue<Candidate> candidates;
+    private final BlockingQueue<String> puzzles;
+    private final PositionSet seen; // Guarded by itself
+    private final Evaluator evaluator = new Evaluator(); // Scores both the baselines and the searches
+    private final AtomicInteger filtersRunning;
+    private final AtomicInteger verifiersRunning;
+    private volatile IOException writeFailure; // Stops the reader; the other stages drain
+
+    private final LongAdder gamesRead = new LongAdder();
+    private final LongAdder gamesSkipped = new LongAdder();
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder flagged = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder searched = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    // A flagged position on its way to the verify threads.
+    private static final class Candidate {
+        static final Candidate END = new Candidate(null, 0, 0, 0, 0);
+
+        final Position position;
+        final int halfmoveClock;
+        final int fullmoveNumber;
+        final int baseline; // The mover's static evaluation before the opponent's last move, at best
+        final int flags;
+
+        Candidate(Position position, int halfmoveClock, int fullmoveNumber, int baseline, int flags) {
+            this.position = position;
+            this.halfmoveClock = halfmoveClock;
+            this.fullmoveNumber = fullmoveNumber;
+            this.baseline = baseline;
+            this.flags = flags;
+        }
+    }
+
+    /**
+     * Creates a miner.
+     *
+     * @param filterThreads The threads that replay games and flag positions.
+     * @param verifyThreads The threads that search flagged positions.
+     * @param queueCapacity The capacity of each queue between stages.
+     * @param maxDepth      The deepest verification search.
+     * @param millis        The search time per flagged position.
+     * @param expected      The flagged positions expected, which sizes the duplicate filter.
+     */
+    public PuzzleMiner(int filterThreads, int verifyThreads, int queueCapacity, int maxDepth, long millis,
+            long expected) {
+        this.filterThreads = Math.max(1, filterThreads);
+        this.verifyThreads = Math.max(1, verifyThreads);
+        this.maxDepth = Math.max(MIN_DEPTH, maxDepth);
+        this.millis = millis;
+        games = new ArrayBlockingQueue<>(queueCapacity);
+        candidates = new ArrayBlockingQueue<>(queueCapacity);
+        puzzles = new ArrayBlockingQueue<>(queueCapacity);
+        seen = new PositionSet(expected);
+        filtersRunning = new AtomicInteger(this.filterThreads);
+        verifiersRunning = new AtomicInteger(this.verifyThreads);
+    }
+
+    /**
+     * Mines the games of some PGN files and writes the puzzles found.
+     *
+     * @param files The PGN files.
+     * @param out   Receives one line per puzzle; flushed but not closed.
+     * @throws IOException          If a file cannot be read or the output written.
+     * @throws InterruptedException If interrupted while waiting for the stages.
+     */
+    public void run(List<Path> files, Writer out) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < filterThreads; i++) {
+            threads.add(new Thread(this::filter, "puzzle-filter-" + (i + 1)));
+        }
+        for (int i = 0; i < verifyThreads; i++) {
+            threads.add(new Thread(this::verify, "puzzle-verify-" + (i + 1)));
+        }
+        Thread writer = new Thread(() -> write(out), "puzzle-writer");
+        threads.add(writer);
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread reporter = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                System.err.println(report(System.nanoTime() - start));
+            }
+        }, "puzzle-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+        try {
+            read(files);
+        } finally {
+            for (int i = 0; i < filterThreads; i++) {
+                games.put(END);
+            }
+            writer.join();
+            reporter.interrupt();
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+        System.err.println(report(System.nanoTime() - start));
+    }
+
+    /** The counts of every stage and their rates over the given time. */
+    public String report(long nanos) {
+        double seconds = Math.max(1e-9, nanos / 1e9);
+        return String.format(Locale.ROOT,
+                "%.0f s: games %d (%.0f/s, %d skipped) | positions %d (%.0f/s) | flagged %d (%.0f/s, %d duplicates)"
+                        + " | searched %d (%.1f/s, %d timed out) | puzzles %d (%.1f/s) | queued %d/%d/%d",
+                seconds, gamesRead.sum(), gamesRead.sum() / seconds, gamesSkipped.sum(), positions.sum(),
+                positions.sum() / seconds, flagged.sum(), flagged.sum() / seconds, duplicates.sum(), searched.sum(),
+                searched.sum() / seconds, timedOut.sum(), written.sum(), written.sum() / seconds, games.size(),
+                candidates.size(), puzzles.size());
+    }
+
+    // Stage 1, on the calling thread: splits the files into games. A tag after
+    // movetext starts the next game.
+    private void read(List<Path> files) throws IOException, InterruptedException {
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+                StringBuilder game = new StringBuilder();
+                boolean inMoves = false;
+                String line;
+                while ((line = reader.readLine()) != null && writeFailure == null) {
+                    if (line.startsWith("[") && inMoves) {
+                        games.put(game.toString());
+                        gamesRead.increment();
+                        game.setLength(0);
+                        inMoves = false;
+                    }
+                    inMoves |= !line.isBlank() && !line.startsWith("[");
+                    game.append(line).append('\n');
+                }
+                if (inMoves) {
+                    games.put(game.toString());
+                    gamesRead.increment();
+                }
+            }
+        }
+    }
+
+    // Stage 2: replays games and queues the flagged positions. The last filter
+    // to finish ends the candidates queue.
+    private void filter() {
+        try {
+            for (String game = games.take(); game != END; game = games.take()) {
+                try {
+                    scan(game);
+                } catch (IllegalArgumentException e) {
+                    gamesSkipped.increment(); // An unreadable FEN or move
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (filtersRunning.decrementAndGet() == 0) {
+                for (int i = 0; i < verifyThreads; i++) {
+                    putUninterruptibly(candidates, Candidate.END);
+                }
+            }
+        }
+    }
+
+    // Replays one game, then flags its positions; the material swing needs the
+    // moves that followed.
+    private void scan(String game) throws InterruptedException {
+        String fen = Position.START_FEN;
+        StringBuilder movetext = new StringBuilder();
+        for (String line : game.split("\n")) {
+            if (line.startsWith("[FEN \"")) {
+                fen = line.substring(6, line.lastIndexOf('"'));
+            } else if (!line.startsWith("[")) {
+                movetext.append(line).append('\n');
+            }
+        }
+        String moves = EvaluationTuner.mainLine(movetext);
+        String[] fields = fen.trim().split("\\s+");
+        int firstMove = fields.length >= 6 ? Integer.parseInt(fields[5]) : 1;
+
+        BoardState board = Position.fromFen(fen).toBoardState();
+        boolean whiteFirst = board.isWhiteToMove();
+        List<Position> snapshots = new ArrayList<>();
+        List<long[]> packed = new ArrayList<>();
+        List<Integer> clocks = new ArrayList<>();
+        List<Integer> material = new ArrayList<>(); // White's balance
+        List<Integer> evaluations = new ArrayList<>(); // White's static evaluation
+        List<Integer> flags = new ArrayList<>();
+        for (String token : moves.trim().split("\\s+")) {
+            if (token.isEmpty() || token.matches("\\d+\\.+|1-0|0-1|1/2-1/2|\\*")) {
+                continue;
+            }
+            Move move = Notation.parseSan(board, token.replaceFirst("^\\d+\\.+", ""));
+            int ply = snapshots.size();
+            Position position = Position.of(board);
+            snapshots.add(position);
+            clocks.add(board.getHalfmoveClock());
+            material.add(material(board));
+            evaluations.add(evaluator.evaluate(board, true));
+            int flag = 0;
+            if (ply >= OPENING_PLIES) {
+                long[] words = new long[PackedPosition.WORDS];
+                PackedPosition.encode(board, PackedPosition.NO_RESULT, words);
+                packed.add(words);
+                flag = hasWinningCapture(board, position) ? HANGING : 0;
+            } else {
+                packed.add(null);
+            }
+            board.makeMove(move);
+            PieceColor defender = board.getSideToMove();
+            if (ply >= OPENING_PLIES && board.isKingInCheck(defender)
+                    && board.generateLegalMoves(defender).size() <= 2) {
+                flag |= FORCING_CHECK;
+            }
+            flags.add(flag);
+        }
+        material.add(material(board));
+        positions.add(snapshots.size());
+
+        for (int ply = OPENING_PLIES; ply < snapshots.size(); ply++) {
+            int sign = (ply % 2 == 0) == whiteFirst ? 1 : -1;
+            int balance = Math.max(sign * material.get(ply), sign * material.get(ply - 1));
+            int flag = flags.get(ply);
+            for (int ahead = 1; ahead <= SWING_PLIES && ply + ahead < material.size(); ahead++) {
+                if (sign * material.get(ply + ahead) - balance >= SWING) {
+                    flag |= SWUNG;
+                    break;
+                }
+            }
+            if (flag == 0) {
+                continue;
+            }
+            boolean added;
+            synchronized (seen) {
+                // Once the filter is full, later positions are searched even if seen before
+                added = seen.size() >= seen.getCapacity() || seen.add(packed.get(ply));
+            }
+            if (!added) {
+                duplicates.increment();
+                continue;
+            }
+            flagged.increment();
+            int fullmove = firstMove + (ply + (whiteFirst ? 0 : 1)) / 2;
+            // The search's score includes the piece-square terms, so the gain is
+            // measured from an evaluation by the same evaluator
+            int baseline = Math.max(sign * evaluations.get(ply), sign * evaluations.get(ply - 1));
+            candidates.put(new Candidate(snapshots.get(ply), clocks.get(ply), fullmove, baseline, flag));
+        }
+    }
+
+    // White's material minus Black's, without the kings.
+    private static int material(BoardState board) {
+        int balance = 0;
+        for (Pieces piece : board.getPieces()) {
+            if (piece.getType() != PieceType.KING) {
+                int value = StaticExchange.VALUES[piece.getType().ordinal()];
+                balance += piece.isWhite() ? value : -value;
+            }
+        }
+        return balance;
+    }
+
+    // Whether the side to move has a capture that wins material by static exchange.
+    private static boolean hasWinningCapture(BoardState board, Position position) {
+        for (Move move : board.generateLegalMoves(board.getSideToMove())) {
+            if (position.getPiece(move.getTo()) != Position.EMPTY
+                    && StaticExchange.evaluate(position, move) >= HANGING_GAIN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Stage 3: searches flagged positions and queues the puzzles. The last
+    // verifier to finish ends the puzzles queue.
+    private void verify() {
+        SearchTable table = new SearchTable(TABLE_MEGABYTES);
+        try {
+            for (Candidate candidate = candidates.take(); candidate != Candidate.END; candidate = candidates
+                    .take()) {
+                String puzzle = solve(candidate, table);
+                searched.increment();
+                if (puzzle != null) {
+                    puzzles.put(puzzle);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (verifiersRunning.decrementAndGet() == 0) {
+                putUninterruptibly(puzzles, END);
+            }
+        }
+    }
+
+    // Deepens a search of every root move until the time is up, and returns the
+    // puzzle line if the deepest completed depth found one winning move, or null.
+    private String solve(Candidate candidate, SearchTable table) {
+        BoardState board = candidate.position.toBoardState();
+        List<Move> rootMoves = board.generateLegalMoves(board.getSideToMove());
+        if (rootMoves.size() < 2) {
+            return null; // No choice to make
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        int best = 0;
+        int second = 0;
+        List<Move> solution = null;
+        int completed = 0;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            Search.orderMoves(board, rootMoves, solution == null ? null : solution.get(0));
+            int depthBest = -Search.INFINITY;
+            int depthSecond = -Search.INFINITY;
+            List<Move> depthLine = null;
+            for (Move move : rootMoves) {
+                // A move that cannot come within the margin of the best only needs an upper bound
+                int alpha = depthBest == -Search.INFINITY ? -Search.INFINITY : depthBest - UNIQUE_MARGIN;
+                Search search = new Search(evaluator, stop, table);
+                search.setLimits(Long.MAX_VALUE, deadline);
+                List<Move> line = new ArrayList<>();
+                board.makeMove(move);
+                int score = -search.search(board, depth - 1, -Search.INFINITY, -alpha, 1, line);
+                board.undoMove();
+                if (stop.get()) {
+                    break;
+                }
+                if (score > depthBest) {
+                    depthSecond = depthBest;
+                    depthBest = score;
+                    depthLine = new ArrayList<>();
+                    depthLine.add(move);
+                    depthLine.addAll(line);
+                } else {
+                    depthSecond = Math.max(depthSecond, score);
+                }
+            }
+            if (stop.get()) {
+                break;
+            }
+            best = depthBest;
+            second = depthSecond;
+            solution = depthLine;
+            completed = depth;
+        }
+        if (completed < MIN_DEPTH) {
+            timedOut.increment();
+            return null;
+        }
+        boolean winning = (Search.isMateScore(best) && best > 0) || best - candidate.baseline >= MIN_GAIN;
+        if (!winning || second > best - UNIQUE_MARGIN) {
+            return null;
+        }
+        return format(candidate, solution, best);
+    }
+
+    // Writes a puzzle as "FEN;solution;score;flags", the solution in SAN and
+    // ending with a move of the side to move.
+    private static String format(Candidate candidate, List<Move> solution, int score) {
+        int plies = Math.min(solution.size(), MAX_SOLUTION_PLIES);
+        plies -= (plies + 1) % 2;
+        BoardState board = candidate.position.toBoardState();
+        StringJoiner moves = new StringJoiner(" ");
+        for (int i = 0; i < plies; i++) {
+            moves.add(Notation.san(board, solution.get(i)));
+            board.makeMove(solution.get(i));
+        }
+        String scoreText;
+        if (Search.isMateScore(score)) {
+            scoreText = "#" + (Search.MATE - score + 1) / 2;
+        } else {
+            scoreText = String.format(Locale.ROOT, "%+.2f", score / 100.0);
+        }
+        StringJoiner reasons = new StringJoiner(",");
+        if ((candidate.flags & HANGING) != 0) {
+            reasons.add("hanging");
+        }
+        if ((candidate.flags & SWUNG) != 0) {
+            reasons.add("swing");
+        }
+        if ((candidate.flags & FORCING_CHECK) != 0) {
+            reasons.add("check");
+        }
+        return candidate.position.toFen(candidate.halfmoveClock, candidate.fullmoveNumber) + ";" + moves + ";"
+                + scoreText + ";" + reasons;
+    }
+
+    // Stage 4: writes the puzzles in the order they were found. After a write
+    // fails it only drains the queue, so the stages before it can finish.
+    private void write(Writer out) {
+        try {
+            for (String puzzle = puzzles.take(); puzzle != END; puzzle = puzzles.take()) {
+                if (writeFailure == null) {
+                    try {
+                        out.write(puzzle);
+                        out.write('\n');
+                        written.increment();
+                    } catch (IOException e) {
+                        writeFailure = e;
+                    }
+                }
+            }
+            if (writeFailure == null) {
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            writeFailure = e;
+        }
+    }
+
+    // Queues an end marker even if interrupted, so the next stage always ends.
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(element);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int filterThreads = Math.max(1, cores / 4);
+        int verifyThreads = -1;
+        int queueCapacity = 1024;
+        int depth = 4;
+        long millis = 500;
+        long expected = 1 << 22;
+        Path out = null;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    out = Paths.get(args[++i]);
+                    break;
+                case "--filter-threads":
+                    filterThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--verify-threads":
+                    verifyThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue":
+                    queueCapacity = Integer.parseInt(args[++i]);
+                    break;
+                case "--depth":
+                    depth = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    millis = Long.parseLong(args[++i]);
+                    break;
+                case "--expected":
+                    expected = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    files.add(Paths.get(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: PuzzleMiner FILE.pgn... [--out FILE] [--filter-threads N]"
+                    + " [--verify-threads N] [--queue N] [--depth N] [--time MS] [--expected N]");
+            System.exit(2);
+        }
+        if (verifyThreads < 0) {
+            verifyThreads = Math.max(1, cores - filterThreads);
+        }
+
+        PuzzleMiner miner = new PuzzleMiner(filterThreads, verifyThreads, queueCapacity, depth, millis, expected);
+        if (out == null) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            miner.run(files, writer);
+        } else {
+            try (Writer writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                miner.run(files, writer);
+            }
+        }
+    }
+}
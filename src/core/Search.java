@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code Search} class is a plain alpha-beta searcher over the legal moves
+ * of a {@link BoardState}. Every move is played and taken back on the board
+ * that is passed in, so a search leaves it as it found it and a searcher can
+ * run on any thread as long as it owns its board. Positions that repeat an
+ * earlier one, or that reach the fifty-move rule, are scored as draws. A
+ * search returns as soon as the shared stop flag is set; the score it returns
+ * is then meaningless.
+ *
+ * <p>
+ * A searcher may share a {@link SearchTable} with others. It then tries the
+ * stored move of a position first and returns at once when a stored result
+ * of at least the remaining depth already falls outside the window; a stored
+ * exact score inside the window is not used, so principal variations stay
+ * complete.
+ */
+public class Search {
+    public static final int INFINITY = 1_000_000;
+    public static final int MATE = 100_000;
+    public static final int MAX_PLY = 64;
+    private static final int QUIESCENCE_DEPTH = 6; // Captures searched beyond the nominal depth
+
+    private final Evaluator evaluator;
+    private final AtomicBoolean stopped;
+    private final SearchTable table; // null searches without one
+    private long nodes;
+    private long nodeLimit = Long.MAX_VALUE; // The search stops itself after this many nodes
+    private long deadline; // Or at this System.nanoTime(), unless 0
+
+    public Search(Evaluator evaluator, AtomicBoolean stopped) {
+        this(evaluator, stopped, null);
+    }
+
+    Search(Evaluator evaluator, AtomicBoolean stopped, SearchTable table) {
+        this.evaluator = evaluator;
+        this.stopped = stopped;
+        this.table = table;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Makes the search set its stop flag once it has visited a number of nodes
+     * in total, or once a point in time has passed.
+     *
+     * @param nodeLimit The node count, or {@link Long#MAX_VALUE} for no limit.
+     * @param deadline  A {@link System#nanoTime()} value, or 0 for no limit.
+     */
+    public void setLimits(long nodeLimit, long deadline) {
+        this.nodeLimit = nodeLimit;
+        this.deadline = deadline;
+    }
+
+    // Counts a node and stops the search when a limit is reached. The clock is
+    // only read every 1024 nodes.
+    private void countNode() {
+        nodes++;
+        if (nodes >= nodeLimit || (deadline != 0 && (nodes & 1023) == 0 && System.nanoTime() - deadline > 0)) {
+            stopped.set(true);
+        }
+    }
+
+    /**
+     * Searches a position to a fixed depth.
+     *
+     * @param boardState The position; it is restored before returning.
+     * @param depth      The remaining depth in plies.
+     * @param alpha      The lower bound of the search window.
+     * @param beta       The upper bound of the search window.
+     * @param ply        The distance from the root, used to prefer short mates.
+     * @param pv         Receives the principal variation if a move raises alpha.
+     * @return The score for the side to move, within {@code [alpha, beta]}.
+     */
+    public int search(BoardState boardState, int depth, int alpha, int beta, int ply, List<Move> pv) {
+        if (ply > 0 && (boardState.isRepetition() || boardState.isFiftyMoveDraw())) {
+            return Math.max(alpha, Math.min(0, beta)); // Draw
+        }
+        if (depth <= 0 || ply >= MAX_PLY) {
+            return quiescence(boardState, alpha, beta, 0);
+        }
+        countNode();
+        long hash = 0;
+        Move tableMove = null;
+        if (table != null) {
+            hash = boardState.getHash();
+            long entry = table.probe(hash);
+            if (entry != 0) {
+                tableMove = SearchTable.move(entry);
+                if (ply > 0 && SearchTable.depth(entry) >= depth) {
+                    int bound = SearchTable.bound(entry);
+                    int stored = SearchTable.score(entry, ply);
+                    if (bound != SearchTable.UPPER && stored >= beta) {
+                        return beta;
+                    }
+                    if (bound != SearchTable.LOWER && stored <= alpha) {
+                        return alpha;
+                    }
+                }
+            }
+        }
+        PieceColor color = boardState.getSideToMove();
+        List<Move> moves = boardState.generateLegalMoves(color);
+        if (moves.isEmpty()) {
+            return boardState.isKingInCheck(color) ? -MATE + ply : 0; // Checkmate or stalemate
+        }
+        orderMoves(boardState, moves, pv.isEmpty() ? tableMove : pv.get(0));
+
+        int originalAlpha = alpha;
+        Move best = null;
+        List<Move> childPv = new ArrayList<>();
+        for (Move move : moves) {
+            boardState.makeMove(move);
+            childPv.clear();
+            int score = -search(boardState, depth - 1, -beta, -alpha, ply + 1, childPv);
+            boardState.undoMove();
+            if (stopped.get()) {
+                return 0;
+            }
+            if (score > alpha) {
+                alpha = score;
+                best = move;
+                pv.clear();
+                pv.add(move);
+                pv.addAll(childPv);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        if (table != null) {
+            int bound = alpha >= beta ? SearchTable.LOWER : alpha > originalAlpha ? SearchTable.EXACT
+                    : SearchTable.UPPER;
+            table.store(hash, depth, bound, alpha, ply, best != null ? best : tableMove);
+        }
+        return alpha;
+    }
+
+    // Searches captures only, so that the static evaluation is not taken in the
+    // middle of an exchange.
+    private int quiescence(BoardState boardState, int alpha, int beta, int qply) {
+        countNode();
+        boolean whiteToMove = boardState.isWhiteToMove();
+        int standPat = evaluator.evaluate(boardState, whiteToMove);
+        if (standPat >= beta || qply >= QUIESCENCE_DEPTH || stopped.get()) {
+            return Math.min(standPat, beta);
+        }
+        alpha = Math.max(alpha, standPat);
+
+        List<Move> captures = new ArrayList<>();
+        for (Move move : boardState.generateLegalMoves(boardState.getSideToMove())) {
+            if (boardState.getPieceAt(move.getToRow(), move.getToColumn()) != null) {
+                captures.add(move);
+            }
+        }
+        orderMoves(boardState, captures, null);
+        for (Move move : captures) {
+            boardState.makeMove(move);
+            int score = -quiescence(boardState, -beta, -alpha, qply + 1);
+            boardState.undoMove();
+            if (score > alpha) {
+                alpha = score;
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return alpha;
+    }
+
+    /**
+     * Orders moves so that the given move comes first, followed by promotions and
+     * captures of valuable pieces by cheap ones.
+     *
+     * @param boardState The position the moves belong to.
+     * @param moves      The moves to sort in place.
+     * @param first      A move to try first, or {@code null}.
+     */
+    public static void orderMoves(BoardState boardState, List<Move> moves, Move first) {
+        moves.sort((a, b) -> Integer.compare(orderScore(boardState, b, first), orderScore(boardState, a, first)));
+    }
+
+    private static int orderScore(BoardState boardState, Move move, Move first) {
+        if (move.equals(first)) {
+            return Integer.MAX_VALUE;
+        }
+        int score = move.getPromotion() == PieceType.QUEEN ? 10_000 : 0;
+        Pieces target = boardState.getPieceAt(move.getToRow(), move.getToColumn());
+        if (target != null) {
+            Pieces attacker = boardState.getPieceAt(move.getFromRow(), move.getFromColumn());
+            score += 1000 + 10 * target.getType().ordinal() - attacker.getType().ordinal();
+        }
+        return score;
+    }
+
+    /**
+     * Checks whether a score is a mate score.
+     *
+     * @param score A search score.
+     * @return {@code true} if the score announces a forced mate.
+     */
+    public static boolean isMateScore(int score) {
+        return Math.abs(score) >= MATE - MAX_PLY - QUIESCENCE_DEPTH;
+    }
+}
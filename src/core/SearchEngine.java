@@ -0,0 +1,54 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code SearchEngine} class plays with the project's own {@link Search}:
+ * iterative deepening until the node or time limit stops it, playing the best
+ * move of the last completed depth.
+ */
+public class SearchEngine implements MatchEngine {
+    private final String name;
+    private final Evaluator evaluator;
+    private final int maxDepth;
+
+    /**
+     * Creates an engine.
+     *
+     * @param name      The engine's name.
+     * @param evaluator The evaluation to search with.
+     * @param maxDepth  The deepest iteration, reached when no limit stops the search first.
+     */
+    public SearchEngine(String name, Evaluator evaluator, int maxDepth) {
+        this.name = name;
+        this.evaluator = evaluator;
+        this.maxDepth = maxDepth;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Move chooseMove(BoardState boardState, long nodeLimit, long deadline) {
+        List<Move> moves = boardState.generateLegalMoves(boardState.getSideToMove());
+        Search.orderMoves(boardState, moves, null);
+        Move best = moves.get(0); // Played if not even the first depth completes
+        AtomicBoolean stopped = new AtomicBoolean();
+        Search search = new Search(evaluator, stopped);
+        search.setLimits(nodeLimit, deadline);
+        List<Move> pv = new ArrayList<>();
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int score = search.search(boardState, depth, -Search.INFINITY, Search.INFINITY, 0, pv);
+            if (stopped.get() || pv.isEmpty()) {
+                break;
+            }
+            best = pv.get(0);
+            if (Search.isMateScore(score)) {
+                break;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,129 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * The {@code SearchTable} class is a transposition table for {@link Search}:
+ * the best move, score and depth of positions already searched, shared by any
+ * number of threads without locks. Like {@link PerftTable} each entry is two
+ * {@code long}s, the key XOR the data and the data itself, read and written
+ * with opaque accesses, so an entry torn by two writers simply fails to match.
+ *
+ * <p>
+ * A key maps to a bucket of two entries, one kept for the deepest result
+ * stored there and one that always takes the newest. The data word holds the
+ * score in its low 32 bits, then the move (6 bits each for the from and to
+ * squares, 3 for the promotion piece), 2 bits for the kind of bound and 7 for
+ * the depth. Mate scores are stored as the distance from the position rather
+ * than from the root, so they stay right wherever the position comes up again.
+ */
+final class SearchTable {
+    static final int EXACT = 0;
+    static final int LOWER = 1; // The score is at least the stored one
+    static final int UPPER = 2; // The score is at most the stored one
+
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final PieceType[] PROMOTIONS = PieceType.values();
+
+    private final long[] data; // Per bucket: key ^ data, data of the deep entry, then of the newest entry
+    private final int mask;
+
+    /**
+     * Allocates a table.
+     *
+     * @param megabytes The size; rounded down to a power of two of buckets.
+     */
+    SearchTable(int megabytes) {
+        long buckets = Long.highestOneBit(Math.max(1, (long) megabytes << 20) / (4 * Long.BYTES));
+        int count = (int) Math.min(Math.max(1, buckets), 1 << 26);
+        data = new long[4 * count];
+        mask = count - 1;
+    }
+
+    long getMemoryBytes() {
+        return (long) data.length * Long.BYTES;
+    }
+
+    /** Forgets every entry. Must not run while a search uses the table. */
+    void clear() {
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash The position's Zobrist hash.
+     * @return The data word, or 0 if the position is not stored.
+     */
+    long probe(long hash) {
+        int index = 4 * (int) (hash & mask);
+        for (int slot = index; slot < index + 4; slot += 2) {
+            long value = (long) LONGS.getOpaque(data, slot + 1);
+            if (((long) LONGS.getOpaque(data, slot) ^ value) == hash && value != 0) {
+                return value;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the result of a search, in the deep entry if it is at least as
+     * deep as the one there.
+     *
+     * @param hash  The position's Zobrist hash.
+     * @param depth The depth searched, from 1 to 127.
+     * @param bound {@link #EXACT}, {@link #LOWER} or {@link #UPPER}.
+     * @param score The score for the side to move.
+     * @param ply   The distance from the root, to store mate scores relative to the position.
+     * @param move  The best move, or {@code null} if none is known.
+     */
+    void store(long hash, int depth, int bound, int score, int ply, Move move) {
+        if (Search.isMateScore(score)) {
+            score += score > 0 ? ply : -ply;
+        }
+        long packedMove = 0;
+        if (move != null) {
+            PieceType promotion = move.getPromotion();
+            packedMove = move.getFrom() | move.getTo() << 6 | (promotion == null ? 0 : promotion.ordinal() + 1) << 12;
+        }
+        long value = (score & 0xFFFFFFFFL) | packedMove << 32 | (long) bound << 47 | (long) Math.min(depth, 127) << 49;
+        int index = 4 * (int) (hash & mask);
+        long deep = (long) LONGS.getOpaque(data, index + 1);
+        int slot = deep == 0 || depth(deep) <= depth ? index : index + 2;
+        LONGS.setOpaque(data, slot, hash ^ value);
+        LONGS.setOpaque(data, slot + 1, value);
+    }
+
+    static int depth(long value) {
+        return (int) (value >>> 49) & 127;
+    }
+
+    static int bound(long value) {
+        return (int) (value >>> 47) & 3;
+    }
+
+    /** The stored score, relative to the root at the given distance. */
+    static int score(long value, int ply) {
+        int score = (int) value;
+        if (Search.isMateScore(score)) {
+            score -= score > 0 ? ply : -ply;
+        }
+        return score;
+    }
+
+    /** The stored move, or {@code null}. It may not be legal if two positions share a hash. */
+    static Move move(long value) {
+        int packed = (int) (value >>> 32) & 0x7FFF;
+        if (packed == 0) {
+            return null;
+        }
+        int from = packed & 63;
+        int to = (packed >>> 6) & 63;
+        int promotion = packed >>> 12;
+        if (promotion == 0) {
+            return Move.of(from, to);
+        }
+        return new Move(Square.row(from), Square.column(from), Square.row(to), Square.column(to),
+                PROMOTIONS[promotion - 1]);
+    }
+}
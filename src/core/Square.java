@@ -0,0 +1,95 @@
+/**
+ * The {@code Square} class holds helpers for squares stored as small integers,
+ * {@code row * 8 + column} from 0 to 63, and sets of squares stored as the bits
+ * of a {@code long}. Squares are never boxed or turned into strings in the
+ * model; {@link #name(int)} returns a precomputed name for display.
+ *
+ * <p>
+ * The knight and king target sets are computed once for every square, so
+ * move generation and attack checks only combine bit masks.
+ */
+public final class Square {
+    public static final int NONE = -1;
+
+    private static final String[] NAMES = new String[64];
+    private static final long[] KNIGHT_TARGETS = new long[64];
+    private static final long[] KING_TARGETS = new long[64];
+
+    static {
+        int[][] knightSteps = { { 2, 1 }, { 2, -1 }, { -2, 1 }, { -2, -1 }, { 1, 2 }, { 1, -2 }, { -1, 2 }, { -1, -2 } };
+        int[][] kingSteps = { { 1, 0 }, { -1, 0 }, { 0, 1 }, { 0, -1 }, { 1, 1 }, { 1, -1 }, { -1, 1 }, { -1, -1 } };
+        for (int square = 0; square < 64; square++) {
+            int row = row(square);
+            int column = column(square);
+            NAMES[square] = "" + (char) ('a' + column) + (8 - row); // Row 0 is black's back rank, rank 8
+            for (int[] step : knightSteps) {
+                KNIGHT_TARGETS[square] |= mask(row + step[0], column + step[1]);
+            }
+            for (int[] step : kingSteps) {
+                KING_TARGETS[square] |= mask(row + step[0], column + step[1]);
+            }
+        }
+    }
+
+    private Square() {
+    }
+
+    public static int of(int row, int column) {
+        return row * 8 + column;
+    }
+
+    public static int row(int square) {
+        return square >> 3;
+    }
+
+    public static int column(int square) {
+        return square & 7;
+    }
+
+    public static boolean isOnBoard(int row, int column) {
+        return (row | column) >= 0 && row < 8 && column < 8;
+    }
+
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    // Returns the bit of a square, or 0 if the coordinates are off the board.
+    public static long mask(int row, int column) {
+        return isOnBoard(row, column) ? 1L << of(row, column) : 0;
+    }
+
+    public static long knightTargets(int square) {
+        return KNIGHT_TARGETS[square];
+    }
+
+    public static long kingTargets(int square) {
+        return KING_TARGETS[square];
+    }
+
+    /**
+     * Returns the algebraic name of a square, e.g. "e2". The column is the file
+     * letter and row 0, black's back rank, is rank 8.
+     *
+     * @param square The square.
+     * @return The shared name string.
+     */
+    public static String name(int square) {
+        return NAMES[square];
+    }
+
+    /**
+     * Parses a square name such as "e2".
+     *
+     * @param name The name to parse.
+     * @return The square, or {@link #NONE} if the name is not a square.
+     */
+    public static int parse(String name) {
+        if (name == null || name.length() != 2) {
+            return NONE;
+        }
+        int column = name.charAt(0) - 'a';
+        int row = '8' - name.charAt(1);
+        return isOnBoard(row, column) ? of(row, column) : NONE;
+    }
+}
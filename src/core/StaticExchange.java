@@ -0,0 +1,135 @@
+/**
+ * The {@code StaticExchange} class estimates the material outcome of a capture
+ * by static exchange evaluation: both sides keep recapturing on the target
+ * square with their least valuable attacker, and either side may stop when
+ * going on would lose material. Pieces behind a capturing slider join in as it
+ * leaves, so batteries count. Pins and checks are ignored, which keeps it a
+ * cheap filter over a {@link Position} rather than a search.
+ */
+public final class StaticExchange {
+    public static final int[] VALUES = { 100, 300, 300, 500, 900, 10_000 }; // By PieceType ordinal
+    private static final PieceType[] LEAPERS = { PieceType.KNIGHT, PieceType.KING };
+    private static final int[][] STRAIGHT = { { -1, 0 }, { 1, 0 }, { 0, -1 }, { 0, 1 } };
+    private static final int[][] DIAGONAL = { { -1, -1 }, { -1, 1 }, { 1, -1 }, { 1, 1 } };
+
+    private StaticExchange() {
+    }
+
+    /**
+     * Returns the material the side to move expects to win with a capture, in
+     * centipawns; negative if the capture loses material. A move to an empty
+     * square other than en passant is valued as an exchange on that square
+     * that starts with nothing captured.
+     *
+     * @param position The position before the move.
+     * @param move     A legal move of the side to move.
+     * @return The expected gain.
+     */
+    public static int evaluate(Position position, Move move) {
+        int from = move.getFrom();
+        int to = move.getTo();
+        int mover = position.getPiece(from);
+        int target = position.getPiece(to);
+        long occupancy = 0;
+        for (int square = 0; square < 64; square++) {
+            if (position.getPiece(square) != Position.EMPTY) {
+                occupancy |= Square.bit(square);
+            }
+        }
+        int[] gain = new int[32];
+        if (target != Position.EMPTY) {
+            gain[0] = value(target);
+        } else if (Position.typeOf(mover) == PieceType.PAWN && Square.column(from) != Square.column(to)) {
+            gain[0] = VALUES[PieceType.PAWN.ordinal()]; // En passant
+            occupancy &= ~Square.bit(Square.of(Square.row(from), Square.column(to)));
+        }
+        int attackerValue = value(mover);
+        occupancy &= ~Square.bit(from);
+        boolean white = !Position.isWhite(mover);
+        int depth = 0;
+        while (depth < gain.length - 1) {
+            int attacker = leastValuableAttacker(position, to, white, occupancy);
+            if (attacker == Square.NONE) {
+                break;
+            }
+            depth++;
+            gain[depth] = attackerValue - gain[depth - 1];
+            if (Math.max(-gain[depth - 1], gain[depth]) < 0) {
+                depth--; // This capture would not be made, so what follows does not count
+                break;
+            }
+            attackerValue = value(position.getPiece(attacker));
+            occupancy &= ~Square.bit(attacker);
+            white = !white;
+        }
+        while (depth > 0) {
+            gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+            depth--;
+        }
+        return gain[0];
+    }
+
+    private static int value(int code) {
+        return VALUES[Position.typeOf(code).ordinal()];
+    }
+
+    // Returns the square of the cheapest piece of a color that attacks a square
+    // over the given occupancy, or Square.NONE.
+    private static int leastValuableAttacker(Position position, int square, boolean white, long occupancy) {
+        int best = Square.NONE;
+        int bestValue = Integer.MAX_VALUE;
+        int row = Square.row(square);
+        int column = Square.column(square);
+
+        // Pawns attack towards the other side, so they sit one row behind the square
+        int pawnRow = row - (white ? PieceColor.WHITE : PieceColor.BLACK).pawnDirection();
+        for (int side = -1; side <= 1; side += 2) {
+            if (Square.isOnBoard(pawnRow, column + side)) {
+                int candidate = Square.of(pawnRow, column + side);
+                if (isPiece(position, candidate, occupancy, white, PieceType.PAWN)) {
+                    return candidate; // Nothing is cheaper
+                }
+            }
+        }
+        for (PieceType type : LEAPERS) {
+            long squares = type == PieceType.KNIGHT ? Square.knightTargets(square) : Square.kingTargets(square);
+            for (; squares != 0; squares &= squares - 1) {
+                int candidate = Long.numberOfTrailingZeros(squares);
+                if (isPiece(position, candidate, occupancy, white, type) && VALUES[type.ordinal()] < bestValue) {
+                    best = candidate;
+                    bestValue = VALUES[type.ordinal()];
+                }
+            }
+        }
+        for (int line = 0; line < 2; line++) {
+            int[][] directions = line == 0 ? STRAIGHT : DIAGONAL;
+            PieceType slider = line == 0 ? PieceType.ROOK : PieceType.BISHOP;
+            for (int[] direction : directions) {
+                int r = row + direction[0];
+                int c = column + direction[1];
+                while (Square.isOnBoard(r, c) && (occupancy & Square.bit(Square.of(r, c))) == 0) {
+                    r += direction[0];
+                    c += direction[1];
+                }
+                if (!Square.isOnBoard(r, c)) {
+                    continue;
+                }
+                int candidate = Square.of(r, c);
+                int code = position.getPiece(candidate);
+                PieceType type = Position.typeOf(code);
+                if (Position.isWhite(code) == white && (type == slider || type == PieceType.QUEEN)
+                        && VALUES[type.ordinal()] < bestValue) {
+                    best = candidate;
+                    bestValue = VALUES[type.ordinal()];
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean isPiece(Position position, int square, long occupancy, boolean white, PieceType type) {
+        int code = position.getPiece(square);
+        return (occupancy & Square.bit(square)) != 0 && Position.typeOf(code) == type
+                && Position.isWhite(code) == white;
+    }
+}
@@ -0,0 +1,411 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The {@code Tournament} class plays two engines against each other on all
+ * cores. Every opening of the suite is played twice with the colors swapped,
+ * each move under a fixed node or time limit. Games are adjudicated by the
+ * rules core: checkmate, stalemate, insufficient material, the fifty-move rule
+ * and threefold repetition end a game, and a game that reaches
+ * {@value #MAX_PLIES} plies is drawn. An engine that plays an illegal move
+ * loses.
+ *
+ * <p>
+ * Results are fed to a {@link MatchStatistics}, and the match stops as soon as
+ * its SPRT reaches a decision or the game limit is reached. Finished games are
+ * appended to a PGN file.
+ *
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java -cp bin/core Tournament [options]
+ *   --a SPEC, --b SPEC   the engines, e.g. "depth=4" (see {@link #engine(String, String)})
+ *   --games N            the most games to play (default 20000)
+ *   --nodes N            nodes per move (default 20000)
+ *   --movetime MS        milliseconds per move instead of a node limit
+ *   --threads N          games played at once (default: all cores)
+ *   --openings FILE      one FEN per line instead of the built-in suite
+ *   --pgn FILE           write the games to a PGN file
+ *   --elo0 E, --elo1 E   the SPRT hypotheses (default 0 and 10)
+ *   --alpha P, --beta P  the SPRT error rates (default 0.05)
+ * </pre>
+ */
+public class Tournament {
+    static final int MAX_PLIES = 400;
+
+    // Common openings after three to four moves, all with White to move except one.
+    private static final String[] DEFAULT_OPENINGS = {
+            "r1bqkbnr/1ppp1ppp/p1n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 4",
+            "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 4",
+            "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w KQkq - 0 5",
+            "r1bqkbnr/pp1ppppp/2n5/2p5/4P3/2N3P1/PPPP1P1P/R1BQKBNR b KQkq - 0 3",
+            "rnbqkb1r/ppp2ppp/4pn2/3p4/3PP3/2N5/PPP2PPP/R1BQKBNR w KQkq - 0 4",
+            "rn1qkbnr/pp2pppp/2p5/3pPb2/3P4/8/PPP2PPP/RNBQKBNR w KQkq - 0 4",
+            "rnbqkb1r/ppp2ppp/4pn2/3p4/2PP4/2N5/PP2PPPP/R1BQKBNR w KQkq - 0 4",
+            "rnbqkb1r/pp2pppp/2p2n2/3p4/2PP4/5N2/PP2PPPP/RNBQKB1R w KQkq - 0 4",
+            "rnbqk2r/ppp1ppbp/3p1np1/8/2PPP3/2N5/PP3PPP/R1BQKBNR w KQkq - 0 5",
+            "rnbqk2r/pppp1ppp/4pn2/8/1bPP4/2N5/PP2PPPP/R1BQKBNR w KQkq - 0 4",
+            "r1bqkb1r/pppp1ppp/2n2n2/4p3/2P5/2N2N2/PP1PPPPP/R1BQKB1R w KQkq - 0 4",
+            "rnbqkb1r/pp2pppp/2p2n2/3p4/8/5NP1/PPPPPPBP/RNBQK2R w KQkq - 0 4",
+            "rnb1kbnr/ppp1pppp/8/q7/8/2N5/PPPP1PPP/R1BQKBNR w KQkq - 0 4",
+            "rnbqkb1r/pppp2pp/4pn2/5p2/3P4/6P1/PPP1PPBP/RNBQK1NR w KQkq - 0 4",
+            "rnbqkbnr/pppp1p1p/8/6p1/4Pp2/5N2/PPPP2PP/RNBQKB1R w KQkq g6 0 4",
+            "rnbqk1nr/ppp1ppbp/3p2p1/8/3PP3/2N5/PPP2PPP/R1BQKBNR w KQkq - 0 4" };
+
+    private final Supplier<MatchEngine> engineA;
+    private final Supplier<MatchEngine> engineB;
+    private final List<String> openings;
+    private final long nodeLimit;
+    private final long moveNanos;
+    private final MatchStatistics statistics;
+    private final Writer pgn; // null if games are not written
+    private final AtomicBoolean decided = new AtomicBoolean();
+    private final AtomicInteger played = new AtomicInteger();
+
+    /**
+     * Sets up a match.
+     *
+     * @param engineA    Creates the tested engine, once per game.
+     * @param engineB    Creates the reference engine, once per game.
+     * @param openings   The starting positions as FEN.
+     * @param nodeLimit  Nodes per move, or {@link Long#MAX_VALUE} for none.
+     * @param moveMillis Milliseconds per move, or 0 for none.
+     * @param statistics Receives the results from engine A's point of view.
+     * @param pgn        Receives the games, or {@code null}.
+     */
+    public Tournament(Supplier<MatchEngine> engineA, Supplier<MatchEngine> engineB, List<String> openings,
+            long nodeLimit, long moveMillis, MatchStatistics statistics, Writer pgn) {
+        this.engineA = engineA;
+        this.engineB = engineB;
+        this.openings = openings;
+        this.nodeLimit = nodeLimit;
+        this.moveNanos = TimeUnit.MILLISECONDS.toNanos(moveMillis);
+        this.statistics = statistics;
+        this.pgn = pgn;
+    }
+
+    /**
+     * Plays games until the SPRT decides or the game limit is reached. A game
+     * that fails, e.g. because an engine cannot be created or the PGN file
+     * cannot be written, ends the match: the games not yet started are
+     * skipped and the first failure is thrown once the others have finished.
+     *
+     * @param maxGames The most games to play.
+     * @param threads  The number of games played at once.
+     * @throws InterruptedException If interrupted while waiting for the games.
+     */
+    public void run(int maxGames, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> games = new ArrayList<>(maxGames);
+        for (int game = 0; game < maxGames; game++) {
+            int round = game;
+            games.add(pool.submit(() -> {
+                if (!decided.get()) {
+                    try {
+                        playGame(round);
+                    } catch (RuntimeException | Error e) {
+                        decided.set(true);
+                        throw e;
+                    }
+                }
+            }));
+        }
+        pool.shutdown();
+        Throwable failure = null;
+        try {
+            for (Future<?> game : games) {
+                try {
+                    game.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    // Plays one game: the pair 2k and 2k + 1 share an opening with colors swapped.
+    private void playGame(int round) {
+        String opening = openings.get(round / 2 % openings.size());
+        boolean aIsWhite = round % 2 == 0;
+        MatchEngine a = engineA.get();
+        MatchEngine b = engineB.get();
+        MatchEngine white = aIsWhite ? a : b;
+        MatchEngine black = aIsWhite ? b : a;
+
+        BoardState board = Position.fromFen(opening).toBoardState();
+        List<Move> moves = new ArrayList<>();
+        String result;
+        String termination;
+        while (true) {
+            GameStatus status = board.gameStatus();
+            if (status.isOver()) {
+                result = status == GameStatus.CHECKMATE ? (board.isWhiteToMove() ? "0-1" : "1-0") : "1/2-1/2";
+                termination = status.getDescription();
+                break;
+            }
+            if (moves.size() >= MAX_PLIES) {
+                result = "1/2-1/2";
+                termination = "Move limit";
+                break;
+            }
+            MatchEngine engine = board.isWhiteToMove() ? white : black;
+            long deadline = moveNanos > 0 ? System.nanoTime() + moveNanos : 0;
+            Move move = engine.chooseMove(board, nodeLimit, deadline);
+            if (move == null || !board.isLegal(move)) {
+                result = board.isWhiteToMove() ? "0-1" : "1-0";
+                termination = "Illegal move " + move + " by " + engine.getName();
+                break;
+            }
+            board.makeMove(move);
+            moves.add(move);
+        }
+
+        double whiteScore = result.equals("1-0") ? 1 : result.equals("0-1") ? 0 : 0.5;
+        statistics.add(aIsWhite ? whiteScore : 1 - whiteScore);
+        int games = played.incrementAndGet();
+        if (statistics.getDecision() != MatchStatistics.Decision.CONTINUE) {
+            decided.set(true);
+        }
+        if (pgn != null) {
+            String[] tags = { "Event", "Engine match", "Site", "Tournament",
+                    "Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")),
+                    "Round", String.valueOf(round + 1), "White", white.getName(), "Black", black.getName(),
+                    "Result", result, "Termination", termination, "PlyCount", String.valueOf(moves.size()) };
+            String text = Notation.pgn(tags, opening, moves, result);
+            synchronized (pgn) {
+                try {
+                    pgn.write(text);
+                    pgn.flush();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot write the PGN file", e);
+                }
+            }
+        }
+        if (games % 10 == 0) {
+            System.out.printf("%d games: %s%n", games, statistics);
+        }
+    }
+
+    /**
+     * Creates engines from a specification: comma-separated {@code key=value}
+     * pairs. {@code depth} is the deepest iteration (default 64) and
+     * {@code name} the engine's name. {@code weights} names a weight table
+     * written by {@link EvaluationTuner} to evaluate with, and {@code nnue} an
+     * {@link NnueNetwork} file to evaluate with instead. {@code style=mcts}
+     * plays with {@link MonteCarloSearch}, tuned by {@code threads},
+     * {@code mode} (root or tree) and {@code selection} (uct or puct); its
+     * node limit counts playouts. {@code class} names a {@link MatchEngine}
+     * with a public no-argument constructor to use instead of
+     * {@link SearchEngine}; the other keys are then ignored.
+     *
+     * @param spec        The specification, e.g. "depth=4,name=Shallow".
+     * @param defaultName The name used when the specification has none.
+     * @return A factory that creates a fresh engine for every game.
+     */
+    public static Supplier<MatchEngine> engine(String spec, String defaultName) {
+        String name = defaultName;
+        int depth = Search.MAX_PLY;
+        String className = null;
+        boolean mcts = false;
+        int threads = 1;
+        MonteCarloSearch.Mode mode = MonteCarloSearch.Mode.TREE;
+        MonteCarloSearch.Selection selection = MonteCarloSearch.Selection.PUCT;
+        Evaluator evaluator = new Evaluator();
+        for (String pair : spec.split(",")) {
+            String[] keyValue = pair.split("=", 2);
+            if (keyValue.length != 2) {
+                continue;
+            }
+            switch (keyValue[0].trim()) {
+                case "name":
+                    name = keyValue[1].trim();
+                    break;
+                case "depth":
+                    depth = Integer.parseInt(keyValue[1].trim());
+                    break;
+                case "weights":
+                    try {
+                        evaluator = Evaluator.load(Paths.get(keyValue[1].trim()));
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Cannot read weights: " + keyValue[1].trim(), e);
+                    }
+                    break;
+                case "nnue":
+                    try {
+                        evaluator = new NnueEvaluator(NnueNetwork.load(Paths.get(keyValue[1].trim())));
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Cannot read network: " + keyValue[1].trim(), e);
+                    }
+                    break;
+                case "style":
+                    if (!keyValue[1].trim().equals("mcts") && !keyValue[1].trim().equals("alphabeta")) {
+                        throw new IllegalArgumentException("Unknown engine style: " + keyValue[1].trim());
+                    }
+                    mcts = keyValue[1].trim().equals("mcts");
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(keyValue[1].trim());
+                    break;
+                case "mode":
+                    mode = MonteCarloSearch.Mode.valueOf(keyValue[1].trim().toUpperCase(Locale.ROOT));
+                    break;
+                case "selection":
+                    selection = MonteCarloSearch.Selection.valueOf(keyValue[1].trim().toUpperCase(Locale.ROOT));
+                    break;
+                case "class":
+                    className = keyValue[1].trim();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown engine option: " + pair);
+            }
+        }
+        if (className != null) {
+            try {
+                Class<? extends MatchEngine> type = Class.forName(className).asSubclass(MatchEngine.class);
+                type.getConstructor(); // Fail now rather than in the first game
+                return () -> {
+                    try {
+                        return type.getConstructor().newInstance();
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                };
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                throw new IllegalArgumentException("Not a MatchEngine class: " + className, e);
+            }
+        }
+        Evaluator engineEvaluator = evaluator;
+        String engineName = name;
+        int maxDepth = depth;
+        if (mcts) {
+            int engineThreads = threads;
+            MonteCarloSearch.Mode engineMode = mode;
+            MonteCarloSearch.Selection engineSelection = selection;
+            return () -> new MonteCarloSearch(engineName, engineEvaluator, engineThreads, engineMode, engineSelection);
+        }
+        return () -> new SearchEngine(engineName, engineEvaluator, maxDepth);
+    }
+
+    // Returns the value of the option at index i, or exits if it is the last argument.
+    private static String valueOf(String[] args, int i) {
+        if (i + 1 >= args.length) {
+            System.err.println("Missing value for " + args[i]);
+            System.exit(2);
+        }
+        return args[i + 1];
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String specA = "";
+        String specB = "";
+        int games = 20000;
+        long nodes = 20000;
+        long moveTime = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path openingsFile = null;
+        Path pgnFile = null;
+        double elo0 = 0;
+        double elo1 = 10;
+        double alpha = 0.05;
+        double beta = 0.05;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--a":
+                    specA = valueOf(args, i++);
+                    break;
+                case "--b":
+                    specB = valueOf(args, i++);
+                    break;
+                case "--games":
+                    games = Integer.parseInt(valueOf(args, i++));
+                    break;
+                case "--nodes":
+                    nodes = Long.parseLong(valueOf(args, i++));
+                    break;
+                case "--movetime":
+                    moveTime = Long.parseLong(valueOf(args, i++));
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(valueOf(args, i++));
+                    break;
+                case "--openings":
+                    openingsFile = Paths.get(valueOf(args, i++));
+                    break;
+                case "--pgn":
+                    pgnFile = Paths.get(valueOf(args, i++));
+                    break;
+                case "--elo0":
+                    elo0 = Double.parseDouble(valueOf(args, i++));
+                    break;
+                case "--elo1":
+                    elo1 = Double.parseDouble(valueOf(args, i++));
+                    break;
+                case "--alpha":
+                    alpha = Double.parseDouble(valueOf(args, i++));
+                    break;
+                case "--beta":
+                    beta = Double.parseDouble(valueOf(args, i++));
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (moveTime > 0 && nodes == 20000) {
+            nodes = Long.MAX_VALUE; // A time control replaces the default node limit
+        }
+
+        List<String> openings = new ArrayList<>();
+        if (openingsFile != null) {
+            for (String line : Files.readAllLines(openingsFile)) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    Position.fromFen(line); // Reject a bad suite before any game starts
+                    openings.add(line.trim());
+                }
+            }
+        } else {
+            openings.addAll(List.of(DEFAULT_OPENINGS));
+        }
+
+        MatchStatistics statistics = new MatchStatistics(elo0, elo1, alpha, beta);
+        Writer pgn = pgnFile != null ? Files.newBufferedWriter(pgnFile, StandardCharsets.UTF_8) : null;
+        try {
+            Tournament tournament = new Tournament(engine(specA, "Engine A"), engine(specB, "Engine B"), openings,
+                    nodes, moveTime, statistics, pgn);
+            tournament.run(games, threads);
+        } finally {
+            if (pgn != null) {
+                pgn.close();
+            }
+        }
+        System.out.printf("Final after %d games: %s%n", statistics.getGames(), statistics);
+        System.out.println("SPRT: " + statistics.getDecision());
+    }
+}
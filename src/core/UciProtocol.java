@@ -0,0 +1,385 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The {@code UciProtocol} class is a headless front-end for the
+ * {@link AnalysisEngine}: it reads commands of the Universal Chess Interface
+ * from standard input and answers on standard output, so the engine can be
+ * driven from a script or from any chess GUI that speaks UCI. It supports:
+ *
+ * <pre>
+ * uci, isready, ucinewgame, quit
+ * setoption name MultiPV|Threads|Hash|Ponder value V
+ * position startpos|fen FEN [moves M...]
+ * go [ponder] [infinite] [depth N] [nodes N] [movetime MS] [wtime MS] [btime MS] [winc MS] [binc MS] [movestogo N]
+ * ponderhit, stop
+ * </pre>
+ *
+ * Every completed depth is reported with an {@code info} line per
+ * principal variation. With {@code go ponder} the last move of the position
+ * is the expected reply: the engine analyses the position after it until
+ * {@code ponderhit}, which starts the clock of the search that is already
+ * running, or {@code stop}. An {@code infinite} or pondering search holds its
+ * {@code bestmove} until it is stopped, as the protocol requires; a search
+ * bounded only by {@code depth} or {@code nodes} is not. Other {@code go}
+ * options are answered with an {@code info string} and ignored.
+ *
+ * <p>
+ * Usage: {@code java -cp bin/core UciProtocol}
+ */
+public class UciProtocol {
+    private static final int DEFAULT_MOVES_TO_GO = 30; // Moves the remaining time is shared over
+    private static final int MIN_MOVE_MILLIS = 10;
+
+    private final PrintStream out;
+    private AnalysisEngine engine; // Created at the first search, again when Threads or Hash change
+    private int threads = 1;
+    private int tableMegabytes = 32;
+    private int lines = 1;
+
+    private Position position = Position.fromFen(Position.START_FEN);
+    private Position beforeLastMove; // The position before the last move played, or null
+    private Move lastMove; // The last move played, the expected reply of "go ponder"
+
+    // Guarded by this
+    private Thread reporter; // Prints the bestmove of the running search
+    private boolean holdBestMove; // Whether the bestmove waits for stop or ponderhit
+    private boolean infinite;
+    private long ponderMillis; // The time limit that starts on ponderhit
+
+    public UciProtocol(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Handles one command.
+     *
+     * @param command A line of input.
+     * @return {@code false} if the command was {@code quit}.
+     * @throws InterruptedException If interrupted while waiting for a search to stop.
+     */
+    public boolean handle(String command) throws InterruptedException {
+        String[] tokens = command.trim().split("\\s+");
+        switch (tokens[0]) {
+            case "uci":
+                out.println("id name Chess");
+                out.println("option name MultiPV type spin default 1 min 1 max " + AnalysisEngine.MAX_LINES);
+                out.println("option name Threads type spin default 1 min 1 max 256");
+                out.println("option name Hash type spin default 32 min 1 max 2048");
+                out.println("option name Ponder type check default false");
+                out.println("uciok");
+                break;
+            case "isready":
+                out.println("readyok");
+                break;
+            case "ucinewgame":
+                finishSearch();
+                engine().clearTable();
+                break;
+            case "setoption":
+                setOption(tokens);
+                break;
+            case "position":
+                finishSearch();
+                setPosition(tokens);
+                break;
+            case "go":
+                go(tokens);
+                break;
+            case "ponderhit":
+                ponderHit();
+                break;
+            case "stop":
+                finishSearch();
+                break;
+            case "quit":
+                finishSearch();
+                if (engine != null) {
+                    engine.shutdown();
+                }
+                return false;
+            default:
+                if (!tokens[0].isEmpty()) {
+                    out.println("info string unknown command " + tokens[0]);
+                }
+        }
+        return true;
+    }
+
+    // Returns the engine, creating it with the current options if needed.
+    private AnalysisEngine engine() {
+        if (engine == null) {
+            engine = new AnalysisEngine(threads, tableMegabytes);
+            engine.setLines(lines);
+        }
+        return engine;
+    }
+
+    // Handles "setoption name N value V". Threads and Hash replace the engine.
+    private void setOption(String[] tokens) throws InterruptedException {
+        String name = null;
+        String value = null;
+        for (int i = 1; i + 1 < tokens.length; i++) {
+            if (tokens[i].equals("name")) {
+                name = tokens[i + 1];
+            } else if (tokens[i].equals("value")) {
+                value = tokens[i + 1];
+            }
+        }
+        if (name == null || value == null) {
+            return;
+        }
+        try {
+            switch (name.toLowerCase(Locale.ROOT)) {
+                case "multipv":
+                    lines = Math.max(1, Math.min(AnalysisEngine.MAX_LINES, Integer.parseInt(value)));
+                    if (engine != null) {
+                        engine.setLines(lines);
+                    }
+                    break;
+                case "threads":
+                    threads = Math.max(1, Integer.parseInt(value));
+                    replaceEngine();
+                    break;
+                case "hash":
+                    tableMegabytes = Math.max(1, Integer.parseInt(value));
+                    replaceEngine();
+                    break;
+                default:
+                    break; // Ponder only tells the engine that the GUI may ponder
+            }
+        } catch (NumberFormatException e) {
+            out.println("info string bad value " + value);
+        }
+    }
+
+    private void replaceEngine() throws InterruptedException {
+        if (engine != null) {
+            finishSearch();
+            engine.shutdown();
+            engine = null;
+        }
+    }
+
+    // Handles "position startpos|fen FEN [moves M...]".
+    private void setPosition(String[] tokens) {
+        int index = 1;
+        String fen = Position.START_FEN;
+        if (index < tokens.length && tokens[index].equals("fen")) {
+            StringBuilder text = new StringBuilder();
+            for (index++; index < tokens.length && !tokens[index].equals("moves"); index++) {
+                text.append(tokens[index]).append(' ');
+            }
+            fen = text.toString().trim();
+        } else if (index < tokens.length && tokens[index].equals("startpos")) {
+            index++;
+        }
+        BoardState board;
+        try {
+            board = Position.fromFen(fen).toBoardState();
+        } catch (IllegalArgumentException e) {
+            out.println("info string bad fen " + fen);
+            return;
+        }
+        Position before = null;
+        Move last = null;
+        if (index < tokens.length && tokens[index].equals("moves")) {
+            for (index++; index < tokens.length; index++) {
+                Move move = Move.parse(tokens[index]);
+                if (move == null || !board.isLegal(move)) {
+                    out.println("info string illegal move " + tokens[index]);
+                    break;
+                }
+                before = Position.of(board);
+                last = move;
+                board.makeMove(move);
+            }
+        }
+        position = Position.of(board);
+        beforeLastMove = before;
+        lastMove = last;
+    }
+
+    // Handles "go": starts the search and a thread that reports its bestmove.
+    private void go(String[] tokens) throws InterruptedException {
+        finishSearch();
+        boolean ponder = false;
+        boolean untimed = false;
+        long moveTime = 0;
+        long time = 0;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        int depth = Integer.MAX_VALUE;
+        long nodes = Long.MAX_VALUE;
+        boolean white = position.isWhiteToMove();
+        try {
+            for (int i = 1; i < tokens.length; i++) {
+                switch (tokens[i]) {
+                    case "ponder":
+                        ponder = true;
+                        break;
+                    case "infinite":
+                        untimed = true;
+                        break;
+                    case "depth":
+                        depth = Math.max(1, Integer.parseInt(tokens[++i]));
+                        break;
+                    case "nodes":
+                        nodes = Math.max(1, Long.parseLong(tokens[++i]));
+                        break;
+                    case "movetime":
+                        moveTime = Long.parseLong(tokens[++i]);
+                        break;
+                    case "wtime":
+                    case "btime":
+                        long clock = Long.parseLong(tokens[++i]);
+                        if (tokens[i - 1].equals("wtime") == white) {
+                            time = clock;
+                        }
+                        break;
+                    case "winc":
+                    case "binc":
+                        long inc = Long.parseLong(tokens[++i]);
+                        if (tokens[i - 1].equals("winc") == white) {
+                            increment = inc;
+                        }
+                        break;
+                    case "movestogo":
+                        movesToGo = Math.max(1, Integer.parseInt(tokens[++i]));
+                        break;
+                    case "mate":
+                        out.println("info string ignoring go option mate " + tokens[++i]);
+                        break;
+                    case "searchmoves":
+                        out.println("info string ignoring go option searchmoves");
+                        i = tokens.length; // The moves run to the end of the command
+                        break;
+                    default:
+                        out.println("info string ignoring go option " + tokens[i]);
+                        break;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            out.println("info string bad go command");
+            return;
+        }
+        long millis = moveTime > 0 ? moveTime
+                : time > 0 ? Math.max(MIN_MOVE_MILLIS, Math.min(time / 2, time / movesToGo + increment * 3 / 4)) : 0;
+
+        AnalysisEngine analysis = engine();
+        analysis.setLines(lines);
+        analysis.setListener(info -> printInfo(info, white));
+        boolean bounded = depth != Integer.MAX_VALUE || nodes != Long.MAX_VALUE;
+        synchronized (this) {
+            infinite = untimed || millis == 0 && !bounded;
+            holdBestMove = infinite || ponder;
+            ponderMillis = infinite ? 0 : millis;
+        }
+        if (ponder && lastMove != null) {
+            analysis.ponder(beforeLastMove, lastMove);
+        } else {
+            analysis.analyse(position, untimed ? 0 : millis, untimed ? Integer.MAX_VALUE : depth,
+                    untimed ? Long.MAX_VALUE : nodes);
+        }
+        Thread thread = new Thread(() -> reportBestMove(analysis), "uci-bestmove");
+        thread.setDaemon(true);
+        synchronized (this) {
+            reporter = thread;
+        }
+        thread.start();
+    }
+
+    // Turns pondering into a normal search, which then reports when it ends.
+    private synchronized void ponderHit() {
+        if (engine != null && engine.ponderHit(ponderMillis)) {
+            holdBestMove = infinite;
+            notifyAll();
+        }
+    }
+
+    // Stops the running search, if any, and waits until its bestmove is printed.
+    private void finishSearch() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = reporter;
+            reporter = null;
+            holdBestMove = false;
+            notifyAll();
+        }
+        if (thread != null) {
+            engine.stop();
+            thread.join();
+        }
+    }
+
+    // Runs on the reporter thread: waits for the search to end, and for stop or
+    // ponderhit if the protocol says so, then prints the bestmove.
+    private void reportBestMove(AnalysisEngine analysis) {
+        AnalysisEngine.Info info;
+        try {
+            info = analysis.awaitResult();
+            synchronized (this) {
+                while (holdBestMove) {
+                    wait();
+                }
+            }
+        } catch (InterruptedException e) {
+            return;
+        }
+        List<Move> pv = info != null ? info.getPrincipalVariation() : List.of();
+        String best = pv.isEmpty() ? fallbackMove() : pv.get(0).toString();
+        out.println("bestmove " + best + (pv.size() > 1 ? " ponder " + pv.get(1) : ""));
+    }
+
+    // Any legal move, for a search stopped before its first depth, or "0000" if there is none.
+    private String fallbackMove() {
+        BoardState board = position.toBoardState();
+        List<Move> moves = board.generateLegalMoves(board.getSideToMove());
+        if (moves.isEmpty()) {
+            return "0000";
+        }
+        Search.orderMoves(board, moves, null);
+        return moves.get(0).toString();
+    }
+
+    // Prints one info line per principal variation; UCI scores are for the side to move.
+    private void printInfo(AnalysisEngine.Info info, boolean white) {
+        long millis = info.getElapsedNanos() / 1_000_000;
+        long nps = info.getElapsedNanos() > 0 ? info.getNodes() * 1_000_000_000L / info.getElapsedNanos() : 0;
+        List<AnalysisEngine.Line> pvs = info.getLines();
+        for (int i = 0; i < pvs.size(); i++) {
+            int score = white ? pvs.get(i).getScore() : -pvs.get(i).getScore();
+            String scoreText;
+            if (Search.isMateScore(score)) {
+                int moves = (Search.MATE - Math.abs(score) + 1) / 2;
+                scoreText = "mate " + (score > 0 ? moves : -moves);
+            } else {
+                scoreText = "cp " + score;
+            }
+            StringBuilder line = new StringBuilder();
+            line.append("info depth ").append(info.getDepth()).append(" multipv ").append(i + 1).append(" score ")
+                    .append(scoreText).append(" nodes ").append(info.getNodes()).append(" nps ").append(nps)
+                    .append(" time ").append(millis).append(" pv");
+            for (Move move : pvs.get(i).getPrincipalVariation()) {
+                line.append(' ').append(move);
+            }
+            out.println(line);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        UciProtocol protocol = new UciProtocol(new PrintStream(System.out, true, StandardCharsets.UTF_8));
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (!protocol.handle(line)) {
+                break;
+            }
+        }
+    }
+}
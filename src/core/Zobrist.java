@@ -0,0 +1,88 @@
+import java.util.Random;
+
+/**
+ * The {@code Zobrist} class holds the random keys used to hash positions. A
+ * position's hash is the XOR of one key per piece on its square, one key for
+ * the castling rights, one key for the file of the en passant square if there
+ * is one and one key if black is to move, so a move can update
+ * the hash with a few XORs. The keys come from a fixed seed and are therefore
+ * the same in every run, which keeps hashes usable across processes.
+ */
+public final class Zobrist {
+    private static final long[][] PIECE_KEYS = new long[16][64]; // By piece code (see Position) and square
+    private static final long[] CASTLING_KEYS = new long[16]; // By castling rights bits
+    private static final long BLACK_TO_MOVE;
+    private static final long[] EN_PASSANT_KEYS = new long[8]; // By file of the en passant square
+
+    static {
+        Random random = new Random(0x5EED_C4E55L);
+        for (long[] keys : PIECE_KEYS) {
+            for (int square = 0; square < 64; square++) {
+                keys[square] = random.nextLong();
+            }
+        }
+        for (int rights = 0; rights < 16; rights++) {
+            CASTLING_KEYS[rights] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        for (int file = 0; file < 8; file++) {
+            EN_PASSANT_KEYS[file] = random.nextLong();
+        }
+    }
+
+    private Zobrist() {
+    }
+
+    public static long piece(int code, int square) {
+        return PIECE_KEYS[code][square];
+    }
+
+    public static long piece(Pieces piece, int row, int column) {
+        return PIECE_KEYS[Position.code(piece.getType(), piece.getColor())][row * 8 + column];
+    }
+
+    public static long castling(int rights) {
+        return CASTLING_KEYS[rights];
+    }
+
+    // Returns the key for an en passant square, or 0 for none (-1).
+    public static long enPassant(int square) {
+        return square < 0 ? 0 : EN_PASSANT_KEYS[square & 7];
+    }
+
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+
+    /**
+     * Computes the hash of a board from scratch.
+     *
+     * @param boardState The board to hash.
+     * @return The hash.
+     */
+    public static long hash(BoardState boardState) {
+        long hash = castling(boardState.getCastlingRights()) ^ enPassant(boardState.getEnPassantSquare());
+        for (Pieces piece : boardState.getPieces()) {
+            hash ^= piece(piece, piece.getRow(), piece.getColumn());
+        }
+        return boardState.isWhiteToMove() ? hash : hash ^ BLACK_TO_MOVE;
+    }
+
+    /**
+     * Computes the hash of a snapshot from scratch. It equals the hash of the
+     * board the snapshot was taken from.
+     *
+     * @param position The snapshot to hash.
+     * @return The hash.
+     */
+    public static long hash(Position position) {
+        long hash = castling(position.getCastlingRights()) ^ enPassant(position.getEnPassantSquare());
+        for (int square = 0; square < 64; square++) {
+            int code = position.getPiece(square);
+            if (code != Position.EMPTY) {
+                hash ^= piece(code, square);
+            }
+        }
+        return position.isWhiteToMove() ? hash : hash ^ BLACK_TO_MOVE;
+    }
+}
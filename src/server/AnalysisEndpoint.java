@@ -0,0 +1,145 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The {@code AnalysisEndpoint} class serves an {@link AnalysisService} over
+ * HTTP on the loopback interface:
+ *
+ * <pre>
+ * GET /analyse?fen=FEN&amp;depth=N   the evaluation of a position as JSON
+ * GET /stats                     queue depth, cache hit rate and latency percentiles as JSON
+ * </pre>
+ *
+ * A full queue is answered with status 503 and a malformed request with 400.
+ *
+ * <p>
+ * Usage: {@code java -cp bin/core:bin/server AnalysisEndpoint [--port N] [--threads N] [--queue N] [--cache N]}
+ */
+public class AnalysisEndpoint {
+    private static final int DEFAULT_DEPTH = 4;
+    private static final int RESPONDERS = 4;
+
+    private final AnalysisService service;
+    private final HttpServer server;
+    private final ExecutorService responders = Executors.newFixedThreadPool(RESPONDERS);
+
+    public AnalysisEndpoint(AnalysisService service, int port) throws IOException {
+        this.service = service;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 256);
+        server.createContext("/analyse", this::analyse);
+        server.createContext("/stats", exchange -> respond(exchange, 200, service.statsJson()));
+        // Handlers never wait for a search: the reply is sent when the result
+        // completes, so a few threads serve any number of pending requests.
+        server.setExecutor(responders);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        service.close();
+        responders.shutdown();
+    }
+
+    private void analyse(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        Position position;
+        int depth;
+        try {
+            position = Position.fromFen(query.getOrDefault("fen", ""));
+            depth = Integer.parseInt(query.getOrDefault("depth", String.valueOf(DEFAULT_DEPTH)));
+            if (depth < 1 || depth > AnalysisService.MAX_DEPTH) {
+                throw new IllegalArgumentException("Depth must be between 1 and " + AnalysisService.MAX_DEPTH);
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "{\"error\":\"" + e.getMessage().replace("\"", "'") + "\"}");
+            return;
+        }
+        service.analyse(position, depth).whenCompleteAsync((result, error) -> {
+            try {
+                if (error == null) {
+                    respond(exchange, 200, result.toJson());
+                } else {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    boolean full = cause instanceof RejectedExecutionException;
+                    respond(exchange, full ? 503 : 500, "{\"error\":\"" + (full ? "busy" : "search failed") + "\"}");
+                }
+            } catch (IOException e) {
+                exchange.close(); // The client went away
+            }
+        }, responders);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int queue = 1024;
+        int cache = 100_000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[++i]);
+                    break;
+                case "--cache":
+                    cache = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: AnalysisEndpoint [--port N] [--threads N] [--queue N] [--cache N]");
+                    System.exit(2);
+            }
+        }
+        AnalysisEndpoint endpoint = new AnalysisEndpoint(new AnalysisService(threads, queue, cache), port);
+        endpoint.start();
+        System.out.println("Listening on http://127.0.0.1:" + endpoint.getPort() + "/analyse?fen=...&depth=N");
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code AnalysisService} class evaluates positions for many callers at
+ * once. Requests are queued and searched to a fixed depth by a fixed set of
+ * workers, each of which takes up to {@value #BATCH_SIZE} queued requests at a
+ * time and searches them one after another with the same searcher.
+ *
+ * <p>
+ * Requests are keyed by the Zobrist hash of the position and the depth. A
+ * request for a key that is already queued or being searched joins that
+ * search instead of starting another, and finished results are kept in a
+ * least-recently-used cache of bounded size, so bursts of duplicate requests
+ * cost one search. The queue is bounded as well: when it is full a request
+ * fails at once rather than waiting.
+ */
+public class AnalysisService implements AutoCloseable {
+    public static final int MAX_DEPTH = 6;
+    static final int BATCH_SIZE = 16;
+
+    private final Evaluator evaluator = new Evaluator();
+    private final BlockingQueue<Job> queue;
+    private final Map<Key, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Key, Result> cache; // Guarded by its own lock
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+    private final Metrics.Histogram latency = new Metrics.Histogram();
+
+    /**
+     * Starts the workers.
+     *
+     * @param threads       The number of search threads.
+     * @param queueCapacity The most requests waiting to be searched.
+     * @param cacheCapacity The most results kept in the cache.
+     */
+    public AnalysisService(int threads, int queueCapacity, int cacheCapacity) {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        cache = Collections.synchronizedMap(new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                return size() > cacheCapacity;
+            }
+        });
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "analysis-service-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Asks for the evaluation of a position.
+     *
+     * @param position The position.
+     * @param depth    The search depth in plies, from 1 to {@link #MAX_DEPTH}.
+     * @return The result, completed by a worker, from the cache or by a search
+     *         already in progress; it fails with a
+     *         {@link RejectedExecutionException} if the queue is full or the
+     *         service is closed.
+     */
+    public CompletableFuture<Result> analyse(Position position, int depth) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Depth must be between 1 and " + MAX_DEPTH);
+        }
+        if (stopped.get()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Analysis service closed"));
+        }
+        requests.increment();
+        long start = System.nanoTime();
+        Key key = new Key(Zobrist.hash(position), depth);
+        Result cached = cache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            latency.record(System.nanoTime() - start);
+            return CompletableFuture.completedFuture(cached.fromCache());
+        }
+
+        CompletableFuture<Result> created = new CompletableFuture<>();
+        CompletableFuture<Result> future = inFlight.putIfAbsent(key, created);
+        if (future != null) {
+            coalesced.increment();
+        } else {
+            future = created;
+            if (!queue.offer(new Job(key, position))) {
+                inFlight.remove(key, created);
+                rejected.increment();
+                created.completeExceptionally(new RejectedExecutionException("Analysis queue is full"));
+                return created;
+            }
+        }
+        return future.whenComplete((result, error) -> latency.record(System.nanoTime() - start));
+    }
+
+    // Runs on a worker: takes a batch of queued requests and searches them in turn.
+    private void work() {
+        Search search = new Search(evaluator, stopped);
+        List<Job> batch = new ArrayList<>(BATCH_SIZE);
+        while (!stopped.get()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            for (Job job : batch) {
+                CompletableFuture<Result> future = inFlight.get(job.key);
+                try {
+                    Result result = search(search, job.position, job.key.depth);
+                    if (stopped.get()) {
+                        // close() cut the search short, so the result is not the requested depth
+                        future.completeExceptionally(new RejectedExecutionException("Analysis service closed"));
+                        continue;
+                    }
+                    cache.put(job.key, result);
+                    future.complete(result);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(job.key);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    // Iterative deepening to the requested depth; the score is from White's side.
+    private Result search(Search search, Position position, int depth) {
+        searches.increment();
+        BoardState board = position.toBoardState();
+        long nodesBefore = search.getNodes();
+        List<Move> pv = new ArrayList<>();
+        int score = 0;
+        for (int iteration = 1; iteration <= depth; iteration++) {
+            score = search.search(board, iteration, -Search.INFINITY, Search.INFINITY, 0, pv);
+        }
+        if (Metrics.isEnabled()) {
+            Metrics.add(Metrics.Counter.SEARCH_NODES, search.getNodes() - nodesBefore);
+        }
+        return new Result(depth, position.isWhiteToMove() ? score : -score, List.copyOf(pv),
+                search.getNodes() - nodesBefore, false);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Describes the service's counters as a JSON object: requests, cache hits,
+     * coalesced and rejected requests, searches run, the cache hit rate, the
+     * queue depth and request latency percentiles in microseconds.
+     *
+     * @return The JSON text.
+     */
+    public String statsJson() {
+        long total = requests.sum();
+        double hitRate = total == 0 ? 0 : (double) cacheHits.sum() / total;
+        return String.format(Locale.ROOT,
+                "{\"requests\":%d,\"cacheHits\":%d,\"coalesced\":%d,\"rejected\":%d,\"searches\":%d,"
+                        + "\"cacheHitRate\":%.4f,\"cacheSize\":%d,\"queueDepth\":%d,"
+                        + "\"latencyMicros\":{\"p50\":%d,\"p90\":%d,\"p99\":%d}}",
+                total, cacheHits.sum(), coalesced.sum(), rejected.sum(), searches.sum(), hitRate, cache.size(),
+                queue.size(), latency.percentile(0.5) / 1000, latency.percentile(0.9) / 1000,
+                latency.percentile(0.99) / 1000);
+    }
+
+    @Override
+    public void close() {
+        stopped.set(true);
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (CompletableFuture<Result> future : inFlight.values()) {
+            future.completeExceptionally(new RejectedExecutionException("Analysis service closed"));
+        }
+    }
+
+    /** The evaluation of one position. The score is in centipawns from White's point of view. */
+    public static final class Result {
+        private final int depth;
+        private final int score;
+        private final List<Move> principalVariation;
+        private final long nodes;
+        private final boolean cached;
+
+        Result(int depth, int score, List<Move> principalVariation, long nodes, boolean cached) {
+            this.depth = depth;
+            this.score = score;
+            this.principalVariation = principalVariation;
+            this.nodes = nodes;
+            this.cached = cached;
+        }
+
+        Result fromCache() {
+            return new Result(depth, score, principalVariation, nodes, true);
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public List<Move> getPrincipalVariation() {
+            return principalVariation;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+
+        // Formats the result as a JSON object.
+        public String toJson() {
+            StringBuilder json = new StringBuilder("{\"depth\":").append(depth).append(",\"score\":").append(score)
+                    .append(",\"mate\":").append(Search.isMateScore(score)).append(",\"best\":");
+            json.append(principalVariation.isEmpty() ? "null" : "\"" + principalVariation.get(0) + "\"");
+            json.append(",\"pv\":[");
+            for (int i = 0; i < principalVariation.size(); i++) {
+                json.append(i > 0 ? ",\"" : "\"").append(principalVariation.get(i)).append('"');
+            }
+            return json.append("],\"nodes\":").append(nodes).append(",\"cached\":").append(cached).append('}')
+                    .toString();
+        }
+    }
+
+    // A cache and coalescing key: the position's hash and the search depth.
+    private static final class Key {
+        final long hash;
+        final int depth;
+
+        Key(long hash, int depth) {
+            this.hash = hash;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).hash == hash && ((Key) other).depth == depth;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hash, depth);
+        }
+    }
+
+    private static final class Job {
+        final Key key;
+        final Position position;
+
+        Job(Key key, Position position) {
+            this.key = key;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * The {@code GameJournal} class makes the games of a {@link GameServer}
+ * survive a restart. Every game event (a new game, a move, an undo, the end of
+ * the game) is appended to one of several journal files, chosen by game id,
+ * as a record of its own:
+ *
+ * <pre>
+ * int length | int CRC32C of the payload | payload
+ * payload: byte type | long game id | NEW: short length, UTF-8 FEN
+ *                                   | MOVE: byte from, byte to, byte promotion (0 for none)
+ * </pre>
+ *
+ * <p>
+ * Appending only copies the record into the shard's memory buffer. A single
+ * commit thread writes and forces every shard once per commit interval, so
+ * one {@code fsync} per shard covers the moves of all games in that interval
+ * (group commit). Each append returns a ticket; the event is on disk once
+ * {@link #isDurable(long)} holds for it, and the server holds back the reply
+ * until then without blocking a thread, so durability adds latency but does
+ * not limit the number of moves per second.
+ *
+ * <p>
+ * {@link #open} first reads the existing shards in parallel, one task per
+ * shard, and replays them into live {@link BoardState}s. A record that is cut
+ * short or fails its checksum marks the end of the shard: it and anything
+ * after it, the remains of a crash during a write, are truncated. A record
+ * that passes its checksum but cannot be read only loses its own game. Games
+ * that ended or are over are dropped; the others wait to be claimed with
+ * {@link #claim(long)}. The number of shards is fixed when the directory is
+ * first used.
+ *
+ * <p>
+ * The shards only grow while the journal is open. When one is opened with at
+ * least half of its bytes, and at least 64 KB, belonging to dropped games, it
+ * is rewritten with the records of its live games only, so its size and replay
+ * time follow the games still in play rather than every game ever played.
+ * Recovered games that are still unclaimed when the journal is closed are
+ * ended then, so a game that nobody resumes is kept for one run of the server
+ * and not replayed forever.
+ */
+public class GameJournal implements Closeable {
+    static final byte NEW = 1;
+    static final byte MOVE = 2;
+    static final byte UNDO = 3;
+    static final byte END = 4;
+
+    private static final int HEADER = 2 * Integer.BYTES;
+    private static final int MAX_PAYLOAD = 1 << 16;
+    private static final long MIN_COMPACTION = 1 << 16; // Dead bytes worth rewriting a shard for
+
+    private final Shard[] shards;
+    private final long intervalNanos;
+    private final Map<Long, BoardState> recovered = new ConcurrentHashMap<>();
+    private final AtomicLong nextGameId = new AtomicLong(1);
+    private final Thread committer;
+    private volatile long epoch = 1; // Tickets handed out now; committed by the next round
+    private volatile long durableEpoch; // Every ticket up to this one is on disk
+    private volatile IOException failure;
+    private volatile boolean running = true;
+    private volatile Runnable commitListener;
+
+    // One journal file and its pending records. The active buffer is guarded by
+    // the shard's lock; the other buffer and the channel belong to the commit thread.
+    private static final class Shard {
+        final Path path;
+        FileChannel channel;
+        ByteBuffer active = ByteBuffer.allocate(1 << 16);
+        ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+
+        Shard(Path path) {
+            this.path = path;
+        }
+    }
+
+    private GameJournal(Path directory, int shardCount, long intervalNanos) {
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(directory.resolve(shardName(i)));
+        }
+        this.intervalNanos = intervalNanos;
+        this.committer = new Thread(this::runCommitter, "game-journal-commit");
+        committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal in a directory, recovering the games it holds, and
+     * starts the commit thread.
+     *
+     * @param directory      The directory of the shard files; created if missing.
+     * @param shardCount     The number of shards for a new directory. An existing
+     *                       directory keeps the number it was created with.
+     * @param intervalMicros The time between group commits, in microseconds.
+     * @param threads        The threads that replay shards at once.
+     * @return The journal.
+     * @throws IOException If the directory or a shard cannot be read or opened.
+     */
+    public static GameJournal open(Path directory, int shardCount, long intervalMicros, int threads)
+            throws IOException {
+        Files.createDirectories(directory);
+        int existing = 0;
+        while (Files.exists(directory.resolve(shardName(existing)))) {
+            existing++;
+        }
+        GameJournal journal = new GameJournal(directory, existing > 0 ? existing : Math.max(1, shardCount),
+                TimeUnit.MICROSECONDS.toNanos(Math.max(1, intervalMicros)));
+        journal.recover(threads);
+        journal.committer.start();
+        return journal;
+    }
+
+    private static String shardName(int index) {
+        return String.format("shard-%03d.journal", index);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /** The number of recovered games that have not been claimed yet. */
+    public int getRecoveredCount() {
+        return recovered.size();
+    }
+
+    /** Takes a recovered game, which is then no longer available to others. */
+    public BoardState claim(long gameId) {
+        return recovered.remove(gameId);
+    }
+
+    /** Sets the action run on the commit thread after every commit. */
+    public void setCommitListener(Runnable listener) {
+        this.commitListener = listener;
+    }
+
+    /** Whether a write or flush has failed; no event is made durable after that. */
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    public boolean isDurable(long ticket) {
+        return ticket <= durableEpoch;
+    }
+
+    /** Returns an id that no game in the journal has used. */
+    public long nextGameId() {
+        return nextGameId.getAndIncrement();
+    }
+
+    /**
+     * Records the start of a game.
+     *
+     * @param gameId     The game's id, from {@link #nextGameId()}.
+     * @param boardState The starting position.
+     * @return The ticket of the record.
+     */
+    public long newGame(long gameId, BoardState boardState) {
+        byte[] fen = Position.of(boardState).toFen().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES + Short.BYTES + fen.length);
+        payload.put(NEW).putLong(gameId).putShort((short) fen.length).put(fen);
+        return append(gameId, payload.array());
+    }
+
+    /** Records a move of a game and returns the record's ticket. */
+    public long move(long gameId, Move move) {
+        byte promotion = (byte) (move.getPromotion() == null ? 0 : move.getPromotion().ordinal() + 1);
+        ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES + 3);
+        payload.put(MOVE).putLong(gameId).put((byte) move.getFrom()).put((byte) move.getTo()).put(promotion);
+        return append(gameId, payload.array());
+    }
+
+    /** Records that the last move of a game was taken back and returns the ticket. */
+    public long undo(long gameId) {
+        return append(gameId, ByteBuffer.allocate(1 + Long.BYTES).put(UNDO).putLong(gameId).array());
+    }
+
+    /** Records that a game is finished with and returns the ticket. */
+    public long end(long gameId) {
+        return append(gameId, ByteBuffer.allocate(1 + Long.BYTES).put(END).putLong(gameId).array());
+    }
+
+    // Copies a framed record into its shard's buffer and returns the epoch whose
+    // commit will include it.
+    private long append(long gameId, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        Shard shard = shards[(int) Math.floorMod(gameId, (long) shards.length)];
+        synchronized (shard) {
+            if (shard.active.remaining() < HEADER + payload.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(2 * shard.active.capacity(),
+                        shard.active.position() + HEADER + payload.length));
+                shard.active.flip();
+                larger.put(shard.active);
+                shard.active = larger;
+            }
+            shard.active.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            return epoch; // Read under the lock, so the next round's swap sees this record
+        }
+    }
+
+    /**
+     * Writes and forces everything appended so far and waits for it.
+     *
+     * @throws IOException If a write has failed.
+     */
+    public void sync() throws IOException {
+        long ticket = epoch;
+        while (!isDurable(ticket) && failure == null && committer.isAlive()) {
+            LockSupport.parkNanos(intervalNanos);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!running) {
+            return;
+        }
+        for (Long gameId : recovered.keySet()) {
+            if (recovered.remove(gameId) != null) {
+                end(gameId); // Nobody resumed it; the next open compacts it away
+            }
+        }
+        try {
+            sync();
+        } finally {
+            running = false;
+            LockSupport.unpark(committer);
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (Shard shard : shards) {
+                if (shard.channel != null) {
+                    shard.channel.close();
+                }
+            }
+        }
+    }
+
+    private void runCommitter() {
+        while (running && failure == null) {
+            LockSupport.parkNanos(intervalNanos);
+            try {
+                commit();
+            } catch (IOException e) {
+                failure = e;
+            }
+            Runnable listener = commitListener;
+            if (listener != null) {
+                listener.run();
+            }
+        }
+    }
+
+    // One group commit: starts the next epoch, swaps every shard's buffer and
+    // writes and forces the swapped-out records. Appends that read the old
+    // epoch did so under a shard lock taken before the swap, so they are part
+    // of this round.
+    private void commit() throws IOException {
+        long round = epoch;
+        epoch = round + 1;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                ByteBuffer full = shard.active;
+                shard.active = shard.writing;
+                shard.writing = full;
+            }
+            ByteBuffer pending = shard.writing;
+            if (pending.position() == 0) {
+                continue;
+            }
+            pending.flip();
+            while (pending.hasRemaining()) {
+                shard.channel.write(pending);
+            }
+            pending.clear();
+            shard.channel.force(false);
+        }
+        durableEpoch = round;
+    }
+
+    // Replays every shard on a pool, truncates torn tails and opens the shards
+    // for appending.
+    private void recover(int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shards.length)));
+        try {
+            List<Future<Long>> tasks = new ArrayList<>();
+            for (Shard shard : shards) {
+                tasks.add(pool.submit(() -> recoverShard(shard)));
+            }
+            long maxId = 0;
+            for (Future<Long> task : tasks) {
+                maxId = Math.max(maxId, task.get());
+            }
+            nextGameId.set(maxId + 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Cannot recover the journal", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Replays one shard into the recovered games and returns the highest game
+    // id it mentions. The file is truncated after its last intact record, and
+    // compacted if it is mostly records of dropped games.
+    private long recoverShard(Shard shard) throws IOException {
+        FileChannel channel = FileChannel.open(shard.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        shard.channel = channel;
+        long size = channel.size();
+        Map<Long, BoardState> games = new HashMap<>();
+        Map<Long, Long> gameBytes = new HashMap<>();
+        long maxId = 0;
+        long valid = 0;
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        CRC32C crc = new CRC32C();
+        byte[] payload = new byte[MAX_PAYLOAD];
+        while (size - valid >= HEADER) {
+            int length = input.readInt();
+            int checksum = input.readInt();
+            if (length <= 0 || length > MAX_PAYLOAD || length > size - valid - HEADER) {
+                break;
+            }
+            input.readFully(payload, 0, length);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            valid += HEADER + length;
+            if (length < 1 + Long.BYTES) {
+                continue; // Intact but too short to name its game
+            }
+            long gameId = ByteBuffer.wrap(payload, 1, Long.BYTES).getLong();
+            maxId = Math.max(maxId, gameId);
+            gameBytes.merge(gameId, (long) HEADER + length, Long::sum);
+            try {
+                apply(ByteBuffer.wrap(payload, 0, length), games);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                games.put(gameId, null); // Intact but malformed: its game is lost, the records after it are not
+            }
+        }
+        if (valid < size) {
+            channel.truncate(valid);
+        }
+        channel.position(valid);
+        Set<Long> live = new HashSet<>();
+        long liveBytes = 0;
+        for (Map.Entry<Long, BoardState> game : games.entrySet()) {
+            if (game.getValue() != null && !game.getValue().gameStatus().isOver()) {
+                recovered.put(game.getKey(), game.getValue());
+                live.add(game.getKey());
+                liveBytes += gameBytes.get(game.getKey());
+            }
+        }
+        long dead = valid - liveBytes;
+        if (dead >= liveBytes && dead >= MIN_COMPACTION) {
+            compact(shard, valid, live, maxId);
+        }
+        return maxId;
+    }
+
+    // Rewrites a shard with only the records of its live games, led by an END
+    // record for the highest game id it held so that ids are never reused. The
+    // copy replaces the shard once it is on disk, so a crash leaves one or the
+    // other.
+    private static void compact(Shard shard, long valid, Set<Long> live, long maxId) throws IOException {
+        Path copy = shard.path.resolveSibling(shard.path.getFileName() + ".compact");
+        try (FileChannel output = FileChannel.open(copy, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 * (HEADER + MAX_PAYLOAD));
+            byte[] payload = ByteBuffer.allocate(1 + Long.BYTES).put(END).putLong(maxId).array();
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+
+            shard.channel.position(0);
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(shard.channel), 1 << 16));
+            payload = new byte[MAX_PAYLOAD];
+            for (long read = 0; read < valid;) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                input.readFully(payload, 0, length);
+                read += HEADER + length;
+                if (length < 1 + Long.BYTES || !live.contains(ByteBuffer.wrap(payload, 1, Long.BYTES).getLong())) {
+                    continue;
+                }
+                if (buffer.remaining() < HEADER + length) {
+                    writeFully(output, buffer);
+                }
+                buffer.putInt(length).putInt(checksum).put(payload, 0, length);
+            }
+            writeFully(output, buffer);
+            output.force(true);
+        }
+        shard.channel.close();
+        Files.move(copy, shard.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        shard.channel = FileChannel.open(shard.path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        shard.channel.position(shard.channel.size());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Applies one record to the games of a shard. A game whose moves do not
+    // replay is kept as null, i.e. lost, until it ends.
+    private static void apply(ByteBuffer payload, Map<Long, BoardState> games) {
+        byte type = payload.get();
+        long gameId = payload.getLong();
+        switch (type) {
+            case NEW: {
+                byte[] fen = new byte[payload.getShort() & 0xFFFF];
+                payload.get(fen);
+                try {
+                    games.put(gameId, Position.fromFen(new String(fen, StandardCharsets.UTF_8)).toBoardState());
+                } catch (IllegalArgumentException e) {
+                    games.put(gameId, null);
+                }
+                break;
+            }
+            case MOVE: {
+                int from = payload.get();
+                int to = payload.get();
+                int promotion = payload.get();
+                BoardState board = games.get(gameId);
+                if (board == null) {
+                    break;
+                }
+                Move move = new Move(Square.row(from), Square.column(from), Square.row(to), Square.column(to),
+                        promotion == 0 ? null : PieceType.values()[promotion - 1]);
+                if (board.isLegal(move)) {
+                    board.makeMove(move);
+                } else {
+                    games.put(gameId, null);
+                }
+                break;
+            }
+            case UNDO: {
+                BoardState board = games.get(gameId);
+                if (board != null) {
+                    board.undoMove();
+                }
+                break;
+            }
+            case END:
+                games.remove(gameId);
+                break;
+            default:
+                break; // Skipped, like the records of a game that failed to replay
+        }
+    }
+}
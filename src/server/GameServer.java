@@ -0,0 +1,507 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code GameServer} class hosts many games at once without a GUI. Every
+ * connection owns one {@link GameSession} and talks to it with the line
+ * protocol described there.
+ *
+ * <p>
+ * All sockets are non-blocking and served by one selector thread, which only
+ * reads, splits lines and writes replies. The commands of a connection run on
+ * a virtual thread, one command at a time and in order; on a JDK without
+ * virtual threads a small pool of platform threads takes their place. A
+ * connection holds no more than a fixed-size input and output buffer and the
+ * commands read but not yet answered: once {@value #MAX_PENDING_LINES} are
+ * waiting, the server stops reading from that client until they are answered,
+ * and a command only runs while the output has room for the longest reply, so
+ * a client that does not read its replies stops being served. Together with the
+ * ply limit of a session this bounds the memory of every game.
+ *
+ * <p>
+ * With a {@link GameJournal}, a reply to a command that changed a game is
+ * held in the output buffer until the journal has made the change durable.
+ * The client's later commands wait meanwhile, and the journal's commit thread
+ * hands the held connections back to the selector after every group commit,
+ * which sends the replies and resumes the commands. If the journal fails, connections with held replies are
+ * closed rather than told that an unrecorded move was played.
+ *
+ * <p>
+ * Usage: {@code java -cp bin/core:bin/server GameServer [--port N] [--bind ADDRESS] [--max-connections N]
+ * [--journal DIR] [--shards N] [--commit-interval MS]}
+ */
+public class GameServer implements Closeable {
+    static final int MAX_LINE = 256; // Longest accepted command, in bytes
+    static final int MAX_REPLY = 1536; // Longest reply, MOVES with 218 moves, in bytes
+    static final int OUTPUT_CAPACITY = 4096; // Unsent replies per connection, in bytes
+    static final int MAX_PENDING_LINES = 16; // Commands read but not yet answered
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService sessionThreads;
+    private final Queue<Connection> updates = new ConcurrentLinkedQueue<>(); // Connections with new replies
+    private final Queue<Connection> held = new ConcurrentLinkedQueue<>(); // Connections waiting for the journal
+    private final GameJournal journal;
+    private final AtomicInteger connections = new AtomicInteger();
+    private final int maxConnections;
+    private final Thread ioThread;
+    private volatile boolean running = true;
+
+    /**
+     * Opens the listening socket. The server accepts connections once
+     * {@link #start()} has been called.
+     *
+     * @param address        The address to listen on; port 0 picks a free port.
+     * @param maxConnections The most connections served at once.
+     * @throws IOException If the socket cannot be opened.
+     */
+    public GameServer(InetSocketAddress address, int maxConnections) throws IOException {
+        this(address, maxConnections, null);
+    }
+
+    /**
+     * Opens the listening socket for a server that records its games.
+     *
+     * @param address        The address to listen on; port 0 picks a free port.
+     * @param maxConnections The most connections served at once.
+     * @param journal        The journal to record games in, or {@code null}.
+     *                       It stays open when the server is closed.
+     * @throws IOException If the socket cannot be opened.
+     */
+    public GameServer(InetSocketAddress address, int maxConnections, GameJournal journal) throws IOException {
+        this.maxConnections = maxConnections;
+        this.journal = journal;
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        sessionThreads = newSessionExecutor();
+        ioThread = new Thread(this::runSelector, "game-server-io");
+        if (journal != null) {
+            journal.setCommitListener(this::releaseHeld);
+        }
+    }
+
+    // Returns an executor that runs every task on a new virtual thread when the
+    // JDK has them, and a pool with one platform thread per core otherwise.
+    private static ExecutorService newSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory threads = task -> {
+                Thread thread = new Thread(task, "game-session-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), threads);
+        }
+    }
+
+    public void start() {
+        ioThread.start();
+    }
+
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            ioThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sessionThreads.shutdownNow();
+    }
+
+    private void runSelector() {
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = updates.poll()) != null) {
+                    flush(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            running = false;
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    // Accepts waiting clients. Failing to accept one, e.g. when the process has
+    // run out of file descriptors, leaves it waiting and keeps the server up.
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            if (connections.get() >= maxConnections) {
+                closeQuietly(channel); // Full; the client may retry later
+                continue;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel, new GameSession(journal));
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.incrementAndGet();
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    // Reads what has arrived, queues every complete line and schedules the
+    // session if it is idle.
+    private void read(Connection connection) {
+        ByteBuffer input = connection.input;
+        int read;
+        try {
+            read = connection.channel.read(input);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect(connection);
+            return;
+        }
+
+        boolean schedule = false;
+        input.flip();
+        synchronized (connection) {
+            int start = input.position();
+            for (int i = start; i < input.limit(); i++) {
+                if (input.get(i) == '\n') {
+                    int end = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+                    byte[] bytes = new byte[end - start];
+                    input.get(start, bytes);
+                    connection.lines.add(new String(bytes, StandardCharsets.US_ASCII));
+                    start = i + 1;
+                }
+            }
+            input.position(start);
+            schedule = claim(connection);
+        }
+        input.compact();
+        if (!input.hasRemaining()) {
+            disconnect(connection); // A line longer than MAX_LINE
+            return;
+        }
+        if (schedule) {
+            sessionThreads.execute(() -> runCommands(connection));
+        }
+        updateInterest(connection);
+    }
+
+    // Runs on a session thread: answers queued commands until none are left,
+    // a reply waits for the journal or the output is too full for another.
+    // The selector claims the connection again once that changes.
+    private void runCommands(Connection connection) {
+        while (true) {
+            String line;
+            synchronized (connection) {
+                if (connection.closing || connection.heldTicket != 0
+                        || connection.output.remaining() < MAX_REPLY
+                        || (line = connection.lines.poll()) == null) {
+                    connection.scheduled = false;
+                    return;
+                }
+            }
+            String reply;
+            try {
+                reply = connection.session.handle(line) + "\n";
+            } catch (RuntimeException e) {
+                reply = "ERR internal error\n"; // A bug must not leave the connection claimed
+            }
+            boolean held;
+            synchronized (connection) {
+                byte[] bytes = reply.getBytes(StandardCharsets.US_ASCII);
+                if (bytes.length > connection.output.remaining()) {
+                    connection.output.clear(); // Longer than MAX_REPLY; drop the client
+                    connection.releasable = 0;
+                    connection.heldTicket = 0;
+                    connection.closing = true;
+                } else {
+                    connection.output.put(bytes);
+                    connection.heldTicket = Math.max(connection.heldTicket, connection.session.getTicket());
+                    connection.closing = connection.session.isClosed();
+                }
+                held = !release(connection);
+                if (held) {
+                    hold(connection); // The commit thread hands it to the selector
+                }
+            }
+            if (!held) {
+                updates.add(connection);
+                selector.wakeup();
+            }
+        }
+    }
+
+    // Marks the connection as served by a session thread if it has commands to
+    // answer, no reply waiting for the journal and room in its output. Must
+    // hold the connection's lock.
+    private static boolean claim(Connection connection) {
+        if (connection.scheduled || connection.closing || connection.lines.isEmpty()
+                || connection.heldTicket != 0 || connection.output.remaining() < MAX_REPLY) {
+            return false;
+        }
+        connection.scheduled = true;
+        return true;
+    }
+
+    // Sends pending replies, resumes the commands they held up, and closes the
+    // connection once a closing session has nothing left to send.
+    private void flush(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        boolean done;
+        boolean resume;
+        synchronized (connection) {
+            if (!release(connection)) {
+                hold(connection);
+            }
+            ByteBuffer output = connection.output;
+            output.flip();
+            int end = output.limit();
+            output.limit(connection.releasable);
+            try {
+                connection.channel.write(output);
+            } catch (IOException e) {
+                connection.closing = true;
+                connection.releasable = 0;
+                connection.heldTicket = 0;
+                output.position(0);
+                end = 0;
+            }
+            int written = output.position();
+            output.limit(end);
+            output.compact();
+            connection.releasable -= written;
+            done = connection.closing && output.position() == 0;
+            resume = claim(connection);
+        }
+        if (done) {
+            disconnect(connection);
+            return;
+        }
+        if (resume) {
+            sessionThreads.execute(() -> runCommands(connection));
+        }
+        updateInterest(connection);
+    }
+
+    // Reads only while the command queue has room and writes only while
+    // replies are waiting.
+    private void updateInterest(Connection connection) {
+        int ops = 0;
+        synchronized (connection) {
+            if (connection.lines.size() < MAX_PENDING_LINES && !connection.closing) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (connection.releasable > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+        if (connection.key.isValid()) {
+            connection.key.interestOps(ops);
+        }
+    }
+
+    // Marks every reply in the output as sendable once the journal holds the
+    // changes behind them, and returns whether it does. Must hold the
+    // connection's lock. A failed journal drops the replies and the connection.
+    private boolean release(Connection connection) {
+        if (connection.heldTicket != 0 && !journal.isDurable(connection.heldTicket)) {
+            if (!journal.isFailed()) {
+                return false;
+            }
+            connection.output.clear();
+            connection.closing = true;
+        }
+        connection.heldTicket = 0;
+        connection.releasable = connection.output.position();
+        return true;
+    }
+
+    // Queues a connection for the next commit, once. Must hold its lock.
+    private void hold(Connection connection) {
+        if (!connection.waiting) {
+            connection.waiting = true;
+            held.add(connection);
+        }
+    }
+
+    // Runs on the journal's commit thread: lets the selector send what the
+    // commit made durable. Connections still waiting are held again by flush().
+    private void releaseHeld() {
+        Connection connection;
+        boolean any = false;
+        while ((connection = held.poll()) != null) {
+            synchronized (connection) {
+                connection.waiting = false;
+            }
+            updates.add(connection);
+            any = true;
+        }
+        if (any) {
+            selector.wakeup();
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        if (connection.key.isValid()) {
+            connection.key.cancel();
+            closeQuietly(connection.channel);
+            connections.decrementAndGet();
+        }
+        synchronized (connection) {
+            connection.closing = true;
+            connection.lines.clear();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Nothing left to do with a socket that fails to close
+        }
+    }
+
+    // The buffers and session of one client. The lines, output and flags are
+    // shared by the selector thread and the session thread and guarded by the
+    // connection's lock; the input buffer belongs to the selector thread.
+    private static final class Connection {
+        final SocketChannel channel;
+        final GameSession session;
+        final ByteBuffer input = ByteBuffer.allocate(MAX_LINE);
+        final ByteBuffer output = ByteBuffer.allocate(OUTPUT_CAPACITY);
+        final ArrayDeque<String> lines = new ArrayDeque<>(MAX_PENDING_LINES);
+        SelectionKey key;
+        long heldTicket; // Journal ticket the unsent replies wait for, or 0
+        int releasable; // Bytes at the start of the output that may be sent
+        boolean waiting; // Queued for the journal's next commit
+        boolean scheduled; // A session thread is answering the queued commands
+        boolean closing; // No more commands will be answered
+
+        Connection(SocketChannel channel, GameSession session) {
+            this.channel = channel;
+            this.session = session;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = 7777;
+        String bind = "127.0.0.1";
+        int maxConnections = 20_000;
+        Path journalDirectory = null;
+        int shards = 4;
+        double commitInterval = 2;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--bind":
+                    bind = args[++i];
+                    break;
+                case "--max-connections":
+                    maxConnections = Integer.parseInt(args[++i]);
+                    break;
+                case "--journal":
+                    journalDirectory = Paths.get(args[++i]);
+                    break;
+                case "--shards":
+                    shards = Integer.parseInt(args[++i]);
+                    break;
+                case "--commit-interval":
+                    commitInterval = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.err.println("Usage: GameServer [--port N] [--bind ADDRESS] [--max-connections N]"
+                            + " [--journal DIR] [--shards N] [--commit-interval MS]");
+                    System.exit(2);
+            }
+        }
+        GameJournal journal = null;
+        if (journalDirectory != null) {
+            long start = System.nanoTime();
+            journal = GameJournal.open(journalDirectory, shards, Math.round(commitInterval * 1000),
+                    Runtime.getRuntime().availableProcessors());
+            System.out.printf("Recovered %d games from %d shards in %d ms%n", journal.getRecoveredCount(),
+                    journal.getShardCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        GameServer server = new GameServer(new InetSocketAddress(bind, port), maxConnections, journal);
+        server.start();
+        System.out.println("Listening on " + bind + ":" + server.getPort());
+        server.ioThread.join();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.util.Locale;
+
+/**
+ * The {@code GameSession} class holds the game of one client of the
+ * {@link GameServer} and answers its commands. A command is one line of text
+ * and every command gets exactly one line in reply:
+ *
+ * <pre>
+ * NEW [fen]     start a new game, from the standard position or a FEN  -> OK
+ * MOVE e2e4     play a move in coordinate notation, e.g. e7e8q       -> OK status | ILLEGAL e2e4
+ * UNDO          take back the last move                               -> OK | ERR nothing to undo
+ * MOVES         list the legal moves of the side to move              -> MOVES e2e4 d2d4 ...
+ * STATUS        report how the game stands and whose turn it is        -> STATUS ongoing white
+ * FEN           report the position                                   -> FEN rnbqkbnr/...
+ * GAME          report the game's journal id                          -> GAME 42 | ERR no journal
+ * RESUME 42     continue a game recovered from the journal            -> OK status | ERR unknown game
+ * PING                                                                -> PONG
+ * QUIT          close the connection                                  -> BYE
+ * </pre>
+ *
+ * Malformed commands are answered with {@code ERR} and a reason. Moves are
+ * checked with {@link BoardState#isLegal(Move)}, so validating a move never
+ * generates move lists. A game is limited to {@value #MAX_PLIES} plies, which
+ * bounds the size of its move history.
+ *
+ * <p>
+ * With a {@link GameJournal}, every game that gets a move or is asked for its
+ * id is recorded there, and every change to it is appended; {@link #getTicket()}
+ * is the journal ticket that must be durable before the last reply is sent.
+ *
+ * <p>
+ * A session is used by one thread at a time.
+ */
+public class GameSession {
+    static final int MAX_PLIES = 1024;
+
+    private static final Position START = Position.fromFen(Position.START_FEN);
+
+    private final GameJournal journal; // null when games are not recorded
+    private BoardState boardState = START.toBoardState();
+    private GameStatus status = GameStatus.ONGOING; // Status of the current position
+    private boolean closed;
+    private long gameId; // 0 until the game is recorded
+    private long ticket;
+
+    public GameSession() {
+        this(null);
+    }
+
+    public GameSession(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public BoardState getBoardState() {
+        return boardState;
+    }
+
+    /** The journal ticket of the last change, or 0 if nothing was recorded. */
+    public long getTicket() {
+        return ticket;
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param line The command line, without the line terminator.
+     * @return The reply, without the line terminator.
+     */
+    public String handle(String line) {
+        String command = line.trim();
+        String argument = "";
+        int space = command.indexOf(' ');
+        if (space >= 0) {
+            argument = command.substring(space + 1).trim();
+            command = command.substring(0, space);
+        }
+        switch (command.toUpperCase(Locale.ROOT)) {
+            case "NEW":
+                return newGame(argument);
+            case "MOVE":
+                return move(argument);
+            case "UNDO":
+                return undo();
+            case "MOVES":
+                return moves();
+            case "STATUS":
+                return "STATUS " + statusName(status) + " " + boardState.getSideToMove();
+            case "FEN":
+                return "FEN " + Position.of(boardState).toFen();
+            case "GAME":
+                if (journal == null) {
+                    return "ERR no journal";
+                }
+                record();
+                return "GAME " + gameId;
+            case "RESUME":
+                return resume(argument);
+            case "PING":
+                return "PONG";
+            case "QUIT":
+                endRecord();
+                closed = true;
+                return "BYE";
+            default:
+                return "ERR unknown command";
+        }
+    }
+
+    private String newGame(String fen) {
+        if (fen.isEmpty()) {
+            endRecord();
+            boardState = START.toBoardState();
+            status = GameStatus.ONGOING;
+            return "OK";
+        }
+        Position position;
+        try {
+            position = Position.fromFen(fen);
+        } catch (IllegalArgumentException e) {
+            return "ERR bad FEN";
+        }
+        BoardState board = position.toBoardState();
+        if (!hasOneKingEach(board) || board.isKingInCheck(board.getSideToMove().opposite())) {
+            return "ERR illegal position";
+        }
+        if (board.getCastlingRights() != position.getCastlingRights()) {
+            return "ERR bad castling rights"; // A right without its king on e1/e8 and rook in the corner
+        }
+        endRecord();
+        boardState = board;
+        status = board.gameStatus();
+        return "OK";
+    }
+
+    private String resume(String argument) {
+        if (journal == null) {
+            return "ERR no journal";
+        }
+        long id;
+        try {
+            id = Long.parseLong(argument);
+        } catch (NumberFormatException e) {
+            return "ERR bad game id";
+        }
+        BoardState board = id == gameId ? null : journal.claim(id);
+        if (board == null) {
+            return "ERR unknown game";
+        }
+        endRecord();
+        boardState = board;
+        gameId = id;
+        status = board.gameStatus();
+        return "OK " + statusName(status);
+    }
+
+    private String move(String text) {
+        Move move = Move.parse(text);
+        if (move == null) {
+            return "ERR bad move";
+        }
+        if (status.isOver()) {
+            return "ERR game over";
+        }
+        if (boardState.getRecord().getPly() >= MAX_PLIES) {
+            return "ERR move limit reached";
+        }
+        if (!boardState.isLegal(move)) {
+            return "ILLEGAL " + text;
+        }
+        record();
+        boardState.makeMove(move);
+        if (journal != null) {
+            ticket = journal.move(gameId, move);
+        }
+        status = boardState.gameStatus();
+        return "OK " + statusName(status);
+    }
+
+    private String undo() {
+        if (!boardState.undoMove()) {
+            return "ERR nothing to undo";
+        }
+        if (gameId != 0) {
+            ticket = journal.undo(gameId);
+        }
+        status = boardState.gameStatus();
+        return "OK";
+    }
+
+    private String moves() {
+        StringBuilder reply = new StringBuilder("MOVES");
+        for (Move move : boardState.generateLegalMoves(boardState.getSideToMove())) {
+            reply.append(' ').append(move);
+        }
+        return reply.toString();
+    }
+
+    // Starts recording the current game, from its current position, unless it
+    // is recorded already or there is no journal.
+    private void record() {
+        if (journal != null && gameId == 0) {
+            gameId = journal.nextGameId();
+            ticket = journal.newGame(gameId, boardState);
+        }
+    }
+
+    // Marks the recorded game as finished with before the session leaves it.
+    private void endRecord() {
+        if (gameId != 0) {
+            ticket = journal.end(gameId);
+            gameId = 0;
+        }
+    }
+
+    private static boolean hasOneKingEach(BoardState board) {
+        int white = 0;
+        int black = 0;
+        for (Pieces piece : board.getPieces()) {
+            if (piece.getType() == PieceType.KING) {
+                if (piece.isWhite()) {
+                    white++;
+                } else {
+                    black++;
+                }
+            }
+        }
+        return white == 1 && black == 1;
+    }
+
+    // The status as a single lower-case word, e.g. "checkmate" or "fifty_move_rule".
+    private static String statusName(GameStatus status) {
+        return status.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,34 @@
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@code VectorKernel} class computes the dense layers of an
+ * {@link NnueNetwork} with the incubating Vector API, using the widest float
+ * vectors the CPU supports and fused multiply-adds. It is compiled and run
+ * with {@code --add-modules jdk.incubator.vector}; the network finds it by
+ * name and falls back to scalar loops when it cannot be loaded.
+ */
+public final class VectorKernel implements NnueNetwork.Kernel {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public float dot(float[] weights, int offset, float[] input, int length) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            FloatVector w = FloatVector.fromArray(SPECIES, weights, offset + i);
+            sum = w.fma(FloatVector.fromArray(SPECIES, input, i), sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += weights[offset + i] * input[i];
+        }
+        return result;
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + SPECIES.vectorBitSize() + "-bit";
+    }
+}
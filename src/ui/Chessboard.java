@@ -0,0 +1,609 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.ArrayList;
+
+public class Chessboard extends JPanel {
+    private static final int SIZE = 8;
+    private static final Color LIGHT_SQUARE_COLOR = new Color(240, 217, 181);
+    private static final Color DARK_SQUARE_COLOR = new Color(181, 136, 99);
+    private static final Color LEGAL_MOVE_COLOR = new Color(100, 100, 100, 75);
+    private static final int TILE_SIZE = 80;
+    private static final Color ARROW_COLOR = new Color(40, 90, 200, 150);
+    private static final Color ANALYSIS_BACKGROUND = new Color(0, 0, 0, 160);
+    private static final int ANALYSIS_REFRESH_MS = 100; // How often analysis results are shown
+    private static final int ANALYSIS_THREADS = Integer.getInteger("chess.analysis.threads",
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int MAX_ANALYSIS_LINES = 4; // Lines shown at most in multi-PV mode
+    private static final int PONDER_THINK_MS = 3000; // Analysis time per position before pondering
+
+    private BoardState boardState; // BoardState instance
+    private final LegalMoveCache legalMoveCache = new LegalMoveCache(); // Moves computed in the background
+    private AnalysisEngine analysisEngine; // Created when analysis is first enabled
+    private Timer analysisTimer; // Polls the engine for new results
+    private AnalysisEngine.Info analysisInfo; // Result currently shown
+    private int analysisLines = 1; // Best moves shown
+    private boolean ponderEnabled; // Think for a while, then analyse the expected reply
+    private Pieces selectedPiece; // Currently selected piece
+    private long legalMoves; // Target squares of the selected piece, bit row * 8 + column
+
+    private BufferedImage boardLayer; // Squares, rendered once
+    private BufferedImage piecesLayer; // Pieces other than the one being dragged
+    private BufferedImage legalMovesLayer; // Legal move circles for the current selection
+    private boolean layersDirty = true; // Pieces and legal move layers need to be re-rendered
+
+    private Point dragStartPoint; // Starting point of the drag
+    private Point dragCurrentPoint; // Current point of the drag
+    private Move pendingPromotion; // Pawn move waiting for the promotion choice
+    private GameStatus gameStatus = GameStatus.ONGOING; // Whether the game has ended
+
+    public Chessboard() {
+        setPreferredSize(new Dimension(SIZE * TILE_SIZE, SIZE * TILE_SIZE));
+        setBackground(Color.WHITE);
+        boardState = new BoardState();
+
+        // Initialize all major pieces excluding pawns
+        List<Pieces> pieces = new ArrayList<>();
+        PieceType[] pieceTypes = { PieceType.ROOK, PieceType.KNIGHT, PieceType.BISHOP, PieceType.QUEEN,
+                PieceType.KING, PieceType.BISHOP, PieceType.KNIGHT, PieceType.ROOK };
+
+        for (int col = 0; col < SIZE; col++) {
+            pieces.add(ChessPieceFactory.createPiece(pieceTypes[col], 0, col, PieceColor.BLACK, boardState));
+            pieces.add(ChessPieceFactory.createPiece(PieceType.PAWN, 1, col, PieceColor.BLACK, boardState));
+
+            pieces.add(ChessPieceFactory.createPiece(pieceTypes[col], 7, col, PieceColor.WHITE, boardState));
+            pieces.add(ChessPieceFactory.createPiece(PieceType.PAWN, 6, col, PieceColor.WHITE, boardState));
+        }
+
+        boardState.initializeBoard(pieces);
+        positionCommitted();
+
+        // Add mouse listeners to handle clicks and dragging
+        addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                handleMousePress(e.getX(), e.getY());
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                handleMouseRelease(e.getX(), e.getY());
+            }
+        });
+
+        addMouseMotionListener(new MouseMotionAdapter() {
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                handleMouseDrag(e.getX(), e.getY());
+            }
+        });
+
+        // Press 'A' to toggle the analysis overlay
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('a'), "toggleAnalysis");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('A'), "toggleAnalysis");
+        getActionMap().put("toggleAnalysis", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setAnalysisEnabled(!isAnalysisEnabled());
+            }
+        });
+
+        // Press 'L' to show more of the best moves, cycling back to one
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('l'), "cycleLines");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('L'), "cycleLines");
+        getActionMap().put("cycleLines", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setAnalysisLines(analysisLines % MAX_ANALYSIS_LINES + 1);
+            }
+        });
+
+        // Press 'P' to switch pondering on or off
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('p'), "togglePonder");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('P'), "togglePonder");
+        getActionMap().put("togglePonder", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setPonderEnabled(!ponderEnabled);
+            }
+        });
+
+        // Press 'M' to switch the metrics counters and their overlay on or off
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('m'), "toggleMetrics");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke('M'), "toggleMetrics");
+        getActionMap().put("toggleMetrics", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Metrics.setEnabled(!Metrics.isEnabled());
+                repaint();
+            }
+        });
+
+        // Press Ctrl+Z to take back a move and Ctrl+Y to play it again
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Z"), "undoMove");
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke("control Y"), "redoMove");
+        getActionMap().put("undoMove", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                undoMove();
+            }
+        });
+        getActionMap().put("redoMove", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                redoMove();
+            }
+        });
+    }
+
+    // Replace the game with a new one starting from the given position
+    public void setPosition(Position position) {
+        boardState = position.toBoardState();
+        pendingPromotion = null;
+        clearSelection();
+        positionCommitted();
+        invalidateLayers();
+        repaint();
+    }
+
+    // Take back the last move, if any
+    public void undoMove() {
+        if (pendingPromotion == null && boardState.undoMove()) {
+            clearSelection();
+            positionCommitted();
+            invalidateLayers();
+            repaint();
+        }
+    }
+
+    // Play the last undone move again, if any
+    public void redoMove() {
+        if (pendingPromotion == null && boardState.redoMove()) {
+            clearSelection();
+            positionCommitted();
+            invalidateLayers();
+            repaint();
+        }
+    }
+
+    public boolean isAnalysisEnabled() {
+        return analysisTimer != null && analysisTimer.isRunning();
+    }
+
+    // Start or stop background analysis of the current position
+    public void setAnalysisEnabled(boolean enabled) {
+        if (enabled == isAnalysisEnabled()) {
+            return;
+        }
+        if (enabled) {
+            if (analysisEngine == null) {
+                analysisEngine = new AnalysisEngine(ANALYSIS_THREADS);
+                analysisTimer = new Timer(ANALYSIS_REFRESH_MS, e -> showAnalysis());
+            }
+            analysisEngine.setLines(analysisLines);
+            analysePosition(boardState.getSnapshot());
+            analysisTimer.start();
+        } else {
+            analysisEngine.stop();
+            analysisTimer.stop();
+            analysisInfo = null;
+            repaint();
+        }
+    }
+
+    // Show the given number of best moves, from 1 to MAX_ANALYSIS_LINES
+    public void setAnalysisLines(int lines) {
+        analysisLines = lines;
+        if (isAnalysisEnabled()) {
+            analysisEngine.setLines(lines);
+            analysePosition(boardState.getSnapshot());
+        }
+    }
+
+    public boolean isPonderEnabled() {
+        return ponderEnabled;
+    }
+
+    // Switch pondering on or off. While it is on, every position is analysed for
+    // PONDER_THINK_MS, and then the engine analyses the position after the
+    // reply it expects; if that reply is played, it carries on from there.
+    public void setPonderEnabled(boolean enabled) {
+        ponderEnabled = enabled;
+        if (isAnalysisEnabled()) {
+            analysePosition(boardState.getSnapshot());
+        }
+    }
+
+    // Analyse a newly committed position, carrying on with the pondering search
+    // if the position is the one it expected
+    private void analysePosition(Position position) {
+        if (ponderEnabled && position.equals(analysisEngine.getPonderPosition())) {
+            analysisEngine.ponderHit(PONDER_THINK_MS);
+            analysisInfo = analysisEngine.getLatest();
+        } else {
+            analysisInfo = null;
+            analysisEngine.analyse(position, ponderEnabled ? PONDER_THINK_MS : 0);
+        }
+        repaint();
+    }
+
+    // Called by the analysis timer; repaints only when a new result is available.
+    // While pondering, the finished analysis of the current position stays shown.
+    private void showAnalysis() {
+        if (analysisEngine.isPondering()) {
+            return;
+        }
+        boolean finished = !analysisEngine.isRunning(); // Read first, so the latest result is final
+        AnalysisEngine.Info latest = analysisEngine.getLatest();
+        if (latest != analysisInfo) {
+            analysisInfo = latest;
+            repaint();
+        }
+        if (ponderEnabled && finished && analysisInfo != null) {
+            analysisEngine.ponder(boardState.getSnapshot(), analysisInfo.getPrincipalVariation().get(0));
+            repaint();
+        }
+    }
+
+    // Called after every committed change to the position; publishes a snapshot
+    // that background readers use instead of the live board
+    private void positionCommitted() {
+        Position position = boardState.publishSnapshot();
+        gameStatus = boardState.gameStatus();
+        legalMoveCache.positionChanged(position);
+        if (isAnalysisEnabled()) {
+            analysePosition(position);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        renderLayers();
+
+        // Draw the cached chessboard and pieces; the clip keeps drag repaints small
+        g2d.drawImage(boardLayer, 0, 0, null);
+        g2d.drawImage(piecesLayer, 0, 0, null);
+
+        // Draw grey circles on legal moves if a piece is selected
+        if (selectedPiece != null) {
+            g2d.drawImage(legalMovesLayer, 0, 0, null);
+        }
+
+        // Draw the engine's best move and evaluation
+        if (analysisInfo != null) {
+            drawAnalysis(g2d);
+        }
+
+        // Show the metrics counters while they are being collected
+        if (Metrics.isEnabled()) {
+            drawMetrics(g2d);
+        }
+
+        // Announce the end of the game
+        if (gameStatus.isOver()) {
+            drawGameStatus(g2d);
+        }
+
+        // Draw the piece being dragged
+        if (dragStartPoint != null && dragCurrentPoint != null && selectedPiece != null) {
+            Image sprite = SpriteCache.getSprite(selectedPiece.getColor(), selectedPiece.getType(), TILE_SIZE);
+            g2d.drawImage(sprite, dragCurrentPoint.x - TILE_SIZE / 2, dragCurrentPoint.y - TILE_SIZE / 2, null);
+        }
+    }
+
+    // Render the static board once and the pieces and legal move layers whenever
+    // the position or the selection has changed
+    private void renderLayers() {
+        if (boardLayer == null) {
+            boardLayer = createLayer(Transparency.OPAQUE);
+            piecesLayer = createLayer(Transparency.TRANSLUCENT);
+            legalMovesLayer = createLayer(Transparency.TRANSLUCENT);
+            Graphics2D g2d = boardLayer.createGraphics();
+            drawChessboard(g2d);
+            g2d.dispose();
+        }
+        if (layersDirty) {
+            Graphics2D g2d = clearLayer(piecesLayer);
+            drawPieces(g2d);
+            g2d.dispose();
+
+            g2d = clearLayer(legalMovesLayer);
+            if (selectedPiece != null) {
+                highlightLegalMoves(g2d);
+            }
+            g2d.dispose();
+            layersDirty = false;
+        }
+    }
+
+    private BufferedImage createLayer(int transparency) {
+        int size = SIZE * TILE_SIZE;
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (config != null) {
+            return config.createCompatibleImage(size, size, transparency);
+        }
+        return new BufferedImage(size, size,
+                transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    private Graphics2D clearLayer(BufferedImage layer) {
+        Graphics2D g2d = layer.createGraphics();
+        g2d.setComposite(AlphaComposite.Clear);
+        g2d.fillRect(0, 0, layer.getWidth(), layer.getHeight());
+        g2d.setComposite(AlphaComposite.SrcOver);
+        return g2d;
+    }
+
+    // Mark the pieces and legal move layers for re-rendering on the next paint;
+    // package-private so the benchmarks can time a full re-render
+    void invalidateLayers() {
+        layersDirty = true;
+    }
+
+    private void drawChessboard(Graphics2D g2d) {
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if ((row + col) % 2 == 0) {
+                    g2d.setColor(LIGHT_SQUARE_COLOR);
+                } else {
+                    g2d.setColor(DARK_SQUARE_COLOR);
+                }
+                g2d.fillRect(col * TILE_SIZE, row * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+            }
+        }
+    }
+
+    private void drawPieces(Graphics2D g2d) {
+        List<Pieces> pieces = boardState.getPieces();
+        for (Pieces piece : pieces) {
+            if (piece != selectedPiece) { // Draw only non-selected pieces
+                int x = piece.getColumn() * TILE_SIZE;
+                int y = piece.getRow() * TILE_SIZE;
+                drawPiece(g2d, piece, x, y);
+            }
+        }
+    }
+
+    // Draw a piece's cached sprite; SpriteCache reports icons that cannot be loaded
+    private void drawPiece(Graphics2D g2d, Pieces piece, int x, int y) {
+        Image sprite = SpriteCache.getSprite(piece.getColor(), piece.getType(), TILE_SIZE);
+        if (sprite != null) {
+            g2d.drawImage(sprite, x, y, null);
+        }
+    }
+
+    private void highlightLegalMoves(Graphics2D g2d) {
+        g2d.setColor(LEGAL_MOVE_COLOR);
+        for (long moves = legalMoves; moves != 0; moves &= moves - 1) {
+            int square = Long.numberOfTrailingZeros(moves);
+            int x = Square.column(square) * TILE_SIZE;
+            int y = Square.row(square) * TILE_SIZE;
+            int circleDiameter = TILE_SIZE / 3; // Diameter of the circle
+
+            // Draw the circle
+            g2d.fillOval(x + TILE_SIZE / 2 - circleDiameter / 2, y + TILE_SIZE / 2 - circleDiameter / 2, circleDiameter,
+                    circleDiameter);
+        }
+    }
+
+    private void drawAnalysis(Graphics2D g2d) {
+        // Draw an arrow for each line, fainter for the weaker moves
+        List<AnalysisEngine.Line> lines = analysisInfo.getLines();
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            List<Move> pv = lines.get(i).getPrincipalVariation();
+            int alpha = ARROW_COLOR.getAlpha() * (lines.size() - i) / lines.size();
+            drawArrow(g2d, pv.get(0), new Color(ARROW_COLOR.getRed(), ARROW_COLOR.getGreen(), ARROW_COLOR.getBlue(),
+                    Math.max(alpha, 50)));
+        }
+
+        // Draw the evaluation, depth and principal variation of each line in the
+        // top left corner, and the expected reply while pondering
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < lines.size(); i++) {
+            List<Move> pv = lines.get(i).getPrincipalVariation();
+            StringBuilder text = new StringBuilder(lines.get(i).getScoreText());
+            if (i == 0) {
+                text.append("  depth ").append(analysisInfo.getDepth()).append(" ");
+            }
+            for (int j = 0; j < Math.min(pv.size(), 6); j++) {
+                text.append(' ').append(pv.get(j));
+            }
+            rows.add(text.toString());
+        }
+        List<Move> best = analysisInfo.getPrincipalVariation();
+        if (analysisEngine.isPondering() && !best.isEmpty()) {
+            rows.add("pondering on " + best.get(0));
+        }
+        g2d.setFont(getFont().deriveFont(Font.BOLD, 14f));
+        FontMetrics metrics = g2d.getFontMetrics();
+        int width = 0;
+        for (String row : rows) {
+            width = Math.max(width, metrics.stringWidth(row));
+        }
+        g2d.setColor(ANALYSIS_BACKGROUND);
+        g2d.fillRect(0, 0, width + 12, rows.size() * metrics.getHeight() + 8);
+        g2d.setColor(Color.WHITE);
+        for (int i = 0; i < rows.size(); i++) {
+            g2d.drawString(rows.get(i), 6, metrics.getAscent() + 4 + i * metrics.getHeight());
+        }
+    }
+
+    private void drawArrow(Graphics2D g2d, Move move, Color color) {
+        int x1 = move.getFromColumn() * TILE_SIZE + TILE_SIZE / 2;
+        int y1 = move.getFromRow() * TILE_SIZE + TILE_SIZE / 2;
+        int x2 = move.getToColumn() * TILE_SIZE + TILE_SIZE / 2;
+        int y2 = move.getToRow() * TILE_SIZE + TILE_SIZE / 2;
+        double angle = Math.atan2(y2 - y1, x2 - x1);
+        int head = TILE_SIZE / 3;
+        Stroke oldStroke = g2d.getStroke();
+        g2d.setColor(color);
+        g2d.setStroke(new BasicStroke(TILE_SIZE / 8f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g2d.drawLine(x1, y1, (int) (x2 - Math.cos(angle) * head / 2), (int) (y2 - Math.sin(angle) * head / 2));
+        g2d.setStroke(oldStroke);
+        Polygon arrowHead = new Polygon();
+        arrowHead.addPoint(x2, y2);
+        arrowHead.addPoint((int) (x2 - head * Math.cos(angle - 0.5)), (int) (y2 - head * Math.sin(angle - 0.5)));
+        arrowHead.addPoint((int) (x2 - head * Math.cos(angle + 0.5)), (int) (y2 - head * Math.sin(angle + 0.5)));
+        g2d.fillPolygon(arrowHead);
+    }
+
+    // Draw the metrics report in the bottom left corner
+    private void drawMetrics(Graphics2D g2d) {
+        String[] lines = Metrics.report().split("\n");
+        g2d.setFont(getFont().deriveFont(Font.PLAIN, 12f));
+        FontMetrics metrics = g2d.getFontMetrics();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        int height = lines.length * metrics.getHeight() + 8;
+        int y = SIZE * TILE_SIZE - height;
+        g2d.setColor(ANALYSIS_BACKGROUND);
+        g2d.fillRect(0, y, width + 12, height);
+        g2d.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g2d.drawString(lines[i], 6, y + 4 + metrics.getAscent() + i * metrics.getHeight());
+        }
+    }
+
+    private void drawGameStatus(Graphics2D g2d) {
+        String text = gameStatus.getDescription();
+        if (gameStatus == GameStatus.CHECKMATE) {
+            text += boardState.isWhiteToMove() ? " - Black wins" : " - White wins";
+        }
+        g2d.setFont(getFont().deriveFont(Font.BOLD, 24f));
+        FontMetrics metrics = g2d.getFontMetrics();
+        int width = metrics.stringWidth(text) + 24;
+        int height = metrics.getHeight() + 16;
+        int x = (SIZE * TILE_SIZE - width) / 2;
+        int y = (SIZE * TILE_SIZE - height) / 2;
+        g2d.setColor(ANALYSIS_BACKGROUND);
+        g2d.fillRect(x, y, width, height);
+        g2d.setColor(Color.WHITE);
+        g2d.drawString(text, x + 12, y + 8 + metrics.getAscent());
+    }
+
+    private void handleMousePress(int x, int y) {
+        int row = y / TILE_SIZE;
+        int col = x / TILE_SIZE;
+
+        // Find the piece at the clicked position; wait while a promotion is being chosen
+        // and stop once the game is over
+        selectedPiece = pendingPromotion == null && !gameStatus.isOver() ? findPieceAt(row, col) : null;
+        if (selectedPiece != null) {
+            legalMoves = legalMoveCache.getLegalMoves(row, col);
+            if (legalMoves == LegalMoveCache.NOT_READY) {
+                // The background worker has not finished yet, so compute the moves here
+                legalMoves = boardState.getLegalMovesAvoidingCheck(selectedPiece);
+            }
+            dragStartPoint = new Point(x, y);
+            dragCurrentPoint = new Point(x, y);
+            invalidateLayers();
+            repaint();
+        } else {
+            selectedPiece = null;
+            legalMoves = 0;
+            dragStartPoint = null;
+            dragCurrentPoint = null;
+            invalidateLayers();
+            repaint(); // Remove highlights
+        }
+    }
+
+    private void handleMouseRelease(int x, int y) {
+        if (selectedPiece != null) {
+            int row = y / TILE_SIZE;
+            int col = x / TILE_SIZE;
+
+            // Check if it's the correct turn
+            if (selectedPiece.getColor() == boardState.getSideToMove()) {
+
+                // Check if the new position is a legal move
+                Move move = new Move(selectedPiece.getRow(), selectedPiece.getColumn(), row, col);
+                if (boardState.isLegal(move)) {
+                    if (selectedPiece instanceof ChessPieces.Pawn && (row == 0 || row == 7)) {
+                        // Play the move once the promotion piece has been chosen
+                        pendingPromotion = move;
+                        boolean isWhite = selectedPiece.isWhite();
+                        new PawnPromotionDialog(this, row, col, isWhite).setVisible(true);
+                    } else {
+                        boardState.makeMove(move); // Handles captures and castling
+                        positionCommitted();
+                    }
+                }
+            }
+
+            // Clear selection and repaint
+            clearSelection();
+            repaint();
+        }
+
+        // Clear selection and repaint
+        selectedPiece = null;
+        legalMoves = 0;
+        dragStartPoint = null;
+        dragCurrentPoint = null;
+        invalidateLayers();
+        repaint();
+    }
+
+    private void handleMouseDrag(int x, int y) {
+        if (selectedPiece != null && dragCurrentPoint != null) {
+            // Repaint only the union of the old and new sprite rectangles
+            int left = Math.min(dragCurrentPoint.x, x) - TILE_SIZE / 2;
+            int top = Math.min(dragCurrentPoint.y, y) - TILE_SIZE / 2;
+            int width = Math.abs(dragCurrentPoint.x - x) + TILE_SIZE;
+            int height = Math.abs(dragCurrentPoint.y - y) + TILE_SIZE;
+            dragCurrentPoint.setLocation(x, y);
+            repaint(left, top, width, height);
+        }
+
+    }
+
+    private Pieces findPieceAt(int row, int col) {
+        for (Pieces piece : boardState.getPieces()) {
+            if (piece.getRow() == row && piece.getColumn() == col) {
+                return piece;
+            }
+        }
+        return null;
+    }
+
+    public void promotePawn(int row, int col, PieceType pieceChoice) {
+        Move move = pendingPromotion;
+        if (move == null || move.getToRow() != row || move.getToColumn() != col) {
+            return; // No promotion is waiting for this square
+        }
+        pendingPromotion = null;
+
+        // Play the pawn move with the chosen piece
+        boardState.makeMove(new Move(move.getFromRow(), move.getFromColumn(), row, col, pieceChoice));
+        positionCommitted();
+        invalidateLayers();
+
+    }
+
+    private void clearSelection() {
+        selectedPiece = null;
+        legalMoves = 0;
+        dragStartPoint = null;
+        dragCurrentPoint = null;
+    }
+
+    public static void main(String[] args) {
+        JFrame frame = new JFrame();
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setUndecorated(true); // Remove the title bar
+        frame.add(new Chessboard());
+        frame.pack();
+        frame.setLocationRelativeTo(null); // Center the window
+        frame.setVisible(true);
+    }
+}
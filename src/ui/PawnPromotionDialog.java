@@ -3,7 +3,9 @@ import java.awt.*;
 
 public class PawnPromotionDialog extends JFrame {
 
-    private String promotionChoice;
+    private static final int ICON_SIZE = 75; // Size of the button icons in pixels
+
+    private PieceType promotionChoice;
     private Chessboard chessboard; // Reference to the Chessboard
 
     public PawnPromotionDialog(Chessboard chessboard, int row, int col, boolean white) {
@@ -17,34 +19,30 @@ public class PawnPromotionDialog extends JFrame {
         // Create buttons for each piece
 
         // queen
-        Icon queenIcon = new ImageIcon(
-                white ? getClass().getResource("/icons/wq.png") : getClass().getResource("/icons/bq.png"));
+        Icon queenIcon = new ImageIcon(SpriteCache.getSprite(PieceColor.of(white), PieceType.QUEEN, ICON_SIZE));
         JButton queenButton = new JButton(queenIcon);
         queenButton.setFocusPainted(false);
 
         // rook
-        Icon rookIcon = new ImageIcon(
-                white ? getClass().getResource("/icons/wr.png") : getClass().getResource("/icons/br.png"));
+        Icon rookIcon = new ImageIcon(SpriteCache.getSprite(PieceColor.of(white), PieceType.ROOK, ICON_SIZE));
         JButton rookButton = new JButton(rookIcon);
         rookButton.setFocusPainted(false);
 
         // bisop
-        Icon bishopIcon = new ImageIcon(
-                white ? getClass().getResource("/icons/wb.png") : getClass().getResource("/icons/bb.png"));
+        Icon bishopIcon = new ImageIcon(SpriteCache.getSprite(PieceColor.of(white), PieceType.BISHOP, ICON_SIZE));
         JButton bishopButton = new JButton(bishopIcon);
         bishopButton.setFocusPainted(false);
 
         // knight
-        Icon kinghtIcon = new ImageIcon(
-                white ? getClass().getResource("/icons/wn.png") : getClass().getResource("/icons/bn.png"));
+        Icon kinghtIcon = new ImageIcon(SpriteCache.getSprite(PieceColor.of(white), PieceType.KNIGHT, ICON_SIZE));
         JButton knightButton = new JButton(kinghtIcon);
         knightButton.setFocusPainted(false);
 
         // Add action listeners to the buttons
-        queenButton.addActionListener(e -> handlePromotionChoice("Queen", row, col));
-        rookButton.addActionListener(e -> handlePromotionChoice("Rook", row, col));
-        bishopButton.addActionListener(e -> handlePromotionChoice("Bishop", row, col));
-        knightButton.addActionListener(e -> handlePromotionChoice("Knight", row, col));
+        queenButton.addActionListener(e -> handlePromotionChoice(PieceType.QUEEN, row, col));
+        rookButton.addActionListener(e -> handlePromotionChoice(PieceType.ROOK, row, col));
+        bishopButton.addActionListener(e -> handlePromotionChoice(PieceType.BISHOP, row, col));
+        knightButton.addActionListener(e -> handlePromotionChoice(PieceType.KNIGHT, row, col));
 
         // Add buttons to the frame
         add(queenButton);
@@ -53,7 +51,7 @@ public class PawnPromotionDialog extends JFrame {
         add(knightButton);
     }
 
-    private void handlePromotionChoice(String choice, int row, int col) {
+    private void handlePromotionChoice(PieceType choice, int row, int col) {
         this.promotionChoice = choice;
         chessboard.promotePawn(row, col, choice);
         chessboard.revalidate(); // Ensures the component hierarchy is up to date
@@ -62,7 +60,7 @@ public class PawnPromotionDialog extends JFrame {
 
     }
 
-    public String getPromotionChoice() {
+    public PieceType getPromotionChoice() {
         return promotionChoice;
     }
 }
@@ -0,0 +1,87 @@
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SpriteCache} class decodes each of the twelve piece images once
+ * and keeps copies scaled to every tile size that has been asked for. Scaled
+ * copies are created in the screen's compatible format so that drawing them is
+ * a plain (accelerated) blit with no per-frame rescaling. The board and the
+ * promotion dialog share the same cache.
+ */
+public final class SpriteCache {
+    private static final int SPRITE_COUNT = 12; // Six piece types in two colors.
+
+    private static final BufferedImage[] sources = new BufferedImage[SPRITE_COUNT]; // Decoded PNGs.
+    private static final boolean[] missing = new boolean[SPRITE_COUNT]; // Icons that failed to load.
+    private static final Map<Integer, Image[]> scaled = new ConcurrentHashMap<>(); // Sprites by size.
+
+    private SpriteCache() {
+    }
+
+    /**
+     * Returns the sprite for a piece scaled to the given size.
+     *
+     * @param color The color of the piece.
+     * @param type  The type of the piece.
+     * @param size  The width and height of the sprite in pixels.
+     * @return The scaled sprite, or {@code null} if the icon cannot be loaded.
+     */
+    public static Image getSprite(PieceColor color, PieceType type, int size) {
+        int index = color.ordinal() * 6 + type.ordinal();
+        Image[] sprites = scaled.computeIfAbsent(size, s -> new Image[SPRITE_COUNT]);
+        Image sprite = sprites[index];
+        if (sprite == null) {
+            sprite = scale(getSource(index, color.isWhite(), type.getInitial()), size);
+            sprites[index] = sprite; // A race only creates the same sprite twice.
+        }
+        return sprite;
+    }
+
+    // Decodes the PNG for a sprite index the first time it is needed. An icon
+    // that fails to load is reported and tried only once.
+    private static synchronized BufferedImage getSource(int index, boolean white, char initial) {
+        if (sources[index] == null && !missing[index]) {
+            String path = "/icons/" + (white ? "w" : "b") + initial + ".png";
+            URL resource = SpriteCache.class.getResource(path);
+            try {
+                sources[index] = resource != null ? ImageIO.read(resource) : null;
+            } catch (IOException e) {
+                sources[index] = null;
+            }
+            if (sources[index] == null) {
+                missing[index] = true;
+                System.err.println("Error: Icon not found for path: " + path);
+            }
+        }
+        return sources[index];
+    }
+
+    // Scales a decoded image once, with bicubic filtering, into a compatible image.
+    private static Image scale(BufferedImage source, int size) {
+        if (source == null) {
+            return null;
+        }
+        BufferedImage target;
+        if (GraphicsEnvironment.isHeadless()) {
+            target = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        } else {
+            target = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDefaultConfiguration().createCompatibleImage(size, size, Transparency.TRANSLUCENT);
+        }
+        Graphics2D g2d = target.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.drawImage(source, 0, 0, size, size, null);
+        g2d.dispose();
+        return target;
+    }
+}